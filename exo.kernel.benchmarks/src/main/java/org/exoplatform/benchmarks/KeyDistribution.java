@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The distributions of keys used by the benchmarks. The keys are pre-computed so that
+ * the cost of the generation is not part of the measurements.
+ *
+ * @version $Id$
+ */
+public enum KeyDistribution {
+
+   /**
+    * All the keys have the same probability to be used
+    */
+   UNIFORM {
+      @Override
+      int[] generate(int size, int keySpace, long seed)
+      {
+         Random random = new Random(seed);
+         int[] keys = new int[size];
+         for (int i = 0; i < size; i++)
+         {
+            keys[i] = random.nextInt(keySpace);
+         }
+         return keys;
+      }
+   },
+
+   /**
+    * The keys follow a Zipf distribution with an exponent of 1, which is close to
+    * the access pattern of a portal where few pages and navigations are very popular
+    */
+   ZIPF {
+      @Override
+      int[] generate(int size, int keySpace, long seed)
+      {
+         // Cumulative distribution of the ranks
+         double[] cdf = new double[keySpace];
+         double sum = 0;
+         for (int i = 0; i < keySpace; i++)
+         {
+            sum += 1.0d / (i + 1);
+            cdf[i] = sum;
+         }
+         Random random = new Random(seed);
+         int[] keys = new int[size];
+         for (int i = 0; i < size; i++)
+         {
+            double value = random.nextDouble() * sum;
+            int index = Arrays.binarySearch(cdf, value);
+            keys[i] = index >= 0 ? index : Math.min(-index - 1, keySpace - 1);
+         }
+         return keys;
+      }
+   };
+
+   /**
+    * Generates a sequence of keys.
+    *
+    * @param size the length of the sequence, must be a power of two
+    * @param keySpace the total amount of distinct keys
+    * @param seed the seed of the random generator
+    * @return the sequence of keys
+    */
+   abstract int[] generate(int size, int keySpace, long seed);
+
+   /**
+    * Generates a sequence of keys as strings, to mimic the usual eXo cache keys.
+    *
+    * @param size the length of the sequence, must be a power of two
+    * @param keySpace the total amount of distinct keys
+    * @param seed the seed of the random generator
+    * @return the sequence of keys
+    */
+   public String[] generateKeys(int size, int keySpace, long seed)
+   {
+      if (Integer.bitCount(size) != 1)
+      {
+         throw new IllegalArgumentException("The size must be a power of two");
+      }
+      // A given key is always the same instance to avoid measuring the cost of the equals
+      String[] names = new String[keySpace];
+      for (int i = 0; i < keySpace; i++)
+      {
+         names[i] = "/portal/classic/page/" + i;
+      }
+      int[] indexes = generate(size, keySpace, seed);
+      String[] keys = new String[size];
+      for (int i = 0; i < size; i++)
+      {
+         keys[i] = names[indexes[i]];
+      }
+      return keys;
+   }
+}
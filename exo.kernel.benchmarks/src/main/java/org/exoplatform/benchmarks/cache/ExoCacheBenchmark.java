@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.benchmarks.cache;
+
+import org.exoplatform.benchmarks.KeyDistribution;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentTinyLFUExoCache;
+import org.exoplatform.services.cache.invalidation.InvalidationExoCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of the local {@link ExoCache} implementations with a read only
+ * workload and with a mixed workload made of 80% of gets, 15% of puts and 5% of removes.
+ * The benchmarks are executed with 1, 4 and 16 threads thanks to the sub classes.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ExoCacheBenchmark
+{
+
+   /**
+    * The length of the sequence of keys
+    */
+   private static final int SEQUENCE_SIZE = 1 << 16;
+
+   private static final int SEQUENCE_MASK = SEQUENCE_SIZE - 1;
+
+   /**
+    * The total amount of distinct keys
+    */
+   private static final int KEY_SPACE = 10000;
+
+   /**
+    * The maximum size of the cache
+    */
+   private static final int MAX_SIZE = 1000;
+
+   @Param({"fifo", "fifo-striped", "tinylfu", "invalidation"})
+   public String implementation;
+
+   @Param({"UNIFORM", "ZIPF"})
+   public KeyDistribution distribution;
+
+   private ExoCache<String, Object> cache;
+
+   private String[] keys;
+
+   private final Object value = new Object();
+
+   @Setup
+   public void setUp()
+   {
+      cache = createCache(implementation);
+      keys = distribution.generateKeys(SEQUENCE_SIZE, KEY_SPACE, 42L);
+      // Fill the cache
+      for (int i = 0; i < SEQUENCE_SIZE; i++)
+      {
+         cache.put(keys[i], value);
+      }
+   }
+
+   static ExoCache<String, Object> createCache(String implementation)
+   {
+      if ("fifo".equals(implementation))
+      {
+         return new ConcurrentFIFOExoCache<String, Object>("fifo", MAX_SIZE);
+      }
+      else if ("fifo-striped".equals(implementation))
+      {
+         ConcurrentFIFOExoCache<String, Object> cache = new ConcurrentFIFOExoCache<String, Object>("fifo", MAX_SIZE);
+         cache.setQueueStripes(Runtime.getRuntime().availableProcessors());
+         return cache;
+      }
+      else if ("tinylfu".equals(implementation))
+      {
+         return new ConcurrentTinyLFUExoCache<String, Object>("tinylfu", MAX_SIZE);
+      }
+      else if ("invalidation".equals(implementation))
+      {
+         return new InvalidationExoCache<String, Object>(new ConcurrentFIFOExoCache<String, Object>("invalidation",
+            MAX_SIZE));
+      }
+      throw new IllegalArgumentException("Unknown implementation " + implementation);
+   }
+
+   @State(Scope.Thread)
+   public static class ThreadState
+   {
+      int index;
+
+      @Setup
+      public void setUp(ThreadParams params)
+      {
+         // Each thread starts from a different position in the sequence
+         index = params.getThreadIndex() * (SEQUENCE_SIZE / 16);
+      }
+   }
+
+   @Benchmark
+   public Object get(ThreadState state)
+   {
+      return cache.get(keys[state.index++ & SEQUENCE_MASK]);
+   }
+
+   @Benchmark
+   public Object mixed(ThreadState state)
+   {
+      int index = state.index++;
+      String key = keys[index & SEQUENCE_MASK];
+      int operation = (index & Integer.MAX_VALUE) % 100;
+      if (operation < 80)
+      {
+         return cache.get(key);
+      }
+      else if (operation < 95)
+      {
+         cache.put(key, value);
+         return key;
+      }
+      return cache.remove(key);
+   }
+
+   @Threads(1)
+   public static class OneThread extends ExoCacheBenchmark
+   {
+   }
+
+   @Threads(4)
+   public static class FourThreads extends ExoCacheBenchmark
+   {
+   }
+
+   @Threads(16)
+   public static class SixteenThreads extends ExoCacheBenchmark
+   {
+   }
+}
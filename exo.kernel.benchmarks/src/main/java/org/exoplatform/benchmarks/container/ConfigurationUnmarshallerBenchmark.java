@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.benchmarks.container;
+
+import org.exoplatform.container.configuration.ConfigurationUnmarshaller;
+import org.exoplatform.container.xml.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the DOM based unmarshalling of a configuration file with the streaming unmarshalling,
+ * the size of the generated configuration file is defined by the amount of components, half of
+ * them having a profile that is not active.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigurationUnmarshallerBenchmark
+{
+
+   @Param({"10", "100"})
+   public int components;
+
+   private File file;
+
+   private URL url;
+
+   private ConfigurationUnmarshaller unmarshaller;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      file = File.createTempFile("configuration", ".xml");
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try
+      {
+         writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+         writer.write("<configuration xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+         writer.write("   xsi:schemaLocation=\"http://www.exoplatform.org/xml/ns/kernel_1_3.xsd "
+            + "http://www.exoplatform.org/xml/ns/kernel_1_3.xsd\"\n");
+         writer.write("   xmlns=\"http://www.exoplatform.org/xml/ns/kernel_1_3.xsd\">\n");
+         for (int i = 0; i < components; i++)
+         {
+            writer.write(i % 2 == 0 ? "   <component>\n" : "   <component profiles=\"inactive\">\n");
+            writer.write("      <key>org.exoplatform.Component" + i + "</key>\n");
+            writer.write("      <type>org.exoplatform.ComponentImpl" + i + "</type>\n");
+            writer.write("      <init-params>\n");
+            writer.write("         <value-param>\n");
+            writer.write("            <name>name</name>\n");
+            writer.write("            <description>The name of the component</description>\n");
+            writer.write("            <value>component-" + i + "</value>\n");
+            writer.write("         </value-param>\n");
+            writer.write("         <properties-param>\n");
+            writer.write("            <name>properties</name>\n");
+            writer.write("            <property name=\"a\" value=\"${a:value-a}\"/>\n");
+            writer.write("            <property name=\"b\" value=\"value-b\"/>\n");
+            writer.write("         </properties-param>\n");
+            writer.write("      </init-params>\n");
+            writer.write("   </component>\n");
+         }
+         writer.write("</configuration>\n");
+      }
+      finally
+      {
+         writer.close();
+      }
+      url = file.toURI().toURL();
+      unmarshaller = new ConfigurationUnmarshaller(Collections.singleton("active"));
+   }
+
+   @TearDown
+   public void tearDown()
+   {
+      file.delete();
+   }
+
+   @Benchmark
+   public Configuration dom() throws Exception
+   {
+      return unmarshaller.unmarshall(url, false);
+   }
+
+   @Benchmark
+   public Configuration streaming() throws Exception
+   {
+      return unmarshaller.unmarshall(url, true);
+   }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.benchmarks.container;
+
+import org.exoplatform.container.ExoContainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the component lookups in a hierarchy of {@link ExoContainer}, the
+ * depth of the hierarchy is the amount of containers between the root container and the
+ * container used for the lookups, which is what we get with the portal containers.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ContainerLookupBenchmark
+{
+
+   @Param({"1", "3", "5"})
+   public int depth;
+
+   private ExoContainer root;
+
+   private ExoContainer container;
+
+   @Setup
+   public void setUp()
+   {
+      root = new ExoContainer();
+      root.registerComponentImplementation(RootComponent.class);
+      ExoContainer current = root;
+      for (int i = 0; i < depth; i++)
+      {
+         current = new ExoContainer(current);
+      }
+      container = current;
+      container.registerComponentImplementation(LocalComponent.class);
+      container.registerComponentImplementation(FirstListener.class);
+      container.registerComponentImplementation(SecondListener.class);
+      root.start();
+      container.start();
+      // Make sure that the singletons are created before the measurements
+      container.getComponentInstanceOfType(LocalComponent.class);
+      container.getComponentInstanceOfType(RootComponent.class);
+   }
+
+   @TearDown
+   public void tearDown()
+   {
+      container.stop();
+      root.stop();
+   }
+
+   @Benchmark
+   public Object localComponent()
+   {
+      return container.getComponentInstanceOfType(LocalComponent.class);
+   }
+
+   @Benchmark
+   public Object rootComponent()
+   {
+      return container.getComponentInstanceOfType(RootComponent.class);
+   }
+
+   @Benchmark
+   public Object missingComponent()
+   {
+      return container.getComponentInstanceOfType(MissingComponent.class);
+   }
+
+   @Benchmark
+   public List<Listener> componentsOfType()
+   {
+      return container.getComponentInstancesOfType(Listener.class);
+   }
+
+   public static class RootComponent
+   {
+   }
+
+   public static class LocalComponent
+   {
+   }
+
+   public static class MissingComponent
+   {
+   }
+
+   public interface Listener
+   {
+   }
+
+   public static class FirstListener implements Listener
+   {
+   }
+
+   public static class SecondListener implements Listener
+   {
+   }
+
+   @Threads(1)
+   public static class OneThread extends ContainerLookupBenchmark
+   {
+   }
+
+   @Threads(4)
+   public static class FourThreads extends ContainerLookupBenchmark
+   {
+   }
+
+   @Threads(16)
+   public static class SixteenThreads extends ContainerLookupBenchmark
+   {
+   }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.benchmarks.container;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.component.ComponentRequestLifecycle;
+import org.exoplatform.container.component.ContextSnapshot;
+import org.exoplatform.container.component.RequestLifeCycle;
+import org.exoplatform.container.component.ThreadContext;
+import org.exoplatform.container.component.ThreadContextHandler;
+import org.exoplatform.container.component.ThreadContextHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the per-task cost of the propagation of the context of a thread to another thread, which is what
+ * is done for each asynchronous listener. The tasks are executed in the calling thread in order to measure
+ * only the propagation itself: <code>threadContextHandler</code> is the former way based on a
+ * {@link ThreadContextHandler}, <code>captureAndExecute</code> captures a new {@link ContextSnapshot} for
+ * each task and <code>reusedSnapshot</code> executes all the tasks with the same snapshot.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ContextPropagationBenchmark
+{
+
+   /**
+    * The total amount of {@link ThreadContextHolder} registered in the container
+    */
+   @Param({"1", "10"})
+   public int holders;
+
+   private ExoContainer root;
+
+   private ExoContainer container;
+
+   private ContextSnapshot snapshot;
+
+   private final AtomicLong counter = new AtomicLong();
+
+   private final Runnable task = new Runnable()
+   {
+      public void run()
+      {
+         counter.incrementAndGet();
+      }
+   };
+
+   @Setup
+   public void setUp()
+   {
+      root = new ExoContainer();
+      container = new ExoContainer(root);
+      for (int i = 0; i < holders; i++)
+      {
+         container.registerComponentInstance("holder-" + i, new Holder());
+      }
+      container.registerComponentImplementation(RequestComponent.class);
+      root.start();
+      container.start();
+      snapshot = ContextSnapshot.capture(container);
+   }
+
+   @TearDown
+   public void tearDown()
+   {
+      container.stop();
+      root.stop();
+   }
+
+   @Benchmark
+   public long threadContextHandler()
+   {
+      ThreadContextHandler handler = new ThreadContextHandler(container);
+      handler.store();
+      ExoContainerContext.setCurrentContainer(container);
+      try
+      {
+         RequestLifeCycle.begin(container);
+         handler.push();
+         task.run();
+      }
+      finally
+      {
+         try
+         {
+            handler.restore();
+            RequestLifeCycle.end();
+         }
+         finally
+         {
+            ExoContainerContext.setCurrentContainer(null);
+         }
+      }
+      return counter.get();
+   }
+
+   @Benchmark
+   public long captureAndExecute()
+   {
+      ContextSnapshot.capture(container).execute(task);
+      return counter.get();
+   }
+
+   @Benchmark
+   public long reusedSnapshot()
+   {
+      snapshot.execute(task);
+      return counter.get();
+   }
+
+   public static class Holder implements ThreadContextHolder
+   {
+      private final ThreadLocal<String> tl = new ThreadLocal<String>();
+
+      public ThreadContext getThreadContext()
+      {
+         return new ThreadContext(tl);
+      }
+   }
+
+   public static class RequestComponent implements ComponentRequestLifecycle
+   {
+      public void startRequest(ExoContainer container)
+      {
+      }
+
+      public void endRequest(ExoContainer container)
+      {
+      }
+   }
+
+   @Threads(1)
+   public static class OneThread extends ContextPropagationBenchmark
+   {
+   }
+
+   @Threads(4)
+   public static class FourThreads extends ContextPropagationBenchmark
+   {
+   }
+
+   @Threads(16)
+   public static class SixteenThreads extends ContextPropagationBenchmark
+   {
+   }
+}
@@ -0,0 +1,8 @@
+/**
+ *  This package provides the JMH micro benchmarks of the kernel. Once the module has been built,
+ *  the benchmarks can be launched with <code>java -jar target/benchmarks.jar</code>, a subset of the
+ *  benchmarks can be selected thanks to a regular expression like <code>ExoCacheBenchmark</code>.
+ *  The results of a change should be compared to the files of the <code>baseline</code> directory, the
+ *  results in the JSON format are produced with <code>-rf json -rff result.json</code>.
+ */
+package org.exoplatform.benchmarks;
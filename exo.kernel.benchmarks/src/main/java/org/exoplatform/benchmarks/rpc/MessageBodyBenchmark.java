@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.benchmarks.rpc;
+
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+import org.exoplatform.services.rpc.impl.CompactMessageBodyCodec;
+import org.exoplatform.services.rpc.impl.MessageBodyCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost and the size of the serialization and of the deserialization of the {@link MessageBody}
+ * that are exchanged by the RPC service, for several kinds of arguments, with the Java serialization and
+ * with the {@link CompactMessageBodyCodec}. The batch benchmarks compare the encoding of
+ * {@link #BATCH_SIZE} messages one by one with the encoding of the same messages within one single batch.
+ *
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBodyBenchmark
+{
+
+   private static final String COMMAND_ID = "org.exoplatform.services.jcr.impl.core.query.ispn.LocalIndexChangesFilter-updateIndex";
+
+   private static final String BATCH_COMMAND_ID = "org.exoplatform.services.rpc.impl.AbstractRPCService-batch";
+
+   /**
+    * The index of the command once it has been agreed across the cluster
+    */
+   private static final int COMMAND_INDEX = 12;
+
+   static final int BATCH_SIZE = 20;
+
+   @Param({"none", "string", "long", "bytes", "externalizable"})
+   public String arguments;
+
+   @Param({"serialization", "compact"})
+   public String codec;
+
+   private MessageBodyCodec messageCodec;
+
+   private MessageBody body;
+
+   private byte[] bytes;
+
+   private MessageBody[] bodies;
+
+   private MessageBody batch;
+
+   @Setup
+   public void setUp() throws Exception
+   {
+      messageCodec = "compact".equals(codec) ? new CompactMessageBodyCodec() : new SerializationCodec();
+      body = new MessageBody(0, COMMAND_ID, COMMAND_INDEX, createArguments(arguments));
+      bytes = messageCodec.encode(body);
+      bodies = new MessageBody[BATCH_SIZE];
+      for (int i = 0; i < bodies.length; i++)
+      {
+         bodies[i] = new MessageBody(0, COMMAND_ID, COMMAND_INDEX, createArguments(arguments));
+      }
+      batch = new MessageBody(0, BATCH_COMMAND_ID, -1, bodies);
+   }
+
+   /**
+    * Reports the amount of bytes produced by the last operation, JMH sums the values of all the
+    * measurement iterations
+    */
+   @State(Scope.Thread)
+   @AuxCounters(AuxCounters.Type.EVENTS)
+   public static class Size
+   {
+      public long bytes;
+   }
+
+   static Serializable[] createArguments(String arguments)
+   {
+      if ("none".equals(arguments))
+      {
+         return null;
+      }
+      else if ("string".equals(arguments))
+      {
+         return new Serializable[]{"/repository/collaboration/sites/classic/web contents/news"};
+      }
+      else if ("long".equals(arguments))
+      {
+         return new Serializable[]{Long.valueOf(System.currentTimeMillis())};
+      }
+      else if ("bytes".equals(arguments))
+      {
+         byte[] value = new byte[1024];
+         for (int i = 0; i < value.length; i++)
+         {
+            value[i] = (byte)i;
+         }
+         return new Serializable[]{value};
+      }
+      else if ("externalizable".equals(arguments))
+      {
+         return new Serializable[]{new Payload("collaboration", 12345L, true)};
+      }
+      throw new IllegalArgumentException("Unknown arguments " + arguments);
+   }
+
+   @Benchmark
+   public byte[] serialize(Size size) throws IOException
+   {
+      byte[] result = messageCodec.encode(body);
+      size.bytes = result.length;
+      return result;
+   }
+
+   @Benchmark
+   public MessageBody deserialize() throws IOException, ClassNotFoundException
+   {
+      return messageCodec.decode(bytes, 0, bytes.length);
+   }
+
+   @Benchmark
+   public MessageBody roundTrip() throws IOException, ClassNotFoundException
+   {
+      byte[] result = messageCodec.encode(body);
+      return messageCodec.decode(result, 0, result.length);
+   }
+
+   @Benchmark
+   public int serializeEach(Size size) throws IOException
+   {
+      int length = 0;
+      for (int i = 0; i < bodies.length; i++)
+      {
+         length += messageCodec.encode(bodies[i]).length;
+      }
+      size.bytes = length;
+      return length;
+   }
+
+   @Benchmark
+   public byte[] serializeBatch(Size size) throws IOException
+   {
+      byte[] result = messageCodec.encode(batch);
+      size.bytes = result.length;
+      return result;
+   }
+
+   /**
+    * The codec based on the Java serialization, which is used by the RPC service by default
+    */
+   private static class SerializationCodec implements MessageBodyCodec
+   {
+      public byte[] encode(MessageBody body) throws IOException
+      {
+         ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+         ObjectOutputStream oos = new ObjectOutputStream(baos);
+         oos.writeObject(body);
+         oos.close();
+         return baos.toByteArray();
+      }
+
+      public MessageBody decode(byte[] buffer, int offset, int length) throws IOException, ClassNotFoundException
+      {
+         ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(buffer, offset, length));
+         try
+         {
+            return (MessageBody)ois.readObject();
+         }
+         finally
+         {
+            ois.close();
+         }
+      }
+   }
+
+   /**
+    * A typical argument of a command
+    */
+   public static class Payload implements Externalizable
+   {
+      private static final long serialVersionUID = 1L;
+
+      private String workspace;
+
+      private long timestamp;
+
+      private boolean local;
+
+      public Payload()
+      {
+      }
+
+      public Payload(String workspace, long timestamp, boolean local)
+      {
+         this.workspace = workspace;
+         this.timestamp = timestamp;
+         this.local = local;
+      }
+
+      public void writeExternal(ObjectOutput out) throws IOException
+      {
+         out.writeUTF(workspace);
+         out.writeLong(timestamp);
+         out.writeBoolean(local);
+      }
+
+      public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+      {
+         workspace = in.readUTF();
+         timestamp = in.readLong();
+         local = in.readBoolean();
+      }
+   }
+}
@@ -25,6 +25,7 @@ import org.exoplatform.management.jmx.annotations.NameTemplate;
 import org.exoplatform.management.jmx.annotations.Property;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -110,6 +111,26 @@ public interface ExoCache<K extends Serializable, V>
     */
    public void putMap(Map<? extends K, ? extends V> objs) throws NullPointerException, IllegalArgumentException;
 
+   /**
+    * Performs a lookup operation of all the provided keys at once. The implementations that
+    * rely on a remote cache are expected to fetch all the values with as few round trips
+    * as possible.
+    *
+    * @param keys the cache keys
+    * @return a map containing the keys that could be found in the cache with their values, the
+    * keys of the missing entries and the <code>null</code> keys are not part of it
+    * @throws IllegalArgumentException if the provided collection is null
+    */
+   public Map<K, V> getAll(Collection<? extends K> keys) throws IllegalArgumentException;
+
+   /**
+    * Removes all the entries matching with the provided keys at once.
+    *
+    * @param keys the cache keys
+    * @throws IllegalArgumentException if the provided collection is null or contains a null key
+    */
+   public void removeAll(Collection<? extends K> keys) throws IllegalArgumentException;
+
    /**
     * Clears the cache.
     */
@@ -73,6 +73,24 @@ public class ExoCacheConfig implements Cloneable
     * Indicates whether or not the replication of the values should be avoided
     */
    public boolean avoidValueReplication;
+
+   /**
+    * Indicates whether or not a local near cache should be used in front of the cache, this is
+    * only supported by the distributed caches
+    */
+   private boolean nearCacheEnabled;
+
+   /**
+    * The maximum amount of time in milliseconds during which the invalidations are queued when
+    * the replication of the values is avoided, the batching is disabled if it is lower or equal to 0
+    */
+   private long invalidationBatchWindow;
+
+   /**
+    * The amount of queued invalidations from which they are sent without waiting for the end
+    * of the batch window, no limit if it is lower or equal to 0
+    */
+   private int invalidationBatchSize;
    /**
     * Returns the cache name
     *
@@ -228,6 +246,71 @@ public class ExoCacheConfig implements Cloneable
       this.avoidValueReplication = avoidValueReplication;
    }
 
+   /**
+    * Indicates whether or not a local near cache should be used in front of the cache, this is
+    * only supported by the distributed caches
+    *
+    * @return <code>true</code> if the near cache is enabled, <code>false</code> otherwise
+    */
+   public boolean isNearCacheEnabled()
+   {
+      return nearCacheEnabled;
+   }
+
+   /**
+    * Enables or disables the local near cache
+    *
+    * @param nearCacheEnabled <code>true</code> to enable the near cache, <code>false</code> otherwise
+    */
+   public void setNearCacheEnabled(boolean nearCacheEnabled)
+   {
+      this.nearCacheEnabled = nearCacheEnabled;
+   }
+
+   /**
+    * Returns the maximum amount of time in milliseconds during which the invalidations are queued when
+    * the replication of the values is avoided
+    *
+    * @return the batch window, a value lower or equal to 0 means that the batching is disabled
+    */
+   public long getInvalidationBatchWindow()
+   {
+      return invalidationBatchWindow;
+   }
+
+   /**
+    * Sets the maximum amount of time in milliseconds during which the invalidations are queued when
+    * the replication of the values is avoided
+    *
+    * @param invalidationBatchWindow the batch window, a value lower or equal to 0 disables the batching
+    */
+   public void setInvalidationBatchWindow(long invalidationBatchWindow)
+   {
+      this.invalidationBatchWindow = invalidationBatchWindow;
+   }
+
+   /**
+    * Returns the amount of queued invalidations from which they are sent without waiting for the end
+    * of the batch window
+    *
+    * @return the batch size, a value lower or equal to 0 means no limit
+    */
+   public int getInvalidationBatchSize()
+   {
+      return invalidationBatchSize;
+   }
+
+   /**
+    * Sets the amount of queued invalidations from which they are sent without waiting for the end
+    * of the batch window
+    *
+    * @param invalidationBatchSize the batch size, a value lower or equal to 0 means no limit
+    */
+   public void setInvalidationBatchSize(int invalidationBatchSize)
+   {
+      this.invalidationBatchSize = invalidationBatchSize;
+   }
+
    /**
     * @see java.lang.Object#clone()
     */
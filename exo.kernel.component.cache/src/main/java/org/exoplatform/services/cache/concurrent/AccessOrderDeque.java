@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+/**
+ * A doubly linked list of {@link Item} ordered from the least recently used item (the first)
+ * to the most recently used item (the last). This class is not thread safe, it is expected
+ * to be accessed under the eviction lock only.
+ *
+ * @version $Id$
+ */
+class AccessOrderDeque<I extends Item>
+{
+
+   private final Item head;
+
+   private final Item tail;
+
+   private int size;
+
+   AccessOrderDeque()
+   {
+      this.head = new Item();
+      this.tail = new Item();
+      head.next = tail;
+      tail.previous = head;
+   }
+
+   int size()
+   {
+      return size;
+   }
+
+   boolean isEmpty()
+   {
+      return size == 0;
+   }
+
+   /**
+    * Adds the item at the end of the list, as most recently used item.
+    *
+    * @param item the item to add
+    */
+   void addLast(I item)
+   {
+      Item last = tail.previous;
+      item.previous = last;
+      item.next = tail;
+      last.next = item;
+      tail.previous = item;
+      size++;
+   }
+
+   /**
+    * Removes the item from the list.
+    *
+    * @param item the item to remove
+    * @return true if the item was part of the list
+    */
+   boolean remove(I item)
+   {
+      Item previous = item.previous;
+      Item next = item.next;
+      if (previous == null || next == null)
+      {
+         return false;
+      }
+      previous.next = next;
+      next.previous = previous;
+      item.previous = null;
+      item.next = null;
+      size--;
+      return true;
+   }
+
+   /**
+    * Moves the item at the end of the list if it is part of the list.
+    *
+    * @param item the item to move
+    */
+   void moveToBack(I item)
+   {
+      if (remove(item))
+      {
+         addLast(item);
+      }
+   }
+
+   /**
+    * @return the least recently used item or <code>null</code> if the list is empty
+    */
+   @SuppressWarnings("unchecked")
+   I peekFirst()
+   {
+      return head.next == tail ? null : (I)head.next;
+   }
+
+   /**
+    * @return the most recently used item or <code>null</code> if the list is empty
+    */
+   @SuppressWarnings("unchecked")
+   I peekLast()
+   {
+      return tail.previous == head ? null : (I)tail.previous;
+   }
+
+   /**
+    * Checks that the cached size is equal to the effective size of the list
+    */
+   void assertConsistency()
+   {
+      int effectiveSize = 0;
+      for (Item item = head.next; item != tail; item = item.next) //NOSONAR
+      {
+         effectiveSize++;
+      }
+      if (effectiveSize != size)
+      {
+         throw new AssertionError("The cached size " + size + " is different from the effective size "
+            + effectiveSize);
+      }
+   }
+}
@@ -45,7 +45,9 @@ class CacheState<K extends Serializable, V>
       this.log = log;
       this.config = config;
       this.map = new ConcurrentHashMap<K, ObjectRef<K, V>>();
-      this.queue = new SynchronizedQueue<ObjectRef<K, V>>(log);
+      int stripes = config.getQueueStripes();
+      this.queue =
+         stripes > 1 ? new StripedQueue<ObjectRef<K, V>>(log, stripes) : new SynchronizedQueue<ObjectRef<K, V>>(log);
    }
 
    public void assertConsistency()
@@ -54,6 +56,10 @@ class CacheState<K extends Serializable, V>
       {
          ((SynchronizedQueue)queue).assertConsistency();
       }
+      else if (queue instanceof StripedQueue)
+      {
+         ((StripedQueue)queue).assertConsistency();
+      }
       int mapSize = map.size();
       int effectiveQueueSize = queue.size();
       if (effectiveQueueSize != mapSize)
@@ -64,12 +70,24 @@ class CacheState<K extends Serializable, V>
    }
 
    public V get(Serializable name)
+   {
+      return get(System.currentTimeMillis(), name);
+   }
+
+   /**
+    * Performs a lookup and checks the validity of the entry against the provided time.
+    *
+    * @param now the current time in milliseconds
+    * @param name the cache key
+    * @return the cached value if it exists and is still valid, <code>null</code> otherwise
+    */
+   V get(long now, Serializable name)
    {
       ObjectRef<K, V> entry = map.get(name);
       if (entry != null)
       {
          V o = entry.getObject();
-         if (entry.isValid())
+         if (entry.isValid(now))
          {
             config.hits.incrementAndGet();
             config.onGet(entry.name, o);
@@ -149,6 +167,18 @@ class CacheState<K extends Serializable, V>
    }
 
    public V remove(Serializable name)
+   {
+      return remove(System.currentTimeMillis(), name);
+   }
+
+   /**
+    * Removes an entry and checks the validity of the removed entry against the provided time.
+    *
+    * @param now the current time in milliseconds
+    * @param name the cache key
+    * @return the removed value if it was still valid, <code>null</code> otherwise
+    */
+   V remove(long now, Serializable name)
    {
       boolean trace = isTraceEnabled();
       ObjectRef<K, V> item = map.remove(name);
@@ -159,7 +189,7 @@ class CacheState<K extends Serializable, V>
             trace("Removed item=" + item.serial + " from the map going to remove it");
          }
          boolean removed = queue.remove(item);
-         boolean valid = removed && item.isValid();
+         boolean valid = removed && item.isValid(now);
          V object = item.getObject();
          if (valid)
          {
@@ -18,13 +18,17 @@
  */
 package org.exoplatform.services.cache.concurrent;
 
+import org.exoplatform.commons.utils.PropertyManager;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -41,8 +45,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCache<K, V>
 {
 
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.ConcurrentFIFOExoCache");
+
    private static int DEFAULT_MAX_SIZE = 50;
 
+   /**
+    * The name of the property allowing to define the default amount of stripes of the fifo queue,
+    * a value greater than 1 enables the striped queue.
+    */
+   public static final String QUEUE_STRIPES = "exo.cache.concurrent.fifo.queue.stripes";
+
    private final Log log;
 
    private volatile long liveTimeMillis;
@@ -63,6 +75,8 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
 
    private boolean logEnabled = false;
 
+   private volatile int queueStripes = getDefaultQueueStripes();
+
    public ConcurrentFIFOExoCache()
    {
       this(DEFAULT_MAX_SIZE);
@@ -103,6 +117,51 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
       state.assertConsistency();
    }
 
+   private static int getDefaultQueueStripes()
+   {
+      String value = PropertyManager.getProperty(QUEUE_STRIPES);
+      if (value != null)
+      {
+         try
+         {
+            return Integer.parseInt(value.trim());
+         }
+         catch (NumberFormatException e)
+         {
+            LOG.warn("The value of the property " + QUEUE_STRIPES + " must be an integer, found: " + value);
+         }
+      }
+      return 1;
+   }
+
+   /**
+    * @return the amount of stripes of the fifo queue, 1 means that the queue is not striped
+    */
+   public int getQueueStripes()
+   {
+      return queueStripes;
+   }
+
+   /**
+    * Sets the amount of stripes of the fifo queue, a value greater than 1 allows to reduce the
+    * contention on the queue at the cost of an approximate fifo order and an approximate maximum size.
+    * The cache is cleared when the amount of stripes changes.
+    *
+    * @param queueStripes the amount of stripes
+    */
+   public void setQueueStripes(int queueStripes)
+   {
+      if (queueStripes < 1)
+      {
+         queueStripes = 1;
+      }
+      if (queueStripes != this.queueStripes)
+      {
+         this.queueStripes = queueStripes;
+         clearCache();
+      }
+   }
+
    public String getName()
    {
       return name;
@@ -219,6 +278,59 @@ public class ConcurrentFIFOExoCache<K extends Serializable, V> implements ExoCac
       return state.remove(name);
    }
 
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The validity of all the entries is checked against the same time.
+    */
+   public Map<K, V> getAll(Collection<? extends K> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      CacheState<K, V> currentState = this.state;
+      long now = System.currentTimeMillis();
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         V value = currentState.get(now, name);
+         if (value != null)
+         {
+            result.put(name, value);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void removeAll(Collection<? extends K> names)
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      CacheState<K, V> currentState = this.state;
+      long now = System.currentTimeMillis();
+      for (K name : names)
+      {
+         currentState.remove(now, name);
+      }
+   }
+
    public List<? extends V> getCachedObjects()
    {
       LinkedList<V> list = new LinkedList<V>();
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+/**
+ * A probabilistic estimate of the access frequency of the cache keys based on a count-min sketch
+ * of 4-bit counters. Each {@code long} of the table holds 16 counters, a key is mapped to 4 counters
+ * of the same {@code long} picked with 4 different hash functions. Once the amount of increments
+ * reaches the sample size, all the counters are halved so that the history fades out over time.
+ * <p>
+ * This class is not thread safe, it is expected to be accessed under the eviction lock only.
+ *
+ * @version $Id$
+ */
+class FrequencySketch
+{
+
+   /**
+    * The seeds used to derive the 4 hash functions
+    */
+   private static final long[] SEED =
+      {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+   /**
+    * The mask used to halve all the counters of a long at once
+    */
+   private static final long RESET_MASK = 0x7777777777777777L;
+
+   /**
+    * The mask used to detect the odd counters when halving
+    */
+   private static final long ONE_MASK = 0x1111111111111111L;
+
+   /**
+    * The maximum length of the table, to prevent huge allocations when the cache is unbounded
+    */
+   private static final int MAXIMUM_TABLE_LENGTH = 1 << 20;
+
+   private long[] table;
+
+   private int tableMask;
+
+   private int sampleSize;
+
+   private int size;
+
+   FrequencySketch(int maximumSize)
+   {
+      ensureCapacity(maximumSize);
+   }
+
+   /**
+    * Increases the capacity of the sketch if needed, the existing frequencies are lost
+    * when the table is re-allocated.
+    *
+    * @param maximumSize the maximum size of the cache
+    */
+   void ensureCapacity(int maximumSize)
+   {
+      int maximum = Math.min(Math.max(maximumSize, 1), MAXIMUM_TABLE_LENGTH);
+      if (table != null && table.length >= maximum)
+      {
+         return;
+      }
+      table = new long[ceilingPowerOfTwo(maximum)];
+      tableMask = table.length - 1;
+      sampleSize = 10 * maximum;
+      size = 0;
+   }
+
+   /**
+    * Returns the estimated amount of occurrences of the given key, with a maximum of 15.
+    *
+    * @param key the key to check
+    * @return the estimated frequency
+    */
+   int frequency(Object key)
+   {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++)
+      {
+         int index = indexOf(hash, i);
+         int count = (int)((table[index] >>> ((start + i) << 2)) & 0xfL);
+         frequency = Math.min(frequency, count);
+      }
+      return frequency;
+   }
+
+   /**
+    * Increments the counters of the given key if they are not already at their maximum.
+    *
+    * @param key the key whose frequency must be increased
+    */
+   void increment(Object key)
+   {
+      int hash = spread(key.hashCode());
+      int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++)
+      {
+         added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && ++size == sampleSize)
+      {
+         reset();
+      }
+   }
+
+   private boolean incrementAt(int i, int j)
+   {
+      int offset = j << 2;
+      long mask = (0xfL << offset);
+      if ((table[i] & mask) != mask)
+      {
+         table[i] += (1L << offset);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Halves all the counters and adjusts the size accordingly.
+    */
+   private void reset()
+   {
+      int count = 0;
+      for (int i = 0; i < table.length; i++)
+      {
+         count += Long.bitCount(table[i] & ONE_MASK);
+         table[i] = (table[i] >>> 1) & RESET_MASK;
+      }
+      size = (size >>> 1) - (count >>> 2);
+   }
+
+   private int indexOf(int item, int i)
+   {
+      long hash = (item + SEED[i]) * SEED[i];
+      hash += (hash >>> 32);
+      return ((int)hash) & tableMask;
+   }
+
+   /**
+    * Applies a supplemental hash function to defend against poor quality hash codes.
+    */
+   private static int spread(int x)
+   {
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      x = ((x >>> 16) ^ x) * 0x45d9f3b;
+      return (x >>> 16) ^ x;
+   }
+
+   static int ceilingPowerOfTwo(int x)
+   {
+      return x <= 1 ? 1 : 1 << (32 - Integer.numberOfLeadingZeros(x - 1));
+   }
+}
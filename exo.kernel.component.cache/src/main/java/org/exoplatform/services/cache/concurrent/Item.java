@@ -52,4 +52,13 @@ public class Item
    {
       return hashCode;
    }
+
+   /**
+    * Gives the hash used to select the stripe of a {@link StripedQueue} in which the item is stored,
+    * it must remain the same during the whole life of the item.
+    */
+   int stripeHash()
+   {
+      return hashCode;
+   }
 }
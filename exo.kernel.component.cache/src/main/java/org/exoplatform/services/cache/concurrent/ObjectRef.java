@@ -41,8 +41,28 @@ abstract class ObjectRef<K extends Serializable, V> extends Item implements Obje
       this.expirationTime = expirationTime;
    }
 
+   /**
+    * The items are distributed over the stripes according to their key
+    */
+   @Override
+   int stripeHash()
+   {
+      return name.hashCode();
+   }
+
    public abstract boolean isValid();
 
+   /**
+    * Indicates whether the reference is still valid at the given time, it allows to check
+    * several references against the same time.
+    *
+    * @param now the current time in milliseconds
+    */
+   boolean isValid(long now)
+   {
+      return now < expirationTime;
+   }
+
    public abstract V getObject();
 
    // ObjectCacheInfo impl
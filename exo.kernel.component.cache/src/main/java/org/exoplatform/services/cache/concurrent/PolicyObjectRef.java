@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import java.io.Serializable;
+
+/**
+ * An object reference that also knows in which segment of the eviction policy it is.
+ * The non final fields are guarded by the eviction lock.
+ *
+ * @version $Id$
+ */
+class PolicyObjectRef<K extends Serializable, V> extends SimpleObjectRef<K, V>
+{
+
+   /**
+    * The item has not been added yet or has been removed from the policy
+    */
+   static final int NONE = 0;
+
+   /**
+    * The item is part of the admission window
+    */
+   static final int WINDOW = 1;
+
+   /**
+    * The item is part of the probation segment of the main space
+    */
+   static final int PROBATION = 2;
+
+   /**
+    * The item is part of the protected segment of the main space
+    */
+   static final int PROTECTED = 3;
+
+   int segment = NONE;
+
+   /**
+    * Indicates whether the item has been removed from the cache, once retired it
+    * cannot be added anymore to the policy
+    */
+   boolean retired;
+
+   PolicyObjectRef(long expirationTime, K name, V object)
+   {
+      super(expirationTime, name, object);
+   }
+}
@@ -39,7 +39,7 @@ class SimpleObjectRef<K extends Serializable, V> extends ObjectRef<K, V>
 
    public boolean isValid()
    {
-      return System.currentTimeMillis() < expirationTime;
+      return isValid(System.currentTimeMillis());
    }
 
    public V getObject()
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link Queue} partitioned into several {@link SynchronizedQueue} according to the hash of the
+ * keys, so that the threads working on different keys don't compete for the same lock. Each stripe
+ * keeps its own fifo order, so the eviction order is only fifo per stripe and the maximum size is
+ * enforced globally in an approximate manner: the trim evicts first from the stripes that are over
+ * their fair share of the wanted size.
+ *
+ * @version $Id$
+ */
+public class StripedQueue<I extends Item> implements Queue<I>
+{
+
+   private final SynchronizedQueue<I>[] stripes;
+
+   private final int stripeMask;
+
+   /**
+    * Used to change the stripe from which the trim starts to evict in order to spread the evictions
+    */
+   private final AtomicInteger trimOffset = new AtomicInteger();
+
+   /**
+    * @param log the logger
+    * @param stripes the expected amount of stripes, it will be rounded up to the next power of two
+    */
+   @SuppressWarnings("unchecked")
+   public StripedQueue(Log log, int stripes)
+   {
+      if (stripes < 1)
+      {
+         throw new IllegalArgumentException("The amount of stripes must be greater than 0");
+      }
+      int count = FrequencySketch.ceilingPowerOfTwo(stripes);
+      this.stripes = new SynchronizedQueue[count];
+      for (int i = 0; i < count; i++)
+      {
+         this.stripes[i] = new SynchronizedQueue<I>(log);
+      }
+      this.stripeMask = count - 1;
+   }
+
+   /**
+    * @return the amount of stripes
+    */
+   public int getStripes()
+   {
+      return stripes.length;
+   }
+
+   private SynchronizedQueue<I> stripeOf(I item)
+   {
+      int h = item.stripeHash();
+      h ^= (h >>> 16);
+      return stripes[h & stripeMask];
+   }
+
+   /**
+    * Returns the sum of the cached size of each stripe which can be an estimate.
+    */
+   public int size()
+   {
+      int size = 0;
+      for (int i = 0; i < stripes.length; i++)
+      {
+         size += stripes[i].queueSize;
+      }
+      return size;
+   }
+
+   public void assertConsistency()
+   {
+      for (int i = 0; i < stripes.length; i++)
+      {
+         stripes[i].assertConsistency();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean remove(I item)
+   {
+      return stripeOf(item).remove(item);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void add(I item)
+   {
+      stripeOf(item).add(item);
+   }
+
+   /**
+    * Attempt to trim the queue. The stripes are trimmed independently, the stripes that are
+    * over their fair share of the given size are trimmed first, if the queue is still too big
+    * the remaining stripes are trimmed. A stripe that is already being trimmed by another thread
+    * is skipped.
+    *
+    * @param size the wanted size
+    * @return the list of evicted items
+    */
+   public ArrayList<I> trim(int size)
+   {
+      int excess = size() - size;
+      if (excess <= 0)
+      {
+         return null;
+      }
+      int fairShare = size / stripes.length;
+      int offset = trimOffset.getAndIncrement();
+      ArrayList<I> evictedItems = null;
+      for (int pass = 0; pass < 2 && excess > 0; pass++)
+      {
+         // During the first pass we only evict the items over the fair share
+         int floor = pass == 0 ? fairShare : 0;
+         for (int i = 0; i < stripes.length && excess > 0; i++)
+         {
+            SynchronizedQueue<I> stripe = stripes[(offset + i) & stripeMask];
+            int stripeExcess = Math.min(excess, stripe.size() - floor);
+            if (stripeExcess <= 0)
+            {
+               continue;
+            }
+            ArrayList<I> evicted = stripe.trim(stripe.size() - stripeExcess);
+            if (evicted != null)
+            {
+               excess -= evicted.size();
+               if (evictedItems == null)
+               {
+                  evictedItems = evicted;
+               }
+               else
+               {
+                  evictedItems.addAll(evicted);
+               }
+            }
+         }
+      }
+      return evictedItems;
+   }
+}
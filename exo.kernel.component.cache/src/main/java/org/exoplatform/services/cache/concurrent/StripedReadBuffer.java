@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lossy buffer used to record the reads without taking any lock. The buffer is made of several
+ * bounded ring buffers, the stripe used by a given thread is chosen from its id to reduce the
+ * contention. When a ring buffer is full, the new reads are simply dropped which is acceptable
+ * as the access order and the frequencies are only hints for the eviction policy.
+ * <p>
+ * The buffer supports many producers but only one consumer at a time, which is expected to
+ * hold the eviction lock.
+ *
+ * @version $Id$
+ */
+class StripedReadBuffer<I>
+{
+
+   /**
+    * The size of each ring buffer, must be a power of two
+    */
+   static final int BUFFER_SIZE = 16;
+
+   private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+   /**
+    * The maximum amount of stripes
+    */
+   private static final int MAXIMUM_STRIPES = 64;
+
+   private final Stripe<I>[] stripes;
+
+   private final int stripeMask;
+
+   @SuppressWarnings("unchecked")
+   StripedReadBuffer()
+   {
+      int count =
+         FrequencySketch.ceilingPowerOfTwo(Math.min(Runtime.getRuntime().availableProcessors(), MAXIMUM_STRIPES));
+      this.stripes = new Stripe[count];
+      for (int i = 0; i < count; i++)
+      {
+         stripes[i] = new Stripe<I>();
+      }
+      this.stripeMask = count - 1;
+   }
+
+   /**
+    * Records the given item into the stripe of the current thread.
+    *
+    * @param item the item to record
+    * @return <code>true</code> if the stripe is full and should be drained, <code>false</code> otherwise
+    */
+   boolean offer(I item)
+   {
+      return stripes[(int)Thread.currentThread().getId() & stripeMask].offer(item);
+   }
+
+   /**
+    * Moves all the recorded items into the given collection.
+    *
+    * @param sink the collection in which the items are added
+    */
+   void drainTo(Collection<? super I> sink)
+   {
+      for (int i = 0; i < stripes.length; i++)
+      {
+         stripes[i].drainTo(sink);
+      }
+   }
+
+   private static class Stripe<I>
+   {
+      private final AtomicReferenceArray<I> buffer = new AtomicReferenceArray<I>(BUFFER_SIZE);
+
+      private final AtomicLong writeCounter = new AtomicLong();
+
+      private volatile long readCounter;
+
+      boolean offer(I item)
+      {
+         long head = readCounter;
+         long tail = writeCounter.get();
+         long size = tail - head;
+         if (size >= BUFFER_SIZE)
+         {
+            return true;
+         }
+         if (writeCounter.compareAndSet(tail, tail + 1))
+         {
+            buffer.lazySet((int)(tail & BUFFER_MASK), item);
+            return size + 1 == BUFFER_SIZE;
+         }
+         // Another thread of the same stripe won the race, the read is dropped
+         return false;
+      }
+
+      void drainTo(Collection<? super I> sink)
+      {
+         long head = readCounter;
+         long tail = writeCounter.get();
+         for (; head < tail; head++)
+         {
+            int index = (int)(head & BUFFER_MASK);
+            I item = buffer.get(index);
+            if (item == null)
+            {
+               // The slot has been reserved but not yet published
+               break;
+            }
+            buffer.lazySet(index, null);
+            sink.add(item);
+         }
+         readCounter = head;
+      }
+   }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.concurrent;
+
+import org.exoplatform.services.log.Log;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The state of a {@link ConcurrentTinyLFUExoCache} (we need it because of the clear cache consistency).
+ * <p>
+ * The entries are stored in a {@link ConcurrentHashMap}, the reads and the writes are recorded into
+ * buffers and replayed against the eviction policy by the thread that manages to acquire the eviction
+ * lock, the other threads never wait for it. The eviction policy is W-TinyLFU: the new entries are
+ * added to a small LRU admission window, the entries evicted from the window are candidates to enter
+ * the main space which is a segmented LRU (probation and protected segments). A candidate is admitted
+ * only if its estimated frequency is higher than the one of the victim of the probation segment.
+ *
+ * @version $Id$
+ */
+class TinyLFUCacheState<K extends Serializable, V>
+{
+
+   /**
+    * The percentage of the maximum size dedicated to the admission window
+    */
+   private static final double WINDOW_PERCENTAGE = 0.01d;
+
+   /**
+    * The percentage of the main space dedicated to the protected segment
+    */
+   private static final double PROTECTED_PERCENTAGE = 0.8d;
+
+   /**
+    * The frequency under which a candidate that is not strictly more popular than the
+    * victim is never admitted
+    */
+   private static final int ADMIT_HASHDOS_THRESHOLD = 6;
+
+   /**
+    * The amount of pending writes beyond which the writers wait for the eviction lock to replay
+    * them, otherwise the write buffer could grow without limit when the writers are faster than
+    * the thread that holds the eviction lock
+    */
+   static final int WRITE_BUFFER_THRESHOLD = 1024;
+
+   private final Log log;
+
+   private final ConcurrentTinyLFUExoCache<K, V> config;
+
+   final ConcurrentHashMap<K, PolicyObjectRef<K, V>> map;
+
+   private final StripedReadBuffer<PolicyObjectRef<K, V>> readBuffer;
+
+   private final ConcurrentLinkedQueue<Runnable> writeBuffer;
+
+   private final AtomicInteger pendingWrites;
+
+   private final ReentrantLock evictionLock;
+
+   // The fields below are guarded by the eviction lock
+
+   private final AccessOrderDeque<PolicyObjectRef<K, V>> window;
+
+   private final AccessOrderDeque<PolicyObjectRef<K, V>> probation;
+
+   private final AccessOrderDeque<PolicyObjectRef<K, V>> protectedSegment;
+
+   private final FrequencySketch sketch;
+
+   private final List<PolicyObjectRef<K, V>> drainedReads;
+
+   private int random;
+
+   TinyLFUCacheState(ConcurrentTinyLFUExoCache<K, V> config, Log log)
+   {
+      this.log = log;
+      this.config = config;
+      this.map = new ConcurrentHashMap<K, PolicyObjectRef<K, V>>();
+      this.readBuffer = new StripedReadBuffer<PolicyObjectRef<K, V>>();
+      this.writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+      this.pendingWrites = new AtomicInteger();
+      this.evictionLock = new ReentrantLock();
+      this.window = new AccessOrderDeque<PolicyObjectRef<K, V>>();
+      this.probation = new AccessOrderDeque<PolicyObjectRef<K, V>>();
+      this.protectedSegment = new AccessOrderDeque<PolicyObjectRef<K, V>>();
+      this.sketch = new FrequencySketch(config.maxSize);
+      this.drainedReads = new ArrayList<PolicyObjectRef<K, V>>(StripedReadBuffer.BUFFER_SIZE);
+      this.random = System.identityHashCode(this) | 1;
+   }
+
+   public void assertConsistency()
+   {
+      evictionLock.lock();
+      try
+      {
+         drainBuffers();
+         window.assertConsistency();
+         probation.assertConsistency();
+         protectedSegment.assertConsistency();
+         int mapSize = map.size();
+         int policySize = policySize();
+         if (policySize != mapSize)
+         {
+            throw new AssertionError("The map size is " + mapSize + " is different from the policy size " + policySize);
+         }
+      }
+      finally
+      {
+         evictionLock.unlock();
+      }
+   }
+
+   /**
+    * @return the estimated frequency of the given key, used for testing purpose
+    */
+   int frequency(K name)
+   {
+      evictionLock.lock();
+      try
+      {
+         drainBuffers();
+         return sketch.frequency(name);
+      }
+      finally
+      {
+         evictionLock.unlock();
+      }
+   }
+
+   public V get(Serializable name)
+   {
+      return get(System.currentTimeMillis(), name);
+   }
+
+   /**
+    * Performs a lookup and checks the validity of the entry against the provided time.
+    *
+    * @param now the current time in milliseconds
+    * @param name the cache key
+    * @return the cached value if it exists and is still valid, <code>null</code> otherwise
+    */
+   V get(long now, Serializable name)
+   {
+      PolicyObjectRef<K, V> entry = map.get(name);
+      if (entry != null)
+      {
+         V o = entry.getObject();
+         if (entry.isValid(now))
+         {
+            config.hits.incrementAndGet();
+            if (readBuffer.offer(entry))
+            {
+               tryToDrain();
+            }
+            config.onGet(entry.name, o);
+            return o;
+         }
+         else
+         {
+            config.misses.incrementAndGet();
+            if (map.remove(name, entry))
+            {
+               afterWrite(new RemovalTask(entry));
+            }
+            config.onExpire(entry.name, o);
+         }
+      }
+      else
+      {
+         config.misses.incrementAndGet();
+      }
+      return null;
+   }
+
+   private boolean isTraceEnabled()
+   {
+      return log != null && log.isTraceEnabled();
+   }
+
+   private void trace(String message)
+   {
+      log.trace(message + " [" + Thread.currentThread().getName() + "]");
+   }
+
+   /**
+    * Do a put with the provided expiration time.
+    *
+    * @param expirationTime the expiration time
+    * @param name the cache key
+    * @param obj the cached value
+    */
+   void put(long expirationTime, K name, V obj)
+   {
+      PolicyObjectRef<K, V> nextRef = new PolicyObjectRef<K, V>(expirationTime, name, obj);
+      PolicyObjectRef<K, V> previousRef = map.put(name, nextRef);
+      if (previousRef != null)
+      {
+         bufferWrite(new RemovalTask(previousRef));
+         if (isTraceEnabled())
+         {
+            trace("Replaced item=" + previousRef.serial + " with item=" + nextRef.serial + " in the map");
+         }
+      }
+      else if (isTraceEnabled())
+      {
+         trace("Added item=" + nextRef.serial + " to map");
+      }
+      afterWrite(new AddTask(nextRef));
+
+      // Put callback
+      config.onPut(name, obj);
+   }
+
+   public V remove(Serializable name)
+   {
+      return remove(System.currentTimeMillis(), name);
+   }
+
+   /**
+    * Removes an entry and checks the validity of the removed entry against the provided time.
+    *
+    * @param now the current time in milliseconds
+    * @param name the cache key
+    * @return the removed value if it was still valid, <code>null</code> otherwise
+    */
+   V remove(long now, Serializable name)
+   {
+      PolicyObjectRef<K, V> item = map.remove(name);
+      if (item != null)
+      {
+         if (isTraceEnabled())
+         {
+            trace("Removed item=" + item.serial + " from the map going to remove it");
+         }
+         afterWrite(new RemovalTask(item));
+         V object = item.getObject();
+         if (item.isValid(now))
+         {
+            config.onRemove(item.name, object);
+            return object;
+         }
+         else
+         {
+            config.onExpire(item.name, object);
+            return null;
+         }
+      }
+      else
+      {
+         return null;
+      }
+   }
+
+   private int bufferWrite(Runnable task)
+   {
+      writeBuffer.offer(task);
+      return pendingWrites.incrementAndGet();
+   }
+
+   private void afterWrite(Runnable task)
+   {
+      if (bufferWrite(task) > WRITE_BUFFER_THRESHOLD)
+      {
+         // Too many pending writes, we wait for the eviction lock
+         drain(true);
+      }
+      else
+      {
+         drain(false);
+      }
+   }
+
+   private void tryToDrain()
+   {
+      drain(false);
+   }
+
+   /**
+    * Replays the buffered operations if the eviction lock is free, then notifies the listeners
+    * of the evicted entries outside the lock.
+    *
+    * @param wait indicates whether we wait for the eviction lock if it is not free
+    */
+   private void drain(boolean wait)
+   {
+      List<PolicyObjectRef<K, V>> evicted = null;
+      boolean locked = wait;
+      if (wait)
+      {
+         evictionLock.lock();
+      }
+      while (locked || evictionLock.tryLock())
+      {
+         locked = false;
+         try
+         {
+            drainBuffers();
+            evicted = evictEntries(evicted);
+         }
+         finally
+         {
+            evictionLock.unlock();
+         }
+         // A write may have been buffered while we were holding the lock
+         if (writeBuffer.isEmpty())
+         {
+            break;
+         }
+      }
+      if (evicted != null)
+      {
+         for (PolicyObjectRef<K, V> evictedRef : evicted)
+         {
+            // Expiration callback
+            config.onExpire(evictedRef.name, evictedRef.getObject());
+         }
+      }
+   }
+
+   private void drainBuffers()
+   {
+      readBuffer.drainTo(drainedReads);
+      for (int i = 0, length = drainedReads.size(); i < length; i++)
+      {
+         onAccess(drainedReads.get(i));
+      }
+      drainedReads.clear();
+      Runnable task;
+      while ((task = writeBuffer.poll()) != null)
+      {
+         pendingWrites.decrementAndGet();
+         task.run();
+      }
+   }
+
+   private int policySize()
+   {
+      return window.size() + probation.size() + protectedSegment.size();
+   }
+
+   private AccessOrderDeque<PolicyObjectRef<K, V>> segmentOf(PolicyObjectRef<K, V> item)
+   {
+      switch (item.segment)
+      {
+         case PolicyObjectRef.WINDOW :
+            return window;
+         case PolicyObjectRef.PROBATION :
+            return probation;
+         case PolicyObjectRef.PROTECTED :
+            return protectedSegment;
+         default :
+            return null;
+      }
+   }
+
+   private void onAccess(PolicyObjectRef<K, V> item)
+   {
+      sketch.increment(item.name);
+      switch (item.segment)
+      {
+         case PolicyObjectRef.WINDOW :
+            window.moveToBack(item);
+            break;
+         case PolicyObjectRef.PROBATION :
+            // Promote the item to the protected segment
+            probation.remove(item);
+            item.segment = PolicyObjectRef.PROTECTED;
+            protectedSegment.addLast(item);
+            break;
+         case PolicyObjectRef.PROTECTED :
+            protectedSegment.moveToBack(item);
+            break;
+         default :
+            // The item has already been removed or not yet added
+            break;
+      }
+   }
+
+   /**
+    * Evicts the entries while the cache is over its maximum size.
+    *
+    * @param evicted the list of entries that have been evicted so far, can be <code>null</code>
+    * @return the list of evicted entries, can be <code>null</code>
+    */
+   private List<PolicyObjectRef<K, V>> evictEntries(List<PolicyObjectRef<K, V>> evicted)
+   {
+      int maxSize = Math.max(config.maxSize, 0);
+      sketch.ensureCapacity(maxSize);
+      int windowMaxSize = maxSize == 0 ? 0 : Math.max(1, (int)(maxSize * WINDOW_PERCENTAGE));
+      int protectedMaxSize = (int)((maxSize - windowMaxSize) * PROTECTED_PERCENTAGE);
+
+      // Demote the overflow of the protected segment
+      while (protectedSegment.size() > protectedMaxSize)
+      {
+         PolicyObjectRef<K, V> demoted = protectedSegment.peekFirst();
+         protectedSegment.remove(demoted);
+         demoted.segment = PolicyObjectRef.PROBATION;
+         probation.addLast(demoted);
+      }
+
+      // Move the overflow of the window to the probation segment as candidates
+      int candidates = 0;
+      while (window.size() > windowMaxSize)
+      {
+         PolicyObjectRef<K, V> candidate = window.peekFirst();
+         window.remove(candidate);
+         candidate.segment = PolicyObjectRef.PROBATION;
+         probation.addLast(candidate);
+         candidates++;
+      }
+
+      while (policySize() > maxSize)
+      {
+         PolicyObjectRef<K, V> victim = probation.peekFirst();
+         PolicyObjectRef<K, V> candidate = candidates > 0 ? probation.peekLast() : null;
+         PolicyObjectRef<K, V> evictee;
+         if (victim == null)
+         {
+            evictee = protectedSegment.isEmpty() ? window.peekFirst() : protectedSegment.peekFirst();
+         }
+         else if (candidate == null || candidate == victim || !victim.isValid())
+         {
+            evictee = victim;
+            if (candidate == victim)
+            {
+               candidates--;
+            }
+         }
+         else if (!candidate.isValid() || !admit(candidate.name, victim.name))
+         {
+            evictee = candidate;
+            candidates--;
+         }
+         else
+         {
+            evictee = victim;
+         }
+         evicted = evict(evictee, evicted);
+      }
+      return evicted;
+   }
+
+   /**
+    * Indicates whether the candidate should replace the victim according to their frequencies.
+    * A small amount of warm candidates is randomly admitted to protect the cache against
+    * attacks exploiting the hash collisions of the sketch.
+    */
+   private boolean admit(K candidateKey, K victimKey)
+   {
+      int candidateFrequency = sketch.frequency(candidateKey);
+      int victimFrequency = sketch.frequency(victimKey);
+      if (candidateFrequency > victimFrequency)
+      {
+         return true;
+      }
+      else if (candidateFrequency < ADMIT_HASHDOS_THRESHOLD)
+      {
+         return false;
+      }
+      random ^= random << 13;
+      random ^= random >>> 17;
+      random ^= random << 5;
+      return (random & 127) == 0;
+   }
+
+   private List<PolicyObjectRef<K, V>> evict(PolicyObjectRef<K, V> item, List<PolicyObjectRef<K, V>> evicted)
+   {
+      segmentOf(item).remove(item);
+      item.segment = PolicyObjectRef.NONE;
+      item.retired = true;
+      // We remove it from the map only if it was the same entry
+      // it could have been removed concurrently by an explicit remove
+      // or by a replacement
+      if (map.remove(item.name, item))
+      {
+         if (evicted == null)
+         {
+            evicted = new ArrayList<PolicyObjectRef<K, V>>();
+         }
+         evicted.add(item);
+         if (isTraceEnabled())
+         {
+            trace("Evicted item=" + item.serial);
+         }
+      }
+      return evicted;
+   }
+
+   /**
+    * Adds a new entry to the admission window
+    */
+   private class AddTask implements Runnable
+   {
+      private final PolicyObjectRef<K, V> item;
+
+      private AddTask(PolicyObjectRef<K, V> item)
+      {
+         this.item = item;
+      }
+
+      public void run()
+      {
+         sketch.increment(item.name);
+         if (!item.retired)
+         {
+            item.segment = PolicyObjectRef.WINDOW;
+            window.addLast(item);
+         }
+      }
+   }
+
+   /**
+    * Removes an entry from the policy, the entry could be not added yet
+    */
+   private class RemovalTask implements Runnable
+   {
+      private final PolicyObjectRef<K, V> item;
+
+      private RemovalTask(PolicyObjectRef<K, V> item)
+      {
+         this.item = item;
+      }
+
+      public void run()
+      {
+         item.retired = true;
+         AccessOrderDeque<PolicyObjectRef<K, V>> segment = segmentOf(item);
+         if (segment != null)
+         {
+            segment.remove(item);
+            item.segment = PolicyObjectRef.NONE;
+         }
+      }
+   }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The future returned by the asynchronous methods of the {@link FutureCache}. On top of what
+ * a {@link FutureTask} provides, it allows to register callbacks that will be notified as soon as the
+ * value is available so that the caller never needs to block.
+ *
+ * @version $Revision$
+ * @param <V> the value type parameter
+ */
+public class CacheFuture<V> extends FutureTask<V>
+{
+
+   /** . */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.CacheFuture");
+
+   /**
+    * The callbacks to notify, set to null once they have been notified
+    */
+   private List<FutureCallback<? super V>> callbacks = new ArrayList<FutureCallback<? super V>>(2);
+
+   public CacheFuture(Callable<V> callable)
+   {
+      super(callable);
+   }
+
+   /**
+    * Creates a future that is already completed with the given value.
+    *
+    * @param value the value of the future
+    */
+   public CacheFuture(V value)
+   {
+      super(new Runnable()
+      {
+         public void run()
+         {
+         }
+      }, value);
+      run();
+   }
+
+   /**
+    * Registers a callback that will be notified once the value is available. If the value is already available,
+    * the callback is notified immediately within the calling thread otherwise it will be notified within the
+    * thread that loaded the value.
+    *
+    * @param callback the callback to register
+    * @throws IllegalArgumentException if the callback is null
+    */
+   public void addCallback(FutureCallback<? super V> callback) throws IllegalArgumentException
+   {
+      if (callback == null)
+      {
+         throw new IllegalArgumentException("No null callback accepted");
+      }
+      synchronized (this)
+      {
+         if (callbacks != null)
+         {
+            callbacks.add(callback);
+            return;
+         }
+      }
+      notify(callback);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void done()
+   {
+      List<FutureCallback<? super V>> toNotify;
+      synchronized (this)
+      {
+         toNotify = callbacks;
+         callbacks = null;
+      }
+      for (int i = 0, length = toNotify.size(); i < length; i++)
+      {
+         notify(toNotify.get(i));
+      }
+   }
+
+   private void notify(FutureCallback<? super V> callback)
+   {
+      V value;
+      try
+      {
+         value = get();
+      }
+      catch (ExecutionException e)
+      {
+         notifyFailure(callback, e.getCause());
+         return;
+      }
+      catch (CancellationException e)
+      {
+         notifyFailure(callback, e);
+         return;
+      }
+      catch (InterruptedException e)
+      {
+         // Cannot happen since the task is done
+         Thread.currentThread().interrupt();
+         notifyFailure(callback, e);
+         return;
+      }
+      try
+      {
+         callback.onSuccess(value);
+      }
+      catch (RuntimeException e)
+      {
+         LOG.warn("The callback " + callback + " failed", e);
+      }
+   }
+
+   private void notifyFailure(FutureCallback<? super V> callback, Throwable cause)
+   {
+      try
+      {
+         callback.onFailure(cause);
+      }
+      catch (RuntimeException e)
+      {
+         LOG.warn("The callback " + callback + " failed", e);
+      }
+   }
+}
@@ -25,11 +25,28 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A future cache that prevents the loading of the same resource twice. This should be used when the resource
- * to load is very expensive or cannot be concurrently retrieved (like a classloading). 
+ * to load is very expensive or cannot be concurrently retrieved (like a classloading).
+ * <p>
+ * The resources can be retrieved synchronously with {@link #get(Object, Object)} or asynchronously with
+ * {@link #getAsync(Object, Object)}. In both cases, the concurrent requests for the same key are coalesced into
+ * one single call to the {@link Loader}. The synchronous lookups call the {@link Loader} within the thread of
+ * the first requester. The asynchronous lookups and the lookups with a timeout call it within the
+ * {@link Executor} if one has been provided, otherwise within the thread of the first requester.
+ * <p>
+ * A sub class can implement a <i>stale-while-revalidate</i> strategy thanks to {@link #getStale(Object)}: when
+ * an entry has just expired, the asynchronous lookups get the stale value immediately while it is being
+ * reloaded in the background.
+ * <p>
+ * A sub class can also keep track of the resources that could not be found thanks to {@link #putMissing(Object)}
+ * and {@link #isMissing(Object)} to avoid loading them again and again, and can reload in the background the
+ * entries that are about to expire thanks to {@link #needsRefresh(Object)}.
  *
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
  * @version $Revision$
@@ -44,22 +61,82 @@ public abstract class FutureCache<K, V, C>
    private final Loader<K, V, C> loader;
 
    /** . */
-   private final ConcurrentMap<K, FutureTask<V>> futureEntries;
+   private final Executor executor;
 
    /** . */
-   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.FutureCache");
+   private final ConcurrentMap<K, CacheFuture<V>> futureEntries;
 
+   /** . */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.FutureCache");
 
    public FutureCache(Loader<K, V, C> loader)
+   {
+      this(loader, null);
+   }
+
+   /**
+    * @param loader the loader to use to retrieve the resources
+    * @param executor the executor within which the resources are loaded, if <code>null</code> the resources
+    * are loaded within the thread of the first requester
+    */
+   public FutureCache(Loader<K, V, C> loader, Executor executor)
    {
       this.loader = loader;
-      this.futureEntries = new ConcurrentHashMap<K, FutureTask<V>>();
+      this.executor = executor;
+      this.futureEntries = new ConcurrentHashMap<K, CacheFuture<V>>();
    }
 
    protected abstract V get(K key);
 
    protected abstract void put(K key, V value);
 
+   /**
+    * Gives the value of an entry that has recently expired, if any. When a stale value is available, the
+    * asynchronous lookups return it immediately and reload the value in the background. By default there
+    * is no stale value.
+    *
+    * @param key the key identifying the resource
+    * @return the stale value or null if there is none
+    */
+   protected V getStale(K key)
+   {
+      return null;
+   }
+
+   /**
+    * Indicates whether the resource corresponding to the given key is known to be missing, in which
+    * case it is not loaded. By default no resource is known to be missing.
+    *
+    * @param key the key identifying the resource
+    * @return <code>true</code> if the resource is known to be missing, <code>false</code> otherwise
+    */
+   protected boolean isMissing(K key)
+   {
+      return false;
+   }
+
+   /**
+    * Called when the {@link Loader} could not find the resource corresponding to the given key. By default
+    * it does nothing.
+    *
+    * @param key the key identifying the resource
+    */
+   protected void putMissing(K key)
+   {
+   }
+
+   /**
+    * Indicates whether the entry corresponding to the given key is about to expire and should be reloaded
+    * in the background. By default, the entries are never reloaded before they expire.
+    *
+    * @param key the key identifying the resource
+    * @return <code>true</code> if the entry should be reloaded, <code>false</code> otherwise
+    */
+   protected boolean needsRefresh(K key)
+   {
+      return false;
+   }
+
    /**
     * Perform a cache lookup for the specified key within the specified context.
     * When the value cannot be loaded (because it does not exist or it failed or anything else that
@@ -78,51 +155,61 @@ public abstract class FutureCache<K, V, C>
       // the same resource concurrently
       if (value == null)
       {
-         // Create our future
-         FutureTask<V> future = new FutureTask<V>(new Callable<V>()
+         if (isMissing(key))
          {
-            public V call() throws Exception
-            {
-               // Retrieve the value from the loader
-               V value = loader.retrieve(context, key);
-
-               //
-               if (value != null)
-               {
-                  // Cache it, it is made available to other threads (unless someone removes it)
-                  put(key, value);
-
-                  // Return value
-                  return value;
-               }
-               else
-               {
-                  return null;
-               }
-            }
-         });
-
-         // This boolean means we inserted in the local
-         boolean inserted = true;
-
-         //
+            return null;
+         }
          try
          {
-            FutureTask<V> phantom = futureEntries.putIfAbsent(key, future);
+            // Returns the value
+            value = load(context, key, false).get();
+         }
+         catch (ExecutionException e)
+         {
+            LOG.error("Computing of resource " + key + " threw an exception", e.getCause());
+         }
+         catch (Exception e)
+         {
+            LOG.error("Retrieval of resource " + key + " threw an exception", e);
+         }
+      }
+      else
+      {
+         refreshIfNeeded(context, key);
+      }
 
-            // Use the value that could have been inserted by another thread
-            if (phantom != null)
-            {
-               future = phantom;
-               inserted = false;
-            }
-            else
-            {
-               future.run();
-            }
+      //
+      return value;
+   }
 
-            // Returns the value
-            value = future.get();
+   /**
+    * Perform a cache lookup for the specified key within the specified context and waits at most
+    * the given amount of time for the value to be loaded. When the value cannot be loaded in time,
+    * the value null is returned but the loading goes on such that the next lookups can benefit from it.
+    * The timeout can only be enforced if an {@link Executor} has been provided.
+    *
+    * @param context the context in which the resource is accessed
+    * @param key the key identifying the resource
+    * @param timeout the maximum time to wait
+    * @param unit the time unit of the timeout argument
+    * @return the value
+    */
+   public final V get(final C context, final K key, long timeout, TimeUnit unit)
+   {
+      V value = get(key);
+      if (value == null)
+      {
+         if (isMissing(key))
+         {
+            return null;
+         }
+         try
+         {
+            value = load(context, key, true).get(timeout, unit);
+         }
+         catch (TimeoutException e)
+         {
+            LOG.warn("Retrieval of resource " + key + " could not be done within " + timeout + " " + unit);
          }
          catch (ExecutionException e)
          {
@@ -132,17 +219,132 @@ public abstract class FutureCache<K, V, C>
          {
             LOG.error("Retrieval of resource " + key + " threw an exception", e);
          }
-         finally
+      }
+      else
+      {
+         refreshIfNeeded(context, key);
+      }
+      return value;
+   }
+
+   /**
+    * Perform an asynchronous cache lookup for the specified key within the specified context. If the value
+    * is in the cache or if a stale value is available, the returned future is already completed, otherwise
+    * it will be completed once the value has been loaded. When the value cannot be loaded because it
+    * does not exist, the future is completed with the value null and when the loading failed, the future
+    * is completed with the cause of the failure.
+    *
+    * @param context the context in which the resource is accessed
+    * @param key the key identifying the resource
+    * @return the future value
+    */
+   public final CacheFuture<V> getAsync(final C context, final K key)
+   {
+      V value = get(key);
+      if (value != null)
+      {
+         refreshIfNeeded(context, key);
+         return new CacheFuture<V>(value);
+      }
+      else if (isMissing(key))
+      {
+         return new CacheFuture<V>((V)null);
+      }
+      value = getStale(key);
+      if (value != null)
+      {
+         // We serve the stale value and revalidate it in the background
+         load(context, key, true);
+         return new CacheFuture<V>(value);
+      }
+      return load(context, key, true);
+   }
+
+   /**
+    * Reloads the entry in the background if it is about to expire. This is only possible if an executor
+    * has been provided as we don't want to slow down the current thread.
+    */
+   private void refreshIfNeeded(C context, K key)
+   {
+      if (executor != null && needsRefresh(key))
+      {
+         load(context, key, true);
+      }
+   }
+
+   /**
+    * Gives the future of the loading of the given key, a new loading is triggered only if there is no
+    * loading in progress for this key. The synchronous lookups load the value within the current thread
+    * to avoid exhausting the executor with blocked threads.
+    */
+   private CacheFuture<V> load(final C context, final K key, boolean async)
+   {
+      // Create our future
+      CacheFuture<V> future = new CacheFuture<V>(new Callable<V>()
+      {
+         public V call() throws Exception
          {
-            // Clean up the per key map but only if our insertion succeeded and with our future
-            if (inserted)
+            // Retrieve the value from the loader
+            V value = loader.retrieve(context, key);
+
+            //
+            if (value != null)
+            {
+               // Cache it, it is made available to other threads (unless someone removes it)
+               put(key, value);
+
+               // Return value
+               return value;
+            }
+            else
             {
-               futureEntries.remove(key, future);
+               // Keep track of it to prevent loading it again
+               putMissing(key);
+               return null;
             }
          }
+      })
+      {
+         @Override
+         protected void done()
+         {
+            // Clean up the per key map but only with our future
+            futureEntries.remove(key, this);
+            super.done();
+         }
+      };
+      CacheFuture<V> phantom = futureEntries.putIfAbsent(key, future);
+      while (phantom != null)
+      {
+         // Use the future that could have been inserted by another thread unless it is already done
+         // which can happen as the waiting threads are released before the clean up
+         if (!phantom.isDone())
+         {
+            return phantom;
+         }
+         else if (futureEntries.replace(key, phantom, future))
+         {
+            break;
+         }
+         phantom = futureEntries.putIfAbsent(key, future);
       }
-
-      //
-      return value;
+      if (!async || executor == null)
+      {
+         future.run();
+      }
+      else
+      {
+         try
+         {
+            executor.execute(future);
+         }
+         catch (RejectedExecutionException e)
+         {
+            LOG.warn("The loading of the resource " + key + " has been rejected by the executor, it will be"
+               + " done within the current thread");
+            future.run();
+         }
+      }
+      return future;
    }
 }
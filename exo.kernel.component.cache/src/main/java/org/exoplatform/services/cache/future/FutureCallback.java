@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+/**
+ * A callback notified once the value of a {@link CacheFuture} is available.
+ *
+ * @version $Revision$
+ * @param <V> the value type parameter
+ */
+public interface FutureCallback<V>
+{
+
+   /**
+    * Invoked when the value could be loaded, the value may be null if the resource could not be found.
+    *
+    * @param value the loaded value
+    */
+   void onSuccess(V value);
+
+   /**
+    * Invoked when the value could not be loaded.
+    *
+    * @param cause the cause of the failure
+    */
+   void onFailure(Throwable cause);
+}
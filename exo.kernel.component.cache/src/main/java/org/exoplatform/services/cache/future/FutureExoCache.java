@@ -18,26 +18,182 @@
  */
 package org.exoplatform.services.cache.future;
 
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
 
 import java.io.Serializable;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * A {@link FutureCache} on top of an {@link ExoCache}. On top of the default behavior, it provides the
+ * following optional features that rely on the notifications of the underlying cache:
+ * <ul>
+ * <li><i>stale-while-revalidate</i>: when a stale time is provided, the values of the entries that expired or were
+ * evicted less than stale time milliseconds ago are kept aside to be served by the asynchronous lookups while
+ * being reloaded.</li>
+ * <li><i>negative caching</i>: when a missing live time is provided, the keys for which the {@link Loader} could
+ * not find any resource are remembered during that time such that the resource is not loaded again. Putting the
+ * key into the underlying cache, clearing it or calling {@link #removeMissing(Serializable)} forgets about the
+ * missing resource.</li>
+ * <li><i>refresh-ahead</i>: when a refresh ahead time is provided, the entries that will expire in less than
+ * refresh ahead time milliseconds are reloaded in the background when they are accessed such that they
+ * rarely expire. The expiration time of the entries that exist when the refresh-ahead is enabled is given by
+ * {@link ObjectCacheInfo#getExpireTime()} when the underlying cache provides it, the expiration time of the
+ * next entries is computed from the live time of the underlying cache at the time they are put. This
+ * requires an {@link Executor}.</li>
+ * </ul>
+ *
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
  * @version $Revision$
  */
 public class FutureExoCache<K extends Serializable, V, C> extends FutureCache<K, V, C>
 {
 
+   /** . */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.FutureExoCache");
+
    /** . */
    private final ExoCache<K, V> cache;
 
+   /** . */
+   private final long staleTime;
+
+   /** . */
+   private volatile long missingLiveTime;
+
+   /** . */
+   private volatile long refreshAheadTime;
+
+   /**
+    * The recently expired entries
+    */
+   private final ConcurrentMap<K, TimedValue<V>> staleEntries = new ConcurrentHashMap<K, TimedValue<V>>();
+
+   /**
+    * The keys of the missing resources with the time at which they are not considered as missing anymore
+    */
+   private final ConcurrentMap<K, Long> missingEntries = new ConcurrentHashMap<K, Long>();
+
+   /**
+    * The expected expiration time of the entries of the underlying cache
+    */
+   private final ConcurrentMap<K, Long> expirationTimes = new ConcurrentHashMap<K, Long>();
+
+   /**
+    * The amount of entries to keep at most in each map once purged
+    */
+   private final int purgeThreshold;
+
+   /**
+    * Indicates whether we listen to the underlying cache
+    */
+   private final AtomicBoolean listening = new AtomicBoolean();
+
    public FutureExoCache(Loader<K, V, C> loader, ExoCache<K, V> cache)
    {
-      super(loader);
+      this(loader, cache, null, 0);
+   }
+
+   /**
+    * @param loader the loader to use to retrieve the resources
+    * @param cache the cache in which the resources are stored
+    * @param executor the executor within which the resources are loaded asynchronously, if <code>null</code>
+    * the resources are loaded within the thread of the first requester
+    * @param staleTime the amount of milliseconds during which the value of an expired entry can still be
+    * served by the asynchronous lookups while it is reloaded, a value lower or equal to 0 disables it
+    */
+   public FutureExoCache(Loader<K, V, C> loader, ExoCache<K, V> cache, Executor executor, long staleTime)
+   {
+      super(loader, executor);
 
       //
       this.cache = cache;
+      this.staleTime = staleTime;
+      int maxSize = cache.getMaxSize();
+      this.purgeThreshold = maxSize > 0 ? maxSize : 1000;
+      if (staleTime > 0)
+      {
+         listen();
+      }
+   }
+
+   /**
+    * @return the amount of milliseconds during which a resource that could not be found is considered as missing
+    */
+   public long getMissingLiveTime()
+   {
+      return missingLiveTime;
+   }
+
+   /**
+    * Sets the amount of milliseconds during which a resource that could not be found is considered as missing,
+    * a value lower or equal to 0 disables the negative caching.
+    *
+    * @param missingLiveTime the live time of the missing resources in milliseconds
+    */
+   public void setMissingLiveTime(long missingLiveTime)
+   {
+      if (missingLiveTime > 0)
+      {
+         listen();
+      }
+      else
+      {
+         missingEntries.clear();
+      }
+      this.missingLiveTime = missingLiveTime;
+   }
+
+   /**
+    * @return the amount of milliseconds before the expiration from which an entry is reloaded in the background
+    */
+   public long getRefreshAheadTime()
+   {
+      return refreshAheadTime;
+   }
+
+   /**
+    * Sets the amount of milliseconds before the expiration from which an entry is reloaded in the background
+    * when accessed, a value lower or equal to 0 disables the refresh-ahead.
+    *
+    * @param refreshAheadTime the refresh ahead time in milliseconds
+    */
+   public void setRefreshAheadTime(long refreshAheadTime)
+   {
+      boolean enabled = this.refreshAheadTime <= 0 && refreshAheadTime > 0;
+      if (refreshAheadTime > 0)
+      {
+         listen();
+      }
+      else
+      {
+         expirationTimes.clear();
+      }
+      this.refreshAheadTime = refreshAheadTime;
+      if (enabled)
+      {
+         loadExpirationTimes();
+      }
+   }
+
+   /**
+    * Forgets that the resource corresponding to the given key is missing, this is meant to be called when
+    * the resource has been created.
+    *
+    * @param key the key identifying the resource
+    */
+   public void removeMissing(K key)
+   {
+      missingEntries.remove(key);
    }
 
    @Override
@@ -51,5 +207,200 @@ public class FutureExoCache<K extends Serializable, V, C> extends FutureCache<K,
    {
       cache.put(key, entry);
    }
-}
 
+   @Override
+   protected V getStale(K key)
+   {
+      if (staleTime <= 0)
+      {
+         return null;
+      }
+      TimedValue<V> entry = staleEntries.get(key);
+      if (entry == null)
+      {
+         return null;
+      }
+      if (System.currentTimeMillis() - entry.time > staleTime)
+      {
+         staleEntries.remove(key, entry);
+         return null;
+      }
+      return entry.value;
+   }
+
+   @Override
+   protected boolean isMissing(K key)
+   {
+      if (missingLiveTime <= 0)
+      {
+         return false;
+      }
+      Long expirationTime = missingEntries.get(key);
+      if (expirationTime == null)
+      {
+         return false;
+      }
+      if (System.currentTimeMillis() >= expirationTime)
+      {
+         missingEntries.remove(key, expirationTime);
+         return false;
+      }
+      return true;
+   }
+
+   @Override
+   protected void putMissing(K key)
+   {
+      long liveTime = missingLiveTime;
+      if (liveTime > 0)
+      {
+         staleEntries.remove(key);
+         missingEntries.put(key, System.currentTimeMillis() + liveTime);
+         purge(missingEntries);
+      }
+   }
+
+   @Override
+   protected boolean needsRefresh(K key)
+   {
+      long aheadTime = refreshAheadTime;
+      if (aheadTime <= 0)
+      {
+         return false;
+      }
+      Long expirationTime = expirationTimes.get(key);
+      return expirationTime != null && System.currentTimeMillis() >= expirationTime - aheadTime;
+   }
+
+   /**
+    * Registers the listener allowing to track the entries of the underlying cache if not done yet
+    */
+   private void listen()
+   {
+      if (listening.compareAndSet(false, true))
+      {
+         cache.addCacheListener(new EntriesListener());
+      }
+   }
+
+   /**
+    * Retrieves the expiration time of the existing entries when the underlying cache provides it
+    */
+   private void loadExpirationTimes()
+   {
+      try
+      {
+         cache.select(new CachedObjectSelector<K, V>()
+         {
+            public boolean select(K key, ObjectCacheInfo<? extends V> ocinfo)
+            {
+               return key != null;
+            }
+
+            public void onSelect(ExoCache<? extends K, ? extends V> cache, K key, ObjectCacheInfo<? extends V> ocinfo)
+               throws Exception
+            {
+               // A negative value means unknown and Long.MAX_VALUE means never
+               long expireTime = ocinfo == null ? -1 : ocinfo.getExpireTime();
+               if (expireTime > 0 && expireTime < Long.MAX_VALUE)
+               {
+                  expirationTimes.putIfAbsent(key, expireTime);
+               }
+            }
+         });
+         purge(expirationTimes);
+      }
+      catch (Exception e)
+      {
+         LOG.warn("Could not retrieve the expiration time of the entries of the cache " + cache.getName(), e);
+      }
+   }
+
+   /**
+    * Removes arbitrary entries from the given map when it is twice as big as the purge threshold
+    */
+   private void purge(ConcurrentMap<K, ?> entries)
+   {
+      if (entries.size() > 2 * purgeThreshold)
+      {
+         for (Iterator<K> it = entries.keySet().iterator(); it.hasNext() && entries.size() > purgeThreshold;)
+         {
+            it.next();
+            it.remove();
+         }
+      }
+   }
+
+   /**
+    * Keeps track of the changes of the underlying cache
+    */
+   private class EntriesListener implements CacheListener<K, V>
+   {
+      public void onExpire(CacheListenerContext context, K key, V obj) throws Exception
+      {
+         if (key == null)
+         {
+            return;
+         }
+         expirationTimes.remove(key);
+         if (staleTime > 0 && obj != null)
+         {
+            staleEntries.put(key, new TimedValue<V>(obj, System.currentTimeMillis()));
+            purge(staleEntries);
+         }
+      }
+
+      public void onRemove(CacheListenerContext context, K key, V obj) throws Exception
+      {
+         // An explicit removal means that what we know about the key is not relevant anymore
+         if (key != null)
+         {
+            expirationTimes.remove(key);
+            staleEntries.remove(key);
+            missingEntries.remove(key);
+         }
+      }
+
+      public void onPut(CacheListenerContext context, K key, V obj) throws Exception
+      {
+         if (key == null)
+         {
+            return;
+         }
+         staleEntries.remove(key);
+         missingEntries.remove(key);
+         long liveTime = cache.getLiveTime();
+         if (refreshAheadTime > 0 && liveTime > 0)
+         {
+            expirationTimes.put(key, System.currentTimeMillis() + liveTime * 1000);
+            purge(expirationTimes);
+         }
+      }
+
+      public void onGet(CacheListenerContext context, K key, V obj) throws Exception
+      {
+      }
+
+      public void onClearCache(CacheListenerContext context) throws Exception
+      {
+         expirationTimes.clear();
+         staleEntries.clear();
+         missingEntries.clear();
+      }
+   }
+
+   private static class TimedValue<V>
+   {
+      /** . */
+      private final V value;
+
+      /** . */
+      private final long time;
+
+      TimedValue(V value, long time)
+      {
+         this.value = value;
+         this.time = time;
+      }
+   }
+}
@@ -200,15 +200,20 @@ public class CacheServiceImpl implements CacheService
          simple = factory_.createCache(safeConfig);
       }
       
-      if (managed != null)
-      {
-         managed.registerCache(simple);
-      }
       // If the flag avoid value replication is enabled and the cache is replicated
       // or distributed we wrap the eXo cache instance into an InvalidationExoCache 
       // to enable the invalidation
-      return safeConfig.avoidValueReplication() && (safeConfig.isRepicated() || safeConfig.isDistributed())
-         ? new InvalidationExoCache(simple) : simple;
+      ExoCache result =
+         safeConfig.avoidValueReplication() && (safeConfig.isRepicated() || safeConfig.isDistributed())
+            ? new InvalidationExoCache(simple, safeConfig.getInvalidationBatchWindow(),
+               safeConfig.getInvalidationBatchSize()) : simple;
+      if (managed != null)
+      {
+         // We register the wrapper only in batching mode to expose its metrics too, otherwise
+         // we keep on registering the wrapped cache
+         managed.registerCache(result != simple && safeConfig.getInvalidationBatchWindow() > 0 ? result : simple);
+      }
+      return result;
    }
 
    public Collection<ExoCache<? extends Serializable, ?>> getAllCacheInstances()
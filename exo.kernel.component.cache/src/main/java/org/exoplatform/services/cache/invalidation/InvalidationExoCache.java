@@ -18,6 +18,10 @@
  */
 package org.exoplatform.services.cache.invalidation;
 
+import org.exoplatform.commons.utils.SecurityHelper;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
 import org.exoplatform.services.cache.CacheListener;
 import org.exoplatform.services.cache.CacheListenerContext;
 import org.exoplatform.services.cache.CachedObjectSelector;
@@ -31,7 +35,10 @@ import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.Serializable;
+import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +46,16 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This eXo cache type is a decorator allowing ExoCache instances that have
@@ -51,6 +68,12 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * <li>Node #2 re-loads key1 and puts (key1, value1) into the cache</li>
  * <li>On cluster node #1 key1 is invalidated, so we get back to step #1</li>
  * </ul>
+ * In batching mode, the local values are updated immediately but the invalidations are
+ * queued and coalesced per key, then sent to the underlying cache at once when the batch window
+ * elapsed or when the batch size has been reached, which allows to replicate a burst of
+ * writes with a single message. To do so, the removals are sent as tombstones along with
+ * the puts, the tombstones are then kept in the underlying cache until they are replaced
+ * by a new put, evicted or expired.
  * 
  * @author <a href="mailto:nfilotto@exoplatform.com">Nicolas Filotto</a>
  * @version $Id$
@@ -64,6 +87,12 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     */
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.cache.InvalidationExoCache");
 
+   /**
+    * The tombstone used to queue and to send a removal
+    */
+   @SuppressWarnings("rawtypes")
+   private static final HashCode REMOVAL = new HashCode(true);
+
    /**
     * The eXo cache instance that we would like to replicate using the invalidation
     * mechanism
@@ -79,6 +108,48 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     * The local cache that contains the real values
     */
    private final ConcurrentMap<K, V> localCache;
+
+   /**
+    * The maximum amount of time in milliseconds during which the invalidations are queued,
+    * batching is disabled if the value is lower or equal to 0
+    */
+   private final long batchWindow;
+
+   /**
+    * The amount of queued invalidations from which they are sent without waiting
+    * for the end of the batch window, no limit if the value is lower or equal to 0
+    */
+   private final int batchSize;
+
+   /**
+    * The invalidations waiting to be sent, null if the batching is disabled
+    */
+   private final ConcurrentMap<K, HashCode<V>> pending;
+
+   /**
+    * The total amount of queued invalidations
+    */
+   private final AtomicInteger queueDepth = new AtomicInteger();
+
+   /**
+    * Indicates whether or not a flush has already been scheduled
+    */
+   private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+   /**
+    * Used to ensure that the batches are sent in the same order as they have been drained
+    */
+   private final Lock flushLock = new ReentrantLock();
+
+   /**
+    * The total amount of batches that have been sent
+    */
+   private final AtomicLong batches = new AtomicLong();
+
+   /**
+    * The total amount of invalidations that have been merged with a queued invalidation
+    */
+   private final AtomicLong coalesced = new AtomicLong();
    
    /**
     * @param delegate the underneath eXo cache instance, we assume that the eXo cache
@@ -96,14 +167,48 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     * updating threads. The implementation performs internal sizing
     * to try to accommodate this many threads.  
     */
-   @SuppressWarnings("unchecked")
    public InvalidationExoCache(ExoCache<K, V> delegate, int concurrencyLevel)
+   {
+      this(delegate, concurrencyLevel, 0, 0);
+   }
+
+   /**
+    * @param delegate the underneath eXo cache instance, we assume that the eXo cache
+    * implementation behind is fully functional.
+    * @param batchWindow the maximum amount of time in milliseconds during which the invalidations
+    * are queued, the batching is disabled if the value is lower or equal to 0
+    * @param batchSize the amount of queued invalidations from which they are sent without waiting
+    * for the end of the batch window, no limit if the value is lower or equal to 0
+    */
+   public InvalidationExoCache(ExoCache<K, V> delegate, long batchWindow, int batchSize)
+   {
+      this(delegate, delegate.getMaxSize() > 0 && delegate.getMaxSize() < 512 ? delegate.getMaxSize() : 512,
+         batchWindow, batchSize);
+   }
+
+   /**
+    * @param delegate the underneath eXo cache instance, we assume that the eXo cache
+    * implementation behind is fully functional.
+    * @concurrencyLevel the estimated number of concurrently
+    * updating threads. The implementation performs internal sizing
+    * to try to accommodate this many threads.  
+    * @param batchWindow the maximum amount of time in milliseconds during which the invalidations
+    * are queued, the batching is disabled if the value is lower or equal to 0
+    * @param batchSize the amount of queued invalidations from which they are sent without waiting
+    * for the end of the batch window, no limit if the value is lower or equal to 0
+    */
+   @SuppressWarnings("unchecked")
+   public InvalidationExoCache(ExoCache<K, V> delegate, int concurrencyLevel, long batchWindow, int batchSize)
    {
       this.delegate = (ExoCache<K, HashCode<V>>)delegate;
       // We listen to the cache in order to get a callbacks in case of internal puts for example
       this.delegate.addCacheListener(this);
       this.listeners = new CopyOnWriteArrayList<CacheListener<? super K, ? super V>>();
       this.localCache = new ConcurrentHashMap<K, V>(concurrencyLevel, 0.75f, concurrencyLevel);      
+      this.batchWindow = batchWindow;
+      this.batchSize = batchSize;
+      this.pending =
+         batchWindow > 0 ? new ConcurrentHashMap<K, HashCode<V>>(concurrencyLevel, 0.75f, concurrencyLevel) : null;
    }
    
    /**
@@ -143,15 +248,31 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     */
    public V get(Serializable name)
    {
-      HashCode<V> result = delegate.get(name);
-      return result == null ? null : localCache.get(name);
+      // A queued invalidation is more recent than the content of the underlying cache
+      HashCode<V> result = pending == null || name == null ? null : pending.get(name);
+      if (result == null)
+      {
+         result = delegate.get(name);
+      }
+      return result == null || result.isRemoved() ? null : localCache.get(name);
    }
 
    /**
     * @see org.exoplatform.services.cache.ExoCache#remove(java.io.Serializable)
     */
+   @SuppressWarnings("unchecked")
    public V remove(Serializable key) throws NullPointerException
    {
+      if (pending != null)
+      {
+         if (key == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+         V value = localCache.remove(key);
+         enqueue((K)key, REMOVAL);
+         return value;
+      }
       V value = localCache.get(key);
       delegate.remove(key);
       return value;
@@ -162,6 +283,20 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     */
    public void put(K key, V value) throws NullPointerException
    {
+      if (pending != null)
+      {
+         if (key == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+         else if (value == null)
+         {
+            throw new IllegalArgumentException("No null cache value accepted");
+         }
+         localCache.put(key, value);
+         enqueue(key, new HashCode<V>(value));
+         return;
+      }
       delegate.put(key, new HashCode<V>(value));
    }
 
@@ -187,14 +322,259 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
          }
          map.put(entry.getKey(), new HashCode<V>(entry.getValue()));
       }
+      if (pending != null)
+      {
+         for (Entry<K, HashCode<V>> entry : map.entrySet())
+         {
+            localCache.put(entry.getKey(), entry.getValue().getValue());
+            enqueue(entry.getKey(), entry.getValue());
+         }
+         return;
+      }
       delegate.putMap(map);
    }
 
+   /**
+    * @see org.exoplatform.services.cache.ExoCache#getAll(java.util.Collection)
+    */
+   public Map<K, V> getAll(Collection<? extends K> keys) throws IllegalArgumentException
+   {
+      if (keys == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, HashCode<V>> hashCodes = delegate.getAll(keys);
+      Map<K, V> result = new HashMap<K, V>();
+      boolean checkPending = pending != null && !pending.isEmpty();
+      for (Entry<K, HashCode<V>> entry : hashCodes.entrySet())
+      {
+         K key = entry.getKey();
+         HashCode<V> hashCode = entry.getValue();
+         V value;
+         // The keys with a queued invalidation are checked below
+         if (hashCode != null && !hashCode.isRemoved() && (!checkPending || !pending.containsKey(key))
+            && (value = localCache.get(key)) != null)
+         {
+            result.put(key, value);
+         }
+      }
+      if (checkPending)
+      {
+         for (K key : keys)
+         {
+            HashCode<V> hashCode;
+            V value;
+            if (key != null && (hashCode = pending.get(key)) != null && hashCode != REMOVAL
+               && (value = localCache.get(key)) != null)
+            {
+               // The put has not been sent yet
+               result.put(key, value);
+            }
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @see org.exoplatform.services.cache.ExoCache#removeAll(java.util.Collection)
+    */
+   @SuppressWarnings("unchecked")
+   public void removeAll(Collection<? extends K> keys) throws IllegalArgumentException
+   {
+      if (keys == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      if (pending != null)
+      {
+         for (K key : keys)
+         {
+            if (key == null)
+            {
+               throw new IllegalArgumentException("No null cache key accepted");
+            }
+         }
+         for (K key : keys)
+         {
+            localCache.remove(key);
+            enqueue(key, REMOVAL);
+         }
+         return;
+      }
+      delegate.removeAll(keys);
+   }
+
+   /**
+    * Queues the given invalidation, it replaces the invalidation of the same key that may
+    * have already been queued
+    */
+   private void enqueue(K key, HashCode<V> hashCode)
+   {
+      if (pending.put(key, hashCode) == null)
+      {
+         if (queueDepth.incrementAndGet() >= batchSize && batchSize > 0)
+         {
+            flush();
+            return;
+         }
+      }
+      else
+      {
+         coalesced.incrementAndGet();
+      }
+      if (flushScheduled.compareAndSet(false, true))
+      {
+         try
+         {
+            getScheduler().schedule(new Runnable()
+            {
+               public void run()
+               {
+                  // Reset the flag before draining to make sure that the invalidations queued
+                  // during the flush will trigger a new flush
+                  flushScheduled.set(false);
+                  try
+                  {
+                     flush();
+                  }
+                  catch (Exception e)//NOSONAR
+                  {
+                     LOG.error("Could not send the invalidations of the cache " + getName(), e);
+                  }
+               }
+            }, batchWindow, TimeUnit.MILLISECONDS);
+         }
+         catch (RejectedExecutionException e)
+         {
+            flushScheduled.set(false);
+            flush();
+         }
+      }
+   }
+
+   /**
+    * Sends all the queued invalidations to the underlying cache with a single
+    * {@link ExoCache#putMap(Map)}, it does nothing if the batching is disabled
+    */
+   public void flush()
+   {
+      if (pending == null)
+      {
+         return;
+      }
+      flushLock.lock();
+      try
+      {
+         if (pending.isEmpty())
+         {
+            return;
+         }
+         Map<K, HashCode<V>> invalidations = new LinkedHashMap<K, HashCode<V>>();
+         for (K key : pending.keySet())
+         {
+            HashCode<V> hashCode = pending.remove(key);
+            if (hashCode != null)
+            {
+               queueDepth.decrementAndGet();
+               // The removals are sent as tombstones to replicate everything with one message
+               invalidations.put(key, hashCode);
+            }
+         }
+         if (!invalidations.isEmpty())
+         {
+            delegate.putMap(invalidations);
+            batches.incrementAndGet();
+         }
+      }
+      finally
+      {
+         flushLock.unlock();
+      }
+   }
+
+   /**
+    * @return the maximum amount of time in milliseconds during which the invalidations are
+    * queued, a value lower or equal to 0 means that the batching is disabled
+    */
+   @Managed
+   @ManagedName("BatchWindow")
+   @ManagedDescription("The maximum amount of time in milliseconds during which the invalidations are queued")
+   public long getBatchWindow()
+   {
+      return batchWindow;
+   }
+
+   /**
+    * @return the amount of queued invalidations from which they are sent without waiting
+    * for the end of the batch window
+    */
+   @Managed
+   @ManagedName("BatchSize")
+   @ManagedDescription("The amount of queued invalidations from which they are sent immediately")
+   public int getBatchSize()
+   {
+      return batchSize;
+   }
+
+   /**
+    * @return the amount of invalidations that are currently queued
+    */
+   @Managed
+   @ManagedName("QueueDepth")
+   @ManagedDescription("The amount of invalidations that are currently queued")
+   public int getQueueDepth()
+   {
+      return queueDepth.get();
+   }
+
+   /**
+    * @return the total amount of batches that have been sent
+    */
+   @Managed
+   @ManagedName("BatchCount")
+   @ManagedDescription("The total amount of batches of invalidations that have been sent")
+   public long getBatchCount()
+   {
+      return batches.get();
+   }
+
+   /**
+    * @return the total amount of invalidations that have been merged with a queued invalidation
+    */
+   @Managed
+   @ManagedName("CoalescedCount")
+   @ManagedDescription("The total amount of invalidations that have been merged with a queued invalidation")
+   public long getCoalescedCount()
+   {
+      return coalesced.get();
+   }
+
    /**
     * @see org.exoplatform.services.cache.ExoCache#clearCache()
     */
    public void clearCache()
    {
+      if (pending != null)
+      {
+         // The queued invalidations are useless since all the entries will be removed
+         flushLock.lock();
+         try
+         {
+            for (K key : pending.keySet())
+            {
+               if (pending.remove(key) != null)
+               {
+                  queueDepth.decrementAndGet();
+               }
+            }
+            delegate.clearCache();
+         }
+         finally
+         {
+            flushLock.unlock();
+         }
+         return;
+      }
       delegate.clearCache();
    }
 
@@ -362,7 +742,8 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     */
    public void onRemove(CacheListenerContext context, K key, HashCode<V> obj) throws Exception
    {
-      V value = localCache.remove(key);
+      // If an invalidation has been queued meanwhile, the value in the local cache is more recent
+      V value = pending == null || !pending.containsKey(key) ? localCache.remove(key) : null;
       if (listeners.isEmpty())
       {
          return;
@@ -386,11 +767,22 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
     */
    public void onPut(CacheListenerContext context, K key, HashCode<V> obj) throws Exception
    {
+      if (obj != null && obj.isRemoved())
+      {
+         // A removal sent as a tombstone by a flush
+         onRemove(context, key, obj);
+         return;
+      }
       V value = obj == null ? null : obj.getValue();
       if (value != null)
       {
          // we assume that it is a local put since the value is inside the HashCode object
-         localCache.put(key, value);
+         if (pending == null || !pending.containsKey(key))
+         {
+            localCache.put(key, value);
+         }
+         // Otherwise a more recent invalidation has been queued meanwhile, so the value in the
+         // local cache is already more recent
       }
       else
       {
@@ -470,6 +862,44 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       }      
    }
       
+   /**
+    * @return the scheduler used to send the queued invalidations
+    */
+   private static ScheduledExecutorService getScheduler()
+   {
+      return SchedulerHolder.SCHEDULER;
+   }
+
+   /**
+    * Allows to create the scheduler lazily
+    */
+   private static class SchedulerHolder
+   {
+      /**
+       * The scheduler shared by all the instances working in batching mode
+       */
+      private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+      private static ScheduledExecutorService createScheduler()
+      {
+         return SecurityHelper.doPrivilegedAction(new PrivilegedAction<ScheduledExecutorService>()
+         {
+            public ScheduledExecutorService run()
+            {
+               return new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+               {
+                  public Thread newThread(Runnable r)
+                  {
+                     Thread t = new Thread(r, "InvalidationExoCache-Flusher");
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+            }
+         });
+      }
+   }
+
    /**
     * We use this class to propagate the hash code of the value efficiently over the network
     */
@@ -485,7 +915,17 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
        */
       private V value;
       
+      /**
+       * Indicates whether the value has been removed
+       */
+      private boolean removed;
+
       public HashCode() {}
+
+      private HashCode(boolean removed)
+      {
+         this.removed = removed;
+      }
       
       public HashCode(V value)
       {
@@ -501,12 +941,21 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
          return value;
       }
 
+      /**
+       * @return <code>true</code> if it is the tombstone of a removed value, <code>false</code> otherwise
+       */
+      public boolean isRemoved()
+      {
+         return removed;
+      }
+
       /**
        * @see java.io.Externalizable#writeExternal(java.io.ObjectOutput)
        */
       public void writeExternal(ObjectOutput out) throws IOException
       {
          out.writeInt(hashCode);
+         out.writeBoolean(removed);
       }
 
       /**
@@ -515,6 +964,7 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
       {
          this.hashCode = in.readInt();
+         this.removed = in.readBoolean();
       }
 
       /**
@@ -540,7 +990,7 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
             return false;
          @SuppressWarnings("rawtypes")
          HashCode other = (HashCode)obj;
-         if (hashCode != other.hashCode)
+         if (hashCode != other.hashCode || removed != other.removed)
             return false;
          if (value != null && other.value != null)
          {
@@ -555,7 +1005,7 @@ public class InvalidationExoCache<K extends Serializable, V> implements ExoCache
       @Override
       public String toString()
       {
-         return "HashCode [hashCode=" + hashCode + ", value=" + value + "]";
+         return "HashCode [hashCode=" + hashCode + ", removed=" + removed + ", value=" + value + "]";
       }
    }   
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Revision$
+ */
+public class AsyncGetTestCase extends TestCase
+{
+
+   private ExecutorService executor;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      executor = Executors.newFixedThreadPool(2);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      executor.shutdownNow();
+   }
+
+   public void testGetAsync() throws Exception
+   {
+      FutureMap<Callable<String>> futureCache = new FutureMap<Callable<String>>(new StringLoader(), executor);
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final AtomicInteger calls = new AtomicInteger();
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            calls.incrementAndGet();
+            startSignal.await();
+            return "foo_value";
+         }
+      };
+      CacheFuture<String> future1 = futureCache.getAsync(context, "foo");
+      CacheFuture<String> future2 = futureCache.getAsync(context, "foo");
+      assertFalse(future1.isDone());
+      // The concurrent requests must be coalesced
+      assertSame(future1, future2);
+      final AtomicReference<String> result = new AtomicReference<String>();
+      final CountDownLatch doneSignal = new CountDownLatch(1);
+      future1.addCallback(new FutureCallback<String>()
+      {
+         public void onSuccess(String value)
+         {
+            result.set(value);
+            doneSignal.countDown();
+         }
+
+         public void onFailure(Throwable cause)
+         {
+            doneSignal.countDown();
+         }
+      });
+      startSignal.countDown();
+      assertEquals("foo_value", future1.get());
+      assertTrue(doneSignal.await(5, TimeUnit.SECONDS));
+      assertEquals("foo_value", result.get());
+      assertEquals(1, calls.get());
+      assertEquals("foo_value", futureCache.data.get("foo"));
+      // The value is now in the cache
+      CacheFuture<String> future3 = futureCache.getAsync(context, "foo");
+      assertTrue(future3.isDone());
+      assertEquals("foo_value", future3.get());
+      assertEquals(1, calls.get());
+   }
+
+   public void testGetAsyncFailure() throws Exception
+   {
+      FutureMap<Callable<String>> futureCache = new FutureMap<Callable<String>>(new StringLoader(), executor);
+      CacheFuture<String> future = futureCache.getAsync(new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            throw new Exception("DON'T FREAK OUT");
+         }
+      }, "foo");
+      final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+      final CountDownLatch doneSignal = new CountDownLatch(1);
+      future.addCallback(new FutureCallback<String>()
+      {
+         public void onSuccess(String value)
+         {
+            doneSignal.countDown();
+         }
+
+         public void onFailure(Throwable cause)
+         {
+            failure.set(cause);
+            doneSignal.countDown();
+         }
+      });
+      assertTrue(doneSignal.await(5, TimeUnit.SECONDS));
+      assertEquals("DON'T FREAK OUT", failure.get().getMessage());
+      assertFalse(futureCache.data.containsKey("foo"));
+   }
+
+   public void testGetWithTimeout() throws Exception
+   {
+      FutureMap<Callable<String>> futureCache = new FutureMap<Callable<String>>(new StringLoader(), executor);
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            startSignal.await();
+            return "foo_value";
+         }
+      };
+      assertNull(futureCache.get(context, "foo", 50, TimeUnit.MILLISECONDS));
+      startSignal.countDown();
+      // The loading went on so the value is eventually available
+      assertEquals("foo_value", futureCache.get(context, "foo", 5, TimeUnit.SECONDS));
+   }
+
+   public void testStaleWhileRevalidate() throws Exception
+   {
+      ConcurrentFIFOExoCache<String, String> cache = new ConcurrentFIFOExoCache<String, String>(10);
+      cache.setLiveTimeMillis(50);
+      FutureExoCache<String, String, Callable<String>> futureCache =
+         new FutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 60000);
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final AtomicInteger calls = new AtomicInteger();
+      Callable<String> context = new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            if (calls.incrementAndGet() > 1)
+            {
+               startSignal.await();
+            }
+            return "foo_value" + calls.get();
+         }
+      };
+      assertEquals("foo_value1", futureCache.getAsync(context, "foo").get());
+      Thread.sleep(100);
+      // The entry has expired, the stale value is returned while it is reloaded
+      CacheFuture<String> future = futureCache.getAsync(context, "foo");
+      assertTrue(future.isDone());
+      assertEquals("foo_value1", future.get());
+      future = futureCache.getAsync(context, "foo");
+      assertTrue(future.isDone());
+      assertEquals("foo_value1", future.get());
+      startSignal.countDown();
+      // The synchronous get waits for the reloading in progress
+      assertEquals("foo_value2", futureCache.get(context, "foo"));
+      assertEquals(2, calls.get());
+      assertEquals("foo_value2", futureCache.getAsync(context, "foo").get());
+      // An explicit removal must not be served as stale
+      cache.remove("foo");
+      assertEquals("foo_value3", futureCache.getAsync(context, "foo").get());
+   }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.future;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Revision$
+ */
+public class FutureExoCacheTestCase extends TestCase
+{
+
+   private ExecutorService executor;
+
+   private ConcurrentFIFOExoCache<String, String> cache;
+
+   private final AtomicInteger calls = new AtomicInteger();
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      executor = Executors.newSingleThreadExecutor();
+      cache = new ConcurrentFIFOExoCache<String, String>(10);
+      calls.set(0);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      executor.shutdownNow();
+   }
+
+   private Callable<String> context(final String value)
+   {
+      return new Callable<String>()
+      {
+         public String call() throws Exception
+         {
+            calls.incrementAndGet();
+            return value;
+         }
+      };
+   }
+
+   public void testMissing() throws Exception
+   {
+      FutureExoCache<String, String, Callable<String>> futureCache =
+         new FutureExoCache<String, String, Callable<String>>(new StringLoader(), cache);
+      futureCache.setMissingLiveTime(100);
+      assertNull(futureCache.get(context(null), "foo"));
+      assertEquals(1, calls.get());
+      // The resource is known to be missing
+      assertNull(futureCache.get(context("foo_value"), "foo"));
+      assertNull(futureCache.getAsync(context("foo_value"), "foo").get());
+      assertEquals(1, calls.get());
+      Thread.sleep(150);
+      // The resource is not considered as missing anymore
+      assertEquals("foo_value", futureCache.get(context("foo_value"), "foo"));
+      assertEquals(2, calls.get());
+   }
+
+   public void testMissingRemoved() throws Exception
+   {
+      FutureExoCache<String, String, Callable<String>> futureCache =
+         new FutureExoCache<String, String, Callable<String>>(new StringLoader(), cache);
+      futureCache.setMissingLiveTime(60000);
+      assertNull(futureCache.get(context(null), "foo"));
+      assertNull(futureCache.get(context(null), "bar"));
+      assertNull(futureCache.get(context("foo_value"), "foo"));
+      assertEquals(2, calls.get());
+      // The resource has been created
+      futureCache.removeMissing("foo");
+      assertEquals("foo_value", futureCache.get(context("foo_value"), "foo"));
+      assertNull(futureCache.get(context("bar_value"), "bar"));
+      assertEquals(3, calls.get());
+      // An explicit removal of an existing entry invalidates what we know about the key
+      assertNull(futureCache.get(context(null), "juu"));
+      cache.put("juu", "juu_value1");
+      cache.remove("juu");
+      assertEquals("juu_value2", futureCache.get(context("juu_value2"), "juu"));
+      assertEquals(5, calls.get());
+      cache.remove("juu");
+      futureCache.setMissingLiveTime(0);
+      assertNull(futureCache.get(context(null), "daa"));
+      assertNull(futureCache.get(context(null), "daa"));
+      assertEquals(7, calls.get());
+   }
+
+   public void testRefreshAhead() throws Exception
+   {
+      cache.setLiveTime(1);
+      FutureExoCache<String, String, Callable<String>> futureCache =
+         new FutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 0);
+      futureCache.setRefreshAheadTime(800);
+      assertEquals("foo_value1", futureCache.get(context("foo_value1"), "foo"));
+      assertEquals(1, calls.get());
+      Thread.sleep(300);
+      // The entry is about to expire so it is reloaded in the background
+      assertEquals("foo_value1", futureCache.get(context("foo_value2"), "foo"));
+      waitForCalls(2);
+      assertEquals("foo_value2", cache.get("foo"));
+      // The new entry is not about to expire
+      assertEquals("foo_value2", futureCache.get(context("foo_value3"), "foo"));
+      Thread.sleep(50);
+      assertEquals(2, calls.get());
+   }
+
+   public void testRefreshAheadExistingEntries() throws Exception
+   {
+      cache.setLiveTimeMillis(1000);
+      cache.put("foo", "foo_value1");
+      FutureExoCache<String, String, Callable<String>> futureCache =
+         new FutureExoCache<String, String, Callable<String>>(new StringLoader(), cache, executor, 0);
+      futureCache.setRefreshAheadTime(800);
+      Thread.sleep(300);
+      assertEquals("foo_value1", futureCache.getAsync(context("foo_value2"), "foo").get());
+      waitForCalls(1);
+      assertEquals("foo_value2", cache.get("foo"));
+   }
+
+   private void waitForCalls(int expected) throws InterruptedException
+   {
+      for (int i = 0; i < 100 && calls.get() < expected; i++)
+      {
+         Thread.sleep(20);
+      }
+      assertEquals(expected, calls.get());
+      // Give some time to the loader to put the value
+      Thread.sleep(50);
+   }
+}
@@ -21,6 +21,7 @@ package org.exoplatform.services.cache.future;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -40,6 +41,14 @@ public class FutureMap<C> extends FutureCache<String, String, C>
       this.data = Collections.synchronizedMap(new HashMap<String, String>());
    }
 
+   public FutureMap(Loader<String, String, C> loader, Executor executor)
+   {
+      super(loader, executor);
+
+      //
+      this.data = Collections.synchronizedMap(new HashMap<String, String>());
+   }
+
    @Override
    protected String get(String key)
    {
@@ -33,6 +33,7 @@ import org.exoplatform.services.cache.ExoCacheInitException;
 import org.exoplatform.services.cache.FIFOExoCache;
 import org.exoplatform.services.cache.SimpleExoCache;
 import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentTinyLFUExoCache;
 import org.exoplatform.services.cache.impl.CacheServiceImpl;
 
 import java.io.Serializable;
@@ -256,6 +257,21 @@ public class TestCacheService extends TestCase
          cs.getCacheInstance("UnKnownImplButCorrectFQN-MyExoCacheConfig") instanceof MyExoCache);
    }
 
+   public void testTinyLFUCacheConfiguration() throws Exception
+   {
+      ExoCache<String, Object> cache = service_.getCacheInstance("tinylfucache");
+      assertTrue("expect find tinylfu cache configuration", cache instanceof ConcurrentTinyLFUExoCache);
+      assertEquals("expect 'maxsize' of this cache is", 3, cache.getMaxSize());
+      assertEquals("expect 'liveTime' of this cache' is", 4, cache.getLiveTime());
+      cache.put("key1", "object 1");
+      cache.put("key2", "object 2");
+      cache.put("key3", "object 3");
+      cache.put("key4", "object 4");
+      assertEquals("expect cache size is still:", 3, cache.getCacheSize());
+      cache.clearCache();
+      assertEquals("now, expect cache is clear", 0, cache.getCacheSize());
+   }
+
    public void testCacheService() throws Exception
    {
       assertNotNull(service_.getAllCacheInstances());
@@ -473,6 +489,23 @@ public class TestCacheService extends TestCase
 
       }
 
+      /**
+       * @see org.exoplatform.services.cache.ExoCache#getAll(java.util.Collection)
+       */
+      public Map<Serializable, V> getAll(Collection<? extends Serializable> keys) throws NullPointerException
+      {
+         return Collections.emptyMap();
+      }
+
+      /**
+       * @see org.exoplatform.services.cache.ExoCache#removeAll(java.util.Collection)
+       */
+      public void removeAll(Collection<? extends Serializable> keys) throws NullPointerException,
+         IllegalArgumentException
+      {
+
+      }
+
       /**
        * @see org.exoplatform.services.cache.ExoCache#clearCache()
        */
@@ -25,11 +25,14 @@ import org.exoplatform.services.cache.CacheListenerContext;
 import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -198,6 +201,61 @@ public class TestConcurrentCache extends TestCase
       cache.assertExpire("Foo", v1).assertEmpty();
    }
 
+   public void testGetAll()
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>();
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.assertPut("Foo", v1).assertPut("Bar", v2).assertEmpty();
+      Map<String, Object> values = cache.getAll(Arrays.asList("Foo", "Bar", "Juu", null));
+      assertEquals(2, values.size());
+      assertEquals(v1, values.get("Foo"));
+      assertEquals(v2, values.get("Bar"));
+      cache.assertGet("Foo", v1).assertGet("Bar", v2).assertEmpty();
+      try
+      {
+         cache.getAll(null);
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+      }
+   }
+
+   public void testGetAllExpired()
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>();
+      cache.setLiveTimeMillis(15);
+      cache.put("Foo", v1);
+      cache.assertPut("Foo", v1).assertEmpty();
+      waitFor(25);
+      assertTrue(cache.getAll(Arrays.asList("Foo")).isEmpty());
+      cache.assertExpire("Foo", v1).assertEmpty();
+   }
+
+   public void testRemoveAll()
+   {
+      CacheHelper<String, Object> cache = new CacheHelper<String, Object>(4);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.put("Juu", v3);
+      cache.assertPut("Foo", v1).assertPut("Bar", v2).assertPut("Juu", v3).assertEmpty();
+      cache.removeAll(Arrays.asList("Foo", "Bar", "Daa"));
+      cache.assertRemove("Foo", v1).assertRemove("Bar", v2).assertEmpty();
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(v3, cache.get("Juu"));
+      try
+      {
+         cache.removeAll(Arrays.asList("Juu", null));
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+         // Nothing must have been removed
+         assertEquals(1, cache.getCacheSize());
+      }
+   }
+
    public void testGetCachedObjects()
    {
       CacheHelper<String, Object> cache = new CacheHelper<String, Object>(4);
@@ -212,6 +270,85 @@ public class TestConcurrentCache extends TestCase
       assertEquals(expectedSet, cachedSet);
    }
 
+   public void testStripedQueue()
+   {
+      ConcurrentFIFOExoCache<String, Object> cache = new ConcurrentFIFOExoCache<String, Object>(20);
+      cache.setQueueStripes(6);
+      assertEquals(6, cache.getQueueStripes());
+      for (int i = 0; i < 100; i++)
+      {
+         cache.put("key" + i, v1);
+         cache.assertConsistent();
+      }
+      assertEquals(20, cache.getCacheSize());
+      assertEquals(v1, cache.get("key99"));
+      assertEquals(v1, cache.remove("key99"));
+      assertEquals(19, cache.getCacheSize());
+      cache.assertConsistent();
+      cache.setMaxSize(3);
+      cache.put("key100", v2);
+      assertEquals(3, cache.getCacheSize());
+      assertEquals(v2, cache.get("key100"));
+      cache.assertConsistent();
+   }
+
+   public void testConcurrentStripedQueue() throws Exception
+   {
+      final ConcurrentFIFOExoCache<Integer, Object> cache = new ConcurrentFIFOExoCache<Integer, Object>(50);
+      cache.setQueueStripes(8);
+      final int threads = 10;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      for (int i = 0; i < threads; i++)
+      {
+         final int seed = i;
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < 5000; j++)
+                  {
+                     Integer key = (j * 31 + seed) % 200;
+                     if (j % 3 == 0)
+                     {
+                        cache.put(key, v1);
+                     }
+                     else if (j % 17 == 0)
+                     {
+                        cache.remove(key);
+                     }
+                     else
+                     {
+                        cache.get(key);
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  error.set(e);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertNull(error.get());
+      cache.assertConsistent();
+      // The next put trims the queue to its maximum size
+      cache.put(1000, v2);
+      assertTrue(cache.getCacheSize() <= 50);
+      cache.assertConsistent();
+   }
+
    private void waitFor(long millis)
    {
       try
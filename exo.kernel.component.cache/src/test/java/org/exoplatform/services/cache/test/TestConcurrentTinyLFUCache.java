@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.concurrent.ConcurrentTinyLFUExoCache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Id$
+ */
+public class TestConcurrentTinyLFUCache extends TestCase
+{
+
+   private final Object v1 = new Object();
+
+   private final Object v2 = new Object();
+
+   private final Object v3 = new Object();
+
+   public void testNullKey()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(2);
+      cache.put("a", "a");
+      assertNull(cache.get(null));
+      try
+      {
+         cache.put(null, new Object());
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+         assertEquals(1, cache.getCacheSize());
+         assertEquals("a", cache.get("a"));
+      }
+      try
+      {
+         cache.remove(null);
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+         assertEquals(1, cache.getCacheSize());
+      }
+      try
+      {
+         Map<String, String> tmp = new HashMap<String, String>();
+         tmp.put("a", "a");
+         tmp.put(null, "a");
+         cache.putMap(tmp);
+         fail("Was expecting an IllegalArgumentException");
+      }
+      catch (IllegalArgumentException ignore)
+      {
+         assertEquals(1, cache.getCacheSize());
+      }
+   }
+
+   public void testPutGetRemove()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(10);
+      cache.put("Foo", v1);
+      assertEquals(v1, cache.get("Foo"));
+      cache.put("Foo", v2);
+      assertEquals(v2, cache.get("Foo"));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(v2, cache.remove("Foo"));
+      assertNull(cache.get("Foo"));
+      assertEquals(0, cache.getCacheSize());
+      assertEquals(2, cache.getCacheHit());
+      assertEquals(1, cache.getCacheMiss());
+      cache.assertConsistent();
+   }
+
+   public void testGetAllRemoveAll()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(10);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.put("Juu", v3);
+      Map<String, Object> values = cache.getAll(Arrays.asList("Foo", "Bar", "Daa", null));
+      assertEquals(2, values.size());
+      assertEquals(v1, values.get("Foo"));
+      assertEquals(v2, values.get("Bar"));
+      assertEquals(2, cache.getCacheHit());
+      assertEquals(1, cache.getCacheMiss());
+      cache.removeAll(Arrays.asList("Foo", "Bar", "Daa"));
+      assertEquals(1, cache.getCacheSize());
+      assertNull(cache.get("Foo"));
+      assertEquals(v3, cache.get("Juu"));
+      cache.assertConsistent();
+   }
+
+   public void testCacheSize()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(2);
+      assertEquals(0, cache.getCacheSize());
+      cache.put("Foo", v1);
+      assertEquals(1, cache.getCacheSize());
+      cache.put("Bar", v2);
+      assertEquals(2, cache.getCacheSize());
+      cache.put("Juu", v3);
+      assertEquals(2, cache.getCacheSize());
+      cache.assertConsistent();
+   }
+
+   public void testFrequentEntriesAreKept()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(100);
+      for (int i = 0; i < 100; i++)
+      {
+         cache.put("hot" + i, v1);
+      }
+      for (int j = 0; j < 10; j++)
+      {
+         for (int i = 0; i < 100; i++)
+         {
+            cache.get("hot" + i);
+         }
+      }
+      // A scan of entries accessed only once must not flush the hot entries
+      for (int i = 0; i < 1000; i++)
+      {
+         cache.put("cold" + i, v2);
+      }
+      int hot = 0;
+      for (int i = 0; i < 100; i++)
+      {
+         if (cache.get("hot" + i) != null)
+         {
+            hot++;
+         }
+      }
+      assertTrue("Only " + hot + " hot entries have been kept", hot >= 90);
+      assertTrue(cache.getCacheSize() <= 100);
+      cache.assertConsistent();
+   }
+
+   public void testFrequency()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(10);
+      cache.put("Foo", v1);
+      for (int i = 0; i < 5; i++)
+      {
+         cache.get("Foo");
+      }
+      int frequency = cache.getFrequency("Foo");
+      // Some reads could have been dropped, the put is always counted
+      assertTrue(frequency >= 1 && frequency <= 6);
+      assertEquals(0, cache.getFrequency("Bar"));
+   }
+
+   public void testExpireOnGet() throws Exception
+   {
+      final AtomicReference<Serializable> expired = new AtomicReference<Serializable>();
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(10);
+      cache.addCacheListener(new ListenerAdapter()
+      {
+         @Override
+         public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+            expired.set(key);
+         }
+      });
+      cache.setLiveTimeMillis(15);
+      cache.put("Foo", v1);
+      Thread.sleep(25);
+      assertNull(cache.get("Foo"));
+      assertEquals("Foo", expired.get());
+      assertEquals(0, cache.getCacheSize());
+      cache.assertConsistent();
+   }
+
+   public void testEvictionNotification()
+   {
+      final AtomicInteger evictions = new AtomicInteger();
+      final AtomicInteger puts = new AtomicInteger();
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(5);
+      cache.addCacheListener(new ListenerAdapter()
+      {
+         @Override
+         public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+            evictions.incrementAndGet();
+         }
+
+         @Override
+         public void onPut(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+            puts.incrementAndGet();
+         }
+      });
+      for (int i = 0; i < 20; i++)
+      {
+         cache.put("key" + i, v1);
+      }
+      assertEquals(20, puts.get());
+      assertEquals(15, evictions.get());
+      assertEquals(5, cache.getCacheSize());
+      cache.setMaxSize(2);
+      cache.put("key20", v1);
+      assertEquals(2, cache.getCacheSize());
+      assertEquals(19, evictions.get());
+      cache.assertConsistent();
+   }
+
+   public void testGetCachedObjects()
+   {
+      ConcurrentTinyLFUExoCache<String, Object> cache = new ConcurrentTinyLFUExoCache<String, Object>(4);
+      cache.put("Foo", v1);
+      cache.put("Bar", v2);
+      cache.put("Juu", v3);
+      Set<Object> cachedSet = new HashSet<Object>(cache.getCachedObjects());
+      Set<Object> expectedSet = new HashSet<Object>();
+      expectedSet.add(v1);
+      expectedSet.add(v2);
+      expectedSet.add(v3);
+      assertEquals(expectedSet, cachedSet);
+      cache.clearCache();
+      assertEquals(0, cache.getCacheSize());
+      cache.assertConsistent();
+   }
+
+   public void testConcurrentAccess() throws Exception
+   {
+      final ConcurrentTinyLFUExoCache<Integer, Object> cache = new ConcurrentTinyLFUExoCache<Integer, Object>(50);
+      final int threads = 10;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      for (int i = 0; i < threads; i++)
+      {
+         final int seed = i;
+         Thread thread = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < 5000; j++)
+                  {
+                     Integer key = (j * 31 + seed) % 200;
+                     if (j % 3 == 0)
+                     {
+                        cache.put(key, v1);
+                     }
+                     else if (j % 17 == 0)
+                     {
+                        cache.remove(key);
+                     }
+                     else
+                     {
+                        cache.get(key);
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  error.set(e);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         };
+         thread.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertNull(error.get());
+      cache.assertConsistent();
+      assertTrue(cache.getCacheSize() <= 50);
+   }
+
+   private static class ListenerAdapter implements CacheListener<Serializable, Object>
+   {
+
+      public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+      }
+
+      public void onRemove(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+      }
+
+      public void onPut(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+      }
+
+      public void onGet(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+      }
+
+      public void onClearCache(CacheListenerContext context) throws Exception
+      {
+      }
+   }
+}
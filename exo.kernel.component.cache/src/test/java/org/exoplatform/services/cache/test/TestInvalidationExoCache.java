@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.test;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.CacheListener;
+import org.exoplatform.services.cache.CacheListenerContext;
+import org.exoplatform.services.cache.ExoCache;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
+import org.exoplatform.services.cache.invalidation.InvalidationExoCache;
+import org.exoplatform.services.cache.invalidation.InvalidationExoCache.HashCode;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @version $Id$
+ *
+ */
+public class TestInvalidationExoCache extends TestCase
+{
+
+   public void testWithoutBatching() throws Exception
+   {
+      CountingCache delegate = new CountingCache();
+      InvalidationExoCache<String, String> cache = new InvalidationExoCache<String, String>(delegate);
+      assertEquals(0, cache.getBatchWindow());
+      cache.put("a", "a");
+      assertEquals("a", cache.get("a"));
+      assertEquals(1, delegate.getCacheSize());
+      assertEquals(0, cache.getQueueDepth());
+      cache.remove("a");
+      assertNull(cache.get("a"));
+      assertEquals(0, delegate.getCacheSize());
+      cache.flush();
+      assertEquals(0, delegate.putMaps.get());
+      assertEquals(0, cache.getBatchCount());
+   }
+
+   public void testBatchSize() throws Exception
+   {
+      CountingCache delegate = new CountingCache();
+      InvalidationExoCache<String, String> cache =
+         new InvalidationExoCache<String, String>(delegate, Long.MAX_VALUE / 2, 3);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      assertEquals(3, cache.getBatchSize());
+      cache.put("a", "a");
+      cache.put("b", "b");
+      cache.put("a", "a2");
+      assertEquals(2, cache.getQueueDepth());
+      assertEquals(1, cache.getCoalescedCount());
+      assertEquals(0, delegate.getCacheSize());
+      assertEquals(0, listener.puts.get());
+      // The values are available locally before being sent
+      assertEquals("a2", cache.get("a"));
+      assertEquals("b", cache.get("b"));
+      assertEquals(2, cache.getAll(Arrays.asList("a", "b", "c")).size());
+      assertEquals(2, cache.getCacheSize());
+      cache.put("c", "c");
+      assertEquals(0, cache.getQueueDepth());
+      assertEquals(1, delegate.putMaps.get());
+      assertEquals(1, cache.getBatchCount());
+      assertEquals(3, delegate.getCacheSize());
+      assertEquals(3, listener.puts.get());
+      assertEquals("a2", cache.get("a"));
+      assertEquals("b", cache.get("b"));
+      assertEquals("c", cache.get("c"));
+
+      cache.remove("a");
+      assertNull(cache.get("a"));
+      assertEquals(2, cache.getCacheSize());
+      assertEquals(3, delegate.getCacheSize());
+      assertEquals(1, cache.getQueueDepth());
+      // The batch size is reached so the removals are sent immediately as tombstones
+      cache.removeAll(Arrays.asList("b", "c"));
+      assertNull(cache.get("a"));
+      assertNull(cache.get("b"));
+      assertNull(cache.get("c"));
+      assertTrue(cache.getAll(Arrays.asList("a", "b", "c")).isEmpty());
+      assertEquals(0, cache.getCacheSize());
+      assertEquals(0, cache.getQueueDepth());
+      assertEquals(2, delegate.putMaps.get());
+      assertEquals(0, delegate.removeAlls.get());
+      assertEquals(2, cache.getBatchCount());
+      assertEquals(3, delegate.getCacheSize());
+      assertEquals(3, listener.removes.get());
+      assertEquals(3, listener.puts.get());
+
+      // A removal followed by a put of the same key is coalesced into a put
+      cache.put("d", "d");
+      cache.flush();
+      cache.remove("d");
+      cache.put("d", "d2");
+      assertEquals(1, cache.getQueueDepth());
+      assertEquals("d2", cache.get("d"));
+      cache.flush();
+      assertEquals(4, delegate.putMaps.get());
+      assertEquals(0, delegate.removeAlls.get());
+      assertEquals("d2", cache.get("d"));
+   }
+
+   public void testMixedBatch() throws Exception
+   {
+      CountingCache delegate = new CountingCache();
+      InvalidationExoCache<String, String> cache =
+         new InvalidationExoCache<String, String>(delegate, Long.MAX_VALUE / 2, 0);
+      CountingListener listener = new CountingListener();
+      cache.addCacheListener(listener);
+      cache.put("a", "a");
+      cache.put("b", "b");
+      cache.flush();
+      assertEquals(1, cache.getBatchCount());
+      // The puts and the removals of the same batch are sent with a single message
+      cache.put("c", "c");
+      cache.remove("a");
+      cache.removeAll(Arrays.asList("b"));
+      assertEquals(3, cache.getQueueDepth());
+      cache.flush();
+      assertEquals(0, cache.getQueueDepth());
+      assertEquals(2, cache.getBatchCount());
+      assertEquals(2, delegate.putMaps.get());
+      assertEquals(0, delegate.removeAlls.get());
+      assertNull(cache.get("a"));
+      assertNull(cache.get("b"));
+      assertEquals("c", cache.get("c"));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(3, listener.puts.get());
+      assertEquals(2, listener.removes.get());
+
+      // A remote tombstone invalidates the local value
+      @SuppressWarnings({"unchecked", "rawtypes"})
+      HashCode<String> tombstone = (HashCode<String>)((ExoCache)delegate).get("a");
+      assertTrue(tombstone.isRemoved());
+      cache.onPut(null, "c", tombstone);
+      assertNull(cache.get("c"));
+      assertEquals(0, cache.getCacheSize());
+      assertEquals(3, listener.removes.get());
+
+      // A tombstone is replaced by a new put
+      cache.put("a", "a2");
+      cache.flush();
+      assertEquals("a2", cache.get("a"));
+   }
+
+   public void testBatchWindow() throws Exception
+   {
+      CountingCache delegate = new CountingCache();
+      InvalidationExoCache<String, String> cache = new InvalidationExoCache<String, String>(delegate, 50, 0);
+      for (int i = 0; i < 5; i++)
+      {
+         cache.put("a" + i, "a" + i);
+      }
+      assertEquals(50, cache.getBatchWindow());
+      long timeout = System.currentTimeMillis() + 10000;
+      while (cache.getQueueDepth() > 0 && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(20);
+      }
+      assertEquals(0, cache.getQueueDepth());
+      assertEquals(1, delegate.putMaps.get());
+      assertEquals(5, delegate.getCacheSize());
+      for (int i = 0; i < 5; i++)
+      {
+         assertEquals("a" + i, cache.get("a" + i));
+      }
+   }
+
+   public void testPutAfterFlushedRemoval() throws Exception
+   {
+      CountingCache delegate = new CountingCache();
+      InvalidationExoCache<String, String> cache =
+         new InvalidationExoCache<String, String>(delegate, Long.MAX_VALUE / 2, 0);
+      cache.put("a", "a");
+      cache.put("b", "b");
+      cache.flush();
+      cache.remove("a");
+      cache.remove("b");
+      cache.flush();
+      assertNull(cache.get("a"));
+      assertTrue(cache.getAll(Arrays.asList("a", "b")).isEmpty());
+      // The tombstones are still in the underlying cache while the new puts are queued
+      cache.put("a", "a2");
+      assertEquals(1, cache.getQueueDepth());
+      assertEquals("a2", cache.get("a"));
+      assertNull(cache.get("b"));
+      Map<String, String> values = cache.getAll(Arrays.asList("a", "b"));
+      assertEquals(1, values.size());
+      assertEquals("a2", values.get("a"));
+      // A queued removal hides the value of the underlying cache
+      cache.put("c", "c");
+      cache.flush();
+      cache.remove("c");
+      assertNull(cache.get("c"));
+      assertFalse(cache.getAll(Arrays.asList("c")).containsKey("c"));
+      cache.flush();
+      assertEquals("a2", cache.get("a"));
+      assertNull(cache.get("c"));
+   }
+
+   public void testNullCollection() throws Exception
+   {
+      for (long batchWindow : new long[]{0, Long.MAX_VALUE / 2})
+      {
+         InvalidationExoCache<String, String> cache =
+            new InvalidationExoCache<String, String>(new CountingCache(), batchWindow, 0);
+         try
+         {
+            cache.getAll(null);
+            fail("An IllegalArgumentException was expected");
+         }
+         catch (IllegalArgumentException e)
+         {
+            // expected
+         }
+         try
+         {
+            cache.removeAll(null);
+            fail("An IllegalArgumentException was expected");
+         }
+         catch (IllegalArgumentException e)
+         {
+            // expected
+         }
+      }
+   }
+
+   private static class CountingCache extends ConcurrentFIFOExoCache<String, String>
+   {
+      private final AtomicInteger putMaps = new AtomicInteger();
+
+      private final AtomicInteger removeAlls = new AtomicInteger();
+
+      public CountingCache()
+      {
+         super(100);
+      }
+
+      @Override
+      public void putMap(Map<? extends String, ? extends String> objs)
+      {
+         putMaps.incrementAndGet();
+         super.putMap(objs);
+      }
+
+      @Override
+      public void removeAll(Collection<? extends String> names)
+      {
+         removeAlls.incrementAndGet();
+         super.removeAll(names);
+      }
+   }
+
+   private static class CountingListener implements CacheListener<Serializable, Object>
+   {
+      private final AtomicInteger puts = new AtomicInteger();
+
+      private final AtomicInteger removes = new AtomicInteger();
+
+      public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+      }
+
+      public void onRemove(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         removes.incrementAndGet();
+      }
+
+      public void onPut(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+         puts.incrementAndGet();
+      }
+
+      public void onGet(CacheListenerContext context, Serializable key, Object obj) throws Exception
+      {
+      }
+
+      public void onClearCache(CacheListenerContext context) throws Exception
+      {
+      }
+   }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor;
+
+import org.exoplatform.container.xml.PropertiesParam;
+
+/**
+ * The settings of a {@link KernelExecutor}. A setting whose value is <code>null</code> is undefined,
+ * in which case the value of the same setting in the default settings is used instead.
+ *
+ * @version $Id$
+ */
+public class ExecutorSettings
+{
+   /**
+    * The name of the property used to define the total amount of threads
+    */
+   public static final String POOL_SIZE = "pool-size";
+
+   /**
+    * The name of the property used to define the maximum amount of pending tasks
+    */
+   public static final String QUEUE_SIZE = "queue-size";
+
+   /**
+    * The name of the property used to define the rejection policy
+    */
+   public static final String REJECTION_POLICY = "rejection-policy";
+
+   /**
+    * The name of the property used to enable the virtual-thread-per-task mode
+    */
+   public static final String VIRTUAL_THREADS = "virtual-threads";
+
+   /**
+    * The policy according to which the task is executed by the thread that submitted it
+    */
+   public static final String POLICY_CALLER_RUNS = "caller-runs";
+
+   /**
+    * The policy according to which a {@link java.util.concurrent.RejectedExecutionException} is thrown
+    */
+   public static final String POLICY_ABORT = "abort";
+
+   /**
+    * The policy according to which the task is silently dropped
+    */
+   public static final String POLICY_DISCARD = "discard";
+
+   /**
+    * The policy according to which the oldest pending task is dropped
+    */
+   public static final String POLICY_DISCARD_OLDEST = "discard-oldest";
+
+   /**
+    * The policy according to which the thread that submitted the task waits until it can be accepted
+    */
+   public static final String POLICY_BLOCK = "block";
+
+   /** . */
+   private final Integer poolSize;
+
+   /** . */
+   private final Integer queueSize;
+
+   /** . */
+   private final String rejectionPolicy;
+
+   /** . */
+   private final Boolean virtualThreads;
+
+   /**
+    * @param poolSize the total amount of threads
+    * @param queueSize the maximum amount of pending tasks, a value lower or equal to 0 means unbounded
+    * @param rejectionPolicy the name of the policy to apply when the executor is saturated
+    * @param virtualThreads indicates whether each task should be executed by its own virtual thread
+    */
+   public ExecutorSettings(Integer poolSize, Integer queueSize, String rejectionPolicy, Boolean virtualThreads)
+   {
+      this.poolSize = poolSize;
+      this.queueSize = queueSize;
+      this.rejectionPolicy = rejectionPolicy;
+      this.virtualThreads = virtualThreads;
+   }
+
+   /**
+    * Creates the settings from the properties <i>pool-size</i>, <i>queue-size</i>, <i>rejection-policy</i>
+    * and <i>virtual-threads</i> of the given parameter
+    */
+   public static ExecutorSettings valueOf(PropertiesParam param)
+   {
+      String value = param.getProperty(POOL_SIZE);
+      Integer poolSize = value == null ? null : Integer.valueOf(value.trim());
+      value = param.getProperty(QUEUE_SIZE);
+      Integer queueSize = value == null ? null : Integer.valueOf(value.trim());
+      value = param.getProperty(VIRTUAL_THREADS);
+      Boolean virtualThreads = value == null ? null : Boolean.valueOf(value.trim());
+      return new ExecutorSettings(poolSize, queueSize, param.getProperty(REJECTION_POLICY), virtualThreads);
+   }
+
+   /**
+    * @return the total amount of threads
+    */
+   public Integer getPoolSize()
+   {
+      return poolSize;
+   }
+
+   /**
+    * @return the maximum amount of pending tasks, a value lower or equal to 0 means unbounded
+    */
+   public Integer getQueueSize()
+   {
+      return queueSize;
+   }
+
+   /**
+    * @return the name of the policy to apply when the executor is saturated
+    */
+   public String getRejectionPolicy()
+   {
+      return rejectionPolicy;
+   }
+
+   /**
+    * @return <code>true</code> if each task should be executed by its own virtual thread
+    */
+   public Boolean getVirtualThreads()
+   {
+      return virtualThreads;
+   }
+
+   /**
+    * Gives new settings in which the undefined settings are replaced with the corresponding
+    * settings of the given default settings
+    * @param defaults the default settings, can be <code>null</code>
+    */
+   public ExecutorSettings merge(ExecutorSettings defaults)
+   {
+      if (defaults == null)
+      {
+         return this;
+      }
+      return new ExecutorSettings(poolSize == null ? defaults.poolSize : poolSize, queueSize == null
+         ? defaults.queueSize : queueSize, rejectionPolicy == null ? defaults.rejectionPolicy : rejectionPolicy,
+         virtualThreads == null ? defaults.virtualThreads : virtualThreads);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return "ExecutorSettings[" + POOL_SIZE + "=" + poolSize + ", " + QUEUE_SIZE + "=" + queueSize + ", "
+         + REJECTION_POLICY + "=" + rejectionPolicy + ", " + VIRTUAL_THREADS + "=" + virtualThreads + "]";
+   }
+}
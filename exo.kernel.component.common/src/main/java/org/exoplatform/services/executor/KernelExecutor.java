@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An executor provided by the {@link KernelExecutorService} that exposes its statistics. It is
+ * shut down by the {@link KernelExecutorService} when it is stopped, so the components that use it
+ * must not shut it down.
+ *
+ * @version $Id$
+ */
+public interface KernelExecutor extends ExecutorService
+{
+   /**
+    * The upper bounds in milliseconds of the buckets of the completion latency histogram, the last
+    * bucket of the histogram contains the tasks whose latency is greater than the last upper bound.
+    */
+   long[] LATENCY_BUCKETS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+   /**
+    * @return the name of the executor
+    */
+   String getName();
+
+   /**
+    * @return the settings of the executor
+    */
+   ExecutorSettings getSettings();
+
+   /**
+    * @return <code>true</code> if each task is executed by its own virtual thread
+    */
+   boolean isVirtual();
+
+   /**
+    * @return the approximate amount of tasks in progress
+    */
+   int getActiveCount();
+
+   /**
+    * @return the total amount of pending tasks
+    */
+   int getQueueSize();
+
+   /**
+    * @return the total amount of tasks completed since the last reset
+    */
+   long getCompletedCount();
+
+   /**
+    * @return the total amount of tasks that could not be accepted since the last reset
+    */
+   long getRejectedCount();
+
+   /**
+    * @return the average time in nanoseconds between the submission and the completion of a task
+    */
+   long getAverageLatency();
+
+   /**
+    * @return the maximum time in nanoseconds between the submission and the completion of a task
+    */
+   long getMaxLatency();
+
+   /**
+    * @return the amount of completed tasks by bucket of latency as defined in {@link #LATENCY_BUCKETS}
+    */
+   long[] getLatencyHistogram();
+
+   /**
+    * Resets the statistics
+    */
+   void resetStatistics();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor;
+
+/**
+ * The service that provides named executors shared by all the components of the kernel, thanks to
+ * which the amount of threads, the amount of pending tasks and the behavior of the executors once
+ * saturated can be configured and monitored from a single place.
+ *
+ * @version $Id$
+ */
+public interface KernelExecutorService
+{
+   /**
+    * Gives the executor of the given name, it is created with the configured settings the first
+    * time it is requested
+    * @param name the name of the executor
+    * @return the corresponding executor
+    */
+   KernelExecutor getExecutor(String name);
+
+   /**
+    * Gives the executor of the given name, it is created the first time it is requested with the
+    * configured settings, the settings that are not configured are retrieved from the given settings
+    * @param name the name of the executor
+    * @param defaults the settings to use when they are not configured, can be <code>null</code>
+    * @return the corresponding executor
+    */
+   KernelExecutor getExecutor(String name, ExecutorSettings defaults);
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor.impl;
+
+import org.exoplatform.services.executor.KernelExecutor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The statistics of a {@link KernelExecutor}, the completion latency of a task is the time elapsed
+ * between its submission and the end of its execution.
+ *
+ * @version $Id$
+ */
+class ExecutorStatistics
+{
+   /** . */
+   private static final long[] BUCKETS = new long[KernelExecutor.LATENCY_BUCKETS.length];
+
+   static
+   {
+      for (int i = 0; i < BUCKETS.length; i++)
+      {
+         BUCKETS[i] = TimeUnit.MILLISECONDS.toNanos(KernelExecutor.LATENCY_BUCKETS[i]);
+      }
+   }
+
+   /** . */
+   private final AtomicLong completed = new AtomicLong();
+
+   /** . */
+   private final AtomicLong rejected = new AtomicLong();
+
+   /** . */
+   private final AtomicLong total = new AtomicLong();
+
+   /** . */
+   private final AtomicLong max = new AtomicLong();
+
+   /** . */
+   private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+   /**
+    * Wraps the given task in order to record its completion latency
+    */
+   Runnable wrap(final Runnable task)
+   {
+      final long submitted = System.nanoTime();
+      return new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               task.run();
+            }
+            finally
+            {
+               completed(System.nanoTime() - submitted);
+            }
+         }
+
+         @Override
+         public String toString()
+         {
+            return task.toString();
+         }
+      };
+   }
+
+   void completed(long latency)
+   {
+      completed.incrementAndGet();
+      total.addAndGet(latency);
+      long current;
+      while (latency > (current = max.get()) && !max.compareAndSet(current, latency));
+      int i = 0;
+      while (i < BUCKETS.length && latency > BUCKETS[i])
+      {
+         i++;
+      }
+      histogram.incrementAndGet(i);
+   }
+
+   void rejected()
+   {
+      rejected.incrementAndGet();
+   }
+
+   long getCompletedCount()
+   {
+      return completed.get();
+   }
+
+   long getRejectedCount()
+   {
+      return rejected.get();
+   }
+
+   long getAverageLatency()
+   {
+      long count = completed.get();
+      return count == 0 ? 0 : total.get() / count;
+   }
+
+   long getMaxLatency()
+   {
+      return max.get();
+   }
+
+   long[] getLatencyHistogram()
+   {
+      long[] result = new long[histogram.length()];
+      for (int i = 0; i < result.length; i++)
+      {
+         result[i] = histogram.get(i);
+      }
+      return result;
+   }
+
+   void reset()
+   {
+      completed.set(0);
+      rejected.set(0);
+      total.set(0);
+      max.set(0);
+      for (int i = 0; i < histogram.length(); i++)
+      {
+         histogram.set(i, 0);
+      }
+   }
+}
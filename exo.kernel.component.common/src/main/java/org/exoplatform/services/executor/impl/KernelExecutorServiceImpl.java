@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor.impl;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.executor.ExecutorSettings;
+import org.exoplatform.services.executor.KernelExecutor;
+import org.exoplatform.services.executor.KernelExecutorService;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.picocontainer.Startable;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The default implementation of the {@link KernelExecutorService}. The settings of a given executor
+ * can be configured thanks to a properties parameter whose name is the name of the executor prefixed
+ * by <i>executor.</i> and whose supported properties are <i>pool-size</i>, <i>queue-size</i>,
+ * <i>rejection-policy</i> and <i>virtual-threads</i>. The settings that are not defined for a given
+ * executor are retrieved from the properties parameter <i>default</i> if they are defined, otherwise
+ * the default values are used which are the amount of available processors for the pool size,
+ * 1000 for the queue size, <i>caller-runs</i> for the rejection policy and <i>false</i> for the virtual
+ * threads.
+ * <p>
+ * The supported rejection policies are <i>caller-runs</i>, <i>abort</i>, <i>discard</i>,
+ * <i>discard-oldest</i> and <i>block</i>, they are only applied when the queue is bounded and full.
+ * The virtual threads are only used if they are supported by the JDK, otherwise the executor falls back
+ * to a pool of platform threads.
+ * </p>
+ *
+ * @version $Id$
+ */
+@Managed
+@NameTemplate(@Property(key = "service", value = "KernelExecutorService"))
+@ManagedDescription("The service that provides the executors shared by the components of the kernel")
+public class KernelExecutorServiceImpl implements KernelExecutorService, Startable
+{
+
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.KernelExecutorService");
+
+   /**
+    * The prefix of the name of the properties parameters used to define the settings of a given executor
+    */
+   public static final String EXECUTOR_PARAM_PREFIX = "executor.";
+
+   /**
+    * The name of the properties parameter used to define the default settings
+    */
+   public static final String DEFAULT_PARAM = "default";
+
+   /**
+    * The default maximum amount of pending tasks of an executor
+    */
+   public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+   /**
+    * The settings to use when they are not defined
+    */
+   private final ExecutorSettings defaults;
+
+   /**
+    * The configured settings by executor name
+    */
+   private final Map<String, ExecutorSettings> settings = new HashMap<String, ExecutorSettings>();
+
+   /**
+    * The executors by name
+    */
+   private final ConcurrentMap<String, KernelExecutor> executors = new ConcurrentHashMap<String, KernelExecutor>();
+
+   public KernelExecutorServiceImpl()
+   {
+      this(null);
+   }
+
+   public KernelExecutorServiceImpl(InitParams params)
+   {
+      ExecutorSettings defaults =
+         new ExecutorSettings(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_SIZE,
+            ExecutorSettings.POLICY_CALLER_RUNS, Boolean.FALSE);
+      if (params != null)
+      {
+         for (Iterator<PropertiesParam> it = params.getPropertiesParamIterator(); it.hasNext();)
+         {
+            PropertiesParam param = it.next();
+            if (DEFAULT_PARAM.equals(param.getName()))
+            {
+               defaults = ExecutorSettings.valueOf(param).merge(defaults);
+            }
+            else if (param.getName() != null && param.getName().startsWith(EXECUTOR_PARAM_PREFIX))
+            {
+               settings.put(param.getName().substring(EXECUTOR_PARAM_PREFIX.length()), ExecutorSettings.valueOf(param));
+            }
+         }
+      }
+      this.defaults = defaults;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public KernelExecutor getExecutor(String name)
+   {
+      return getExecutor(name, null);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public KernelExecutor getExecutor(String name, ExecutorSettings defaults)
+   {
+      if (name == null)
+      {
+         throw new IllegalArgumentException("The name of the executor cannot be null");
+      }
+      KernelExecutor executor = executors.get(name);
+      if (executor != null)
+      {
+         return executor;
+      }
+      synchronized (this)
+      {
+         executor = executors.get(name);
+         if (executor == null)
+         {
+            executor = createExecutor(name, defaults);
+            executors.put(name, executor);
+         }
+      }
+      return executor;
+   }
+
+   /**
+    * Creates the executor of the given name
+    */
+   private KernelExecutor createExecutor(String name, ExecutorSettings defaults)
+   {
+      ExecutorSettings executorSettings = settings.get(name);
+      if (executorSettings == null)
+      {
+         executorSettings = new ExecutorSettings(null, null, null, null);
+      }
+      executorSettings = executorSettings.merge(defaults).merge(this.defaults);
+      KernelExecutor executor = null;
+      if (executorSettings.getVirtualThreads())
+      {
+         executor = VirtualThreadKernelExecutor.create(name, executorSettings);
+         if (executor == null)
+         {
+            LOG.warn("The virtual threads are not supported by the JDK, the executor '" + name
+               + "' will use a pool of threads instead");
+         }
+      }
+      if (executor == null)
+      {
+         executor = new PooledKernelExecutor(name, executorSettings);
+      }
+      if (LOG.isDebugEnabled())
+      {
+         LOG.debug("The executor '" + name + "' has been created with the settings " + executorSettings);
+      }
+      return executor;
+   }
+
+   /**
+    * Gives the executor of the given name if it has already been created
+    */
+   private KernelExecutor findExecutor(String name)
+   {
+      return name == null ? null : executors.get(name);
+   }
+
+   @Managed
+   @ManagedName("ExecutorNames")
+   @ManagedDescription("Returns the names of the executors that have been created")
+   public String[] getExecutorNames()
+   {
+      return executors.keySet().toArray(new String[0]);
+   }
+
+   @Managed
+   @ManagedDescription("Returns the settings of the given executor")
+   public String getSettings(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? null : executor.getSettings().toString();
+   }
+
+   @Managed
+   @ManagedDescription("Indicates whether the given executor uses a virtual thread per task")
+   public boolean isVirtual(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor != null && executor.isVirtual();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the approximate amount of tasks in progress of the given executor")
+   public int getActiveCount(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? 0 : executor.getActiveCount();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of pending tasks of the given executor")
+   public int getQueueSize(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? 0 : executor.getQueueSize();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of tasks completed by the given executor")
+   public long getCompletedCount(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? 0 : executor.getCompletedCount();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of tasks that could not be accepted by the given executor "
+      + "because it was saturated")
+   public long getRejectedCount(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? 0 : executor.getRejectedCount();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the average time in nanoseconds between the submission and the completion "
+      + "of a task of the given executor")
+   public long getAverageLatency(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? 0 : executor.getAverageLatency();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the maximum time in nanoseconds between the submission and the completion "
+      + "of a task of the given executor")
+   public long getMaxLatency(@ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      return executor == null ? 0 : executor.getMaxLatency();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the amount of completed tasks of the given executor by bucket of completion latency")
+   public String getLatencyHistogram(
+      @ManagedName("name") @ManagedDescription("The name of the executor") String name)
+   {
+      KernelExecutor executor = findExecutor(name);
+      if (executor == null)
+      {
+         return null;
+      }
+      long[] histogram = executor.getLatencyHistogram();
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < KernelExecutor.LATENCY_BUCKETS.length; i++)
+      {
+         sb.append("<=").append(KernelExecutor.LATENCY_BUCKETS[i]).append("ms: ").append(histogram[i]).append(", ");
+      }
+      sb.append('>').append(KernelExecutor.LATENCY_BUCKETS[KernelExecutor.LATENCY_BUCKETS.length - 1])
+         .append("ms: ").append(histogram[KernelExecutor.LATENCY_BUCKETS.length]);
+      return sb.toString();
+   }
+
+   @Managed
+   @ManagedDescription("Resets the statistics of all the executors")
+   public void resetStatistics()
+   {
+      for (KernelExecutor executor : executors.values())
+      {
+         executor.resetStatistics();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void start()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void stop()
+   {
+      synchronized (this)
+      {
+         for (KernelExecutor executor : executors.values())
+         {
+            executor.shutdown();
+         }
+         executors.clear();
+      }
+   }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor.impl;
+
+import org.exoplatform.services.executor.ExecutorSettings;
+import org.exoplatform.services.executor.KernelExecutor;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link KernelExecutor} that relies on a fixed size pool of threads and on a queue that can be
+ * bounded, in which case the configured rejection policy is applied once the queue is full in order
+ * to provide a back pressure mechanism.
+ *
+ * @version $Id$
+ */
+class PooledKernelExecutor extends ThreadPoolExecutor implements KernelExecutor
+{
+
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.PooledKernelExecutor");
+
+   /** . */
+   private final String name;
+
+   /** . */
+   private final ExecutorSettings settings;
+
+   /** . */
+   private final ExecutorStatistics statistics = new ExecutorStatistics();
+
+   /**
+    * @param name the name of the executor
+    * @param settings the settings of the executor, all the settings must be defined
+    */
+   PooledKernelExecutor(String name, ExecutorSettings settings)
+   {
+      super(settings.getPoolSize(), settings.getPoolSize(), 0L, TimeUnit.MILLISECONDS, createQueue(settings
+         .getQueueSize()), new KernelThreadFactory(name));
+      this.name = name;
+      this.settings = settings;
+      setRejectedExecutionHandler(new CountingRejectedExecutionHandler(getRejectedExecutionHandler(settings
+         .getRejectionPolicy())));
+   }
+
+   private static BlockingQueue<Runnable> createQueue(int queueSize)
+   {
+      return queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new LinkedBlockingQueue<Runnable>();
+   }
+
+   private static RejectedExecutionHandler getRejectedExecutionHandler(String policy)
+   {
+      if (policy == null || ExecutorSettings.POLICY_CALLER_RUNS.equalsIgnoreCase(policy))
+      {
+         return new ThreadPoolExecutor.CallerRunsPolicy();
+      }
+      else if (ExecutorSettings.POLICY_ABORT.equalsIgnoreCase(policy))
+      {
+         return new ThreadPoolExecutor.AbortPolicy();
+      }
+      else if (ExecutorSettings.POLICY_DISCARD.equalsIgnoreCase(policy))
+      {
+         return new ThreadPoolExecutor.DiscardPolicy();
+      }
+      else if (ExecutorSettings.POLICY_DISCARD_OLDEST.equalsIgnoreCase(policy))
+      {
+         return new ThreadPoolExecutor.DiscardOldestPolicy();
+      }
+      else if (ExecutorSettings.POLICY_BLOCK.equalsIgnoreCase(policy))
+      {
+         return new BlockPolicy();
+      }
+      LOG.warn("Unknown rejection policy '" + policy + "', the policy '" + ExecutorSettings.POLICY_CALLER_RUNS
+         + "' will be used");
+      return new ThreadPoolExecutor.CallerRunsPolicy();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void execute(Runnable command)
+   {
+      if (command == null)
+      {
+         throw new NullPointerException();
+      }
+      super.execute(statistics.wrap(command));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ExecutorSettings getSettings()
+   {
+      return settings;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isVirtual()
+   {
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getQueueSize()
+   {
+      return getQueue().size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getCompletedCount()
+   {
+      return statistics.getCompletedCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getRejectedCount()
+   {
+      return statistics.getRejectedCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getAverageLatency()
+   {
+      return statistics.getAverageLatency();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMaxLatency()
+   {
+      return statistics.getMaxLatency();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long[] getLatencyHistogram()
+   {
+      return statistics.getLatencyHistogram();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void resetStatistics()
+   {
+      statistics.reset();
+   }
+
+   /**
+    * Makes the thread that submits the task wait until the queue has enough space to accept it
+    */
+   private static class BlockPolicy implements RejectedExecutionHandler
+   {
+      /**
+       * {@inheritDoc}
+       */
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+      {
+         if (executor.isShutdown())
+         {
+            throw new RejectedExecutionException("The executor has been shut down");
+         }
+         try
+         {
+            executor.getQueue().put(r);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for space in the queue", e);
+         }
+      }
+   }
+
+   /**
+    * Counts the rejected tasks before delegating to the actual policy
+    */
+   private class CountingRejectedExecutionHandler implements RejectedExecutionHandler
+   {
+      /** . */
+      private final RejectedExecutionHandler delegate;
+
+      CountingRejectedExecutionHandler(RejectedExecutionHandler delegate)
+      {
+         this.delegate = delegate;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+      {
+         statistics.rejected();
+         delegate.rejectedExecution(r, executor);
+      }
+   }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor.impl;
+
+import org.exoplatform.services.executor.ExecutorSettings;
+import org.exoplatform.services.executor.KernelExecutor;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link KernelExecutor} that executes each task in its own virtual thread. The amount of tasks
+ * in progress is limited to the sum of the pool size and of the queue size when the queue is bounded
+ * such that it accepts as many tasks as the equivalent {@link PooledKernelExecutor}, beyond this limit
+ * the configured rejection policy is applied. As there is no queue, the policy <i>discard-oldest</i>
+ * behaves like the policy <i>discard</i>.
+ * <p>
+ * The virtual threads are only available since Java 21, so they are created by reflection in order
+ * to remain compatible with the older JDKs.
+ * </p>
+ *
+ * @version $Id$
+ */
+class VirtualThreadKernelExecutor extends AbstractExecutorService implements KernelExecutor
+{
+
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.VirtualThreadKernelExecutor");
+
+   /** . */
+   private final String name;
+
+   /** . */
+   private final ExecutorSettings settings;
+
+   /** . */
+   private final ExecutorService delegate;
+
+   /**
+    * The permits used to limit the amount of tasks in progress, <code>null</code> if unbounded
+    */
+   private final Semaphore permits;
+
+   /** . */
+   private final AtomicInteger active = new AtomicInteger();
+
+   /** . */
+   private final ExecutorStatistics statistics = new ExecutorStatistics();
+
+   /**
+    * @param name the name of the executor
+    * @param settings the settings of the executor, all the settings must be defined
+    * @param delegate the executor that creates a new virtual thread for each task
+    */
+   private VirtualThreadKernelExecutor(String name, ExecutorSettings settings, ExecutorService delegate)
+   {
+      this.name = name;
+      this.settings = settings;
+      this.delegate = delegate;
+      this.permits =
+         settings.getQueueSize() > 0 ? new Semaphore(settings.getPoolSize() + settings.getQueueSize()) : null;
+   }
+
+   /**
+    * Creates a new executor if the virtual threads are supported by the JDK
+    * @param name the name of the executor
+    * @param settings the settings of the executor, all the settings must be defined
+    * @return the executor or <code>null</code> if the virtual threads are not supported
+    */
+   static VirtualThreadKernelExecutor create(String name, ExecutorSettings settings)
+   {
+      ExecutorService delegate;
+      try
+      {
+         Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+         Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+         builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-vthread-", 1L);
+         ThreadFactory factory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+         delegate =
+            (ExecutorService)Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null,
+               factory);
+      }
+      catch (NoSuchMethodException e)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The virtual threads are not supported by the JDK: " + e.getMessage());
+         }
+         return null;
+      }
+      catch (InvocationTargetException e)
+      {
+         // Preview feature not enabled
+         LOG.warn("The virtual threads cannot be used: " + e.getCause());
+         return null;
+      }
+      catch (Exception e)
+      {
+         LOG.warn("The virtual threads cannot be used: " + e);
+         return null;
+      }
+      return new VirtualThreadKernelExecutor(name, settings, delegate);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void execute(Runnable command)
+   {
+      if (command == null)
+      {
+         throw new NullPointerException();
+      }
+      if (permits != null && !permits.tryAcquire() && !rejected(command))
+      {
+         return;
+      }
+      final Runnable task = statistics.wrap(command);
+      try
+      {
+         delegate.execute(new Runnable()
+         {
+            public void run()
+            {
+               active.incrementAndGet();
+               try
+               {
+                  task.run();
+               }
+               finally
+               {
+                  active.decrementAndGet();
+                  if (permits != null)
+                  {
+                     permits.release();
+                  }
+               }
+            }
+         });
+      }
+      catch (RejectedExecutionException e)
+      {
+         if (permits != null)
+         {
+            permits.release();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Applies the rejection policy to a task that could not get a permit
+    * @return <code>true</code> if a permit could be acquired and the task must be executed by a
+    * virtual thread, <code>false</code> otherwise
+    */
+   private boolean rejected(Runnable command)
+   {
+      statistics.rejected();
+      String policy = settings.getRejectionPolicy();
+      if (ExecutorSettings.POLICY_BLOCK.equalsIgnoreCase(policy))
+      {
+         try
+         {
+            permits.acquire();
+            return true;
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a permit", e);
+         }
+      }
+      else if (ExecutorSettings.POLICY_ABORT.equalsIgnoreCase(policy))
+      {
+         throw new RejectedExecutionException("Task " + command + " rejected from " + name);
+      }
+      else if (ExecutorSettings.POLICY_DISCARD.equalsIgnoreCase(policy)
+         || ExecutorSettings.POLICY_DISCARD_OLDEST.equalsIgnoreCase(policy))
+      {
+         return false;
+      }
+      if (!isShutdown())
+      {
+         statistics.wrap(command).run();
+      }
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void shutdown()
+   {
+      delegate.shutdown();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<Runnable> shutdownNow()
+   {
+      return delegate.shutdownNow();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isShutdown()
+   {
+      return delegate.isShutdown();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isTerminated()
+   {
+      return delegate.isTerminated();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+   {
+      return delegate.awaitTermination(timeout, unit);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ExecutorSettings getSettings()
+   {
+      return settings;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isVirtual()
+   {
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getActiveCount()
+   {
+      return active.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getQueueSize()
+   {
+      return 0;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getCompletedCount()
+   {
+      return statistics.getCompletedCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getRejectedCount()
+   {
+      return statistics.getRejectedCount();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getAverageLatency()
+   {
+      return statistics.getAverageLatency();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMaxLatency()
+   {
+      return statistics.getMaxLatency();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long[] getLatencyHistogram()
+   {
+      return statistics.getLatencyHistogram();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void resetStatistics()
+   {
+      statistics.reset();
+   }
+}
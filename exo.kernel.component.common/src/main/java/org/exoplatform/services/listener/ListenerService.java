@@ -18,44 +18,90 @@
  */
 package org.exoplatform.services.listener;
 
-import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
-import org.exoplatform.container.component.RequestLifeCycle;
-import org.exoplatform.container.component.ThreadContextHandler;
+import org.exoplatform.container.component.ContextSnapshot;
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.executor.ExecutorSettings;
+import org.exoplatform.services.executor.KernelExecutor;
+import org.exoplatform.services.executor.KernelExecutorService;
+import org.exoplatform.services.executor.impl.KernelExecutorServiceImpl;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.naming.InitialContextInitializer;
 
-import java.security.PrivilegedAction;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by The eXo Platform SAS<br>
  *
  * Listener Service is reponsible for notifying the {@link Listener}
  * when a given event is broadcasted.
+ * <p>
+ * The asynchronous listeners are notified by default thanks to an executor shared by all the events
+ * that can be configured thanks to the value parameters <i>asynchPoolSize</i>, <i>asynchQueueSize</i>
+ * and <i>asynchRejectionPolicy</i>. A dedicated executor can also be defined for a given event thanks
+ * to a properties parameter whose name is the name of the event prefixed by <i>asynch-executor.</i>
+ * and whose supported properties are <i>pool-size</i>, <i>queue-size</i> and <i>rejection-policy</i>.
+ * The pool size is 1 and the queue is unbounded unless they are configured. The supported rejection
+ * policies are <i>caller-runs</i> (default value), <i>abort</i>, <i>discard</i>, <i>discard-oldest</i>
+ * and <i>block</i>, they are only applied when the queue is bounded and full.
+ * </p>
+ * <p>
+ * The executors are provided by the {@link KernelExecutorService} if it is available, the shared executor
+ * is named <i>ListenerService</i> and the executor dedicated to a given event is named
+ * <i>ListenerService.</i> followed by the name of the event. The settings defined in the
+ * {@link KernelExecutorService} for those executors take precedence over the parameters of this
+ * service.
+ * </p>
  *
  * @author : <a href="nhudinhthuan@exoplatform.com">Nhu Dinh Thuan</a>.
  * @LevelAPI Platform
  */
+@Managed
+@NameTemplate(@Property(key = "service", value = "ListenerService"))
+@ManagedDescription("The service that notifies the listeners of the broadcasted events")
 public class ListenerService
 {
+   /**
+    * The prefix of the name of the properties parameters used to define a dedicated executor for a
+    * given event
+    */
+   public static final String EXECUTOR_PARAM_PREFIX = "asynch-executor.";
+
+   /**
+    * The name of the executor shared by all the events
+    */
+   public static final String EXECUTOR_NAME = "ListenerService";
+
    /** 
     * This executor used for asynchronously event broadcast. 
     */
-   private final Executor executor;
+   private final KernelExecutor executor;
 
    /**
-    * Listeners by name map.
+    * The executors dedicated to a given event, by event name.
     */
-   private final Map<String, List<Listener>> listeners_;
+   private final Map<String, KernelExecutor> executors;
+
+   /**
+    * Dispatch lists by event name map.
+    */
+   private final ConcurrentMap<String, DispatchList> listeners_;
 
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.ListenerService");
 
@@ -66,7 +112,7 @@ public class ListenerService
     */
    public ListenerService(ExoContainerContext ctx)
    {
-      this(ctx, null, null);
+      this(ctx, null, null, null);
    }
    
    /**
@@ -82,23 +128,72 @@ public class ListenerService
     */
    public ListenerService(ExoContainerContext ctx, InitParams params)
    {
-      this(ctx, null, params);
+      this(ctx, null, params, null);
    }
 
    /**
     * Construct a listener service.
     */
    public ListenerService(ExoContainerContext ctx, InitialContextInitializer initializer, InitParams params)
+   {
+      this(ctx, initializer, params, null);
+   }
+
+   /**
+    * Construct a listener service.
+    */
+   public ListenerService(ExoContainerContext ctx, InitParams params, KernelExecutorService executorService)
+   {
+      this(ctx, null, params, executorService);
+   }
+
+   /**
+    * Construct a listener service.
+    */
+   public ListenerService(ExoContainerContext ctx, InitialContextInitializer initializer, InitParams params,
+      KernelExecutorService executorService)
    {
       container = ctx.getContainer();
-      listeners_ = new HashMap<String, List<Listener>>();
-      int poolSize = 1;
+      listeners_ = new ConcurrentHashMap<String, DispatchList>();
+      if (executorService == null)
+      {
+         executorService = new KernelExecutorServiceImpl();
+      }
+      // The queue is unbounded by default to avoid notifying the asynchronous listeners
+      // within the thread that broadcasts the event
+      Integer poolSize = 1;
+      Integer queueSize = 0;
+      String policy = null;
 
       if (params != null && params.getValueParam("asynchPoolSize") != null)
       {
-         poolSize = Integer.parseInt(params.getValueParam("asynchPoolSize").getValue());
+         poolSize = Integer.valueOf(params.getValueParam("asynchPoolSize").getValue());
       }
-      executor = Executors.newFixedThreadPool(poolSize, new ListenerThreadFactory());
+      if (params != null && params.getValueParam("asynchQueueSize") != null)
+      {
+         queueSize = Integer.valueOf(params.getValueParam("asynchQueueSize").getValue());
+      }
+      if (params != null && params.getValueParam("asynchRejectionPolicy") != null)
+      {
+         policy = params.getValueParam("asynchRejectionPolicy").getValue();
+      }
+      executor = executorService.getExecutor(EXECUTOR_NAME, new ExecutorSettings(poolSize, queueSize, policy, null));
+      Map<String, KernelExecutor> executors = new HashMap<String, KernelExecutor>();
+      if (params != null)
+      {
+         for (Iterator<PropertiesParam> it = params.getPropertiesParamIterator(); it.hasNext();)
+         {
+            PropertiesParam param = it.next();
+            if (param.getName() == null || !param.getName().startsWith(EXECUTOR_PARAM_PREFIX))
+            {
+               continue;
+            }
+            String eventName = param.getName().substring(EXECUTOR_PARAM_PREFIX.length());
+            ExecutorSettings settings = ExecutorSettings.valueOf(param).merge(new ExecutorSettings(1, 0, null, null));
+            executors.put(eventName, executorService.getExecutor(EXECUTOR_NAME + "." + eventName, settings));
+         }
+      }
+      this.executors = Collections.unmodifiableMap(executors);
    }
 
    /**
@@ -121,8 +216,10 @@ public class ListenerService
     * <ol>
     * <li>Check if it exists a list of listeners that have been registered for the
     * given event name, create a new list if no list exists</li>
-    * <li>Add the listener to the list</li>
+    * <li>Add the listener to a copy of the list and replace the previous list with the copy</li>
     * </ol>
+    * This method can be called concurrently with {@link #broadcast(String, Object, Object)}, the
+    * broadcasts in progress keep on using the list that was registered when they started.
     * @param eventName The name of the event to listen to
     * @param listener The Listener to notify any time the event with the given
     * name is triggered
@@ -136,7 +233,7 @@ public class ListenerService
       {
          if (listenerClass.isAnnotationPresent(Asynchronous.class))
          {
-            listener = new AsynchronousListener(listener);
+            listener = new AsynchronousListener(listener, getExecutor(eventName));
             break;
          }
          else
@@ -146,13 +243,31 @@ public class ListenerService
       }
       while (listenerClass != null);
 
-      List<Listener> list = listeners_.get(eventName);
-      if (list == null)
+      for (;;)
       {
-         list = new ArrayList<Listener>();
-         listeners_.put(eventName, list);
+         DispatchList list = listeners_.get(eventName);
+         if (list == null)
+         {
+            if (listeners_.putIfAbsent(eventName, new DispatchList(new Listener[]{listener},
+               new DispatchStatistics())) == null)
+            {
+               return;
+            }
+         }
+         else if (listeners_.replace(eventName, list, list.add(listener)))
+         {
+            return;
+         }
       }
-      list.add(listener);
+   }
+
+   /**
+    * Gives the executor to use to notify the asynchronous listeners of the given event
+    */
+   private KernelExecutor getExecutor(String eventName)
+   {
+      KernelExecutor eventExecutor = executors.get(eventName);
+      return eventExecutor == null ? executor : eventExecutor;
    }
 
    /**
@@ -171,11 +286,15 @@ public class ListenerService
     */
    final public <S, D> void broadcast(String name, S source, D data) throws Exception
    {
-      List<Listener> list = listeners_.get(name);
+      DispatchList list = listeners_.get(name);
       if (list == null)
          return;
-      for (Listener<S, D> listener : list)
+      long start = System.nanoTime();
+      Event<S, D> event = new Event<S, D>(name, source, data);
+      Listener[] listeners = list.listeners;
+      for (int i = 0; i < listeners.length; i++)
       {
+         Listener<S, D> listener = listeners[i];
          if (LOG.isDebugEnabled())
          {
             LOG.debug("broadcasting event " + name + " on " + listener.getName());
@@ -183,13 +302,14 @@ public class ListenerService
 
          try
          {
-            listener.onEvent(new Event<S, D>(name, source, data));
+            listener.onEvent(event);
          }
          catch (Exception e)
          {
             LOG.error("Exception on broadcasting events occurs: " + e.getMessage(), e);
          }
       }
+      list.statistics.dispatched(System.nanoTime() - start);
    }
 
    /**
@@ -206,22 +326,167 @@ public class ListenerService
     */
    final public <T extends Event> void broadcast(T event) throws Exception
    {
-      List<Listener> list = listeners_.get(event.getEventName());
+      DispatchList list = listeners_.get(event.getEventName());
       if (list == null)
       {
          return;
       }
-      for (Listener listener : list)
+      long start = System.nanoTime();
+      Listener[] listeners = list.listeners;
+      for (int i = 0; i < listeners.length; i++)
       {
          try
          {
-            listener.onEvent(event);
+            listeners[i].onEvent(event);
          }
          catch (Exception e)
          {
             LOG.error("Exception on broadcasting events occurs: " + e.getMessage(), e);
          }
       }
+      list.statistics.dispatched(System.nanoTime() - start);
+   }
+
+   @Managed
+   @ManagedName("EventNames")
+   @ManagedDescription("Returns the names of the events for which at least one listener has been registered")
+   public String[] getEventNames()
+   {
+      return listeners_.keySet().toArray(new String[0]);
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of listeners registered for the given event")
+   public int getListenerCount(@ManagedName("eventName") @ManagedDescription("The name of the event") String eventName)
+   {
+      DispatchList list = listeners_.get(eventName);
+      return list == null ? 0 : list.listeners.length;
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of times that the given event has been broadcasted "
+      + "to at least one listener")
+   public long getDispatchCount(@ManagedName("eventName") @ManagedDescription("The name of the event") String eventName)
+   {
+      DispatchList list = listeners_.get(eventName);
+      return list == null ? 0 : list.statistics.count.get();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the average time in nanoseconds spent to dispatch the given event to its "
+      + "listeners, asynchronous listeners excluded")
+   public long getAverageDispatchTime(
+      @ManagedName("eventName") @ManagedDescription("The name of the event") String eventName)
+   {
+      DispatchList list = listeners_.get(eventName);
+      if (list == null)
+      {
+         return 0;
+      }
+      long count = list.statistics.count.get();
+      return count == 0 ? 0 : list.statistics.total.get() / count;
+   }
+
+   @Managed
+   @ManagedDescription("Returns the maximum time in nanoseconds spent to dispatch the given event to its "
+      + "listeners, asynchronous listeners excluded")
+   public long getMaxDispatchTime(
+      @ManagedName("eventName") @ManagedDescription("The name of the event") String eventName)
+   {
+      DispatchList list = listeners_.get(eventName);
+      return list == null ? 0 : list.statistics.max.get();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of pending notifications of the asynchronous listeners in the "
+      + "queue of the executor used for the given event")
+   public int getQueueSize(@ManagedName("eventName") @ManagedDescription("The name of the event") String eventName)
+   {
+      return getExecutor(eventName).getQueueSize();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of notifications of the asynchronous listeners that could not be "
+      + "queued by the executor used for the given event because its queue was full")
+   public long getRejectedCount(@ManagedName("eventName") @ManagedDescription("The name of the event") String eventName)
+   {
+      return getExecutor(eventName).getRejectedCount();
+   }
+
+   @Managed
+   @ManagedDescription("Resets all the statistics")
+   public void resetStatistics()
+   {
+      for (DispatchList list : listeners_.values())
+      {
+         list.statistics.reset();
+      }
+      executor.resetStatistics();
+      for (KernelExecutor eventExecutor : executors.values())
+      {
+         eventExecutor.resetStatistics();
+      }
+   }
+
+   /**
+    * The immutable list of listeners to notify when a given event is broadcasted, it is replaced
+    * by a new instance any time a listener is added
+    */
+   private static class DispatchList
+   {
+      /** . */
+      private final Listener[] listeners;
+
+      /** . */
+      private final DispatchStatistics statistics;
+
+      DispatchList(Listener[] listeners, DispatchStatistics statistics)
+      {
+         this.listeners = listeners;
+         this.statistics = statistics;
+      }
+
+      /**
+       * Creates a new list with the same statistics made of all the listeners of this list
+       * followed by the given listener
+       */
+      DispatchList add(Listener listener)
+      {
+         Listener[] result = new Listener[listeners.length + 1];
+         System.arraycopy(listeners, 0, result, 0, listeners.length);
+         result[listeners.length] = listener;
+         return new DispatchList(result, statistics);
+      }
+   }
+
+   /**
+    * The dispatch statistics of a given event
+    */
+   private static class DispatchStatistics
+   {
+      /** . */
+      private final AtomicLong count = new AtomicLong();
+
+      /** . */
+      private final AtomicLong total = new AtomicLong();
+
+      /** . */
+      private final AtomicLong max = new AtomicLong();
+
+      void dispatched(long time)
+      {
+         count.incrementAndGet();
+         total.addAndGet(time);
+         long current;
+         while (time > (current = max.get()) && !max.compareAndSet(current, time));
+      }
+
+      void reset()
+      {
+         count.set(0);
+         total.set(0);
+         max.set(0);
+      }
    }
 
    /**
@@ -232,9 +497,17 @@ public class ListenerService
    {
       private Listener<S, D> listener;
 
+      private final Executor listenerExecutor;
+
       public AsynchronousListener(Listener<S, D> listener)
+      {
+         this(listener, executor);
+      }
+
+      AsynchronousListener(Listener<S, D> listener, Executor listenerExecutor)
       {
          this.listener = listener;
+         this.listenerExecutor = listenerExecutor;
       }
 
       @Override
@@ -264,7 +537,7 @@ public class ListenerService
       @Override
       public void onEvent(Event<S, D> event) throws Exception
       {
-         executor.execute(new RunListener<S, D>(listener, event));
+         listenerExecutor.execute(new RunListener<S, D>(listener, event));
       }
    }
 
@@ -277,14 +550,13 @@ public class ListenerService
 
       private Event<S, D> event;
       
-      private final ThreadContextHandler handler;
+      private final ContextSnapshot snapshot;
 
       public RunListener(Listener<S, D> listener, Event<S, D> event)
       {
          this.listener = listener;
          this.event = event;
-         this.handler = new ThreadContextHandler(container);
-         handler.store();
+         this.snapshot = ContextSnapshot.capture(container);
       }
 
       /**
@@ -294,17 +566,14 @@ public class ListenerService
       {
          try
          {
-            SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+            snapshot.call(new Callable<Void>()
             {
-               public Void run()
+               public Void call() throws Exception
                {
-                  ExoContainerContext.setCurrentContainer(container);
+                  listener.onEvent(event);
                   return null;
                }
             });
-            RequestLifeCycle.begin(container);
-            handler.push();
-            listener.onEvent(event);
          }
          catch (Exception e)
          {
@@ -312,25 +581,6 @@ public class ListenerService
             // Must say that exception will be ignored even in synchronous events.
             LOG.error("Exception on broadcasting events occurs: " + e.getMessage(), e);
          }
-         finally
-         {
-            try
-            {
-               handler.restore();
-               RequestLifeCycle.end();
-            }
-            finally
-            {
-               SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
-               {
-                  public Void run()
-                  {
-                     ExoContainerContext.setCurrentContainer(null);
-                     return null;
-                  }
-               });
-            }
-         }
       }
    }
 }
@@ -18,6 +18,7 @@
  */
 package org.exoplatform.services.mail;
 
+import java.util.Collection;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
@@ -74,6 +75,14 @@ public interface MailService
     */
    public void sendMessage(MimeMessage message) throws Exception;
 
+   /**
+    * Sends several mail messages based on {@link Message} instances over the same connection to the
+    * mail server. The messages are all sent even if some of them cannot be sent.
+    * @param messages - the {@link Message} instances to send
+    * @throws Exception is thrown if at least one message could not be sent
+    */
+   public void sendMessages(Collection<Message> messages) throws Exception;
+
    /**
     * Asynchronous variant of {@link MailService#sendMessage(String, String, String, String)}. 
     * Returns {@link Future} object, which allows to track mail sending result. Calling {@link Future#get()}
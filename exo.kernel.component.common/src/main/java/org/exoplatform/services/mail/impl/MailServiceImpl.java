@@ -23,22 +23,28 @@ import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.services.executor.ExecutorSettings;
+import org.exoplatform.services.executor.KernelExecutor;
+import org.exoplatform.services.executor.KernelExecutorService;
+import org.exoplatform.services.executor.impl.KernelExecutorServiceImpl;
 import org.exoplatform.services.mail.Attachment;
 import org.exoplatform.services.mail.MailService;
 import org.exoplatform.services.mail.Message;
+import org.picocontainer.Startable;
 
 import java.io.InputStream;
+import java.lang.reflect.Field;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
 
 import javax.activation.DataHandler;
+import javax.mail.MessagingException;
 import javax.mail.Part;
 import javax.mail.Session;
 import javax.mail.Transport;
@@ -57,10 +63,22 @@ import javax.mail.util.ByteArrayDataSource;
  * Note: To be able to send mails you must provide active SMTP server and
  * mention it in service configuration. 
  * <p>
+ * The mails are sent asynchronously thanks to the executor named <i>MailService</i> provided by the
+ * {@link KernelExecutorService} if it is available, the property <i>mail.max.thread.number</i> is used
+ * as pool size unless another value is defined in the {@link KernelExecutorService}. The queue of this
+ * executor is unbounded unless a queue size is defined in the {@link KernelExecutorService}.
+ * <p>
+ * The messages are sent over connected transports kept in a pool in order to avoid connecting to the
+ * mail server for each message. The property <i>mail.transport.pool.size</i> defines the maximum amount of
+ * idle transports, by default it is the pool size of the executor and 0 disables the pool. The property
+ * <i>mail.transport.pool.idle.timeout</i> defines the time in milliseconds after which an idle transport is
+ * closed, by default 60 seconds. The pooled transports are created from the mail session of the service,
+ * so the {@link MimeMessage} instances created from another mail session are sent without pool.
+ * <p>
  * Created by The eXo Platform SAS Author : Phung Hai Nam phunghainam@gmail.com
  * Dec 23, 2005
  */
-public class MailServiceImpl implements MailService
+public class MailServiceImpl implements MailService, Startable
 {
    /**
     * String mapping of configuration parameter to define maximal number
@@ -68,6 +86,49 @@ public class MailServiceImpl implements MailService
     */
    static final String MAX_THREAD_NUMBER = "mail.max.thread.number";
 
+   /**
+    * The name of the executor used for asynchronous mail message sending
+    */
+   public static final String EXECUTOR_NAME = "MailService";
+
+   /**
+    * String mapping of configuration parameter to define the maximal number
+    * of idle transports kept in the pool
+    */
+   static final String TRANSPORT_POOL_SIZE = "mail.transport.pool.size";
+
+   /**
+    * String mapping of configuration parameter to define the time in milliseconds
+    * after which an idle transport is closed
+    */
+   static final String TRANSPORT_IDLE_TIMEOUT = "mail.transport.pool.idle.timeout";
+
+   /**
+    * The default time in milliseconds after which an idle transport is closed
+    */
+   static final long DEFAULT_TRANSPORT_IDLE_TIMEOUT = 60000;
+
+   /**
+    * The field of a message that contains its mail session, javax.mail does not provide any
+    * getter for it, <code>null</code> if it cannot be accessed
+    */
+   private static final Field SESSION_FIELD = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Field>()
+   {
+      public Field run()
+      {
+         try
+         {
+            Field field = javax.mail.Message.class.getDeclaredField("session");
+            field.setAccessible(true);
+            return field;
+         }
+         catch (Exception e)
+         {
+            return null;
+         }
+      }
+   });
+
    private Session mailSession_;
 
    private Properties props_;
@@ -75,15 +136,20 @@ public class MailServiceImpl implements MailService
    /**
     * Provides thread pool routines for asynchronous mail message sending
     */
-   private ExecutorService executorService;
+   private KernelExecutor executorService;
 
    /**
-    * Track current threads number used for asynchronouys mail send
-    * to set explicit thread names.
+    * The pool of connected transports, <code>null</code> if disabled
     */
-   private volatile int mailServiceThreadCounter = 0;
+   private final TransportPool transportPool;
+
+   public MailServiceImpl(InitParams params, ExoContainerContext ctx) throws Exception
+   {
+      this(params, ctx, null);
+   }
 
-   public MailServiceImpl(InitParams params, final ExoContainerContext ctx) throws Exception
+   public MailServiceImpl(InitParams params, ExoContainerContext ctx, KernelExecutorService kernelExecutorService)
+      throws Exception
    {
       props_ = new Properties(PrivilegedSystemHelper.getProperties());
       props_.putAll(params.getPropertiesParam("config").getProperties());
@@ -110,17 +176,22 @@ public class MailServiceImpl implements MailService
             }
          });
       }
-      int threadNumber =
+      Integer threadNumber =
          props_.getProperty(MAX_THREAD_NUMBER) != null ? Integer.valueOf(props_.getProperty(MAX_THREAD_NUMBER))
-            : Runtime.getRuntime().availableProcessors();
-
-      executorService = Executors.newFixedThreadPool(threadNumber, new ThreadFactory()
+            : null;
+      if (kernelExecutorService == null)
       {
-         public Thread newThread(Runnable arg0)
-         {
-            return new Thread(arg0, ctx.getName() + "-MailServiceThread-" + mailServiceThreadCounter++);
-         }
-      });
+         kernelExecutorService = new KernelExecutorServiceImpl();
+      }
+      executorService =
+         kernelExecutorService.getExecutor(EXECUTOR_NAME, new ExecutorSettings(threadNumber, 0, null, null));
+      int poolSize =
+         props_.getProperty(TRANSPORT_POOL_SIZE) != null ? Integer.valueOf(props_.getProperty(TRANSPORT_POOL_SIZE))
+            : executorService.getSettings().getPoolSize();
+      long idleTimeout =
+         props_.getProperty(TRANSPORT_IDLE_TIMEOUT) != null
+            ? Long.valueOf(props_.getProperty(TRANSPORT_IDLE_TIMEOUT)) : DEFAULT_TRANSPORT_IDLE_TIMEOUT;
+      transportPool = poolSize > 0 ? new TransportPool(mailSession_, poolSize, idleTimeout) : null;
    }
 
    /**
@@ -156,6 +227,46 @@ public class MailServiceImpl implements MailService
     * {@inheritDoc}
     */
    public void sendMessage(Message message) throws Exception
+   {
+      sendMessage(createMimeMessage(message));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void sendMessages(Collection<Message> messages) throws Exception
+   {
+      List<MessagingException> failures = new ArrayList<MessagingException>();
+      List<MimeMessage> mimeMessages = new ArrayList<MimeMessage>(messages.size());
+      for (Message message : messages)
+      {
+         try
+         {
+            mimeMessages.add(createMimeMessage(message));
+         }
+         catch (MessagingException e)
+         {
+            failures.add(e);
+         }
+         catch (Exception e)
+         {
+            // Typically an attachment that cannot be read, the other messages are sent anyway
+            failures.add(new MessagingException("Could not create the message '" + message.getSubject() + "'", e));
+         }
+      }
+      // Without pool, a transport is created for this batch only
+      TransportPool pool = transportPool == null ? new TransportPool(mailSession_, 0, 0) : transportPool;
+      pool.send(mimeMessages, failures);
+      if (!failures.isEmpty())
+      {
+         throw TransportPool.createException(failures, messages.size());
+      }
+   }
+
+   /**
+    * Creates the {@link MimeMessage} corresponding to the given {@link Message}
+    */
+   protected MimeMessage createMimeMessage(Message message) throws Exception
    {
       MimeMessage mimeMessage = new MimeMessage(getMailSession());
       String FROM = message.getFrom();
@@ -240,7 +351,7 @@ public class MailServiceImpl implements MailService
          else
             mimeMessage.setContent(body, "text/html; charset=utf-8");
       }
-      sendMessage(mimeMessage);
+      return mimeMessage;
    }
 
    /**
@@ -248,7 +359,14 @@ public class MailServiceImpl implements MailService
     */
    public void sendMessage(MimeMessage message) throws Exception
    {
-      Transport.send(message);
+      if (transportPool == null || !isCreatedFromMailSession(message))
+      {
+         Transport.send(message);
+      }
+      else
+      {
+         transportPool.send(message);
+      }
    }
 
    /**
@@ -297,6 +415,43 @@ public class MailServiceImpl implements MailService
       });
    }
 
+   /**
+    * Indicates whether the given message has been created from the mail session of the service
+    */
+   private boolean isCreatedFromMailSession(MimeMessage message)
+   {
+      if (SESSION_FIELD == null)
+      {
+         return false;
+      }
+      try
+      {
+         return SESSION_FIELD.get(message) == mailSession_;
+      }
+      catch (IllegalAccessException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void start()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void stop()
+   {
+      if (transportPool != null)
+      {
+         transportPool.close();
+      }
+   }
+
    protected String[] getArrs(String toArray)
    {
       if (toArray != null && !toArray.equals(""))
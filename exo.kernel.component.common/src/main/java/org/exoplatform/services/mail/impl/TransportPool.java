@@ -0,0 +1,376 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.mail.impl;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+/**
+ * A pool of connected {@link Transport} instances of a given mail session, it allows to send
+ * several messages over the same connection instead of connecting to the mail server for each message
+ * like {@link Transport#send(Message)} does. A transport is checked before being reused and it is
+ * closed once it has been idle for too long.
+ *
+ * @version $Id$
+ */
+class TransportPool
+{
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.TransportPool");
+
+   /** . */
+   private final Session session;
+
+   /**
+    * The maximum amount of idle transports
+    */
+   private final int maxIdle;
+
+   /**
+    * The maximum amount of time in milliseconds during which a transport can remain idle
+    */
+   private final long idleTimeout;
+
+   /**
+    * The idle transports, the most recently used first
+    */
+   private final Deque<PooledTransport> idle = new ArrayDeque<PooledTransport>();
+
+   /**
+    * The timer used to close the transports that have been idle for too long
+    */
+   private final Timer evictor;
+
+   /** . */
+   private boolean closed;
+
+   /**
+    * @param session the mail session from which the transports are created
+    * @param maxIdle the maximum amount of idle transports
+    * @param idleTimeout the maximum amount of time in milliseconds during which a transport can remain idle,
+    * a value lower or equal to 0 means that the idle transports are never closed
+    */
+   TransportPool(Session session, int maxIdle, long idleTimeout)
+   {
+      this.session = session;
+      this.maxIdle = maxIdle;
+      this.idleTimeout = idleTimeout;
+      if (idleTimeout > 0)
+      {
+         this.evictor = new Timer("MailService-TransportEvictor", true);
+         evictor.schedule(new TimerTask()
+         {
+            @Override
+            public void run()
+            {
+               evictIdle();
+            }
+         }, idleTimeout, idleTimeout);
+      }
+      else
+      {
+         this.evictor = null;
+      }
+   }
+
+   /**
+    * Sends the given message over a pooled transport
+    * @param message the message to send
+    * @throws MessagingException if the message could not be sent
+    */
+   void send(Message message) throws MessagingException
+   {
+      PooledTransport transport = borrow();
+      try
+      {
+         transport.send(message);
+      }
+      finally
+      {
+         release(transport);
+      }
+   }
+
+   /**
+    * Sends all the given messages over the same transport as long as it remains connected. If some
+    * messages cannot be sent, the other messages are sent anyway, then a {@link MessagingException} is
+    * thrown, the cause of each failure can be retrieved thanks to {@link MessagingException#getNextException()}.
+    * @param messages the messages to send
+    * @throws MessagingException if at least one message could not be sent
+    */
+   void send(Collection<? extends Message> messages) throws MessagingException
+   {
+      List<MessagingException> failures = new ArrayList<MessagingException>();
+      send(messages, failures);
+      if (!failures.isEmpty())
+      {
+         throw createException(failures, messages.size());
+      }
+   }
+
+   /**
+    * Sends all the given messages over the same transport as long as it remains connected. If some
+    * messages cannot be sent, the other messages are sent anyway unless no connection can be established.
+    * @param messages the messages to send
+    * @param failures the list to which the cause of the failure of each message that could not be sent
+    * is added
+    */
+   void send(Collection<? extends Message> messages, List<MessagingException> failures)
+   {
+      PooledTransport transport = null;
+      try
+      {
+         int remaining = messages.size();
+         for (Message message : messages)
+         {
+            if (transport == null)
+            {
+               try
+               {
+                  transport = borrow();
+               }
+               catch (MessagingException e)
+               {
+                  // No need to try the next messages
+                  for (int i = 0; i < remaining; i++)
+                  {
+                     failures.add(e);
+                  }
+                  break;
+               }
+            }
+            remaining--;
+            try
+            {
+               transport.send(message);
+            }
+            catch (MessagingException e)
+            {
+               failures.add(e);
+               if (!(e instanceof SendFailedException))
+               {
+                  // The connection may be broken, it will be checked before being reused
+                  release(transport);
+                  transport = null;
+               }
+            }
+         }
+      }
+      finally
+      {
+         if (transport != null)
+         {
+            release(transport);
+         }
+      }
+   }
+
+   /**
+    * Creates the exception to throw when some messages could not be sent
+    * @param failures the cause of the failure of each message that could not be sent
+    * @param total the total amount of messages
+    */
+   static MessagingException createException(List<MessagingException> failures, int total)
+   {
+      MessagingException e = new MessagingException(failures.size() + " of " + total + " messages could not be sent");
+      MessagingException last = null;
+      for (MessagingException failure : failures)
+      {
+         if (failure != last)
+         {
+            e.setNextException(failure);
+            last = failure;
+         }
+      }
+      return e;
+   }
+
+   /**
+    * Gives a connected transport, an idle transport is reused if it is still connected otherwise
+    * a new one is created
+    */
+   PooledTransport borrow() throws MessagingException
+   {
+      for (;;)
+      {
+         PooledTransport transport;
+         synchronized (this)
+         {
+            transport = idle.pollFirst();
+         }
+         if (transport == null)
+         {
+            break;
+         }
+         // Health check, the SMTP transport sends a NOOP command
+         if (transport.transport.isConnected())
+         {
+            return transport;
+         }
+         transport.close();
+      }
+      Transport transport = session.getTransport(getProtocol());
+      transport.connect();
+      return new PooledTransport(transport);
+   }
+
+   /**
+    * Gives back a transport to the pool, it is closed if the pool is full or closed
+    */
+   void release(PooledTransport transport)
+   {
+      transport.lastUsed = System.currentTimeMillis();
+      synchronized (this)
+      {
+         if (!closed && idle.size() < maxIdle)
+         {
+            idle.offerFirst(transport);
+            return;
+         }
+      }
+      transport.close();
+   }
+
+   /**
+    * Closes the transports that have been idle for too long
+    */
+   void evictIdle()
+   {
+      long limit = System.currentTimeMillis() - idleTimeout;
+      Deque<PooledTransport> evicted = new ArrayDeque<PooledTransport>();
+      synchronized (this)
+      {
+         for (Iterator<PooledTransport> it = idle.descendingIterator(); it.hasNext();)
+         {
+            PooledTransport transport = it.next();
+            if (transport.lastUsed > limit)
+            {
+               break;
+            }
+            it.remove();
+            evicted.add(transport);
+         }
+      }
+      for (PooledTransport transport : evicted)
+      {
+         transport.close();
+      }
+   }
+
+   /**
+    * @return the total amount of idle transports
+    */
+   synchronized int getIdleCount()
+   {
+      return idle.size();
+   }
+
+   /**
+    * Closes all the idle transports, the transports in use are closed once released
+    */
+   void close()
+   {
+      if (evictor != null)
+      {
+         evictor.cancel();
+      }
+      Deque<PooledTransport> transports;
+      synchronized (this)
+      {
+         closed = true;
+         transports = new ArrayDeque<PooledTransport>(idle);
+         idle.clear();
+      }
+      for (PooledTransport transport : transports)
+      {
+         transport.close();
+      }
+   }
+
+   private String getProtocol()
+   {
+      String protocol = session.getProperty("mail.transport.protocol");
+      return protocol == null ? "smtp" : protocol;
+   }
+
+   /**
+    * A connected transport with the last time it was used
+    */
+   static class PooledTransport
+   {
+      /** . */
+      final Transport transport;
+
+      /** . */
+      long lastUsed;
+
+      PooledTransport(Transport transport)
+      {
+         this.transport = transport;
+         this.lastUsed = System.currentTimeMillis();
+      }
+
+      /**
+       * Sends the given message, like {@link Transport#send(Message)} but without connecting
+       */
+      void send(Message message) throws MessagingException
+      {
+         message.saveChanges();
+         Address[] addresses = message.getAllRecipients();
+         if (addresses == null || addresses.length == 0)
+         {
+            throw new SendFailedException("No recipient addresses");
+         }
+         transport.sendMessage(message, addresses);
+      }
+
+      void close()
+      {
+         try
+         {
+            transport.close();
+         }
+         catch (MessagingException e)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Could not close the transport: " + e.getMessage());
+            }
+         }
+      }
+   }
+}
@@ -20,6 +20,7 @@ package org.exoplatform.services.rpc;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * This service provides mechanism to communicate with the other cluster nodes. This service will
@@ -35,6 +36,16 @@ public interface RPCService
     */
    public static final RuntimePermission ACCESS_RPC_SERVICE_PERMISSION = new RuntimePermission("accessRPCService");
 
+   /**
+    * The amount of expected responses to use to wait for the responses of all the cluster nodes
+    */
+   public static final int ALL_RESPONSES = 0;
+
+   /**
+    * The amount of expected responses to use to wait for the first response only
+    */
+   public static final int ANY_RESPONSE = 1;
+
    /**
     * Executes a command on all the cluster nodes. This method is equivalent to the other method of the
     * same type but with the default timeout. The command must be registered first otherwise an 
@@ -105,6 +116,52 @@ public interface RPCService
    Object executeCommandOnCoordinator(RemoteCommand command, long timeout, Serializable... args) throws RPCException,
       SecurityException;
 
+   /**
+    * Executes a command asynchronously on all the cluster nodes. The method returns as soon as the
+    * command has been sent, the returned {@link Future} is completed as soon as the expected amount of
+    * responses have been received, all the targeted nodes have answered or the timeout is reached. The
+    * command must be registered first otherwise an {@link RPCException} will be thrown.
+    *
+    * @param command The command to execute on each cluster node
+    * @param expectedResponses the amount of responses to wait for, {@link #ALL_RESPONSES} to wait for
+    * the responses of all the cluster nodes, {@link #ANY_RESPONSE} to wait for the first response only
+    * @param timeout a timeout after which the missing responses will be replaced with a replication exception,
+    * 0 means no timeout.
+    * @param args an array of {@link Serializable} objects corresponding to parameters of the command 
+    * to execute remotely
+    * @return a future giving the list of responses in the order of the members of the cluster. If the expected
+    * amount of responses is lower than the total amount of members, only the responses received so far are
+    * provided. If we met an exception on a given node, the RPCException will be the corresponding response of this
+    * particular node
+    * @throws RPCException in the event of problems.
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   Future<List<Object>> executeCommandOnAllNodesAsync(RemoteCommand command, int expectedResponses, long timeout,
+      Serializable... args) throws RPCException, SecurityException;
+
+   /**
+    * Executes a command asynchronously on the coordinator only. The method returns as soon as the
+    * command has been sent, the returned {@link Future} is completed as soon as the coordinator has answered
+    * or the timeout is reached. Unlike the synchronous methods, the command is not relaunched if the coordinator
+    * leaves the cluster, it is up to the caller to retry. The command must be registered first otherwise an 
+    * {@link RPCException} will be thrown.
+    *
+    * @param command The command to execute on the coordinator node
+    * @param timeout a timeout after which the future will be completed with a replication exception,
+    * 0 means no timeout.
+    * @param args an array of {@link Serializable} objects corresponding to parameters of the command 
+    * to execute remotely
+    * @return a future giving the response of the coordinator. If the coordinator met an exception, the
+    * {@link java.util.concurrent.ExecutionException} thrown by the future will be caused by the corresponding
+    * RPCException
+    * @throws RPCException in the event of problems.
+    * @throws SecurityException if the {@link SecurityManager} is installed and the call method
+    * doesn't have the {@link RuntimePermission} <code>ACCESS_RPC_SERVICE_PERMISSION</code>
+    */
+   Future<Object> executeCommandOnCoordinatorAsync(RemoteCommand command, long timeout, Serializable... args)
+      throws RPCException, SecurityException;
+
    /**
     * Register a new {@link RemoteCommand} instance, it will be mapped to its id. If a command with the
     * same Id has already been registered, a warning will be printed into the log file and the new
@@ -18,14 +18,21 @@
  */
 package org.exoplatform.services.rpc.impl;
 
+import org.exoplatform.commons.utils.ClassLoading;
 import org.exoplatform.commons.utils.PropertyManager;
 import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
 import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rpc.RPCException;
 import org.exoplatform.services.rpc.RPCService;
@@ -39,6 +46,7 @@ import org.jgroups.Message;
 import org.jgroups.View;
 import org.jgroups.blocks.MessageDispatcher;
 import org.jgroups.blocks.RequestHandler;
+import org.jgroups.blocks.RspFilter;
 import org.jgroups.conf.ConfiguratorFactory;
 import org.jgroups.conf.ProtocolStackConfigurator;
 import org.jgroups.util.Rsp;
@@ -57,20 +65,46 @@ import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class is a basic implementation of the {@link RPCService}, it is mainly based on the
  * {@link MessageDispatcher} of JGroups. This implementation is not designed to give 
  * the best possible performances, it only aims to give a way to communicate with other nodes.
+ * <p>
+ * By default, the commands are executed by the thread that delivers the message, an execution policy
+ * can be defined per command thanks to a properties-param whose name is <i>command-policy.</i> followed
+ * by the id of the command and whose supported properties are <i>policy</i> (<i>inline</i>, <i>shared</i>
+ * or <i>dedicated</i>), <i>pool-size</i> and <i>queue-size</i> for a dedicated pool and <i>oob</i> to
+ * send the messages of the command out of band. Only the order-insensitive commands should be executed
+ * by a pool of threads or sent out of band.
+ * When a synchronous command is executed by a pool of threads, the implementations that support the
+ * asynchronous handling of the requests (JGroups 3) send the result from the thread of the pool, otherwise
+ * the thread that delivers the message waits for the end of the command.
  * 
  * @author <a href="mailto:nicolas.filotto@exoplatform.com">Nicolas Filotto</a>
  * @version $Id$
  */
+@Managed
+@NameTemplate(@Property(key = "service", value = "RPCService"))
+@ManagedDescription("The service that executes commands on the cluster nodes")
 public abstract class AbstractRPCService implements RPCService, Startable, RequestHandler, MembershipListener
 {
 
@@ -104,6 +138,75 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     */
    protected static final String PARAM_RETRY_TIMEOUT = "retry-timeout";
    
+   /**
+    * The name of the parameter for the codec of the messages, the value can be <i>compact</i> or the
+    * FQN of an implementation of {@link MessageBodyCodec}. If not set, the messages are serialized
+    * using the Java serialization.
+    */
+   protected static final String PARAM_MESSAGE_CODEC = "message-codec";
+
+   /**
+    * The name of the parameter for the maximum amount of time in milliseconds during which an asynchronous
+    * command sent to all the cluster nodes can be delayed in order to be sent with other commands within
+    * the same message. The batching is disabled if not set. The pending batch is always sent before any
+    * other command, such that the commands of a given node are still received in the order in which they
+    * have been sent. If a batch could not be sent, the failure is reported to the next caller.
+    */
+   protected static final String PARAM_BATCH_DELAY = "async-batch-delay";
+
+   /**
+    * The name of the parameter for the maximum amount of asynchronous commands that can be sent within the
+    * same message
+    */
+   protected static final String PARAM_BATCH_SIZE = "async-batch-size";
+
+   /**
+    * The name of the parameter for the execution policy of the commands for which no policy has been
+    * defined, the value can be <i>inline</i> (default value) or <i>shared</i>
+    */
+   protected static final String PARAM_DEFAULT_COMMAND_POLICY = "default-command-policy";
+
+   /**
+    * The name of the parameter for the total amount of threads of the pool shared by the commands
+    */
+   protected static final String PARAM_COMMAND_POOL_SIZE = "command-pool-size";
+
+   /**
+    * The name of the parameter for the maximum amount of pending commands of the pool shared by the commands,
+    * a value lower or equal to 0 means unbounded
+    */
+   protected static final String PARAM_COMMAND_QUEUE_SIZE = "command-queue-size";
+
+   /**
+    * The prefix of the name of the properties-params defining the execution policy of a command
+    */
+   public static final String COMMAND_POLICY_PARAM_PREFIX = "command-policy.";
+
+   /**
+    * The value of the default total amount of threads of the pool shared by the commands
+    */
+   protected static final int DEFAULT_COMMAND_POOL_SIZE = 10;
+
+   /**
+    * The value of the default maximum amount of pending commands per pool
+    */
+   protected static final int DEFAULT_COMMAND_QUEUE_SIZE = 1000;
+
+   /**
+    * The value of the parameter <code>PARAM_MESSAGE_CODEC</code> corresponding to the {@link CompactMessageBodyCodec}
+    */
+   protected static final String COMPACT_MESSAGE_CODEC = "compact";
+
+   /**
+    * The value of the default maximum amount of commands per batch
+    */
+   protected static final int DEFAULT_BATCH_SIZE = 100;
+
+   /**
+    * The id of the internal command used to send a batch of commands
+    */
+   private static final String BATCH_COMMAND_ID = "org.exoplatform.services.rpc.impl.AbstractRPCService-batch";
+
    /**
     * The value of the default timeout
     */
@@ -168,6 +271,67 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     * Indicates whether the failover capabilities are enabled
     */
    private boolean allowFailover = true;
+
+   /**
+    * The codec of the messages, <code>null</code> if the messages are serialized using the Java serialization
+    */
+   private final MessageBodyCodec codec;
+
+   /**
+    * The indexes of the commands, only used when a codec has been defined
+    */
+   private final CommandIndexes commandIndexes;
+
+   /**
+    * The command used to get the index of a command from the coordinator
+    */
+   private final RemoteCommand assignIndexCommand;
+
+   /**
+    * The command used to broadcast the definition of an index
+    */
+   private final RemoteCommand defineIndexCommand;
+
+   /**
+    * The command used to get all the definitions known by the coordinator
+    */
+   private final RemoteCommand getIndexesCommand;
+
+   /**
+    * The executor used to request the indexes of the commands, only used when a codec has been defined
+    */
+   private ExecutorService indexRequester;
+
+   /**
+    * The maximum amount of time in milliseconds during which an asynchronous command can be delayed,
+    * 0 if the batching is disabled
+    */
+   private long batchDelay;
+
+   /**
+    * The maximum amount of commands per batch
+    */
+   private int batchSize = DEFAULT_BATCH_SIZE;
+
+   /**
+    * The object used to coalesce the asynchronous commands, <code>null</code> if the batching is disabled
+    */
+   private volatile CommandBatcher batcher;
+
+   /**
+    * The execution policies of the commands, by command id
+    */
+   private final ConcurrentMap<String, CommandPolicy> policies = new ConcurrentHashMap<String, CommandPolicy>();
+
+   /**
+    * The execution policy of the commands for which no policy has been defined
+    */
+   private final String defaultPolicy;
+
+   /**
+    * The pool of threads shared by the commands, <code>null</code> if no command uses it
+    */
+   private final ThreadPoolExecutor sharedExecutor;
    
    /**
     * The dispatcher used to launch the command of the cluster nodes
@@ -265,6 +429,50 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
             LOG.debug("The retry timeout of the RPCServiceImpl has been set to " + retryTimeout);
          }
       }
+      this.codec = getCodec(params);
+      if (codec == null)
+      {
+         this.commandIndexes = null;
+         this.assignIndexCommand = null;
+         this.defineIndexCommand = null;
+         this.getIndexesCommand = null;
+      }
+      else
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The codec of the RPCServiceImpl has been set to " + codec.getClass().getName());
+         }
+         this.commandIndexes = new CommandIndexes();
+         this.assignIndexCommand = registerCommand(new AssignIndexCommand());
+         this.defineIndexCommand = registerCommand(new DefineIndexCommand());
+         this.getIndexesCommand = registerCommand(new GetIndexesCommand());
+      }
+      String sBatchDelay = getValueParam(params, PARAM_BATCH_DELAY);
+      if (sBatchDelay != null)
+      {
+         batchDelay = Long.parseLong(sBatchDelay);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The batch delay of the RPCServiceImpl has been set to " + batchDelay);
+         }
+      }
+      String sBatchSize = getValueParam(params, PARAM_BATCH_SIZE);
+      if (sBatchSize != null)
+      {
+         batchSize = Integer.parseInt(sBatchSize);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The batch size of the RPCServiceImpl has been set to " + batchSize);
+         }
+      }
+      String sDefaultPolicy = getValueParam(params, PARAM_DEFAULT_COMMAND_POLICY);
+      this.defaultPolicy = sDefaultPolicy == null ? CommandPolicy.POLICY_INLINE : sDefaultPolicy.trim();
+      if (!CommandPolicy.POLICY_INLINE.equals(defaultPolicy) && !CommandPolicy.POLICY_SHARED.equals(defaultPolicy))
+      {
+         throw new IllegalArgumentException("Unknown default command policy " + defaultPolicy);
+      }
+      this.sharedExecutor = createCommandPolicies(params);
       this.state = State.INITIALIZED;
    }
 
@@ -304,6 +512,12 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
    protected List<Object> executeCommandOnAllNodesMain(RemoteCommand command, boolean synchronous, long timeout,
       Serializable... args) throws RPCException
    {
+      CommandBatcher batcher = this.batcher;
+      if (!synchronous && batcher != null)
+      {
+         batcher.add(createMessageBody(members, command, false, args));
+         return Collections.emptyList();
+      }
       return excecuteCommand(members, command, synchronous, timeout, args);
    }
 
@@ -381,6 +595,26 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       return result;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Future<List<Object>> executeCommandOnAllNodesAsync(RemoteCommand command, int expectedResponses,
+      long timeout, Serializable... args) throws RPCException
+   {
+      return excecuteCommandAsync(members, command, expectedResponses, timeout, args);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Future<Object> executeCommandOnCoordinatorAsync(RemoteCommand command, long timeout, Serializable... args)
+      throws RPCException
+   {
+      Vector<Address> v = new Vector<Address>(1);
+      v.add(coordinator);
+      return new CoordinatorResponseFuture(excecuteCommandAsync(v, command, ALL_RESPONSES, timeout, args));
+   }
+
    /**
     * Execute the command on all the nodes corresponding to the list of destinations.
     * @param dests the list of members on which the command needs to be executed
@@ -395,23 +629,9 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
    protected List<Object> excecuteCommand(final List<Address> dests, RemoteCommand command,
       final boolean synchronous, final long timeout, Serializable... args) throws RPCException
    {
-      SecurityManager security = System.getSecurityManager();
-      if (security != null)
-      {
-         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
-      }
-      if (state != State.STARTED)
-      {
-         throw new RPCException(
-            "Cannot execute any commands if the service is not started, the current state of the service is " + state);
-      }
+      flushBatch();
       final String commandId = command.getId();
-      if (commands.get(commandId) != command)
-      {
-         throw new RPCException("Command " + commandId + " unknown, please register your command first");
-      }
-      final Message msg = new Message();
-      setObject(msg, new MessageBody(dests.size() == 1 && dests != members ? dests.get(0) : null, commandId, args)); //NOSONAR
+      final Message msg = createMessage(dests, command, synchronous, args);
       RspList rsps = SecurityHelper.doPrivilegedAction(new PrivilegedAction<RspList>()
       {
          public RspList run()
@@ -441,164 +661,565 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       List<Object> retval = new ArrayList<Object>(rsps.size());
       for (Address dest : dests)
       {
-         Rsp rsp = rsps.get(dest);
-         if (rsp == null || (rsp.wasSuspected() && !rsp.wasReceived()))
-         {
-            // The corresponding member has left
-            retval.add(new MemberHasLeftException("No response for the member " + dest
-               + ", this member has probably left the cluster."));
-         }
-         else if (!rsp.wasReceived())
-         {
-            retval.add(new RPCException("Replication timeout for " + rsp.getSender() + ", rsp=" + rsp));
-         }
-         else
-         {
-            Object value = rsp.getValue();
-            if (value instanceof RPCException)
-            {
-               // if we have any application-level exceptions make sure we throw them!!
-               if (LOG.isTraceEnabled())
-                  LOG.trace("Recieved exception'" + value + "' from " + rsp.getSender(), (RPCException)value);
-            }
-            retval.add(value);
-         }
+         retval.add(getResponse(dest, rsps.get(dest)));
       }
       return retval;
    }
 
    /**
-    * {@inheritDoc}
+    * Execute the command asynchronously on all the nodes corresponding to the list of destinations.
+    * @param dests the list of members on which the command needs to be executed
+    * @param command the command to execute
+    * @param expectedResponses the amount of responses to wait for, {@link RPCService#ALL_RESPONSES} to
+    * wait for all of them
+    * @param timeout a timeout after which the missing responses will be replaced with a replication exception,
+    * 0 means no timeout
+    * @param args the list of parameters
+    * @return the future that will be completed as the responses of the targeted members of the cluster arrive
+    * @throws RPCException in the event of problems.
     */
-   public Object handle(Message msg)
+   protected ResponseCollector excecuteCommandAsync(final List<Address> dests, RemoteCommand command,
+      int expectedResponses, final long timeout, Serializable... args) throws RPCException
    {
-      String commandId = null;
-      try
+      flushBatch();
+      final String commandId = command.getId();
+      final Message msg = createMessage(dests, command, true, args);
+      final ResponseCollector collector = new ResponseCollector(dests, expectedResponses);
+      Boolean sent = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Boolean>()
       {
-         // Ensure that the service is fully started before trying to execute any command
-         startSignal.await();
-         MessageBody body = (MessageBody)msg.getObject();
-         commandId = body.getCommandId();
-         if (!body.accept(getLocalAddress()))
+         public Boolean run()
          {
-            if (LOG.isTraceEnabled())
+            try
             {
-               LOG.trace("Command : " + commandId + " needs to be executed on the coordinator " +
-                     "only and the local node is not the coordinator, the command will be ignored");
+               castMessageAsync(dests, msg, collector, timeout);
+               return Boolean.TRUE;
             }
-            return null;
-         }
-         RemoteCommand command = getCommand(commandId);
-         if (command == null)
-         {
-            return new RPCException("Command " + commandId + " unkown, please register your command first");
-         }
-         Object execResult = command.execute(body.getArgs());
-         if (LOG.isTraceEnabled())
-         {
-            LOG.trace("Command : " + commandId + " executed, result is: " + execResult);
-         }
-         return execResult;
-      }
-      catch (Throwable x) //NOSONAR
-      {
-         if (LOG.isTraceEnabled())
-         {
-            LOG.trace("Problems invoking command.", x);
+            catch (Exception e)
+            {
+               LOG.error("Could not cast the message corresponding to the command " + commandId + ".", e);
+            }
+            return Boolean.FALSE;
          }
-         return new RPCException("Cannot execute the command " + (commandId == null ? "" : commandId), x);
-      }
-   }
-
-   /**
-    * {@inheritDoc}
-    */
-   public void block()
-   {
+      });
+      if (!sent)
+         throw new RPCException("Could not send the command " + commandId + ".");
+      return collector;
    }
 
    /**
-    * {@inheritDoc}
+    * Checks that the given command can be executed and creates the message to send to the given
+    * destinations
+    * @param dests the list of members on which the command needs to be executed
+    * @param command the command to execute
+    * @param synchronous indicates whether the responses are expected
+    * @param args the list of parameters
+    * @return the message to send
+    * @throws RPCException if the service is not started or the command has not been registered
     */
-   public void suspect(Address suspectedMbr)
+   private Message createMessage(List<Address> dests, RemoteCommand command, boolean synchronous,
+      Serializable... args) throws RPCException
    {
+      Message msg = createMessage(createMessageBody(dests, command, synchronous, args));
+      CommandPolicy policy = policies.get(command.getId());
+      if (policy != null && policy.isOOB())
+      {
+         setOOB(msg);
+      }
+      return msg;
    }
 
    /**
-    * {@inheritDoc}
+    * Checks that the given command can be executed and creates the body of the message to send to the
+    * given destinations
+    * @param dests the list of members on which the command needs to be executed
+    * @param command the command to execute
+    * @param synchronous indicates whether the responses are expected
+    * @param args the list of parameters
+    * @return the body of the message to send
+    * @throws RPCException if the service is not started or the command has not been registered
     */
-   public void viewAccepted(View view)
+   private MessageBody createMessageBody(List<Address> dests, RemoteCommand command, boolean synchronous,
+      Serializable... args) throws RPCException
    {
-      boolean coordinatorHasChanged;
-      synchronized (topologyChangeLock)
+      SecurityManager security = System.getSecurityManager();
+      if (security != null)
       {
-         this.members = getMembers(view);
-         Address currentCoordinator = coordinator;
-         this.coordinator = members != null && members.size() > 0 ? members.get(0) : null;
-         this.isCoordinator = coordinator != null && coordinator.equals(getLocalAddress());
-         coordinatorHasChanged = currentCoordinator != null && !currentCoordinator.equals(coordinator);
-         // Release all the nodes
-         topologyChangeLock.notifyAll();
+         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
       }
-      onTopologyChange(coordinatorHasChanged);
+      if (state != State.STARTED)
+      {
+         throw new RPCException(
+            "Cannot execute any commands if the service is not started, the current state of the service is " + state);
+      }
+      String commandId = command.getId();
+      if (commands.get(commandId) != command)
+      {
+         throw new RPCException("Command " + commandId + " unknown, please register your command first");
+      }
+      Address dest = dests.size() == 1 && dests != members ? dests.get(0) : null; //NOSONAR
+      return new MessageBody(dest == null ? 0 : dest.hashCode(), commandId, commandIndexes == null
+         ? CommandIndexes.NO_INDEX : getCommandIndex(command), args, !synchronous);
    }
 
    /**
-    * Called anytime the topology has changed, this method will notify all the listeners
-    * currently registered
-    * @param coordinatorHasChanged this parameter is set to <code>true</code> if the 
-    * coordinator has changed, <code>false</code> otherwise
+    * Creates the message corresponding to the given body
+    * @throws RPCException if the body could not be encoded
     */
-   private void onTopologyChange(boolean coordinatorHasChanged)
+   private Message createMessage(MessageBody body) throws RPCException
    {
-      TopologyChangeEvent event = new TopologyChangeEvent(coordinatorHasChanged, isCoordinator);
-      for (TopologyChangeListener listener : listeners)
+      Message msg = new Message();
+      if (codec == null)
+      {
+         setObject(msg, body);
+      }
+      else
       {
          try
          {
-            listener.onChange(event);
+            setBuffer(msg, codec.encode(body));
          }
-         catch (Exception e)
+         catch (IOException e)
          {
-            LOG.warn("An error occurs with the listener of type " + listener.getClass(), e);
+            throw new RPCException("Cannot encode the message of the command " + body.getCommandId(), e);
          }
       }
+      return msg;
    }
 
    /**
-    * {@inheritDoc}
+    * Reads the body of the given message
     */
-   public synchronized RemoteCommand registerCommand(RemoteCommand command)
+   private MessageBody readMessageBody(Message msg) throws IOException, ClassNotFoundException
    {
-      SecurityManager security = System.getSecurityManager();
-      if (security != null)
+      if (codec == null)
       {
-         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
+         return (MessageBody)msg.getObject();
       }
-      if (command != null)
+      return codec.decode(msg.getRawBuffer(), msg.getOffset(), msg.getLength());
+   }
+
+   /**
+    * Gives the index to use to send the given command. If no index has been requested yet for this command,
+    * an index is requested asynchronously such that the caller is never blocked, the id of the command is
+    * used in the meantime.
+    * @return the index of the command or {@link CommandIndexes#NO_INDEX} if the id of the command must be used
+    */
+   private int getCommandIndex(RemoteCommand command)
+   {
+      final String commandId = command.getId();
+      int index = commandIndexes.getIndex(commandId);
+      if (index != CommandIndexes.NO_INDEX || command == assignIndexCommand || command == defineIndexCommand
+         || command == getIndexesCommand)
       {
-         String commandId = command.getId();
-         if (commandId == null)
+         return index;
+      }
+      final int generation = commandIndexes.request(commandId);
+      if (generation != CommandIndexes.NO_INDEX)
+      {
+         try
          {
-            throw new IllegalArgumentException("The command Id cannot be null");
+            indexRequester.execute(new Runnable()
+            {
+               public void run()
+               {
+                  requestCommandIndex(commandId, generation);
+               }
+            });
          }
-         Map<String, RemoteCommand> tmpCommands = new HashMap<String, RemoteCommand>(this.commands);
-         RemoteCommand oldCommand = tmpCommands.put(commandId, command);
-         if (oldCommand != null && PropertyManager.isDevelopping())
+         catch (RejectedExecutionException e)
          {
-            LOG.warn("A command has already been registered with the id " + commandId
-               + ", this command will be replaced with the new one");
+            // The service is being stopped
+            commandIndexes.cancel(commandId, generation);
          }
-         this.commands = Collections.unmodifiableMap(tmpCommands);
-         return command;
       }
-      return null;
+      return CommandIndexes.NO_INDEX;
    }
 
    /**
-    * {@inheritDoc}
+    * Gets an index for the given command from the coordinator and broadcasts its definition to all the
+    * cluster nodes, the index is then confirmed unless the topology has changed in the meantime
+    * @param generation the generation returned by {@link CommandIndexes#request(String)}
     */
-   public synchronized void unregisterCommand(RemoteCommand command)
+   private void requestCommandIndex(String commandId, int generation)
+   {
+      try
+      {
+         Object result =
+            isCoordinator ? commandIndexes.assign(commandId) : executeCommandOnCoordinator(assignIndexCommand, true,
+               commandId);
+         if (result instanceof Integer)
+         {
+            List<Object> results =
+               excecuteCommand(members, defineIndexCommand, true, defaultTimeout, (Integer)result, commandId);
+            for (Object value : results)
+            {
+               if (value instanceof RPCException)
+               {
+                  throw (RPCException)value;
+               }
+            }
+            commandIndexes.confirm(commandId, (Integer)result, generation);
+            if (LOG.isTraceEnabled())
+            {
+               LOG.trace("The command " + commandId + " will now be identified by the index " + result);
+            }
+            return;
+         }
+      }
+      catch (Exception e)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("Could not get an index for the command " + commandId, e);
+         }
+      }
+      commandIndexes.cancel(commandId, generation);
+   }
+
+   /**
+    * Gives the id of the command of the given message body
+    * @return the id of the command or <code>null</code> if it could not be found
+    */
+   private String getCommandId(MessageBody body)
+   {
+      if (body.getCommandId() != null)
+      {
+         return body.getCommandId();
+      }
+      int index = body.getCommandIndex();
+      return commandIndexes == null ? null : commandIndexes.getCommandId(index);
+   }
+
+   /**
+    * Gets all the definitions of the command indexes from the coordinator
+    */
+   private void updateCommandIndexes()
+   {
+      try
+      {
+         Object result = executeCommandOnCoordinator(getIndexesCommand, true);
+         if (result instanceof String[])
+         {
+            commandIndexes.define((String[])result);
+         }
+      }
+      catch (Exception e)
+      {
+         LOG.warn("Could not get the definitions of the command indexes from the coordinator", e);
+      }
+   }
+
+   /**
+    * Sends the pending batch of asynchronous commands if any, in order to ensure that they are received
+    * before the next command
+    * @throws RPCException if the pending batch or the previous one could not be sent
+    */
+   private void flushBatch() throws RPCException
+   {
+      CommandBatcher batcher = this.batcher;
+      if (batcher != null)
+      {
+         batcher.flush();
+      }
+   }
+
+   /**
+    * Sends the given commands within one single message to all the cluster nodes
+    */
+   private void sendBatch(MessageBody[] bodies) throws Exception
+   {
+      if (state != State.STARTED)
+      {
+         throw new RPCException(
+            "Cannot execute any commands if the service is not started, the current state of the service is " + state);
+      }
+      if (commandIndexes != null)
+      {
+         // The topology may have changed since the commands have been added, so the indexes are checked again
+         for (int i = 0; i < bodies.length; i++)
+         {
+            MessageBody body = bodies[i];
+            int index = commandIndexes.getIndex(body.getCommandId());
+            if (index != body.getCommandIndex())
+            {
+               bodies[i] = new MessageBody(body.getDestination(), body.getCommandId(), index, body.getArgs(), true);
+            }
+         }
+      }
+      final List<Address> dests = members;
+      final Message msg = createMessage(new MessageBody(0, BATCH_COMMAND_ID, CommandIndexes.NO_INDEX, bodies, true));
+      SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<Void>()
+      {
+         public Void run() throws Exception
+         {
+            castMessage(dests, msg, false, 0);
+            return null;
+         }
+      });
+   }
+
+   /**
+    * Gives the response of the given member according to the given {@link Rsp}
+    * @param dest the member from which we expect a response
+    * @param rsp the response of the member, can be <code>null</code>
+    * @return the value sent by the member or the corresponding {@link RPCException} if no value could be received
+    */
+   private static Object getResponse(Address dest, Rsp rsp)
+   {
+      if (rsp == null || (rsp.wasSuspected() && !rsp.wasReceived()))
+      {
+         // The corresponding member has left
+         return new MemberHasLeftException("No response for the member " + dest
+            + ", this member has probably left the cluster.");
+      }
+      else if (!rsp.wasReceived())
+      {
+         return new RPCException("Replication timeout for " + rsp.getSender() + ", rsp=" + rsp);
+      }
+      Object value = rsp.getValue();
+      if (value instanceof RPCException)
+      {
+         // if we have any application-level exceptions make sure we throw them!!
+         if (LOG.isTraceEnabled())
+            LOG.trace("Recieved exception'" + value + "' from " + rsp.getSender(), (RPCException)value);
+      }
+      return value;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Object handle(Message msg)
+   {
+      try
+      {
+         // Ensure that the service is fully started before trying to execute any command
+         startSignal.await();
+         MessageBody body = readMessageBody(msg);
+         if (BATCH_COMMAND_ID.equals(body.getCommandId()))
+         {
+            executeBatch(body);
+            return null;
+         }
+         return execute(body, null);
+      }
+      catch (Throwable x) //NOSONAR
+      {
+         if (LOG.isTraceEnabled())
+         {
+            LOG.trace("Problems invoking command.", x);
+         }
+         return new RPCException("Cannot execute the command", x);
+      }
+   }
+
+   /**
+    * Handles the given message like {@link #handle(Message)} except that the result of a command executed
+    * by a pool of threads is sent by the thread of the pool, such that the thread that delivers the message
+    * is not blocked until the end of the command. This method is expected to be called by the
+    * implementations that support the asynchronous handling of the requests.
+    * @param msg the message to handle
+    * @param reply the object used to send the result of the command
+    */
+   protected void handle(Message msg, Reply reply)
+   {
+      Object result;
+      try
+      {
+         // Ensure that the service is fully started before trying to execute any command
+         startSignal.await();
+         MessageBody body = readMessageBody(msg);
+         if (BATCH_COMMAND_ID.equals(body.getCommandId()))
+         {
+            executeBatch(body);
+            result = null;
+         }
+         else
+         {
+            result = execute(body, reply);
+            if (result == Reply.PENDING)
+            {
+               // The result will be sent by the thread that executes the command
+               return;
+            }
+         }
+      }
+      catch (Throwable x) //NOSONAR
+      {
+         if (LOG.isTraceEnabled())
+         {
+            LOG.trace("Problems invoking command.", x);
+         }
+         result = new RPCException("Cannot execute the command", x);
+      }
+      reply.send(result);
+   }
+
+   /**
+    * Executes all the commands of the given batch
+    */
+   private void executeBatch(MessageBody body)
+   {
+      Serializable[] bodies = body.getArgs();
+      for (int i = 0; i < bodies.length; i++)
+      {
+         Object result = execute((MessageBody)bodies[i], null);
+         if (result instanceof RPCException && LOG.isDebugEnabled())
+         {
+            LOG.debug("A command of a batch could not be executed", (RPCException)result);
+         }
+      }
+   }
+
+   /**
+    * Executes the command corresponding to the given message body
+    * @param reply the object used to send the result of the command once executed by a pool of threads,
+    * <code>null</code> if the result must be returned
+    * @return the result of the command, an {@link RPCException} if it could not be executed or
+    * {@link Reply#PENDING} if the result will be sent thanks to the given reply
+    */
+   private Object execute(MessageBody body, Reply reply)
+   {
+      String commandId = null;
+      try
+      {
+         if (!body.accept(getLocalAddress()))
+         {
+            if (LOG.isTraceEnabled())
+            {
+               LOG.trace("Command : " + (body.getCommandId() == null ? "#" + body.getCommandIndex() : body.getCommandId())
+                  + " needs to be executed on the coordinator only and the local node is not the coordinator, "
+                  + "the command will be ignored");
+            }
+            return null;
+         }
+         commandId = getCommandId(body);
+         if (commandId == null)
+         {
+            return new RPCException("Command index " + body.getCommandIndex() + " unknown");
+         }
+         RemoteCommand command = getCommand(commandId);
+         if (command == null)
+         {
+            return new RPCException("Command " + commandId + " unkown, please register your command first");
+         }
+         CommandPolicy policy = getCommandPolicy(commandId);
+         if (reply != null && !body.isAsynchronous() && policy.isPooled())
+         {
+            policy.execute(command, body.getArgs(), reply);
+            return Reply.PENDING;
+         }
+         Object execResult = policy.execute(command, body.getArgs(), !body.isAsynchronous());
+         if (LOG.isTraceEnabled())
+         {
+            LOG.trace("Command : " + commandId + " executed, result is: " + execResult);
+         }
+         return execResult;
+      }
+      catch (Throwable x) //NOSONAR
+      {
+         if (LOG.isTraceEnabled())
+         {
+            LOG.trace("Problems invoking command.", x);
+         }
+         return new RPCException("Cannot execute the command " + (commandId == null ? "" : commandId), x);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void block()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void suspect(Address suspectedMbr)
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void viewAccepted(View view)
+   {
+      boolean coordinatorHasChanged;
+      synchronized (topologyChangeLock)
+      {
+         this.members = getMembers(view);
+         Address currentCoordinator = coordinator;
+         this.coordinator = members != null && members.size() > 0 ? members.get(0) : null;
+         this.isCoordinator = coordinator != null && coordinator.equals(getLocalAddress());
+         coordinatorHasChanged = currentCoordinator != null && !currentCoordinator.equals(coordinator);
+         // Release all the nodes
+         topologyChangeLock.notifyAll();
+      }
+      if (commandIndexes != null)
+      {
+         // The new members may not know the definitions of the indexes
+         commandIndexes.reset();
+      }
+      onTopologyChange(coordinatorHasChanged);
+   }
+
+   /**
+    * Called anytime the topology has changed, this method will notify all the listeners
+    * currently registered
+    * @param coordinatorHasChanged this parameter is set to <code>true</code> if the 
+    * coordinator has changed, <code>false</code> otherwise
+    */
+   private void onTopologyChange(boolean coordinatorHasChanged)
+   {
+      TopologyChangeEvent event = new TopologyChangeEvent(coordinatorHasChanged, isCoordinator);
+      for (TopologyChangeListener listener : listeners)
+      {
+         try
+         {
+            listener.onChange(event);
+         }
+         catch (Exception e)
+         {
+            LOG.warn("An error occurs with the listener of type " + listener.getClass(), e);
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized RemoteCommand registerCommand(RemoteCommand command)
+   {
+      SecurityManager security = System.getSecurityManager();
+      if (security != null)
+      {
+         security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
+      }
+      if (command != null)
+      {
+         String commandId = command.getId();
+         if (commandId == null)
+         {
+            throw new IllegalArgumentException("The command Id cannot be null");
+         }
+         Map<String, RemoteCommand> tmpCommands = new HashMap<String, RemoteCommand>(this.commands);
+         RemoteCommand oldCommand = tmpCommands.put(commandId, command);
+         if (oldCommand != null && PropertyManager.isDevelopping())
+         {
+            LOG.warn("A command has already been registered with the id " + commandId
+               + ", this command will be replaced with the new one");
+         }
+         this.commands = Collections.unmodifiableMap(tmpCommands);
+         return command;
+      }
+      return null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized void unregisterCommand(RemoteCommand command)
    {
       SecurityManager security = System.getSecurityManager();
       if (security != null)
@@ -705,7 +1326,7 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
             public Void run() throws Exception
             {
                channel = createChannel();
-               dispatcher = new MessageDispatcher(channel, null, AbstractRPCService.this, AbstractRPCService.this);
+               dispatcher = createDispatcher(channel);
                channel.connect(clusterName);
                return null;
             }
@@ -720,6 +1341,32 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          this.state = State.STARTED;
          startSignal.countDown();
       }
+      if (commandIndexes != null)
+      {
+         if (!isCoordinator)
+         {
+            updateCommandIndexes();
+         }
+         indexRequester = Executors.newSingleThreadExecutor(new ThreadFactory()
+         {
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "RPCService-CommandIndexes");
+               t.setDaemon(true);
+               return t;
+            }
+         });
+      }
+      if (batchDelay > 0)
+      {
+         batcher = new CommandBatcher(batchSize, batchDelay, new CommandBatcher.Sender()
+         {
+            public void send(MessageBody[] bodies) throws Exception
+            {
+               sendBatch(bodies);
+            }
+         });
+      }
    }
 
    /**
@@ -733,6 +1380,24 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          security.checkPermission(RPCService.ACCESS_RPC_SERVICE_PERMISSION);
       }
 
+      CommandBatcher batcher = this.batcher;
+      if (batcher != null)
+      {
+         this.batcher = null;
+         batcher.stop();
+      }
+      if (indexRequester != null)
+      {
+         indexRequester.shutdownNow();
+      }
+      for (CommandPolicy policy : policies.values())
+      {
+         policy.shutdown();
+      }
+      if (sharedExecutor != null)
+      {
+         sharedExecutor.shutdown();
+      }
       this.state = State.STOPPED;
       this.isCoordinator = false;
       if (channel != null && channel.isOpen())
@@ -814,6 +1479,37 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     */
    protected abstract RspList castMessage(List<Address> dests, Message msg, boolean synchronous, long timeout) throws Exception;
    
+   /**
+    * Cast a message to all the given members without waiting for the responses. The responses must be
+    * given to the collector as they arrive, the collector must also be notified once the request is
+    * complete. By default, the message is sent in synchronous mode and the collector is notified once
+    * all the responses have been received, the implementations that support non blocking requests
+    * should override this method.
+    * @param dests The members to which the message is to be sent.
+    * @param msg The message to be sent to the members.
+    * @param collector The collector of the responses
+    * @param timeout If 0: wait forever. Otherwise, wait for responses or timeout time.
+    * @throws Exception if any error occur while casting the message
+    */
+   protected void castMessageAsync(List<Address> dests, Message msg, ResponseCollector collector, long timeout)
+      throws Exception
+   {
+      collector.onCompletion(castMessage(dests, msg, true, timeout));
+   }
+
+   /**
+    * Creates the dispatcher of the given channel. By default, the requests are handled by the thread that
+    * delivers the message thanks to {@link #handle(Message)}, the implementations that support the
+    * asynchronous handling of the requests should override this method in order to rely on
+    * {@link #handle(Message, Reply)}.
+    * @param channel the channel for which the dispatcher is created
+    * @return the dispatcher to use to send the commands
+    */
+   protected MessageDispatcher createDispatcher(Channel channel)
+   {
+      return new MessageDispatcher(channel, null, this, this);
+   }
+
    /**
     * Create a channel
     * @return An initialized channel
@@ -835,6 +1531,203 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
     * is set in the message.
     */
    protected abstract void setObject(Message m, Object o);
+
+   /**
+    * Sets the given byte[] buffer as content of the message.
+    */
+   protected abstract void setBuffer(Message m, byte[] buffer);
+
+   /**
+    * Marks the message as out of band, such that it can be delivered without waiting for the previous
+    * messages of the same sender.
+    */
+   protected abstract void setOOB(Message m);
+
+   /**
+    * Creates the execution policies defined in the configuration
+    * @param params the initial parameters from which we extract the properties-params whose name starts
+    * with <code>COMMAND_POLICY_PARAM_PREFIX</code>
+    * @return the pool of threads shared by the commands or <code>null</code> if no command uses it
+    */
+   private ThreadPoolExecutor createCommandPolicies(InitParams params)
+   {
+      ThreadPoolExecutor sharedExecutor = null;
+      if (CommandPolicy.POLICY_SHARED.equals(defaultPolicy))
+      {
+         sharedExecutor = createSharedExecutor(params);
+      }
+      if (params == null)
+      {
+         return sharedExecutor;
+      }
+      for (Iterator<PropertiesParam> it = params.getPropertiesParamIterator(); it.hasNext();)
+      {
+         PropertiesParam param = it.next();
+         if (param.getName() == null || !param.getName().startsWith(COMMAND_POLICY_PARAM_PREFIX))
+         {
+            continue;
+         }
+         String commandId = param.getName().substring(COMMAND_POLICY_PARAM_PREFIX.length());
+         String policy = param.getProperty("policy");
+         policy = policy == null ? CommandPolicy.POLICY_INLINE : policy.trim();
+         ThreadPoolExecutor executor;
+         if (CommandPolicy.POLICY_INLINE.equals(policy))
+         {
+            executor = null;
+         }
+         else if (CommandPolicy.POLICY_SHARED.equals(policy))
+         {
+            if (sharedExecutor == null)
+            {
+               sharedExecutor = createSharedExecutor(params);
+            }
+            executor = sharedExecutor;
+         }
+         else if (CommandPolicy.POLICY_DEDICATED.equals(policy))
+         {
+            String value = param.getProperty("pool-size");
+            int poolSize = value == null ? 1 : Integer.parseInt(value.trim());
+            value = param.getProperty("queue-size");
+            int queueSize = value == null ? DEFAULT_COMMAND_QUEUE_SIZE : Integer.parseInt(value.trim());
+            executor = CommandPolicy.createExecutor(commandId, poolSize, queueSize);
+         }
+         else
+         {
+            throw new IllegalArgumentException("Unknown policy " + policy + " for the command " + commandId);
+         }
+         boolean oob = Boolean.valueOf(param.getProperty("oob"));
+         policies.put(commandId, new CommandPolicy(policy, executor, oob));
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The execution policy of the command " + commandId + " has been set to " + policy
+               + (oob ? " and its messages will be sent out of band" : ""));
+         }
+      }
+      return sharedExecutor;
+   }
+
+   /**
+    * Creates the pool of threads shared by the commands
+    */
+   private static ThreadPoolExecutor createSharedExecutor(InitParams params)
+   {
+      String value = getValueParam(params, PARAM_COMMAND_POOL_SIZE);
+      int poolSize = value == null ? DEFAULT_COMMAND_POOL_SIZE : Integer.parseInt(value.trim());
+      value = getValueParam(params, PARAM_COMMAND_QUEUE_SIZE);
+      int queueSize = value == null ? DEFAULT_COMMAND_QUEUE_SIZE : Integer.parseInt(value.trim());
+      return CommandPolicy.createExecutor("shared", poolSize, queueSize);
+   }
+
+   /**
+    * Gives the execution policy of the given command, the default policy is used if no policy
+    * has been defined for this command
+    */
+   private CommandPolicy getCommandPolicy(String commandId)
+   {
+      CommandPolicy policy = policies.get(commandId);
+      if (policy == null)
+      {
+         policy = new CommandPolicy(defaultPolicy, sharedExecutor, false);
+         CommandPolicy prevPolicy = policies.putIfAbsent(commandId, policy);
+         if (prevPolicy != null)
+         {
+            policy = prevPolicy;
+         }
+      }
+      return policy;
+   }
+
+   @Managed
+   @ManagedName("CommandIds")
+   @ManagedDescription("Returns the ids of the commands that have been executed at least once or for which "
+      + "an execution policy has been defined")
+   public String[] getCommandIds()
+   {
+      return policies.keySet().toArray(new String[policies.size()]);
+   }
+
+   @Managed
+   @ManagedDescription("Returns the execution policy of the given command")
+   public String getExecutionPolicy(
+      @ManagedName("commandId") @ManagedDescription("The id of the command") String commandId)
+   {
+      CommandPolicy policy = policies.get(commandId);
+      return policy == null ? defaultPolicy : policy.getPolicy() + (policy.isOOB() ? " (oob)" : "");
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of received commands of the given id that are waiting for a thread")
+   public int getQueueSize(@ManagedName("commandId") @ManagedDescription("The id of the command") String commandId)
+   {
+      CommandPolicy policy = policies.get(commandId);
+      return policy == null ? 0 : policy.getQueueSize();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the total amount of times that the command of the given id has been executed "
+      + "on the local node")
+   public long getExecutionCount(
+      @ManagedName("commandId") @ManagedDescription("The id of the command") String commandId)
+   {
+      CommandPolicy policy = policies.get(commandId);
+      return policy == null ? 0 : policy.getExecutionCount();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the average time in nanoseconds spent to execute the command of the given id "
+      + "on the local node")
+   public long getAverageExecutionTime(
+      @ManagedName("commandId") @ManagedDescription("The id of the command") String commandId)
+   {
+      CommandPolicy policy = policies.get(commandId);
+      return policy == null ? 0 : policy.getAverageExecutionTime();
+   }
+
+   @Managed
+   @ManagedDescription("Returns the maximum time in nanoseconds spent to execute the command of the given id "
+      + "on the local node")
+   public long getMaxExecutionTime(
+      @ManagedName("commandId") @ManagedDescription("The id of the command") String commandId)
+   {
+      CommandPolicy policy = policies.get(commandId);
+      return policy == null ? 0 : policy.getMaxExecutionTime();
+   }
+
+   @Managed
+   @ManagedDescription("Resets all the execution statistics")
+   public void resetStatistics()
+   {
+      for (CommandPolicy policy : policies.values())
+      {
+         policy.resetStatistics();
+      }
+   }
+
+   /**
+    * Gives the codec defined in the configuration
+    * @param params the initial parameters from which we extract the parameter <code>PARAM_MESSAGE_CODEC</code>
+    * @return the codec to use or <code>null</code> if the messages must be serialized using the Java serialization
+    */
+   private static MessageBodyCodec getCodec(InitParams params)
+   {
+      String codec = getValueParam(params, PARAM_MESSAGE_CODEC);
+      if (codec == null || codec.isEmpty())
+      {
+         return null;
+      }
+      else if (COMPACT_MESSAGE_CODEC.equalsIgnoreCase(codec))
+      {
+         return new CompactMessageBodyCodec();
+      }
+      try
+      {
+         return (MessageBodyCodec)ClassLoading.forName(codec, AbstractRPCService.class).newInstance();
+      }
+      catch (Exception e)
+      {
+         throw new IllegalArgumentException("Cannot create the codec " + codec, e);
+      }
+   }
    
    /**
     * Gives the value of the {@link ValueParam} corresponding to the given key
@@ -909,6 +1802,24 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       return clusterName += "-" + ctx.getName();
    }
 
+   /**
+    * Defines how the result of a command is sent back to the sender once the command has been executed
+    * asynchronously.
+    */
+   protected interface Reply
+   {
+      /**
+       * The value returned internally when the result of a command will be sent later
+       */
+      Object PENDING = new Object();
+
+      /**
+       * Sends the given result to the sender of the command
+       * @param result the result of the command or the {@link RPCException} corresponding to its failure
+       */
+      void send(Object result);
+   }
+
    /**
     * This intern class will be used to 
     */
@@ -929,10 +1840,50 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
        */
       private int destination;
 
+      /**
+       * The index of the command to execute, -1 if the command is identified by its id
+       */
+      private int commandIndex = -1;
+
+      /**
+       * Indicates whether the sender does not expect any response
+       */
+      private boolean asynchronous;
+
       public MessageBody()
       {
       }
 
+      /**
+       * @param destination The hash code of the destination of the message, 0 if the message is for everybody
+       * @param commandId the id of the command to execute, <code>null</code> if the command is identified by its
+       * index
+       * @param commandIndex the index of the command to execute, -1 if the command is identified by its id
+       * @param args the arguments to use
+       */
+      public MessageBody(int destination, String commandId, int commandIndex, Serializable[] args)
+      {
+         this(destination, commandId, commandIndex, args, false);
+      }
+
+      /**
+       * @param destination The hash code of the destination of the message, 0 if the message is for everybody
+       * @param commandId the id of the command to execute, <code>null</code> if the command is identified by its
+       * index
+       * @param commandIndex the index of the command to execute, -1 if the command is identified by its id
+       * @param args the arguments to use
+       * @param asynchronous indicates whether the sender does not expect any response
+       */
+      public MessageBody(int destination, String commandId, int commandIndex, Serializable[] args,
+         boolean asynchronous)
+      {
+         this.destination = destination;
+         this.commandId = commandId;
+         this.commandIndex = commandIndex;
+         this.args = args;
+         this.asynchronous = asynchronous;
+      }
+
       /**
        * @param dest The destination of the message
        * @param commandId the id of the command to execute
@@ -955,6 +1906,30 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
          return args;
       }      
 
+      /**
+       * @return the index of the command to execute, -1 if the command is identified by its id
+       */
+      public int getCommandIndex()
+      {
+         return commandIndex;
+      }
+
+      /**
+       * @return the hash code of the expected destination, 0 if the message is for everybody
+       */
+      public int getDestination()
+      {
+         return destination;
+      }
+
+      /**
+       * @return <code>true</code> if the sender does not expect any response, <code>false</code> otherwise
+       */
+      public boolean isAsynchronous()
+      {
+         return asynchronous;
+      }
+
       /**
        * Indicates whether or not the given message body accepts the given address
        * @param address the address to check
@@ -971,11 +1946,13 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
        */
       public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
       {
-         boolean unicast = in.readBoolean();
-         if (unicast)
+         // The first byte used to be a boolean, so the messages of the previous versions can still be read
+         byte flags = in.readByte();
+         if ((flags & 1) != 0)
          {
             this.destination = in.readInt();            
          }
+         this.asynchronous = (flags & 2) != 0;
          this.commandId = in.readUTF();
          int size = in.readInt();
          if (size == -1)
@@ -998,7 +1975,7 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       public void writeExternal(ObjectOutput out) throws IOException
       {
          boolean unicast = destination != 0;
-         out.writeBoolean(unicast);
+         out.writeByte((unicast ? 1 : 0) | (asynchronous ? 2 : 0));
          if (unicast)
          {
             out.writeInt(destination);            
@@ -1019,6 +1996,358 @@ public abstract class AbstractRPCService implements RPCService, Startable, Reque
       }
    }
 
+   /**
+    * This class collects the responses of an asynchronous command as they arrive and completes
+    * once the expected amount of responses has been received, the request is complete or the timeout
+    * has been reached.
+    */
+   public static class ResponseCollector implements RspFilter, Future<List<Object>>
+   {
+      /**
+       * The members from which we expect a response
+       */
+      private final List<Address> dests;
+
+      /**
+       * The amount of responses after which the collector is complete
+       */
+      private final int expectedResponses;
+
+      /**
+       * The responses received so far
+       */
+      private final Map<Address, Object> responses;
+
+      /**
+       * The signal that indicates that the collector is complete
+       */
+      private final CountDownLatch done = new CountDownLatch(1);
+
+      /**
+       * The final list of responses
+       */
+      private List<Object> result;
+
+      /**
+       * Indicates whether the collector has been cancelled
+       */
+      private boolean cancelled;
+
+      /**
+       * The underlying request
+       */
+      private volatile Future<?> request;
+
+      /**
+       * @param dests the members from which we expect a response
+       * @param expectedResponses the amount of responses to wait for, {@link RPCService#ALL_RESPONSES} to
+       * wait for the responses of all the members
+       */
+      public ResponseCollector(List<Address> dests, int expectedResponses)
+      {
+         this.dests = dests;
+         this.expectedResponses =
+            expectedResponses <= 0 || expectedResponses > dests.size() ? dests.size() : expectedResponses;
+         this.responses = new HashMap<Address, Object>(dests.size());
+      }
+
+      /**
+       * Sets the underlying request in order to be able to cancel it if needed
+       */
+      public void setRequest(Future<?> request)
+      {
+         this.request = request;
+         if (isCancelled())
+         {
+            request.cancel(true);
+         }
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean isAcceptable(Object response, Address sender)
+      {
+         synchronized (this)
+         {
+            if (result == null)
+            {
+               responses.put(sender, response);
+               if (responses.size() >= expectedResponses)
+               {
+                  complete(null, false);
+               }
+            }
+         }
+         return true;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean needMoreResponses()
+      {
+         return !isDone();
+      }
+
+      /**
+       * Notifies the collector that the request is complete
+       * @param rsps the responses of the request if any
+       */
+      public synchronized void onCompletion(RspList rsps)
+      {
+         complete(rsps, false);
+      }
+
+      /**
+       * Notifies the collector that the timeout has been reached, the missing responses are
+       * replaced with a replication exception and the underlying request is cancelled
+       */
+      public void onTimeout()
+      {
+         synchronized (this)
+         {
+            complete(null, true);
+         }
+         Future<?> request = this.request;
+         if (request != null)
+         {
+            request.cancel(true);
+         }
+      }
+
+      /**
+       * Builds the final list of responses if not done yet
+       */
+      private void complete(RspList rsps, boolean timedOut)
+      {
+         if (result != null)
+         {
+            return;
+         }
+         List<Object> values = new ArrayList<Object>(dests.size());
+         for (Address dest : dests)
+         {
+            if (responses.containsKey(dest))
+            {
+               values.add(responses.get(dest));
+            }
+            else if (rsps != null)
+            {
+               values.add(getResponse(dest, rsps.get(dest)));
+            }
+            else if (timedOut)
+            {
+               values.add(new RPCException("Replication timeout for " + dest));
+            }
+         }
+         this.result = values;
+         done.countDown();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean cancel(boolean mayInterruptIfRunning)
+      {
+         synchronized (this)
+         {
+            if (result != null)
+            {
+               return false;
+            }
+            cancelled = true;
+            result = Collections.emptyList();
+            done.countDown();
+         }
+         Future<?> request = this.request;
+         if (request != null)
+         {
+            request.cancel(mayInterruptIfRunning);
+         }
+         return true;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public synchronized boolean isCancelled()
+      {
+         return cancelled;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean isDone()
+      {
+         return done.getCount() == 0;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public List<Object> get() throws InterruptedException, ExecutionException
+      {
+         done.await();
+         return getResult();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public List<Object> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+         TimeoutException
+      {
+         if (!done.await(timeout, unit))
+         {
+            throw new TimeoutException();
+         }
+         return getResult();
+      }
+
+      private synchronized List<Object> getResult()
+      {
+         if (cancelled)
+         {
+            throw new CancellationException();
+         }
+         return result;
+      }
+   }
+
+   /**
+    * Gives the response of the coordinator from the responses collected by a {@link ResponseCollector}
+    */
+   private static class CoordinatorResponseFuture implements Future<Object>
+   {
+      /** . */
+      private final Future<List<Object>> responses;
+
+      CoordinatorResponseFuture(Future<List<Object>> responses)
+      {
+         this.responses = responses;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean cancel(boolean mayInterruptIfRunning)
+      {
+         return responses.cancel(mayInterruptIfRunning);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean isCancelled()
+      {
+         return responses.isCancelled();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public boolean isDone()
+      {
+         return responses.isDone();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Object get() throws InterruptedException, ExecutionException
+      {
+         return getCoordinatorResponse(responses.get());
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+         TimeoutException
+      {
+         return getCoordinatorResponse(responses.get(timeout, unit));
+      }
+
+      private static Object getCoordinatorResponse(List<Object> lResults) throws ExecutionException
+      {
+         Object result = lResults == null || lResults.size() == 0 ? null : lResults.get(0);
+         if (result instanceof RPCException)
+         {
+            throw new ExecutionException((RPCException)result);
+         }
+         return result;
+      }
+   }
+
+   /**
+    * The command executed on the coordinator to get the index of a given command
+    */
+   private class AssignIndexCommand implements RemoteCommand
+   {
+      /**
+       * {@inheritDoc}
+       */
+      public String getId()
+      {
+         return "org.exoplatform.services.rpc.impl.AbstractRPCService-assignCommandIndex";
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Serializable execute(Serializable[] args) throws Throwable
+      {
+         return commandIndexes.assign((String)args[0]);
+      }
+   }
+
+   /**
+    * The command used to broadcast the definition of an index
+    */
+   private class DefineIndexCommand implements RemoteCommand
+   {
+      /**
+       * {@inheritDoc}
+       */
+      public String getId()
+      {
+         return "org.exoplatform.services.rpc.impl.AbstractRPCService-defineCommandIndex";
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Serializable execute(Serializable[] args) throws Throwable
+      {
+         commandIndexes.define((Integer)args[0], (String)args[1]);
+         return null;
+      }
+   }
+
+   /**
+    * The command executed on the coordinator to get all the definitions of the indexes
+    */
+   private class GetIndexesCommand implements RemoteCommand
+   {
+      /**
+       * {@inheritDoc}
+       */
+      public String getId()
+      {
+         return "org.exoplatform.services.rpc.impl.AbstractRPCService-getCommandIndexes";
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Serializable execute(Serializable[] args) throws Throwable
+      {
+         return commandIndexes.getDefinitions();
+      }
+   }
+
    /**
     * All the potential states of the {@link RPCServiceImpl}
     */
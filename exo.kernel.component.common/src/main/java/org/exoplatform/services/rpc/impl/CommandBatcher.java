@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the asynchronous commands sent to all the cluster nodes in order to send them within
+ * a single message. Like the Nagle's algorithm, the first command of a batch is delayed for a short
+ * period of time, the batch is sent once this period has elapsed or once the batch is full.
+ * If a batch sent by the timer could not be sent, the failure is reported to the next caller of
+ * {@link #add(MessageBody)} or {@link #flush()}.
+ *
+ * @version $Id$
+ */
+class CommandBatcher
+{
+
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.component.common.CommandBatcher");
+
+   /**
+    * The maximum amount of commands per batch
+    */
+   private final int maxSize;
+
+   /**
+    * The maximum amount of time in milliseconds during which a command can be delayed
+    */
+   private final long delay;
+
+   /**
+    * The object used to send the batches
+    */
+   private final Sender sender;
+
+   /**
+    * The executor used to send the batches once the delay has elapsed
+    */
+   private final ScheduledExecutorService timer;
+
+   /**
+    * The task used to send the batches once the delay has elapsed
+    */
+   private final Runnable flushTask = new Runnable()
+   {
+      public void run()
+      {
+         try
+         {
+            flush();
+         }
+         catch (RPCException e)
+         {
+            LOG.error(e.getMessage(), e.getCause());
+            synchronized (CommandBatcher.this)
+            {
+               failure = e;
+            }
+         }
+      }
+   };
+
+   /**
+    * The commands of the current batch
+    */
+   private List<MessageBody> pending;
+
+   /**
+    * The scheduled task of the current batch
+    */
+   private Future<?> scheduled;
+
+   /**
+    * The last failure of the timer that has not been reported yet
+    */
+   private RPCException failure;
+
+   /**
+    * @param maxSize the maximum amount of commands per batch
+    * @param delay the maximum amount of time in milliseconds during which a command can be delayed
+    * @param sender the object used to send the batches
+    */
+   CommandBatcher(int maxSize, long delay, Sender sender)
+   {
+      this.maxSize = maxSize;
+      this.delay = delay;
+      this.sender = sender;
+      this.pending = new ArrayList<MessageBody>(maxSize);
+      this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+      {
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "RPCService-CommandBatcher");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
+
+   /**
+    * Adds the given command to the current batch, the batch is sent if it is full
+    * @throws RPCException if the previous batch could not be sent, in which case the given command
+    * is not added, or if the batch is full and could not be sent
+    */
+   synchronized void add(MessageBody body) throws RPCException
+   {
+      reportFailure();
+      pending.add(body);
+      if (pending.size() >= maxSize)
+      {
+         flush();
+      }
+      else if (pending.size() == 1)
+      {
+         scheduled = timer.schedule(flushTask, delay, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Sends the current batch if it is not empty
+    * @throws RPCException if the current batch or the previous one could not be sent
+    */
+   synchronized void flush() throws RPCException
+   {
+      reportFailure();
+      if (scheduled != null)
+      {
+         scheduled.cancel(false);
+         scheduled = null;
+      }
+      if (pending.isEmpty())
+      {
+         return;
+      }
+      MessageBody[] bodies = pending.toArray(new MessageBody[pending.size()]);
+      pending = new ArrayList<MessageBody>(maxSize);
+      try
+      {
+         sender.send(bodies);
+      }
+      catch (Exception e)
+      {
+         throw new RPCException("Could not send a batch of " + bodies.length + " commands", e);
+      }
+   }
+
+   /**
+    * Throws the last failure of the timer if any
+    */
+   private void reportFailure() throws RPCException
+   {
+      RPCException e = failure;
+      if (e != null)
+      {
+         failure = null;
+         throw e;
+      }
+   }
+
+   /**
+    * Sends the current batch and stops the timer
+    */
+   void stop()
+   {
+      try
+      {
+         flush();
+      }
+      catch (RPCException e)
+      {
+         LOG.error(e.getMessage(), e.getCause());
+      }
+      timer.shutdown();
+   }
+
+   /**
+    * Defines how a batch is sent
+    */
+   interface Sender
+   {
+      /**
+       * Sends the given commands within a single message
+       */
+      void send(MessageBody[] bodies) throws Exception;
+   }
+}
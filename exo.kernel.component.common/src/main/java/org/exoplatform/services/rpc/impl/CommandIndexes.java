@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of the small integers used to identify the commands in the messages instead of their id.
+ * The indexes are assigned by the coordinator, the node that requested an index broadcasts its definition
+ * to all the cluster nodes. An index is only used to send a command once the local node knows that all the
+ * cluster nodes have received its definition, while all the known definitions are used to identify the
+ * commands of the received messages. Any change of topology resets the confirmed indexes, such that the
+ * definitions are broadcast again to the new members.
+ *
+ * @version $Id$
+ */
+class CommandIndexes
+{
+
+   /**
+    * The value returned when no index can be used for a given command
+    */
+   static final int NO_INDEX = -1;
+
+   /**
+    * The indexes that can be used to send a command, by command id
+    */
+   private final ConcurrentMap<String, Integer> confirmed = new ConcurrentHashMap<String, Integer>();
+
+   /**
+    * The ids of the commands for which an index has been requested
+    */
+   private final Set<String> requested = new HashSet<String>();
+
+   /**
+    * The current generation, incremented each time the topology changes
+    */
+   private int generation;
+
+   /**
+    * All the known command ids, by index
+    */
+   private volatile String[] definitions = new String[0];
+
+   /**
+    * Gives the index to use to send the given command
+    * @return the index of the command if it has been confirmed, {@link #NO_INDEX} otherwise
+    */
+   int getIndex(String commandId)
+   {
+      Integer index = confirmed.get(commandId);
+      return index == null ? NO_INDEX : index;
+   }
+
+   /**
+    * Indicates whether an index must be requested for the given command
+    * @return the current generation if no index has been requested yet, {@link #NO_INDEX} otherwise
+    */
+   synchronized int request(String commandId)
+   {
+      return requested.add(commandId) ? generation : NO_INDEX;
+   }
+
+   /**
+    * Allows to use the given index to send the given command unless the topology has changed since
+    * the index has been requested
+    * @param generation the generation returned by {@link #request(String)}
+    */
+   synchronized void confirm(String commandId, int index, int generation)
+   {
+      if (generation == this.generation)
+      {
+         confirmed.put(commandId, index);
+      }
+   }
+
+   /**
+    * Allows to request again an index that could not be confirmed
+    * @param generation the generation returned by {@link #request(String)}
+    */
+   synchronized void cancel(String commandId, int generation)
+   {
+      if (generation == this.generation)
+      {
+         requested.remove(commandId);
+      }
+   }
+
+   /**
+    * Invalidates all the confirmed indexes, this method is expected to be called anytime the
+    * topology changes
+    */
+   synchronized void reset()
+   {
+      generation++;
+      requested.clear();
+      confirmed.clear();
+   }
+
+   /**
+    * Gives the id of the command corresponding to the given index
+    * @return the id of the command if the index is known, <code>null</code> otherwise
+    */
+   String getCommandId(int index)
+   {
+      String[] definitions = this.definitions;
+      return index >= 0 && index < definitions.length ? definitions[index] : null;
+   }
+
+   /**
+    * Registers the definition of a given index, the previous definition of the index if any is replaced
+    */
+   synchronized void define(int index, String commandId)
+   {
+      String[] definitions = this.definitions;
+      if (index >= definitions.length)
+      {
+         String[] newDefinitions = new String[index + 1];
+         System.arraycopy(definitions, 0, newDefinitions, 0, definitions.length);
+         definitions = newDefinitions;
+      }
+      else
+      {
+         definitions = definitions.clone();
+      }
+      definitions[index] = commandId;
+      this.definitions = definitions;
+   }
+
+   /**
+    * Gives the index of the given command, a new index is allocated if the command is unknown.
+    * This method is only expected to be called on the coordinator.
+    */
+   synchronized int assign(String commandId)
+   {
+      String[] definitions = this.definitions;
+      for (int i = 0; i < definitions.length; i++)
+      {
+         if (commandId.equals(definitions[i]))
+         {
+            return i;
+         }
+      }
+      define(definitions.length, commandId);
+      return definitions.length;
+   }
+
+   /**
+    * Gives all the known definitions
+    */
+   String[] getDefinitions()
+   {
+      return definitions.clone();
+   }
+
+   /**
+    * Registers all the given definitions
+    */
+   synchronized void define(String[] definitions)
+   {
+      for (int i = 0; i < definitions.length; i++)
+      {
+         if (definitions[i] != null)
+         {
+            define(i, definitions[i]);
+         }
+      }
+   }
+}
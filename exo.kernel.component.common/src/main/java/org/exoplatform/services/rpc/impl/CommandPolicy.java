@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.RemoteCommand;
+
+import java.io.Serializable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Defines how the commands of a given id are executed on the receiving node and keeps track of their
+ * execution statistics. A command can be executed by the thread that delivers the message which is the
+ * default behavior, by a pool of threads shared by several commands or by a pool of threads dedicated
+ * to the command. Only the order-insensitive commands should be executed by a pool of threads since
+ * the commands sent by the same member can then be executed in a different order.
+ *
+ * @version $Id$
+ */
+class CommandPolicy
+{
+
+   /**
+    * The policy according to which the command is executed by the thread that delivers the message
+    */
+   static final String POLICY_INLINE = "inline";
+
+   /**
+    * The policy according to which the command is executed by the pool of threads shared by all the commands
+    */
+   static final String POLICY_SHARED = "shared";
+
+   /**
+    * The policy according to which the command is executed by its own pool of threads
+    */
+   static final String POLICY_DEDICATED = "dedicated";
+
+   /** . */
+   private final String policy;
+
+   /**
+    * The executor of the command, <code>null</code> if the command is executed inline
+    */
+   private final ThreadPoolExecutor executor;
+
+   /**
+    * Indicates whether the messages of the command are sent out of band
+    */
+   private final boolean oob;
+
+   /**
+    * The total amount of commands waiting for a thread
+    */
+   private final AtomicInteger pending = new AtomicInteger();
+
+   /** . */
+   private final AtomicLong count = new AtomicLong();
+
+   /** . */
+   private final AtomicLong total = new AtomicLong();
+
+   /** . */
+   private final AtomicLong max = new AtomicLong();
+
+   /**
+    * @param policy the name of the policy
+    * @param executor the executor of the command, <code>null</code> if the command is executed inline
+    * @param oob indicates whether the messages of the command are sent out of band
+    */
+   CommandPolicy(String policy, ThreadPoolExecutor executor, boolean oob)
+   {
+      this.policy = policy;
+      this.executor = executor;
+      this.oob = oob;
+   }
+
+   /**
+    * Creates a pool of threads whose queue is bounded if a positive size is provided, once the queue is
+    * full, the commands are executed by the thread that delivers the message in order to slow down
+    * the senders
+    * @param name the name used to name the threads
+    * @param poolSize the total amount of threads
+    * @param queueSize the maximum amount of pending commands, a value lower or equal to 0 means unbounded
+    */
+   static ThreadPoolExecutor createExecutor(final String name, int poolSize, int queueSize)
+   {
+      BlockingQueue<Runnable> queue =
+         queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize) : new LinkedBlockingQueue<Runnable>();
+      return new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, queue, new ThreadFactory()
+      {
+         private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "RPCService-" + name + "-" + threadNumber.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+         }
+      }, new RejectedExecutionHandler()
+      {
+         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+         {
+            // The task is also executed when the executor has been shut down to ensure that
+            // the thread waiting for the result is released
+            r.run();
+         }
+      });
+   }
+
+   String getPolicy()
+   {
+      return policy;
+   }
+
+   boolean isOOB()
+   {
+      return oob;
+   }
+
+   /**
+    * @return <code>true</code> if the command is executed by a pool of threads, <code>false</code> if it
+    * is executed inline
+    */
+   boolean isPooled()
+   {
+      return executor != null;
+   }
+
+   /**
+    * Executes the given command according to the policy
+    * @param command the command to execute
+    * @param args the arguments of the command
+    * @param responseExpected indicates whether the result of the command is expected, if not the
+    * method returns as soon as the command has been submitted to the executor
+    * @return the result of the command if it is expected, <code>null</code> otherwise
+    * @throws Throwable if the command failed
+    */
+   Object execute(final RemoteCommand command, final Serializable[] args, boolean responseExpected) throws Throwable
+   {
+      if (executor == null)
+      {
+         return execute(command, args);
+      }
+      pending.incrementAndGet();
+      FutureTask<Object> task = new FutureTask<Object>(new Callable<Object>()
+      {
+         public Object call() throws Exception
+         {
+            pending.decrementAndGet();
+            try
+            {
+               return execute(command, args);
+            }
+            catch (Exception e)
+            {
+               throw e;
+            }
+            catch (Error e)
+            {
+               throw e;
+            }
+            catch (Throwable e)
+            {
+               throw new ExecutionException(e);
+            }
+         }
+      });
+      executor.execute(task);
+      if (!responseExpected)
+      {
+         return null;
+      }
+      try
+      {
+         return task.get();
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         throw cause instanceof ExecutionException && cause.getCause() != null ? cause.getCause() : cause;
+      }
+   }
+
+   /**
+    * Executes the given command by the pool of threads of the policy, the result of the command is then
+    * sent thanks to the given reply by the thread of the pool
+    * @param command the command to execute
+    * @param args the arguments of the command
+    * @param reply the object used to send the result of the command
+    */
+   void execute(final RemoteCommand command, final Serializable[] args, final AbstractRPCService.Reply reply)
+   {
+      pending.incrementAndGet();
+      executor.execute(new Runnable()
+      {
+         public void run()
+         {
+            pending.decrementAndGet();
+            Object result;
+            try
+            {
+               result = execute(command, args);
+            }
+            catch (Throwable e) //NOSONAR
+            {
+               result = new RPCException("Cannot execute the command " + command.getId(), e);
+            }
+            reply.send(result);
+         }
+      });
+   }
+
+   private Object execute(RemoteCommand command, Serializable[] args) throws Throwable
+   {
+      long start = System.nanoTime();
+      try
+      {
+         return command.execute(args);
+      }
+      finally
+      {
+         long time = System.nanoTime() - start;
+         count.incrementAndGet();
+         total.addAndGet(time);
+         long current;
+         while (time > (current = max.get()) && !max.compareAndSet(current, time));
+      }
+   }
+
+   /**
+    * @return the total amount of commands waiting for a thread
+    */
+   int getQueueSize()
+   {
+      return pending.get();
+   }
+
+   long getExecutionCount()
+   {
+      return count.get();
+   }
+
+   /**
+    * @return the average execution time in nanoseconds
+    */
+   long getAverageExecutionTime()
+   {
+      long count = this.count.get();
+      return count == 0 ? 0 : total.get() / count;
+   }
+
+   /**
+    * @return the maximum execution time in nanoseconds
+    */
+   long getMaxExecutionTime()
+   {
+      return max.get();
+   }
+
+   void resetStatistics()
+   {
+      count.set(0);
+      total.set(0);
+      max.set(0);
+   }
+
+   /**
+    * Shuts down the executor if it is dedicated to the command
+    */
+   void shutdown()
+   {
+      if (POLICY_DEDICATED.equals(policy))
+      {
+         executor.shutdown();
+      }
+   }
+}
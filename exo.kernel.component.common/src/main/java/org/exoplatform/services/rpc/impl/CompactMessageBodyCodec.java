@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.commons.utils.ClassLoading;
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A compact binary {@link MessageBodyCodec}. The id of the command is replaced with its index when
+ * it has been agreed across the cluster, the most common types of arguments (primitive wrappers,
+ * {@link String}, byte arrays and {@link Externalizable} objects) are written without relying on
+ * the Java serialization which is only used as fallback for the other types of arguments.
+ *
+ * @version $Id$
+ */
+public class CompactMessageBodyCodec implements MessageBodyCodec
+{
+
+   /**
+    * The charset used to encode the strings
+    */
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * The flag indicating that the message is for a single member
+    */
+   private static final int FLAG_UNICAST = 1;
+
+   /**
+    * The flag indicating that the command is identified by its index
+    */
+   private static final int FLAG_INDEXED = 1 << 1;
+
+   /**
+    * The flag indicating that the message has arguments
+    */
+   private static final int FLAG_ARGS = 1 << 2;
+
+   /**
+    * The flag indicating that the sender does not expect any response
+    */
+   private static final int FLAG_ASYNCHRONOUS = 1 << 3;
+
+   private static final byte TYPE_NULL = 0;
+
+   private static final byte TYPE_STRING = 1;
+
+   private static final byte TYPE_INTEGER = 2;
+
+   private static final byte TYPE_LONG = 3;
+
+   private static final byte TYPE_TRUE = 4;
+
+   private static final byte TYPE_FALSE = 5;
+
+   private static final byte TYPE_BYTE = 6;
+
+   private static final byte TYPE_SHORT = 7;
+
+   private static final byte TYPE_CHARACTER = 8;
+
+   private static final byte TYPE_FLOAT = 9;
+
+   private static final byte TYPE_DOUBLE = 10;
+
+   private static final byte TYPE_BYTES = 11;
+
+   private static final byte TYPE_MESSAGE_BODY = 12;
+
+   private static final byte TYPE_EXTERNALIZABLE = 13;
+
+   private static final byte TYPE_SERIALIZABLE = 14;
+
+   /**
+    * The classes of the {@link Externalizable} arguments that have already been resolved
+    */
+   private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+   /**
+    * {@inheritDoc}
+    */
+   public byte[] encode(MessageBody body) throws IOException
+   {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(64);
+      Output out = new Output(baos);
+      writeMessageBody(out, body);
+      out.flush();
+      return baos.toByteArray();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public MessageBody decode(byte[] buffer, int offset, int length) throws IOException, ClassNotFoundException
+   {
+      return readMessageBody(new Input(new ByteArrayInputStream(buffer, offset, length)));
+   }
+
+   private void writeMessageBody(Output out, MessageBody body) throws IOException
+   {
+      int destination = body.getDestination();
+      int commandIndex = body.getCommandIndex();
+      Serializable[] args = body.getArgs();
+      int flags = 0;
+      if (destination != 0)
+         flags |= FLAG_UNICAST;
+      if (commandIndex >= 0)
+         flags |= FLAG_INDEXED;
+      if (args != null)
+         flags |= FLAG_ARGS;
+      if (body.isAsynchronous())
+         flags |= FLAG_ASYNCHRONOUS;
+      out.writeByte(flags);
+      if (destination != 0)
+      {
+         out.writeInt(destination);
+      }
+      if (commandIndex >= 0)
+      {
+         writeVarInt(out, commandIndex);
+      }
+      else
+      {
+         writeString(out, body.getCommandId());
+      }
+      if (args != null)
+      {
+         writeVarInt(out, args.length);
+         for (int i = 0; i < args.length; i++)
+         {
+            writeValue(out, args[i]);
+         }
+      }
+   }
+
+   private MessageBody readMessageBody(Input in) throws IOException, ClassNotFoundException
+   {
+      int flags = in.readByte();
+      int destination = (flags & FLAG_UNICAST) == 0 ? 0 : in.readInt();
+      int commandIndex = -1;
+      String commandId = null;
+      if ((flags & FLAG_INDEXED) == 0)
+      {
+         commandId = readString(in);
+      }
+      else
+      {
+         commandIndex = readVarInt(in);
+      }
+      Serializable[] args = null;
+      if ((flags & FLAG_ARGS) != 0)
+      {
+         args = new Serializable[readVarInt(in)];
+         for (int i = 0; i < args.length; i++)
+         {
+            args[i] = (Serializable)readValue(in);
+         }
+      }
+      return new MessageBody(destination, commandId, commandIndex, args, (flags & FLAG_ASYNCHRONOUS) != 0);
+   }
+
+   private void writeValue(Output out, Object value) throws IOException
+   {
+      if (value == null)
+      {
+         out.writeByte(TYPE_NULL);
+      }
+      else if (value instanceof String)
+      {
+         out.writeByte(TYPE_STRING);
+         writeString(out, (String)value);
+      }
+      else if (value instanceof Integer)
+      {
+         out.writeByte(TYPE_INTEGER);
+         out.writeInt((Integer)value);
+      }
+      else if (value instanceof Long)
+      {
+         out.writeByte(TYPE_LONG);
+         out.writeLong((Long)value);
+      }
+      else if (value instanceof Boolean)
+      {
+         out.writeByte((Boolean)value ? TYPE_TRUE : TYPE_FALSE);
+      }
+      else if (value instanceof Byte)
+      {
+         out.writeByte(TYPE_BYTE);
+         out.writeByte((Byte)value);
+      }
+      else if (value instanceof Short)
+      {
+         out.writeByte(TYPE_SHORT);
+         out.writeShort((Short)value);
+      }
+      else if (value instanceof Character)
+      {
+         out.writeByte(TYPE_CHARACTER);
+         out.writeChar((Character)value);
+      }
+      else if (value instanceof Float)
+      {
+         out.writeByte(TYPE_FLOAT);
+         out.writeFloat((Float)value);
+      }
+      else if (value instanceof Double)
+      {
+         out.writeByte(TYPE_DOUBLE);
+         out.writeDouble((Double)value);
+      }
+      else if (value instanceof byte[])
+      {
+         byte[] bytes = (byte[])value;
+         out.writeByte(TYPE_BYTES);
+         writeVarInt(out, bytes.length);
+         out.write(bytes);
+      }
+      else if (value instanceof MessageBody)
+      {
+         out.writeByte(TYPE_MESSAGE_BODY);
+         writeMessageBody(out, (MessageBody)value);
+      }
+      else if (value instanceof Externalizable)
+      {
+         out.writeByte(TYPE_EXTERNALIZABLE);
+         writeString(out, value.getClass().getName());
+         ((Externalizable)value).writeExternal(out);
+      }
+      else
+      {
+         out.writeByte(TYPE_SERIALIZABLE);
+         ByteArrayOutputStream baos = new ByteArrayOutputStream(256);
+         ObjectOutputStream oos = new ObjectOutputStream(baos);
+         oos.writeObject(value);
+         oos.close();
+         writeVarInt(out, baos.size());
+         baos.writeTo(out);
+      }
+   }
+
+   private Object readValue(Input in) throws IOException, ClassNotFoundException
+   {
+      byte type = in.readByte();
+      switch (type)
+      {
+         case TYPE_NULL :
+            return null;
+         case TYPE_STRING :
+            return readString(in);
+         case TYPE_INTEGER :
+            return in.readInt();
+         case TYPE_LONG :
+            return in.readLong();
+         case TYPE_TRUE :
+            return Boolean.TRUE;
+         case TYPE_FALSE :
+            return Boolean.FALSE;
+         case TYPE_BYTE :
+            return in.readByte();
+         case TYPE_SHORT :
+            return in.readShort();
+         case TYPE_CHARACTER :
+            return in.readChar();
+         case TYPE_FLOAT :
+            return in.readFloat();
+         case TYPE_DOUBLE :
+            return in.readDouble();
+         case TYPE_BYTES :
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            return bytes;
+         case TYPE_MESSAGE_BODY :
+            return readMessageBody(in);
+         case TYPE_EXTERNALIZABLE :
+            Externalizable value = newInstance(readString(in));
+            value.readExternal(in);
+            return value;
+         case TYPE_SERIALIZABLE :
+            byte[] serialized = new byte[readVarInt(in)];
+            in.readFully(serialized);
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(serialized));
+            try
+            {
+               return ois.readObject();
+            }
+            finally
+            {
+               ois.close();
+            }
+         default :
+            throw new IOException("Unknown type of argument " + type);
+      }
+   }
+
+   private Externalizable newInstance(String className) throws IOException, ClassNotFoundException
+   {
+      Class<?> clazz = classes.get(className);
+      if (clazz == null)
+      {
+         clazz = ClassLoading.forName(className, CompactMessageBodyCodec.class);
+         if (!Externalizable.class.isAssignableFrom(clazz))
+         {
+            throw new IOException("The class " + className + " is not Externalizable");
+         }
+         classes.putIfAbsent(className, clazz);
+      }
+      try
+      {
+         return (Externalizable)clazz.newInstance();
+      }
+      catch (Exception e)
+      {
+         IOException ioe = new IOException("Cannot create an instance of the class " + className);
+         ioe.initCause(e);
+         throw ioe;
+      }
+   }
+
+   private static void writeString(Output out, String value) throws IOException
+   {
+      byte[] bytes = value.getBytes(UTF8);
+      writeVarInt(out, bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(Input in) throws IOException
+   {
+      byte[] bytes = new byte[readVarInt(in)];
+      in.readFully(bytes);
+      return new String(bytes, UTF8);
+   }
+
+   /**
+    * Writes a positive int using 1 to 5 bytes according to its value
+    */
+   private static void writeVarInt(Output out, int value) throws IOException
+   {
+      while ((value & ~0x7F) != 0)
+      {
+         out.writeByte((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+      out.writeByte(value);
+   }
+
+   private static int readVarInt(Input in) throws IOException
+   {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7)
+      {
+         int b = in.readByte();
+         value |= (b & 0x7F) << shift;
+         if ((b & 0x80) == 0)
+         {
+            return value;
+         }
+      }
+      throw new IOException("Malformed variable length int");
+   }
+
+   /**
+    * The {@link ObjectOutput} given to the {@link Externalizable} arguments, the nested objects
+    * are written thanks to the codec
+    */
+   private class Output extends DataOutputStream implements ObjectOutput
+   {
+      Output(OutputStream out)
+      {
+         super(out);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void writeObject(Object obj) throws IOException
+      {
+         writeValue(this, obj);
+      }
+   }
+
+   /**
+    * The {@link ObjectInput} given to the {@link Externalizable} arguments, the nested objects
+    * are read thanks to the codec
+    */
+   private class Input extends DataInputStream implements ObjectInput
+   {
+      Input(InputStream in)
+      {
+         super(in);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Object readObject() throws ClassNotFoundException, IOException
+      {
+         return readValue(this);
+      }
+   }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+
+import java.io.IOException;
+
+/**
+ * A codec allows to define how the {@link MessageBody} exchanged by the cluster nodes are
+ * converted into bytes. The codec must be the same on all the cluster nodes and must have a
+ * public constructor without arguments.
+ *
+ * @version $Id$
+ */
+public interface MessageBodyCodec
+{
+   /**
+    * Converts the given message body into bytes
+    * @param body the message body to encode
+    * @return the corresponding bytes
+    * @throws IOException if the message body could not be encoded
+    */
+   byte[] encode(MessageBody body) throws IOException;
+
+   /**
+    * Converts the given bytes into a message body
+    * @param buffer the buffer containing the bytes to decode
+    * @param offset the offset of the first byte to decode
+    * @param length the total amount of bytes to decode
+    * @return the corresponding message body
+    * @throws IOException if the message body could not be decoded
+    * @throws ClassNotFoundException if the class of one of the arguments could not be found
+    */
+   MessageBody decode(byte[] buffer, int offset, int length) throws IOException, ClassNotFoundException;
+}
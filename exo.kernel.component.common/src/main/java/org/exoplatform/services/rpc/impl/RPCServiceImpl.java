@@ -67,6 +67,18 @@ public class RPCServiceImpl extends AbstractRPCService
          synchronous ? GroupRequest.GET_ALL : GroupRequest.GET_NONE, timeout);
    }
    
+   /**
+    * {@inheritDoc}
+    * JGroups 2 has no support of non blocking requests, so the message is sent in synchronous mode
+    * but the request ends as soon as the collector has received the expected amount of responses.
+    */
+   @Override
+   protected void castMessageAsync(List<Address> dests, Message msg, ResponseCollector collector, long timeout)
+   {
+      collector.onCompletion(dispatcher.castMessage(dests instanceof Vector ? (Vector<Address>)dests
+         : new Vector<Address>(dests), msg, GroupRequest.GET_ALL, timeout, false, collector));
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -92,4 +104,20 @@ public class RPCServiceImpl extends AbstractRPCService
    {
       m.setObject((Serializable)o);
    }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setBuffer(Message m, byte[] buffer)
+   {
+      m.setBuffer(buffer);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setOOB(Message m)
+   {
+      m.setFlag(Message.OOB);
+   }
 }
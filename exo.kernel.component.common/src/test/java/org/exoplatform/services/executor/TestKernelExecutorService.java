@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.executor;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.services.executor.impl.KernelExecutorServiceImpl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Id$
+ */
+public class TestKernelExecutorService extends TestCase
+{
+   private KernelExecutorServiceImpl service;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      InitParams params = new InitParams();
+      PropertiesParam param = new PropertiesParam();
+      param.setName(KernelExecutorServiceImpl.DEFAULT_PARAM);
+      param.setProperty(ExecutorSettings.QUEUE_SIZE, "10");
+      params.addParameter(param);
+      param = new PropertiesParam();
+      param.setName(KernelExecutorServiceImpl.EXECUTOR_PARAM_PREFIX + "configured");
+      param.setProperty(ExecutorSettings.POOL_SIZE, "3");
+      param.setProperty(ExecutorSettings.REJECTION_POLICY, ExecutorSettings.POLICY_ABORT);
+      params.addParameter(param);
+      service = new KernelExecutorServiceImpl(params);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      service.stop();
+   }
+
+   public void testSettings() throws Exception
+   {
+      KernelExecutor executor = service.getExecutor("configured", new ExecutorSettings(1, 5, null, null));
+      assertSame(executor, service.getExecutor("configured"));
+      assertEquals("configured", executor.getName());
+      // The configured settings take precedence over the given settings
+      assertEquals(Integer.valueOf(3), executor.getSettings().getPoolSize());
+      assertEquals(ExecutorSettings.POLICY_ABORT, executor.getSettings().getRejectionPolicy());
+      // The given settings take precedence over the default settings
+      assertEquals(Integer.valueOf(5), executor.getSettings().getQueueSize());
+      assertEquals(Boolean.FALSE, executor.getSettings().getVirtualThreads());
+
+      executor = service.getExecutor("other");
+      assertEquals(Integer.valueOf(Runtime.getRuntime().availableProcessors()), executor.getSettings().getPoolSize());
+      assertEquals(Integer.valueOf(10), executor.getSettings().getQueueSize());
+      assertEquals(ExecutorSettings.POLICY_CALLER_RUNS, executor.getSettings().getRejectionPolicy());
+      assertEquals(2, service.getExecutorNames().length);
+   }
+
+   public void testStatistics() throws Exception
+   {
+      KernelExecutor executor = service.getExecutor("statistics");
+      int tasks = 5;
+      Future<?>[] futures = new Future<?>[tasks];
+      for (int i = 0; i < tasks; i++)
+      {
+         futures[i] = executor.submit(new Runnable()
+         {
+            public void run()
+            {
+            }
+         });
+      }
+      for (int i = 0; i < tasks; i++)
+      {
+         futures[i].get(10, TimeUnit.SECONDS);
+      }
+      // The statistics are updated once the future is done
+      long deadline = System.currentTimeMillis() + 10000;
+      while (executor.getCompletedCount() < tasks && System.currentTimeMillis() < deadline)
+      {
+         Thread.sleep(10);
+      }
+      assertEquals(tasks, executor.getCompletedCount());
+      assertEquals(tasks, service.getCompletedCount("statistics"));
+      long[] histogram = executor.getLatencyHistogram();
+      assertEquals(KernelExecutor.LATENCY_BUCKETS.length + 1, histogram.length);
+      long total = 0;
+      for (long count : histogram)
+      {
+         total += count;
+      }
+      assertEquals(tasks, total);
+      assertTrue(executor.getMaxLatency() >= executor.getAverageLatency());
+      assertNotNull(service.getLatencyHistogram("statistics"));
+      assertNull(service.getLatencyHistogram("unknown"));
+      service.resetStatistics();
+      assertEquals(0, executor.getCompletedCount());
+      assertEquals(0, executor.getMaxLatency());
+   }
+
+   public void testAbortPolicy() throws Exception
+   {
+      KernelExecutor executor = service.getExecutor("configured", new ExecutorSettings(1, 1, null, null));
+      Blocker blocker = new Blocker(3);
+      for (int i = 0; i < 3; i++)
+      {
+         executor.execute(blocker);
+      }
+      assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+      assertEquals(3, executor.getActiveCount());
+      // The next task is queued
+      executor.execute(blocker);
+      assertEquals(1, executor.getQueueSize());
+      try
+      {
+         executor.execute(blocker);
+         fail("A RejectedExecutionException was expected");
+      }
+      catch (RejectedExecutionException e)
+      {
+         // expected
+      }
+      assertEquals(1, executor.getRejectedCount());
+      assertEquals(1, service.getRejectedCount("configured"));
+      blocker.release.countDown();
+   }
+
+   public void testBlockPolicy() throws Exception
+   {
+      final KernelExecutor executor =
+         service.getExecutor("block", new ExecutorSettings(1, 1, ExecutorSettings.POLICY_BLOCK, null));
+      final Blocker blocker = new Blocker(1);
+      executor.execute(blocker);
+      assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+      executor.execute(blocker);
+      final CountDownLatch submitted = new CountDownLatch(1);
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      Thread thread = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               executor.execute(blocker);
+               submitted.countDown();
+            }
+            catch (Throwable e)
+            {
+               error.set(e);
+            }
+         }
+      };
+      thread.start();
+      // The thread is blocked until the queue has space again
+      assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+      assertEquals(1, executor.getRejectedCount());
+      blocker.release.countDown();
+      assertTrue(submitted.await(10, TimeUnit.SECONDS));
+      thread.join(10000);
+      assertNull(error.get());
+   }
+
+   public void testVirtualThreads() throws Exception
+   {
+      KernelExecutor executor =
+         service.getExecutor("virtual", new ExecutorSettings(1, 1, ExecutorSettings.POLICY_ABORT, true));
+      boolean supported;
+      try
+      {
+         Thread.class.getMethod("ofVirtual");
+         supported = true;
+      }
+      catch (NoSuchMethodException e)
+      {
+         supported = false;
+      }
+      assertEquals(supported, executor.isVirtual());
+      Blocker blocker = new Blocker(1);
+      executor.execute(blocker);
+      assertTrue(blocker.started.await(10, TimeUnit.SECONDS));
+      // The second task is accepted as the sum of the pool size and of the queue size is 2
+      executor.execute(blocker);
+      try
+      {
+         executor.execute(blocker);
+         fail("A RejectedExecutionException was expected");
+      }
+      catch (RejectedExecutionException e)
+      {
+         // expected
+      }
+      blocker.release.countDown();
+   }
+
+   public void testStop() throws Exception
+   {
+      KernelExecutor executor = service.getExecutor("stop");
+      service.stop();
+      assertTrue(executor.isShutdown());
+      assertEquals(0, service.getExecutorNames().length);
+      assertNotSame(executor, service.getExecutor("stop"));
+   }
+
+   private static class Blocker implements Runnable
+   {
+      final CountDownLatch started;
+
+      final CountDownLatch release = new CountDownLatch(1);
+
+      Blocker(int count)
+      {
+         started = new CountDownLatch(count);
+      }
+
+      public void run()
+      {
+         started.countDown();
+         try
+         {
+            release.await(10, TimeUnit.SECONDS);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+}
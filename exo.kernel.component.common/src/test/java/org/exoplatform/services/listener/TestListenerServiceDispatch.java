@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.listener;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
+import org.exoplatform.container.xml.ValueParam;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Id$
+ */
+public class TestListenerServiceDispatch extends TestCase
+{
+
+   public void testConcurrentRegistration() throws Exception
+   {
+      final ListenerService service = new ListenerService(new ExoContainerContext(new ExoContainer()));
+      final int threads = 10;
+      final int listeners = 100;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final List<Throwable> errors = new ArrayList<Throwable>();
+      for (int i = 0; i < threads; i++)
+      {
+         new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < listeners; j++)
+                  {
+                     service.addListener("concurrent", new CountingListener());
+                     service.broadcast("concurrent", this, null);
+                  }
+               }
+               catch (Throwable e)
+               {
+                  synchronized (errors)
+                  {
+                     errors.add(e);
+                  }
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         }.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      assertTrue("Unexpected errors: " + errors, errors.isEmpty());
+      assertEquals(threads * listeners, service.getListenerCount("concurrent"));
+      assertEquals(threads * listeners, service.getDispatchCount("concurrent"));
+      assertTrue(Arrays.asList(service.getEventNames()).contains("concurrent"));
+      assertEquals(0, service.getListenerCount("unknown"));
+      assertEquals(0, service.getDispatchCount("unknown"));
+   }
+
+   public void testSingleEventPerBroadcast() throws Exception
+   {
+      ListenerService service = new ListenerService(new ExoContainerContext(new ExoContainer()));
+      CountingListener listener1 = new CountingListener();
+      CountingListener listener2 = new CountingListener();
+      service.addListener("single", listener1);
+      service.addListener("single", listener2);
+      service.broadcast("single", this, "data");
+      assertEquals(1, listener1.count);
+      assertEquals(1, listener2.count);
+      assertNotNull(listener1.event);
+      assertSame(listener1.event, listener2.event);
+      assertEquals("data", listener1.event.getData());
+      assertEquals(1, service.getDispatchCount("single"));
+      assertTrue(service.getMaxDispatchTime("single") >= service.getAverageDispatchTime("single"));
+      service.resetStatistics();
+      assertEquals(0, service.getDispatchCount("single"));
+      assertEquals(0, service.getMaxDispatchTime("single"));
+   }
+
+   public void testBoundedExecutor() throws Exception
+   {
+      InitParams params = new InitParams();
+      PropertiesParam param = new PropertiesParam();
+      param.setName(ListenerService.EXECUTOR_PARAM_PREFIX + "bounded");
+      param.setProperty("pool-size", "1");
+      param.setProperty("queue-size", "1");
+      param.setProperty("rejection-policy", "abort");
+      params.addParameter(param);
+      ListenerService service = new ListenerService(new ExoContainerContext(new ExoContainer()), params);
+      BlockingListener listener = new BlockingListener();
+      service.addListener("bounded", listener);
+      service.addListener("unbounded", new BlockingListener());
+
+      // The first event is taken by the only thread of the pool
+      service.broadcast("bounded", this, null);
+      assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+      // The second event is queued
+      service.broadcast("bounded", this, null);
+      assertEquals(1, service.getQueueSize("bounded"));
+      // The third event is rejected
+      service.broadcast("bounded", this, null);
+      assertEquals(1, service.getRejectedCount("bounded"));
+      assertEquals(1, service.getQueueSize("bounded"));
+      // The other events use the default executor
+      assertEquals(0, service.getRejectedCount("unbounded"));
+      assertEquals(0, service.getQueueSize("unbounded"));
+      listener.release.countDown();
+      assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+      assertEquals(3, service.getDispatchCount("bounded"));
+   }
+
+   public void testUnboundedByDefault() throws Exception
+   {
+      ListenerService service = new ListenerService(new ExoContainerContext(new ExoContainer()));
+      BlockingListener listener = new BlockingListener();
+      service.addListener("unbounded", listener);
+      CallerListener callerListener = new CallerListener();
+      service.addListener("caller", callerListener);
+
+      service.broadcast("unbounded", this, null);
+      assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+      int events = 2000;
+      for (int i = 0; i < events; i++)
+      {
+         service.broadcast("caller", this, null);
+      }
+      // Nothing is notified by the current thread
+      assertNull(callerListener.thread);
+      assertEquals(events, service.getQueueSize("caller"));
+      assertEquals(0, service.getRejectedCount("caller"));
+      listener.release.countDown();
+   }
+
+   public void testCallerRunsPolicy() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam param = new ValueParam();
+      param.setName("asynchQueueSize");
+      param.setValue("1");
+      params.addParameter(param);
+      ListenerService service = new ListenerService(new ExoContainerContext(new ExoContainer()), params);
+      BlockingListener listener = new BlockingListener();
+      service.addListener("callerRuns", listener);
+      CallerListener callerListener = new CallerListener();
+      service.addListener("caller", callerListener);
+
+      service.broadcast("callerRuns", this, null);
+      assertTrue(listener.started.await(10, TimeUnit.SECONDS));
+      service.broadcast("callerRuns", this, null);
+      assertEquals(1, service.getQueueSize("caller"));
+      // The queue is full so the listener is notified by the current thread
+      service.broadcast("caller", this, null);
+      assertSame(Thread.currentThread(), callerListener.thread);
+      assertEquals(1, service.getRejectedCount("caller"));
+      listener.release.countDown();
+      assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+   }
+
+   public static class CountingListener extends Listener<Object, Object>
+   {
+      volatile int count;
+
+      volatile Event<Object, Object> event;
+
+      @Override
+      public void onEvent(Event<Object, Object> event) throws Exception
+      {
+         count++;
+         this.event = event;
+      }
+   }
+
+   @Asynchronous
+   public static class BlockingListener extends Listener<Object, Object>
+   {
+      final CountDownLatch started = new CountDownLatch(1);
+
+      final CountDownLatch release = new CountDownLatch(1);
+
+      final CountDownLatch done = new CountDownLatch(2);
+
+      @Override
+      public void onEvent(Event<Object, Object> event) throws Exception
+      {
+         started.countDown();
+         release.await();
+         done.countDown();
+      }
+   }
+
+   @Asynchronous
+   public static class CallerListener extends Listener<Object, Object>
+   {
+      volatile Thread thread;
+
+      @Override
+      public void onEvent(Event<Object, Object> event) throws Exception
+      {
+         thread = Thread.currentThread();
+      }
+   }
+}
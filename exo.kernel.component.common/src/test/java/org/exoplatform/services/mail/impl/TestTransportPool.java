@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.mail.impl;
+
+import junit.framework.TestCase;
+
+import org.subethamail.wiser.Wiser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * @version $Id$
+ */
+public class TestTransportPool extends TestCase
+{
+   /**
+    * SMTP server port, different from the one used by the mail service tests
+    */
+   private static final int SMTP_PORT = 2526;
+
+   private Wiser mailServer;
+
+   private Session session;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      mailServer = new Wiser();
+      mailServer.setPort(SMTP_PORT);
+      mailServer.start();
+      Properties props = new Properties();
+      props.put("mail.smtp.host", "localhost");
+      props.put("mail.smtp.port", String.valueOf(SMTP_PORT));
+      props.put("mail.transport.protocol", "smtp");
+      session = Session.getInstance(props);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      mailServer.stop();
+   }
+
+   public void testReuse() throws Exception
+   {
+      TransportPool pool = new TransportPool(session, 2, 0);
+      try
+      {
+         TransportPool.PooledTransport transport = pool.borrow();
+         Transport connected = transport.transport;
+         assertTrue(connected.isConnected());
+         pool.release(transport);
+         assertEquals(1, pool.getIdleCount());
+         // The idle transport is reused
+         transport = pool.borrow();
+         assertSame(connected, transport.transport);
+         assertEquals(0, pool.getIdleCount());
+         TransportPool.PooledTransport other = pool.borrow();
+         assertNotSame(connected, other.transport);
+         TransportPool.PooledTransport third = pool.borrow();
+         pool.release(transport);
+         pool.release(other);
+         // The pool is full so the transport is closed
+         pool.release(third);
+         assertEquals(2, pool.getIdleCount());
+         assertFalse(third.transport.isConnected());
+
+         pool.send(createMessage("single"));
+         assertEquals(1, mailServer.getMessages().size());
+         assertEquals(2, pool.getIdleCount());
+      }
+      finally
+      {
+         pool.close();
+      }
+      assertEquals(0, pool.getIdleCount());
+   }
+
+   public void testHealthCheck() throws Exception
+   {
+      TransportPool pool = new TransportPool(session, 2, 0);
+      try
+      {
+         TransportPool.PooledTransport transport = pool.borrow();
+         pool.release(transport);
+         // The connection is closed by the server
+         mailServer.stop();
+         mailServer = new Wiser();
+         mailServer.setPort(SMTP_PORT);
+         mailServer.start();
+         TransportPool.PooledTransport other = pool.borrow();
+         assertNotSame(transport.transport, other.transport);
+         assertTrue(other.transport.isConnected());
+         pool.release(other);
+      }
+      finally
+      {
+         pool.close();
+      }
+   }
+
+   public void testIdleEviction() throws Exception
+   {
+      TransportPool pool = new TransportPool(session, 2, 100);
+      try
+      {
+         TransportPool.PooledTransport transport = pool.borrow();
+         pool.release(transport);
+         assertEquals(1, pool.getIdleCount());
+         long deadline = System.currentTimeMillis() + 10000;
+         while (pool.getIdleCount() > 0 && System.currentTimeMillis() < deadline)
+         {
+            Thread.sleep(50);
+         }
+         assertEquals(0, pool.getIdleCount());
+         assertFalse(transport.transport.isConnected());
+      }
+      finally
+      {
+         pool.close();
+      }
+   }
+
+   public void testBatch() throws Exception
+   {
+      TransportPool pool = new TransportPool(session, 1, 0);
+      try
+      {
+         List<MimeMessage> messages = new ArrayList<MimeMessage>();
+         for (int i = 0; i < 10; i++)
+         {
+            messages.add(createMessage("batch" + i));
+         }
+         pool.send(messages);
+         assertEquals(10, mailServer.getMessages().size());
+         assertEquals(1, pool.getIdleCount());
+
+         // A message without recipient does not prevent the other messages from being sent
+         messages.clear();
+         messages.add(createMessage("before"));
+         MimeMessage invalid = new MimeMessage(session);
+         invalid.setFrom(new InternetAddress("sender@localhost"));
+         invalid.setSubject("invalid");
+         invalid.setText("invalid");
+         messages.add(invalid);
+         messages.add(createMessage("after"));
+         try
+         {
+            pool.send(messages);
+            fail("A MessagingException was expected");
+         }
+         catch (MessagingException e)
+         {
+            assertNotNull(e.getNextException());
+         }
+         assertEquals(12, mailServer.getMessages().size());
+      }
+      finally
+      {
+         pool.close();
+      }
+   }
+
+   private MimeMessage createMessage(String subject) throws Exception
+   {
+      MimeMessage message = new MimeMessage(session);
+      message.setFrom(new InternetAddress("sender@localhost"));
+      message.setRecipients(javax.mail.Message.RecipientType.TO, "recipient@localhost");
+      message.setSubject(subject);
+      message.setText(subject);
+      return message;
+   }
+}
@@ -28,8 +28,11 @@ import org.subethamail.wiser.Wiser;
 import org.subethamail.wiser.WiserMessage;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -170,6 +173,83 @@ public class TestMailService extends TestCase
       assertTrue(isEmailMessageSent(MAIL_SUBJECT));
    }
 
+   /**
+    * Here we test the sending of several messages over the same connection.
+    * We check that a malformed message does not prevent the other messages
+    * from being sent.
+    */
+   public void testSendMessages() throws Exception
+   {
+      List<Message> messages = new ArrayList<Message>();
+      for (int i = 0; i < THREAD_NUMBER; i++)
+      {
+         Message message = new Message();
+         message.setFrom(generateRandomEmailSender());
+         message.setTo(generateRandomEmailRecipient());
+         message.setSubject(MAIL_SUBJECT + i);
+         message.setBody(MAIL_CONTENTS + i);
+         messages.add(message);
+      }
+      assertEquals("SMTP server should be now empty", 0, mailServer.getMessages().size());
+      service.sendMessages(messages);
+      assertEquals("SMTP server should have " + THREAD_NUMBER + " messages", THREAD_NUMBER,
+         mailServer.getMessages().size());
+      for (int i = 0; i < THREAD_NUMBER; i++)
+      {
+         assertTrue(isEmailMessageSent(MAIL_SUBJECT + i));
+      }
+
+      Message malformed = new Message();
+      malformed.setFrom("!@#$%^&*()");
+      malformed.setTo(generateRandomEmailRecipient());
+      malformed.setSubject(MAIL_SUBJECT);
+      malformed.setBody(MAIL_CONTENTS);
+      messages.add(0, malformed);
+      try
+      {
+         service.sendMessages(messages);
+         fail();
+      }
+      catch (MessagingException e)
+      {
+         assertNotNull(e.getNextException());
+      }
+      assertEquals("SMTP server should have " + (2 * THREAD_NUMBER) + " messages", 2 * THREAD_NUMBER,
+         mailServer.getMessages().size());
+
+      // An attachment that cannot be read must not prevent the other messages from being sent
+      messages.remove(0);
+      Message unreadable = new Message();
+      unreadable.setFrom(generateRandomEmailSender());
+      unreadable.setTo(generateRandomEmailRecipient());
+      unreadable.setSubject(MAIL_SUBJECT);
+      unreadable.setBody(MAIL_CONTENTS);
+      Attachment attachment = new Attachment();
+      attachment.setInputStream(new InputStream()
+      {
+         @Override
+         public int read() throws IOException
+         {
+            throw new IOException("Unreadable attachment");
+         }
+      });
+      attachment.setMimeType(TEXT_PLAIN);
+      unreadable.addAttachment(attachment);
+      messages.add(0, unreadable);
+      try
+      {
+         service.sendMessages(messages);
+         fail();
+      }
+      catch (MessagingException e)
+      {
+         assertNotNull(e.getNextException());
+         assertTrue(e.getNextException().getCause() instanceof IOException);
+      }
+      assertEquals("SMTP server should have " + (3 * THREAD_NUMBER) + " messages", 3 * THREAD_NUMBER,
+         mailServer.getMessages().size());
+   }
+
    /**
     * Here we test asynchronous email sending explicitly defined by sender, 
     * recipient, subject and content parameters.
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.rpc.impl;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.rpc.impl.AbstractRPCService.MessageBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * @version $Id$
+ */
+public class TestCompactMessageBodyCodec extends TestCase
+{
+
+   private final CompactMessageBodyCodec codec = new CompactMessageBodyCodec();
+
+   public void testCommandId() throws Exception
+   {
+      MessageBody body = roundTrip(new MessageBody(0, "myCommand", -1, null));
+      assertEquals("myCommand", body.getCommandId());
+      assertEquals(-1, body.getCommandIndex());
+      assertEquals(0, body.getDestination());
+      assertNull(body.getArgs());
+      assertFalse(body.isAsynchronous());
+
+      body = roundTrip(new MessageBody(12345, "myCommand", 300, new Serializable[0], true));
+      assertNull(body.getCommandId());
+      assertEquals(300, body.getCommandIndex());
+      assertEquals(12345, body.getDestination());
+      assertEquals(0, body.getArgs().length);
+      assertTrue(body.isAsynchronous());
+   }
+
+   public void testArguments() throws Exception
+   {
+      byte[] bytes = new byte[1024];
+      for (int i = 0; i < bytes.length; i++)
+      {
+         bytes[i] = (byte)i;
+      }
+      Date date = new Date();
+      StringBuilder longString = new StringBuilder();
+      for (int i = 0; i < 30000; i++)
+      {
+         longString.append('\u00e9');
+      }
+      Serializable[] args =
+         new Serializable[]{null, "foo", longString.toString(), Integer.MIN_VALUE, Long.MAX_VALUE, Boolean.TRUE,
+            Boolean.FALSE, Byte.valueOf((byte)-1), Short.valueOf((short)2), Character.valueOf('c'),
+            Float.valueOf(1.5f), Double.valueOf(2.5), bytes, new Payload("ws", date, new Payload("nested", null, null)),
+            date};
+      MessageBody body = roundTrip(new MessageBody(0, "myCommand", 1, args));
+      Serializable[] result = body.getArgs();
+      assertEquals(args.length, result.length);
+      for (int i = 0; i < args.length; i++)
+      {
+         if (args[i] instanceof byte[])
+         {
+            assertTrue(Arrays.equals((byte[])args[i], (byte[])result[i]));
+         }
+         else
+         {
+            assertEquals(args[i], result[i]);
+         }
+      }
+   }
+
+   public void testBatch() throws Exception
+   {
+      MessageBody[] bodies = new MessageBody[3];
+      for (int i = 0; i < bodies.length; i++)
+      {
+         bodies[i] = new MessageBody(0, "myCommand" + i, i == 1 ? 5 : -1, new Serializable[]{i});
+      }
+      MessageBody body = roundTrip(new MessageBody(0, "batch", -1, bodies));
+      assertEquals("batch", body.getCommandId());
+      Serializable[] result = body.getArgs();
+      assertEquals(bodies.length, result.length);
+      for (int i = 0; i < bodies.length; i++)
+      {
+         MessageBody b = (MessageBody)result[i];
+         assertEquals(i == 1 ? null : "myCommand" + i, b.getCommandId());
+         assertEquals(i == 1 ? 5 : -1, b.getCommandIndex());
+         assertEquals(i, b.getArgs()[0]);
+      }
+   }
+
+   public void testSize() throws Exception
+   {
+      MessageBody body =
+         new MessageBody(0, "org.exoplatform.services.rpc.impl.TestCompactMessageBodyCodec-myCommand", 3,
+            new Serializable[]{"/repository/collaboration", Long.valueOf(1), new Payload("ws", null, null)});
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(body);
+      oos.close();
+      assertTrue(codec.encode(body).length < baos.size() / 2);
+   }
+
+   private MessageBody roundTrip(MessageBody body) throws Exception
+   {
+      byte[] bytes = codec.encode(body);
+      byte[] buffer = new byte[bytes.length + 10];
+      System.arraycopy(bytes, 0, buffer, 5, bytes.length);
+      return codec.decode(buffer, 5, bytes.length);
+   }
+
+   public static class Payload implements Externalizable
+   {
+      private static final long serialVersionUID = 1L;
+
+      private String workspace;
+
+      private Date date;
+
+      private Payload nested;
+
+      public Payload()
+      {
+      }
+
+      public Payload(String workspace, Date date, Payload nested)
+      {
+         this.workspace = workspace;
+         this.date = date;
+         this.nested = nested;
+      }
+
+      public void writeExternal(ObjectOutput out) throws IOException
+      {
+         out.writeUTF(workspace);
+         out.writeObject(date);
+         out.writeObject(nested);
+      }
+
+      public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+      {
+         workspace = in.readUTF();
+         date = (Date)in.readObject();
+         nested = (Payload)in.readObject();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof Payload))
+         {
+            return false;
+         }
+         Payload other = (Payload)obj;
+         return workspace.equals(other.workspace) && (date == null ? other.date == null : date.equals(other.date))
+            && (nested == null ? other.nested == null : nested.equals(other.nested));
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return workspace.hashCode();
+      }
+   }
+}
@@ -23,6 +23,7 @@ import junit.framework.TestCase;
 import org.exoplatform.container.PortalContainer;
 import org.exoplatform.container.configuration.ConfigurationManager;
 import org.exoplatform.container.xml.InitParams;
+import org.exoplatform.container.xml.PropertiesParam;
 import org.exoplatform.container.xml.ValueParam;
 import org.exoplatform.services.rpc.RPCException;
 import org.exoplatform.services.rpc.RemoteCommand;
@@ -34,9 +35,13 @@ import org.jgroups.Address;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -1252,6 +1257,388 @@ public class TestRPCServiceImpl extends TestCase
       }
    }
    
+   public void testAsyncCommands() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam paramConf = new ValueParam();
+      paramConf.setName(RPCServiceImpl.PARAM_JGROUPS_CONFIG);
+      paramConf.setValue("jar:/conf/portal/udp.xml");
+      params.addParameter(paramConf);
+      RPCServiceImpl service1 = null, service2 = null;
+      try
+      {
+         service1 = new RPCServiceImpl(container.getContext(), params, configManager);
+         service2 = new RPCServiceImpl(container.getContext(), params, configManager);
+         final CountDownLatch releaseSignal = new CountDownLatch(1);
+         RemoteCommand service1Cmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               return "service 1" + (args == null || args.length == 0 ? "" : args[0]);
+            }
+         };
+         service1.registerCommand(service1Cmd);
+         RemoteCommand service1SlowCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncSlowCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               return "service 1";
+            }
+         };
+         service1.registerCommand(service1SlowCmd);
+         RemoteCommand service1ErrorCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncErrorCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               throw new Exception("MyException");
+            }
+         };
+         service1.registerCommand(service1ErrorCmd);
+         service2.registerCommand(new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               return "service 2" + (args == null || args.length == 0 ? "" : args[0]);
+            }
+         });
+         service2.registerCommand(new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncSlowCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               releaseSignal.await(10, TimeUnit.SECONDS);
+               return "service 2";
+            }
+         });
+         service1.start();
+         service2.start();
+
+         // Several requests in flight at the same time
+         List<Future<List<Object>>> futures = new ArrayList<Future<List<Object>>>();
+         for (int i = 0; i < 10; i++)
+         {
+            futures.add(service1.executeCommandOnAllNodesAsync(service1Cmd, RPCServiceImpl.ALL_RESPONSES, 0, i));
+         }
+         for (int i = 0; i < futures.size(); i++)
+         {
+            List<Object> result = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals(2, result.size());
+            assertEquals("service 1" + i, result.get(0));
+            assertEquals("service 2" + i, result.get(1));
+         }
+
+         // The future is completed as soon as the first response has been received
+         Future<List<Object>> future =
+            service1.executeCommandOnAllNodesAsync(service1SlowCmd, RPCServiceImpl.ANY_RESPONSE, 0);
+         List<Object> result = future.get(10, TimeUnit.SECONDS);
+         assertEquals(1, result.size());
+         assertEquals("service 1", result.get(0));
+         releaseSignal.countDown();
+
+         // The missing responses are replaced with a replication exception once the timeout is reached
+         final CountDownLatch releaseSignal2 = new CountDownLatch(1);
+         service2.registerCommand(new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "AsyncSlowCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               releaseSignal2.await(10, TimeUnit.SECONDS);
+               return "service 2";
+            }
+         });
+         future = service1.executeCommandOnAllNodesAsync(service1SlowCmd, RPCServiceImpl.ALL_RESPONSES, 500);
+         result = future.get(10, TimeUnit.SECONDS);
+         assertEquals(2, result.size());
+         assertEquals("service 1", result.get(0));
+         assertTrue("We expect an RPCException due to a Replication Timeout", result.get(1) instanceof RPCException);
+         releaseSignal2.countDown();
+
+         Future<Object> coordinatorFuture = service1.executeCommandOnCoordinatorAsync(service1Cmd, 0);
+         assertEquals("service 1", coordinatorFuture.get(10, TimeUnit.SECONDS));
+         coordinatorFuture = service1.executeCommandOnCoordinatorAsync(service1ErrorCmd, 0);
+         try
+         {
+            coordinatorFuture.get(10, TimeUnit.SECONDS);
+            fail("We expect an ExecutionException since the command fails on the coordinator");
+         }
+         catch (ExecutionException e)
+         {
+            assertTrue(e.getCause() instanceof RPCException);
+         }
+      }
+      finally
+      {
+         if (service1 != null)
+         {
+            service1.stop();
+         }
+         if (service2 != null)
+         {
+            service2.stop();
+         }
+      }
+   }
+
+   public void testCompactCodecAndBatching() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam paramConf = new ValueParam();
+      paramConf.setName(RPCServiceImpl.PARAM_JGROUPS_CONFIG);
+      paramConf.setValue("jar:/conf/portal/udp.xml");
+      params.addParameter(paramConf);
+      ValueParam paramCodec = new ValueParam();
+      paramCodec.setName(RPCServiceImpl.PARAM_MESSAGE_CODEC);
+      paramCodec.setValue(RPCServiceImpl.COMPACT_MESSAGE_CODEC);
+      params.addParameter(paramCodec);
+      ValueParam paramBatchDelay = new ValueParam();
+      paramBatchDelay.setName(RPCServiceImpl.PARAM_BATCH_DELAY);
+      paramBatchDelay.setValue("50");
+      params.addParameter(paramBatchDelay);
+      ValueParam paramBatchSize = new ValueParam();
+      paramBatchSize.setName(RPCServiceImpl.PARAM_BATCH_SIZE);
+      paramBatchSize.setValue("5");
+      params.addParameter(paramBatchSize);
+      RPCServiceImpl service1 = null, service2 = null;
+      try
+      {
+         service1 = new RPCServiceImpl(container.getContext(), params, configManager);
+         service2 = new RPCServiceImpl(container.getContext(), params, configManager);
+         final CountDownLatch doneSignal = new CountDownLatch(24);
+         final List<Object> received = Collections.synchronizedList(new ArrayList<Object>());
+         RemoteCommand service1Cmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "CompactCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               doneSignal.countDown();
+               return "service 1" + args[0];
+            }
+         };
+         service1.registerCommand(service1Cmd);
+         RemoteCommand service2Cmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "CompactCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               received.add(args[0]);
+               doneSignal.countDown();
+               return "service 2" + args[0];
+            }
+         };
+         service2.registerCommand(service2Cmd);
+         service1.start();
+         service2.start();
+
+         // An index is requested in the background for the command on its first call
+         for (int i = 0; i < 2; i++)
+         {
+            List<Object> result = service1.executeCommandOnAllNodes(service1Cmd, true, "-" + i);
+            assertEquals(2, result.size());
+            assertEquals("service 1-" + i, result.get(0));
+            assertEquals("service 2-" + i, result.get(1));
+         }
+         List<Object> result = service2.executeCommandOnAllNodes(service2Cmd, true, "-2");
+         assertEquals(2, result.size());
+         assertEquals("service 1-2", result.get(0));
+         assertEquals("service 2-2", result.get(1));
+
+         // The asynchronous calls are batched
+         for (int i = 0; i < 9; i++)
+         {
+            result = service1.executeCommandOnAllNodes(service1Cmd, false, i);
+            assertTrue(result.isEmpty());
+         }
+         assertTrue(doneSignal.await(10, TimeUnit.SECONDS));
+         for (int i = 0; i < 9; i++)
+         {
+            assertEquals(i, received.get(i + 3));
+         }
+
+         // The pending asynchronous calls are sent before the next synchronous call
+         for (int i = 0; i < 3; i++)
+         {
+            result = service1.executeCommandOnAllNodes(service1Cmd, false, "async-" + i);
+            assertTrue(result.isEmpty());
+         }
+         result = service1.executeCommandOnAllNodes(service1Cmd, true, "sync");
+         assertEquals(2, result.size());
+         assertEquals("service 2sync", result.get(1));
+         assertEquals(16, received.size());
+         for (int i = 0; i < 3; i++)
+         {
+            assertEquals("async-" + i, received.get(i + 12));
+         }
+         assertEquals("sync", received.get(15));
+      }
+      finally
+      {
+         if (service1 != null)
+         {
+            service1.stop();
+         }
+         if (service2 != null)
+         {
+            service2.stop();
+         }
+      }
+   }
+
+   public void testCommandPolicies() throws Exception
+   {
+      InitParams params = new InitParams();
+      ValueParam paramConf = new ValueParam();
+      paramConf.setName(RPCServiceImpl.PARAM_JGROUPS_CONFIG);
+      paramConf.setValue("jar:/conf/portal/udp.xml");
+      params.addParameter(paramConf);
+      PropertiesParam paramSlow = new PropertiesParam();
+      paramSlow.setName(RPCServiceImpl.COMMAND_POLICY_PARAM_PREFIX + "SlowCommand");
+      paramSlow.setProperty("policy", "dedicated");
+      paramSlow.setProperty("pool-size", "2");
+      paramSlow.setProperty("oob", "true");
+      params.addParameter(paramSlow);
+      PropertiesParam paramShared = new PropertiesParam();
+      paramShared.setName(RPCServiceImpl.COMMAND_POLICY_PARAM_PREFIX + "SharedCommand");
+      paramShared.setProperty("policy", "shared");
+      params.addParameter(paramShared);
+      RPCServiceImpl service1 = null, service2 = null;
+      try
+      {
+         service1 = new RPCServiceImpl(container.getContext(), params, configManager);
+         service2 = new RPCServiceImpl(container.getContext(), params, configManager);
+         final CountDownLatch releaseSignal = new CountDownLatch(1);
+         final CountDownLatch doneSignal = new CountDownLatch(2);
+         RemoteCommand slowCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "SlowCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               releaseSignal.await(10, TimeUnit.SECONDS);
+               doneSignal.countDown();
+               return "slow";
+            }
+         };
+         service1.registerCommand(slowCmd);
+         service2.registerCommand(slowCmd);
+         RemoteCommand fastCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "FastCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               return "fast";
+            }
+         };
+         service1.registerCommand(fastCmd);
+         service2.registerCommand(fastCmd);
+         RemoteCommand sharedCmd = new RemoteCommand()
+         {
+            public String getId()
+            {
+               return "SharedCommand";
+            }
+
+            public String execute(Serializable[] args) throws Throwable
+            {
+               if (args.length > 0)
+               {
+                  throw new Exception("MyException");
+               }
+               return Thread.currentThread().getName();
+            }
+         };
+         service1.registerCommand(sharedCmd);
+         service2.registerCommand(sharedCmd);
+         service1.start();
+         service2.start();
+
+         assertEquals("dedicated (oob)", service1.getExecutionPolicy("SlowCommand"));
+         assertEquals("shared", service1.getExecutionPolicy("SharedCommand"));
+         assertEquals("inline", service1.getExecutionPolicy("FastCommand"));
+
+         // The slow commands are executed by their own pool so they don't delay the next commands
+         service1.executeCommandOnAllNodes(slowCmd, false);
+         List<Object> result = service1.executeCommandOnAllNodes(fastCmd, 5000);
+         assertEquals(2, result.size());
+         assertEquals("fast", result.get(0));
+         assertEquals("fast", result.get(1));
+         releaseSignal.countDown();
+         assertTrue(doneSignal.await(10, TimeUnit.SECONDS));
+
+         // The result of a command executed by a pool of threads is returned to the sender
+         result = service1.executeCommandOnAllNodes(sharedCmd, true);
+         assertEquals(2, result.size());
+         assertTrue(((String)result.get(0)).startsWith("RPCService-shared-"));
+         assertTrue(((String)result.get(1)).startsWith("RPCService-shared-"));
+         result = service1.executeCommandOnAllNodes(sharedCmd, true, "error");
+         assertEquals(2, result.size());
+         assertTrue(result.get(0) instanceof RPCException);
+         assertTrue(result.get(1) instanceof RPCException);
+
+         assertEquals(1, service2.getExecutionCount("SlowCommand"));
+         assertEquals(1, service2.getExecutionCount("FastCommand"));
+         assertEquals(2, service2.getExecutionCount("SharedCommand"));
+         assertEquals(0, service2.getQueueSize("SlowCommand"));
+         assertTrue(service2.getMaxExecutionTime("SlowCommand") >= service2.getAverageExecutionTime("SlowCommand"));
+         assertTrue(Arrays.asList(service2.getCommandIds()).contains("FastCommand"));
+         service2.resetStatistics();
+         assertEquals(0, service2.getExecutionCount("SlowCommand"));
+      }
+      finally
+      {
+         if (service1 != null)
+         {
+            service1.stop();
+         }
+         if (service2 != null)
+         {
+            service2.stop();
+         }
+      }
+   }
+
    private static class MyListener implements TopologyChangeListener
    {
 
@@ -44,6 +44,8 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -300,6 +302,113 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
       });
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> getAll(final Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<K, V>>()
+      {
+
+         @Override
+         public Map<K, V> run()
+         {
+            return getAllOnly(names);
+         }
+      });
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         V value = result.get(name);
+         if (value == null)
+         {
+            misses.incrementAndGet();
+         }
+         else
+         {
+            hits.incrementAndGet();
+         }
+         onGet(name, value);
+      }
+      return result;
+   }
+
+   /**
+    * Only gets the data from the cache nothing more
+    */
+   protected Map<K, V> getAllOnly(Collection<? extends K> names)
+   {
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         V value = cache.get(name);
+         if (value != null)
+         {
+            result.put(name, value);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void removeAll(final Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+      {
+
+         @Override
+         public Void run()
+         {
+            Map<K, V> removed = new LinkedHashMap<K, V>();
+            cache.startBatch();
+            try
+            {
+               // Start transaction
+               for (K name : names)
+               {
+                  removed.put(name, cache.remove(name));
+               }
+               cache.endBatch(true);
+               // End transaction
+               for (Map.Entry<K, V> entry : removed.entrySet())
+               {
+                  onRemove(entry.getKey(), entry.getValue());
+               }
+            }
+            catch (Exception e) //NOSONAR
+            {
+               cache.endBatch(false);
+               LOG.warn("An error occurs while executing the removeAll method", e);
+            }
+            return null;
+         }
+      });
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -21,6 +21,8 @@ package org.exoplatform.services.cache.impl.infinispan.distributed;
 import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.management.annotations.Impact;
+import org.exoplatform.management.annotations.ImpactType;
 import org.exoplatform.management.annotations.Managed;
 import org.exoplatform.management.annotations.ManagedDescription;
 import org.exoplatform.management.annotations.ManagedName;
@@ -31,23 +33,38 @@ import org.exoplatform.services.cache.CachedObjectSelector;
 import org.exoplatform.services.cache.ExoCache;
 import org.exoplatform.services.cache.ExoCacheConfig;
 import org.exoplatform.services.cache.ObjectCacheInfo;
+import org.exoplatform.services.cache.concurrent.ConcurrentFIFOExoCache;
 import org.exoplatform.services.ispn.AbstractMapper;
 import org.exoplatform.services.ispn.DistributedCacheManager;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.infinispan.AdvancedCache;
 import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.context.Flag;
+import org.infinispan.distexec.DefaultExecutorService;
+import org.infinispan.distexec.DistributedCallable;
 import org.infinispan.distexec.mapreduce.Collector;
 import org.infinispan.distexec.mapreduce.MapReduceTask;
 import org.infinispan.distexec.mapreduce.Reducer;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.marshall.AbstractExternalizer;
 import org.infinispan.notifications.Listener;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.annotation.DataRehashed;
+import org.infinispan.notifications.cachelistener.annotation.TopologyChanged;
 import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
+import org.infinispan.notifications.cachelistener.event.DataRehashedEvent;
+import org.infinispan.notifications.cachelistener.event.TopologyChangedEvent;
 
 import java.io.Externalizable;
 import java.io.IOException;
@@ -56,14 +73,21 @@ import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author <a href="mailto:nfilotto@exoplatform.com">Nicolas Filotto</a>
@@ -81,38 +105,220 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
 
    public static final String CACHE_NAME = "eXoCache";
 
+   /**
+    * The default maximum size of the near cache when no max size has been configured
+    */
+   private static final int DEFAULT_NEAR_CACHE_MAX_SIZE = 1000;
+
    private final AtomicInteger hits = new AtomicInteger(0);
 
    private final AtomicInteger misses = new AtomicInteger(0);
 
+   private final AtomicInteger remoteHits = new AtomicInteger(0);
+
+   private final AtomicInteger remoteMisses = new AtomicInteger(0);
+
    private String label;
 
    private String name;
 
    private final String fullName;
 
+   /**
+    * The id of the full name of the cache, used to identify the cache in the keys
+    */
+   private final long fullNameId;
+
    private boolean distributed;
 
    private boolean replicated;
 
    private boolean logEnabled;
 
+   /**
+    * The full names of the caches that have been created locally by id
+    */
+   private static final ConcurrentMap<Long, String> FULL_NAMES = new ConcurrentHashMap<Long, String>();
+
    @SuppressWarnings("rawtypes")
    private static final ConcurrentMap<Cache, ConcurrentMap<String, List<ListenerContext>>> ALL_LISTENERS =
       new ConcurrentHashMap<Cache, ConcurrentMap<String, List<ListenerContext>>>();
 
+   /**
+    * The event listener registered on each Infinispan cache
+    */
+   @SuppressWarnings("rawtypes")
+   private static final ConcurrentMap<Cache, Object> ALL_EVENT_LISTENERS = new ConcurrentHashMap<Cache, Object>();
+
+   /**
+    * The instances having a near cache per cache full name
+    */
+   @SuppressWarnings("rawtypes")
+   private static final ConcurrentMap<Cache, ConcurrentMap<String, List<DistributedExoCache>>> ALL_NEAR_CACHES =
+      new ConcurrentHashMap<Cache, ConcurrentMap<String, List<DistributedExoCache>>>();
+
+   /**
+    * The keys of the entries stored locally per cache full name
+    */
+   @SuppressWarnings("rawtypes")
+   private static final ConcurrentMap<Cache, ConcurrentMap<String, Set<Object>>> ALL_LOCAL_KEYS =
+      new ConcurrentHashMap<Cache, ConcurrentMap<String, Set<Object>>>();
+
    protected final AdvancedCache<CacheKey<K>, V> cache;
 
+   /**
+    * The keys of the entries of this cache that are stored locally
+    */
+   private final Set<Object> localKeys;
+
+   /**
+    * The local near cache, null if it is disabled
+    */
+   private final ConcurrentFIFOExoCache<Serializable, V> nearCache;
+
+   /**
+    * Incremented each time an entry of the near cache is invalidated, it allows to
+    * prevent storing a value into the near cache that has been modified meanwhile
+    */
+   private final AtomicLong nearCacheVersion = new AtomicLong();
+
    @SuppressWarnings("unchecked")
    public DistributedExoCache(ExoContainerContext ctx, ExoCacheConfig config, Cache<K, V> cache)
    {
       this.fullName = ctx.getName() + "-" + config.getName();
+      this.fullNameId = registerFullName(fullName);
       this.cache = (AdvancedCache<CacheKey<K>, V>)cache.getAdvancedCache();
       setDistributed(config.isDistributed());
       setLabel(config.getLabel());
       setName(config.getName());
       setLogEnabled(config.isLogEnabled());
       setReplicated(config.isRepicated());
+      this.localKeys = getOrCreateLocalKeys();
+      this.nearCache = config.isNearCacheEnabled() ? createNearCache(config) : null;
+   }
+
+   /**
+    * Creates the near cache and registers it such that it is invalidated when an entry
+    * is modified or removed by another cluster node. The near cache entries cannot live
+    * longer than the lifespan of the entries of the Infinispan cache.
+    */
+   @SuppressWarnings("rawtypes")
+   private ConcurrentFIFOExoCache<Serializable, V> createNearCache(ExoCacheConfig config)
+   {
+      int maxSize = config.getMaxSize() > 0 ? config.getMaxSize() : DEFAULT_NEAR_CACHE_MAX_SIZE;
+      ConcurrentFIFOExoCache<Serializable, V> nearCache =
+         new ConcurrentFIFOExoCache<Serializable, V>(fullName + "-near", maxSize);
+      long lifespan = cache.getCacheConfiguration().expiration().lifespan();
+      nearCache.setLiveTimeMillis(lifespan > 0 ? lifespan : -1);
+      if (cache.getCacheConfiguration().clustering().cacheMode().isDistributed()
+         && !cache.getCacheConfiguration().clustering().l1().enabled())
+      {
+         LOG.warn("The near cache of " + fullName + " won't be notified when an entry that is not owned locally"
+            + " is modified by another cluster node, you should enable the L1 cache of the Infinispan cache to"
+            + " get such notifications.");
+      }
+      ConcurrentMap<String, List<DistributedExoCache>> nearCaches = ALL_NEAR_CACHES.get(cache);
+      if (nearCaches == null)
+      {
+         nearCaches = new ConcurrentHashMap<String, List<DistributedExoCache>>();
+         ConcurrentMap<String, List<DistributedExoCache>> oldValue = ALL_NEAR_CACHES.putIfAbsent(cache, nearCaches);
+         if (oldValue != null)
+         {
+            nearCaches = oldValue;
+         }
+      }
+      List<DistributedExoCache> instances = new CopyOnWriteArrayList<DistributedExoCache>();
+      List<DistributedExoCache> oldValue = nearCaches.putIfAbsent(fullName, instances);
+      if (oldValue != null)
+      {
+         instances = oldValue;
+      }
+      instances.add(this);
+      addCacheEventListener();
+      return nearCache;
+   }
+
+   /**
+    * Registers the {@link CacheEventListener} on the Infinispan cache if not done yet
+    */
+   private void addCacheEventListener()
+   {
+      if (!ALL_EVENT_LISTENERS.containsKey(cache))
+      {
+         CacheEventListener listener = new CacheEventListener();
+         if (ALL_EVENT_LISTENERS.putIfAbsent(cache, listener) == null)
+         {
+            cache.addListener(listener);
+         }
+      }
+   }
+
+   /**
+    * Gives the keys of the entries stored locally for this cache, the listener allowing to maintain
+    * them is registered the first time the keys are requested for a given Infinispan cache.
+    */
+   private Set<Object> getOrCreateLocalKeys()
+   {
+      ConcurrentMap<String, Set<Object>> allLocalKeys = ALL_LOCAL_KEYS.get(cache);
+      if (allLocalKeys == null)
+      {
+         allLocalKeys = new ConcurrentHashMap<String, Set<Object>>();
+         ConcurrentMap<String, Set<Object>> oldValue = ALL_LOCAL_KEYS.putIfAbsent(cache, allLocalKeys);
+         if (oldValue == null)
+         {
+            cache.addListener(new CacheSizeListener(cache, allLocalKeys));
+         }
+         else
+         {
+            allLocalKeys = oldValue;
+         }
+      }
+      Set<Object> keys = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+      Set<Object> oldValue = allLocalKeys.putIfAbsent(fullName, keys);
+      return oldValue == null ? keys : oldValue;
+   }
+
+   /**
+    * Gives the id of the given cache full name. The id is computed from the full name itself
+    * using the 64-bit FNV-1a hash function, such that all the cluster nodes share the same id
+    * for a given full name without having to exchange any message.
+    */
+   static long getFullNameId(String fullName)
+   {
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0, length = fullName.length(); i < length; i++)
+      {
+         hash ^= fullName.charAt(i);
+         hash *= 0x100000001b3L;
+      }
+      return hash;
+   }
+
+   /**
+    * Registers the given cache full name, in order to be able to retrieve the full name from its id
+    * when a key is unmarshalled
+    * @return the id of the full name
+    * @throws IllegalStateException if another full name has the same id
+    */
+   static long registerFullName(String fullName)
+   {
+      long id = getFullNameId(fullName);
+      String previous = FULL_NAMES.putIfAbsent(id, fullName);
+      if (previous != null && !previous.equals(fullName))
+      {
+         throw new IllegalStateException("The cache full name '" + fullName + "' has the same id as the cache full name '"
+            + previous + "'");
+      }
+      return id;
+   }
+
+   /**
+    * Gives the registered full name corresponding to the given id, null if no cache with such id
+    * has been created locally
+    */
+   static String getFullName(long id)
+   {
+      return FULL_NAMES.get(id);
    }
 
    AdvancedCache<CacheKey<K>, V> getCache()
@@ -138,32 +344,15 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       {
          throw new IllegalArgumentException("The listener cannot be null");
       }
+      addCacheEventListener();
       List<ListenerContext> lListeners = getListeners(fullName);
       if (lListeners == null)
       {
          lListeners = new CopyOnWriteArrayList<ListenerContext>();
-         boolean alreadyAdded = false;
-         ConcurrentMap<String, List<ListenerContext>> listeners = getOrCreateListeners();
-         if (listeners.isEmpty())
-         {
-            synchronized (listeners)
-            {
-               if (listeners.isEmpty())
-               {
-                  // Ensure that the listener is added only once
-                  cache.addListener(new CacheEventListener());
-                  listeners.put(fullName, lListeners);
-                  alreadyAdded = true;
-               }
-            }
-         }
-         if (!alreadyAdded)
+         List<ListenerContext> oldValue = getOrCreateListeners().putIfAbsent(fullName, lListeners);
+         if (oldValue != null)
          {
-            List<ListenerContext> oldValue = listeners.putIfAbsent(fullName, lListeners);
-            if (oldValue != null)
-            {
-               lListeners = oldValue;
-            }
+            lListeners = oldValue;
          }
       }
       lListeners.add(new ListenerContext<K, V>(listener, this));
@@ -188,6 +377,11 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
    @SuppressWarnings("rawtypes")
    private List<ListenerContext> getListeners(String fullName)
    {
+      if (fullName == null)
+      {
+         // No cache with such full name has been created locally
+         return null;
+      }
       ConcurrentMap<String, List<ListenerContext>> listeners = ALL_LISTENERS.get(cache);
       return listeners == null ? null : listeners.get(fullName);
    }
@@ -211,6 +405,10 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          }
 
       });
+      for (DistributedExoCache<?, ?> instance : getNearCacheInstances(fullName))
+      {
+         instance.clearNearCache();
+      }
       onClearCache();
    }
 
@@ -225,7 +423,18 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          return null;
       }
       @SuppressWarnings("rawtypes")
-      final CacheKey key = new CacheKey<Serializable>(fullName, name);
+      final CacheKey key = new CacheKey<Serializable>(fullNameId, fullName, name);
+      if (nearCache != null)
+      {
+         V result = nearCache.get(name);
+         if (result != null)
+         {
+            hits.incrementAndGet();
+            onGet(key, result);
+            return result;
+         }
+      }
+      long version = nearCacheVersion.get();
       final V result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<V>()
       {
 
@@ -239,15 +448,85 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       if (result == null)
       {
          misses.incrementAndGet();
+         remoteMisses.incrementAndGet();
       }
       else
       {
          hits.incrementAndGet();
+         remoteHits.incrementAndGet();
+         putIntoNearCache(version, name, result);
       }
       onGet(key, result);
       return result;
    }
 
+   /**
+    * Stores the given value into the near cache unless an entry has been invalidated since the
+    * value has been read
+    */
+   private void putIntoNearCache(long version, Serializable name, V value)
+   {
+      if (nearCache != null && nearCacheVersion.get() == version)
+      {
+         nearCache.put(name, value);
+         if (nearCacheVersion.get() != version)
+         {
+            // An invalidation occurred meanwhile
+            nearCache.remove(name);
+         }
+      }
+   }
+
+   /**
+    * Invalidates the given entry of the near cache if any
+    */
+   private void invalidateNearCache(Serializable name)
+   {
+      if (nearCache != null)
+      {
+         nearCacheVersion.incrementAndGet();
+         nearCache.remove(name);
+      }
+   }
+
+   /**
+    * Clears the near cache if any
+    */
+   private void clearNearCache()
+   {
+      if (nearCache != null)
+      {
+         nearCacheVersion.incrementAndGet();
+         nearCache.clearCache();
+      }
+   }
+
+   /**
+    * Gives the local instances having a near cache for the given full name
+    */
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   private List<DistributedExoCache<?, ?>> getNearCacheInstances(String fullName)
+   {
+      ConcurrentMap<String, List<DistributedExoCache>> nearCaches = ALL_NEAR_CACHES.get(cache);
+      if (nearCaches == null || fullName == null)
+      {
+         return Collections.emptyList();
+      }
+      List instances = nearCaches.get(fullName);
+      return instances == null ? Collections.<DistributedExoCache<?, ?>> emptyList() : instances;
+   }
+
+   /**
+    * Invalidates the given entry of the near caches of the local instances having the given full name
+    */
+   private void invalidateNearCaches(String fullName, Serializable name)
+   {
+      for (DistributedExoCache<?, ?> instance : getNearCacheInstances(fullName))
+      {
+         instance.invalidateNearCache(name);
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -265,9 +544,98 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
    }
 
    /**
-    * {@inheritDoc}
+    * @return the amount of lookups that could be served by the near cache
+    */
+   @Managed
+   @ManagedName("NearCacheHitCount")
+   @ManagedDescription("The count of hits in the near cache")
+   public int getNearCacheHit()
+   {
+      return nearCache == null ? 0 : nearCache.getCacheHit();
+   }
+
+   /**
+    * @return the amount of lookups that could not be served by the near cache
+    */
+   @Managed
+   @ManagedName("NearCacheMissCount")
+   @ManagedDescription("The count of misses in the near cache")
+   public int getNearCacheMiss()
+   {
+      return nearCache == null ? 0 : nearCache.getCacheMiss();
+   }
+
+   /**
+    * @return the amount of entries in the near cache
+    */
+   @Managed
+   @ManagedName("NearCacheSize")
+   @ManagedDescription("The amount of entries in the near cache")
+   public int getNearCacheSize()
+   {
+      return nearCache == null ? 0 : nearCache.getCacheSize();
+   }
+
+   /**
+    * @return the amount of lookups that went to Infinispan and found an entry
+    */
+   @Managed
+   @ManagedName("RemoteHitCount")
+   @ManagedDescription("The count of hits in the Infinispan cache")
+   public int getRemoteCacheHit()
+   {
+      return remoteHits.get();
+   }
+
+   /**
+    * @return the amount of lookups that went to Infinispan and found no entry
+    */
+   @Managed
+   @ManagedName("RemoteMissCount")
+   @ManagedDescription("The count of misses in the Infinispan cache")
+   public int getRemoteCacheMiss()
+   {
+      return remoteMisses.get();
+   }
+
+   /**
+    * Gives an approximation of the amount of entries of this cache in the whole cluster, that is
+    * deduced in constant time from the amount of entries stored locally. Indeed in distributed mode,
+    * each node is supposed to store <code>numOwners / numMembers</code> of the entries. The exact size
+    * can be computed thanks to {@link #computeExactCacheSize()}.
     */
    public int getCacheSize()
+   {
+      int size = localKeys.size();
+      DistributionManager dm = cache.getDistributionManager();
+      if (dm == null)
+      {
+         // Local or replicated mode, all the entries are stored locally
+         return size;
+      }
+      ConsistentHash ch = dm.getReadConsistentHash();
+      if (ch == null)
+      {
+         return size;
+      }
+      int members = ch.getMembers().size();
+      int owners = Math.min(ch.getNumOwners(), members);
+      return owners <= 0 ? size : (int)((long)size * members / owners);
+   }
+
+   /**
+    * Computes the exact amount of entries of this cache thanks to a map/reduce task executed on
+    * all the nodes of the cluster. This is an expensive operation that should only be used
+    * explicitly. It also resynchronizes the keys of the entries stored locally used by
+    * {@link #getCacheSize()}.
+    *
+    * @return the exact size of the cache
+    */
+   @Managed
+   @ManagedDescription("Computes the exact amount of entries of the cache in the whole cluster. "
+      + "This is an expensive operation since it relies on a map/reduce task.")
+   @Impact(ImpactType.READ)
+   public int computeExactCacheSize()
    {
       Map<String, Integer> map = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<String, Integer>>()
       {
@@ -287,9 +655,52 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       {
          sum += i;
       }
+      resetLocalKeys();
       return sum;
    }
 
+   /**
+    * Recomputes the keys of the entries of this cache stored locally from the local data container, which allows
+    * to drop the keys of the entries that expired since Infinispan doesn't notify about expirations.
+    * Only the entries owned by the local node are kept, so the entries of the L1 cache are ignored.
+    */
+   private void resetLocalKeys()
+   {
+      Set<Object> keys = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Set<Object>>()
+      {
+
+         @Override
+         public Set<Object> run()
+         {
+            long now = System.currentTimeMillis();
+            Set<Object> keys = new HashSet<Object>();
+            for (InternalCacheEntry entry : cache.getDataContainer())
+            {
+               Object key = entry.getKey();
+               if (key instanceof CacheKey && ((CacheKey<?>)key).getFullNameId() == fullNameId
+                  && !entry.isExpired(now) && isOwnedLocally(cache, key))
+               {
+                  keys.add(key);
+               }
+            }
+            return keys;
+         }
+
+      });
+      localKeys.retainAll(keys);
+      localKeys.addAll(keys);
+   }
+
+   /**
+    * Indicates whether the given key is owned by the local node, which is always the case
+    * if the cache is not distributed
+    */
+   private static boolean isOwnedLocally(AdvancedCache<?, ?> cache, Object key)
+   {
+      DistributionManager dm = cache.getDistributionManager();
+      return dm == null || dm.getLocality(key).isLocal();
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -382,58 +793,235 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          }
 
       });
+      invalidateNearCaches(fullName, key);
       onPut(key, value);
    }
 
    /**
-    * Only puts the data into the cache nothing more
+    * Only puts the data into the cache nothing more
+    */
+   protected void putOnly(K key, V value)
+   {
+      cache.withFlags(Flag.SKIP_REMOTE_LOOKUP).put(new CacheKey<K>(fullNameId, fullName, key), value);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void putMap(final Map<? extends K, ? extends V> objs) throws IllegalArgumentException
+   {
+      if (objs == null)
+      {
+         throw new IllegalArgumentException("No null map accepted");
+      }
+      for (Serializable name : objs.keySet())
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+      {
+
+         @Override
+         public Void run()
+         {
+            cache.startBatch();
+            try
+            {
+               // Start transaction
+               for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
+               {
+                  putOnly(entry.getKey(), entry.getValue());
+               }
+               cache.endBatch(true);
+               // End transaction
+               for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
+               {
+                  invalidateNearCaches(fullName, entry.getKey());
+                  onPut(entry.getKey(), entry.getValue());
+               }
+            }
+            catch (Exception e)//NOSONAR
+            {
+               cache.endBatch(false);
+               LOG.warn("An error occurs while executing the putMap method", e);
+            }
+            return null;
+         }
+      });
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> getAll(Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = new HashMap<K, V>();
+      final List<CacheKey<K>> keys = new ArrayList<CacheKey<K>>(names.size());
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         V value = nearCache == null ? null : nearCache.get(name);
+         if (value == null)
+         {
+            keys.add(new CacheKey<K>(fullNameId, fullName, name));
+         }
+         else
+         {
+            hits.incrementAndGet();
+            result.put(name, value);
+            onGet(new CacheKey<K>(fullNameId, fullName, name), value);
+         }
+      }
+      if (keys.isEmpty())
+      {
+         return result;
+      }
+      long version = nearCacheVersion.get();
+      Map<CacheKey<K>, V> entries = SecurityHelper.doPrivilegedAction(new PrivilegedAction<Map<CacheKey<K>, V>>()
+      {
+
+         @Override
+         public Map<CacheKey<K>, V> run()
+         {
+            return getEntries(keys);
+         }
+
+      });
+      for (CacheKey<K> key : keys)
+      {
+         V value = entries.get(key);
+         if (value == null)
+         {
+            misses.incrementAndGet();
+            remoteMisses.incrementAndGet();
+         }
+         else
+         {
+            hits.incrementAndGet();
+            remoteHits.incrementAndGet();
+            result.put(key.getKey(), value);
+            putIntoNearCache(version, key.getKey(), value);
+         }
+         onGet(key, value);
+      }
+      return result;
+   }
+
+   /**
+    * Gets the values of the given keys. If the cache is distributed, the keys are grouped by
+    * primary owner and each owner reads its own keys locally, so we have one remote call
+    * per owner instead of one remote call per key and the remote calls are done in parallel.
     */
-   protected void putOnly(K key, V value)
+   private Map<CacheKey<K>, V> getEntries(List<CacheKey<K>> keys)
    {
-      cache.withFlags(Flag.SKIP_REMOTE_LOOKUP).put(new CacheKey<K>(fullName, key), value);
+      Map<CacheKey<K>, V> result = new HashMap<CacheKey<K>, V>();
+      if (keys.size() > 1 && cache.getDistributionManager() != null)
+      {
+         DefaultExecutorService executor = new DefaultExecutorService(cache);
+         try
+         {
+            List<Future<Map<CacheKey<K>, V>>> futures =
+               executor.submitEverywhere(new GetEntriesCallable<K, V>(), keys.toArray());
+            for (Future<Map<CacheKey<K>, V>> future : futures)
+            {
+               result.putAll(future.get());
+            }
+            return result;
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            LOG.warn("The thread has been interrupted while getting the entries, they will be read one by one");
+         }
+         catch (ExecutionException e)
+         {
+            LOG.warn("Could not get the entries from their owners, they will be read one by one", e.getCause());
+         }
+         finally
+         {
+            executor.shutdown();
+         }
+         result.clear();
+      }
+      for (CacheKey<K> key : keys)
+      {
+         V value = cache.get(key);
+         if (value != null)
+         {
+            result.put(key, value);
+         }
+      }
+      return result;
    }
 
    /**
     * {@inheritDoc}
+    * <p>
+    * The entries are removed within a batch and without fetching the previous values from the
+    * other cluster nodes, the previous values are only read beforehand if some listeners have been
+    * registered.
     */
-   public void putMap(final Map<? extends K, ? extends V> objs) throws IllegalArgumentException
+   public void removeAll(Collection<? extends K> names) throws IllegalArgumentException
    {
-      if (objs == null)
+      if (names == null)
       {
-         throw new IllegalArgumentException("No null map accepted");
+         throw new IllegalArgumentException("No null collection accepted");
       }
-      for (Serializable name : objs.keySet())
+      final List<CacheKey<K>> keys = new ArrayList<CacheKey<K>>(names.size());
+      for (K name : names)
       {
          if (name == null)
          {
             throw new IllegalArgumentException("No null cache key accepted");
          }
+         keys.add(new CacheKey<K>(fullNameId, fullName, name));
       }
+      @SuppressWarnings("rawtypes")
+      List<ListenerContext> listeners = getListeners(fullName);
+      final boolean notify = listeners != null && !listeners.isEmpty();
       SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
       {
 
          @Override
          public Void run()
          {
+            Map<CacheKey<K>, V> values = notify ? getEntries(keys) : null;
             cache.startBatch();
             try
             {
                // Start transaction
-               for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
+               for (CacheKey<K> key : keys)
                {
-                  putOnly(entry.getKey(), entry.getValue());
+                  cache.withFlags(Flag.SKIP_REMOTE_LOOKUP, Flag.IGNORE_RETURN_VALUES).remove(key);
                }
                cache.endBatch(true);
                // End transaction
-               for (Map.Entry<? extends K, ? extends V> entry : objs.entrySet())
+               for (CacheKey<K> key : keys)
                {
-                  onPut(entry.getKey(), entry.getValue());
+                  invalidateNearCaches(fullName, key.getKey());
+               }
+               if (notify)
+               {
+                  for (CacheKey<K> key : keys)
+                  {
+                     onRemove(key, values.get(key));
+                  }
                }
             }
             catch (Exception e)//NOSONAR
             {
                cache.endBatch(false);
-               LOG.warn("An error occurs while executing the putMap method", e);
+               LOG.warn("An error occurs while executing the removeAll method", e);
             }
             return null;
          }
@@ -451,7 +1039,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          throw new IllegalArgumentException("No null cache key accepted");
       }
       @SuppressWarnings("rawtypes")
-      final CacheKey key = new CacheKey<Serializable>(fullName, name);
+      final CacheKey key = new CacheKey<Serializable>(fullNameId, fullName, name);
       V result = SecurityHelper.doPrivilegedAction(new PrivilegedAction<V>()
       {
          @Override
@@ -460,6 +1048,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
             return cache.remove(key);
          }
       });
+      invalidateNearCaches(fullName, name);
       onRemove(key, result);
       return result;
    }
@@ -698,6 +1287,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          {
             for (Map.Entry<CacheKey<K>, V> entry : evt.getEntries().entrySet())
             {
+               invalidateNearCaches(entry.getKey().getFullName(), entry.getKey().getKey());
                onExpire(entry.getKey(), entry.getValue());
             }
          }
@@ -712,6 +1302,12 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
             final V value = evt.getValue();
             onRemove(key, value);
          }
+         else if (!evt.isPre())
+         {
+            // The near caches are invalidated once the entry has been removed to prevent
+            // them from storing the previous value
+            invalidateNearCaches(evt.getKey().getFullName(), evt.getKey().getKey());
+         }
       }
 
       @CacheEntryModified
@@ -721,9 +1317,23 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          {
             final CacheKey<K> key = evt.getKey();
             final V value = evt.getValue();
+            invalidateNearCaches(key.getFullName(), key.getKey());
             onPut(key, value);
          }
       }
+
+      /**
+       * Triggered when an entry of the L1 cache is invalidated because it has been modified
+       * by another cluster node
+       */
+      @CacheEntryInvalidated
+      public void cacheEntryInvalidated(CacheEntryInvalidatedEvent<CacheKey<K>, V> evt)
+      {
+         if (!evt.isPre())
+         {
+            invalidateNearCaches(evt.getKey().getFullName(), evt.getKey().getKey());
+         }
+      }
    }
 
    private static class ListenerContext<K extends Serializable, V> implements CacheListenerContext, CacheInfo
@@ -835,10 +1445,200 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       return cache.getCacheConfiguration().expiration().wakeUpInterval();
    }
 
+   /**
+    * Maintains the keys of the entries owned by the local node per cache full name. The keys are tracked
+    * rather than counted since, in a transactional cache, concurrent transactions can notify the same
+    * creation or removal. The entries of the L1 cache are ignored and the keys are recomputed from the
+    * local data container each time the topology changes, since the entries moved by a rebalance are not
+    * all notified.
+    */
+   @Listener
+   public static class CacheSizeListener
+   {
+      /** . */
+      private final AdvancedCache<?, ?> cache;
+
+      /** . */
+      private final ConcurrentMap<String, Set<Object>> allLocalKeys;
+
+      CacheSizeListener(AdvancedCache<?, ?> cache, ConcurrentMap<String, Set<Object>> allLocalKeys)
+      {
+         this.cache = cache;
+         this.allLocalKeys = allLocalKeys;
+      }
+
+      private Set<Object> getLocalKeys(Object key)
+      {
+         String fullName;
+         if (key instanceof CacheKey && (fullName = ((CacheKey<?>)key).getFullName()) != null)
+         {
+            return allLocalKeys.get(fullName);
+         }
+         return null;
+      }
+
+      private void add(Object key)
+      {
+         Set<Object> keys = getLocalKeys(key);
+         if (keys != null && isOwnedLocally(cache, key))
+         {
+            keys.add(key);
+         }
+      }
+
+      private void remove(Object key)
+      {
+         Set<Object> keys = getLocalKeys(key);
+         if (keys != null)
+         {
+            keys.remove(key);
+         }
+      }
+
+      @CacheEntryCreated
+      public void cacheEntryCreated(CacheEntryCreatedEvent<Object, Object> evt)
+      {
+         if (!evt.isPre())
+         {
+            add(evt.getKey());
+         }
+      }
+
+      @CacheEntryModified
+      public void cacheEntryModified(CacheEntryModifiedEvent<Object, Object> evt)
+      {
+         if (!evt.isPre())
+         {
+            // The entry exists, even if its creation has been notified to a concurrent removal
+            add(evt.getKey());
+         }
+      }
+
+      @CacheEntryRemoved
+      public void cacheEntryRemoved(CacheEntryRemovedEvent<Object, Object> evt)
+      {
+         if (!evt.isPre())
+         {
+            remove(evt.getKey());
+         }
+      }
+
+      @CacheEntriesEvicted
+      public void cacheEntryEvicted(CacheEntriesEvictedEvent<Object, Object> evt)
+      {
+         if (evt.isPre())
+         {
+            for (Object key : evt.getEntries().keySet())
+            {
+               remove(key);
+            }
+         }
+      }
+
+      @CacheEntryInvalidated
+      public void cacheEntryInvalidated(CacheEntryInvalidatedEvent<Object, Object> evt)
+      {
+         if (evt.isPre())
+         {
+            remove(evt.getKey());
+         }
+      }
+
+      @TopologyChanged
+      public void topologyChanged(TopologyChangedEvent<Object, Object> evt)
+      {
+         if (!evt.isPre())
+         {
+            resync();
+         }
+      }
+
+      @DataRehashed
+      public void dataRehashed(DataRehashedEvent<Object, Object> evt)
+      {
+         if (!evt.isPre())
+         {
+            resync();
+         }
+      }
+
+      /**
+       * Recomputes all the keys from the entries owned by the local node
+       */
+      void resync()
+      {
+         final Map<String, Set<Object>> found = new HashMap<String, Set<Object>>();
+         SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+         {
+
+            @Override
+            public Void run()
+            {
+               long now = System.currentTimeMillis();
+               for (InternalCacheEntry entry : cache.getDataContainer())
+               {
+                  Object key = entry.getKey();
+                  String fullName;
+                  if (key instanceof CacheKey && (fullName = ((CacheKey<?>)key).getFullName()) != null
+                     && !entry.isExpired(now) && isOwnedLocally(cache, key))
+                  {
+                     Set<Object> keys = found.get(fullName);
+                     if (keys == null)
+                     {
+                        keys = new HashSet<Object>();
+                        found.put(fullName, keys);
+                     }
+                     keys.add(key);
+                  }
+               }
+               return null;
+            }
+
+         });
+         for (Map.Entry<String, Set<Object>> entry : allLocalKeys.entrySet())
+         {
+            Set<Object> keys = found.get(entry.getKey());
+            if (keys == null)
+            {
+               entry.getValue().clear();
+            }
+            else
+            {
+               entry.getValue().retainAll(keys);
+               entry.getValue().addAll(keys);
+            }
+         }
+      }
+   }
+
    public static class CacheKey<K> implements Externalizable
    {
+      /**
+       * The type of the nested keys that are neither a {@link String}, nor a {@link Long}
+       * nor an {@link Integer}
+       */
+      private static final byte TYPE_OBJECT = 0;
+
+      private static final byte TYPE_STRING = 1;
+
+      private static final byte TYPE_LONG = 2;
+
+      private static final byte TYPE_INTEGER = 3;
+
+      /**
+       * The max length of a {@link String} that can be written with {@link ObjectOutput#writeUTF(String)}
+       * whatever its content
+       */
+      private static final int MAX_UTF_LENGTH = 65535 / 3;
+
       private K key;
 
+      private long fullNameId;
+
+      /**
+       * The full name of the cache, null if no cache with such full name has been created locally
+       * when the key was unmarshalled
+       */
       private String fullName;
 
       public CacheKey()
@@ -847,6 +1647,12 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
 
       public CacheKey(String fullName, K key)
       {
+         this(registerFullName(fullName), fullName, key);
+      }
+
+      CacheKey(long fullNameId, String fullName, K key)
+      {
+         this.fullNameId = fullNameId;
          this.fullName = fullName;
          this.key = key;
       }
@@ -860,10 +1666,23 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       }
 
       /**
-       * @return the fullName
+       * @return the id of the full name
+       */
+      long getFullNameId()
+      {
+         return fullNameId;
+      }
+
+      /**
+       * @return the fullName or null if no cache with such full name exists locally
        */
       String getFullName()
       {
+         if (fullName == null)
+         {
+            // The cache may have been created locally since the key has been unmarshalled
+            fullName = DistributedExoCache.getFullName(fullNameId);
+         }
          return fullName;
       }
 
@@ -875,7 +1694,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       {
          final int prime = 31;
          int result = 1;
-         result = prime * result + ((fullName == null) ? 0 : fullName.hashCode());
+         result = prime * result + (int)(fullNameId ^ (fullNameId >>> 32));
          result = prime * result + ((key == null) ? 0 : key.hashCode());
          return result;
       }
@@ -894,12 +1713,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
             return false;
          @SuppressWarnings("rawtypes")
          CacheKey other = (CacheKey)obj;
-         if (fullName == null)
-         {
-            if (other.fullName != null)
-               return false;
-         }
-         else if (!fullName.equals(other.fullName))
+         if (fullNameId != other.fullNameId)
             return false;
          if (key == null)
          {
@@ -917,7 +1731,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       @Override
       public String toString()
       {
-         return "CacheKey [fullName=" + fullName + ", key=" + key + "]";
+         return "CacheKey [fullName=" + (getFullName() == null ? fullNameId : fullName) + ", key=" + key + "]";
       }
 
       /**
@@ -925,10 +1739,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
        */
       public void writeExternal(ObjectOutput out) throws IOException
       {
-         byte[] buf = fullName.getBytes("UTF-8");
-         out.writeInt(buf.length);
-         out.write(buf);
-         out.writeObject(key);
+         write(out, this);
       }
 
       /**
@@ -937,10 +1748,112 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       @SuppressWarnings("unchecked")
       public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
       {
-         byte[] buf = new byte[in.readInt()];
-         in.readFully(buf);
-         fullName = new String(buf, "UTF-8");
-         key = (K)in.readObject();
+         fullNameId = in.readLong();
+         fullName = DistributedExoCache.getFullName(fullNameId);
+         key = (K)readKey(in);
+      }
+
+      /**
+       * Writes the id of the full name followed by the nested key, the most common types of keys
+       * are written directly to avoid the overhead of the generic serialization
+       */
+      static void write(ObjectOutput out, CacheKey<?> cacheKey) throws IOException
+      {
+         out.writeLong(cacheKey.fullNameId);
+         Object key = cacheKey.key;
+         if (key instanceof String && ((String)key).length() <= MAX_UTF_LENGTH)
+         {
+            out.writeByte(TYPE_STRING);
+            out.writeUTF((String)key);
+         }
+         else if (key instanceof Long)
+         {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long)key);
+         }
+         else if (key instanceof Integer)
+         {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer)key);
+         }
+         else
+         {
+            out.writeByte(TYPE_OBJECT);
+            out.writeObject(key);
+         }
+      }
+
+      /**
+       * Reads a {@link CacheKey} written by {@link #write(ObjectOutput, CacheKey)}
+       */
+      static CacheKey<Object> read(ObjectInput in) throws IOException, ClassNotFoundException
+      {
+         long fullNameId = in.readLong();
+         return new CacheKey<Object>(fullNameId, DistributedExoCache.getFullName(fullNameId), readKey(in));
+      }
+
+      private static Object readKey(ObjectInput in) throws IOException, ClassNotFoundException
+      {
+         byte type = in.readByte();
+         switch (type)
+         {
+            case TYPE_STRING :
+               return in.readUTF();
+            case TYPE_LONG :
+               return in.readLong();
+            case TYPE_INTEGER :
+               return in.readInt();
+            case TYPE_OBJECT :
+               return in.readObject();
+            default :
+               throw new IOException("Unknown type of key: " + type);
+         }
+      }
+   }
+
+   /**
+    * The {@link org.infinispan.marshall.AdvancedExternalizer} of a {@link CacheKey} that allows
+    * Infinispan to write only a small id instead of the class name of the key
+    */
+   public static class CacheKeyExternalizer extends AbstractExternalizer<CacheKey>
+   {
+      /**
+       * The id of the externalizer, the ids lower than 2000 are reserved to Infinispan
+       */
+      public static final int ID = 2300;
+
+      /**
+       * {@inheritDoc}
+       */
+      @SuppressWarnings("unchecked")
+      public Set<Class<? extends CacheKey>> getTypeClasses()
+      {
+         return Collections.<Class<? extends CacheKey>> singleton(CacheKey.class);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public Integer getId()
+      {
+         return ID;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void writeObject(ObjectOutput output, CacheKey object) throws IOException
+      {
+         CacheKey.write(output, object);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public CacheKey readObject(ObjectInput input) throws IOException, ClassNotFoundException
+      {
+         return CacheKey.read(input);
       }
    }
 
@@ -952,6 +1865,11 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
        */
       private String fullName;
 
+      /**
+       * The id of the full name of the cache instance
+       */
+      private transient long fullNameId;
+
       public AbstractExoCacheMapper()
       {
       }
@@ -959,6 +1877,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       public AbstractExoCacheMapper(String fullName)
       {
          this.fullName = fullName;
+         this.fullNameId = getFullNameId(fullName);
       }
 
       /**
@@ -972,7 +1891,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       @Override
       protected boolean isValid(CacheKey<K> key)
       {
-         return fullName.equals(key.getFullName());
+         return fullNameId == key.getFullNameId();
       }
 
       /**
@@ -993,6 +1912,7 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
          byte[] buf = new byte[in.readInt()];
          in.readFully(buf);
          fullName = new String(buf, "UTF-8");
+         fullNameId = getFullNameId(fullName);
       }
    }
 
@@ -1165,6 +2085,52 @@ public class DistributedExoCache<K extends Serializable, V> implements ExoCache<
       }
    }
 
+   public static class GetEntriesCallable<K, V> implements
+      DistributedCallable<CacheKey<K>, V, Map<CacheKey<K>, V>>, Serializable
+   {
+
+      /**
+       * The serial version UID
+       */
+      private static final long serialVersionUID = -2462283165315469414L;
+
+      private transient Cache<CacheKey<K>, V> cache;
+
+      private transient Set<CacheKey<K>> keys;
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void setEnvironment(Cache<CacheKey<K>, V> cache, Set<CacheKey<K>> inputKeys)
+      {
+         this.cache = cache;
+         this.keys = inputKeys;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public Map<CacheKey<K>, V> call()
+      {
+         Map<CacheKey<K>, V> result = new HashMap<CacheKey<K>, V>();
+         if (keys == null)
+         {
+            return result;
+         }
+         for (CacheKey<K> key : keys)
+         {
+            V value = cache.get(key);
+            if (value != null)
+            {
+               result.put(key, value);
+            }
+         }
+         return result;
+      }
+   }
+
    public static class GetEntriesReducer<K, V> implements Reducer<K, V>
    {
 
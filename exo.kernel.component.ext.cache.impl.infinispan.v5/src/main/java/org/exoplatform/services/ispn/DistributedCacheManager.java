@@ -25,6 +25,7 @@ import org.exoplatform.container.util.TemplateConfigurationHelper;
 import org.exoplatform.container.xml.InitParams;
 import org.exoplatform.container.xml.PropertiesParam;
 import org.exoplatform.container.xml.ValueParam;
+import org.exoplatform.services.cache.impl.infinispan.distributed.DistributedExoCache.CacheKeyExternalizer;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.transaction.TransactionService;
@@ -153,6 +154,8 @@ public class DistributedCacheManager implements Startable
                // Load the configuration
                ConfigurationBuilderHolder holder = parser.parse(helper.fillTemplate(configurationFile, parameters));
                GlobalConfigurationBuilder configBuilder = holder.getGlobalConfigurationBuilder();
+               // Register the externalizer of the keys of the DistributedExoCache instances
+               configBuilder.serialization().addAdvancedExternalizer(new CacheKeyExternalizer());
                Utils.loadJGroupsConfig(configManager, configBuilder.build(), configBuilder);
                // Create the CacheManager from the new configuration
                EmbeddedCacheManager manager =
@@ -35,6 +35,7 @@ import org.exoplatform.services.cache.ObjectCacheInfo;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -97,6 +98,47 @@ public class TestAbstractExoCache extends TestCase
       cache.clearCache();
    }
 
+   public void testGetAll() throws Exception
+   {
+      cache.put(new MyKey("a"), "a");
+      cache.put(new MyKey("b"), "b");
+      int hits = cache.getCacheHit();
+      int misses = cache.getCacheMiss();
+      Map<Serializable, Object> values =
+         cache.getAll(Arrays.<Serializable> asList(new MyKey("a"), new MyKey("b"), new MyKey("x"), null));
+      assertEquals(2, values.size());
+      assertEquals("a", values.get(new MyKey("a")));
+      assertEquals("b", values.get(new MyKey("b")));
+      assertEquals(2, cache.getCacheHit() - hits);
+      assertEquals(1, cache.getCacheMiss() - misses);
+
+      cache.clearCache();
+   }
+
+   public void testRemoveAll() throws Exception
+   {
+      cache.put(new MyKey("a"), 1);
+      cache.put(new MyKey("b"), 2);
+      cache.put(new MyKey("c"), 3);
+      assertEquals(3, cache.getCacheSize());
+      cache.removeAll(Arrays.<Serializable> asList(new MyKey("a"), new MyKey("b"), new MyKey("x")));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(null, cache.get(new MyKey("a")));
+      assertEquals(3, cache.get(new MyKey("c")));
+      try
+      {
+         cache.removeAll(Arrays.<Serializable> asList(new MyKey("c"), null));
+         fail("An IllegalArgumentException was expected");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // expected
+      }
+      assertEquals(1, cache.getCacheSize());
+
+      cache.clearCache();
+   }
+
    public void testPutMap() throws Exception
    {
       Map<Serializable, Object> values = new HashMap<Serializable, Object>();
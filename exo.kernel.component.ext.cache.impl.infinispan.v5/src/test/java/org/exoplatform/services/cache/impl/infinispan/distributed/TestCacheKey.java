@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.cache.impl.infinispan.distributed;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.cache.impl.infinispan.distributed.DistributedExoCache.CacheKey;
+import org.exoplatform.services.cache.impl.infinispan.distributed.DistributedExoCache.CacheKeyExternalizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * @version $Id$
+ *
+ */
+public class TestCacheKey extends TestCase
+{
+
+   public void testFullNameId() throws Exception
+   {
+      String fullName = "TestCacheKey-testFullNameId";
+      assertEquals(DistributedExoCache.getFullNameId(fullName), DistributedExoCache.getFullNameId(new String(fullName)));
+      assertFalse(DistributedExoCache.getFullNameId(fullName) == DistributedExoCache.getFullNameId(fullName + "2"));
+      assertNull(DistributedExoCache.getFullName(DistributedExoCache.getFullNameId(fullName)));
+      long id = DistributedExoCache.registerFullName(fullName);
+      assertEquals(DistributedExoCache.getFullNameId(fullName), id);
+      assertSame(fullName, DistributedExoCache.getFullName(id));
+      assertEquals(id, DistributedExoCache.registerFullName(new String(fullName)));
+      assertSame(fullName, DistributedExoCache.getFullName(id));
+   }
+
+   public void testExternalizer() throws Exception
+   {
+      String fullName = "TestCacheKey-testExternalizer";
+      CacheKeyExternalizer externalizer = new CacheKeyExternalizer();
+      Serializable[] keys =
+         {"a", "", Long.valueOf(Long.MAX_VALUE), Integer.valueOf(-1), Boolean.TRUE, null, new StringBuilder(70000)
+            .append(new char[70000]).toString()};
+      for (Serializable key : keys)
+      {
+         CacheKey<Serializable> cacheKey = new CacheKey<Serializable>(fullName, key);
+         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+         ObjectOutputStream oos = new ObjectOutputStream(baos);
+         externalizer.writeObject(oos, cacheKey);
+         oos.close();
+         ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+         CacheKey<?> result = externalizer.readObject(ois);
+         ois.close();
+         assertEquals(cacheKey, result);
+         assertEquals(cacheKey.hashCode(), result.hashCode());
+         assertEquals(key, result.getKey());
+         assertSame(fullName, result.getFullName());
+      }
+   }
+
+   public void testUnknownFullName() throws Exception
+   {
+      String fullName = "TestCacheKey-testUnknownFullName";
+      CacheKey<String> cacheKey = new CacheKey<String>(DistributedExoCache.getFullNameId(fullName), fullName, "a");
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(cacheKey);
+      oos.close();
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+      CacheKey<?> result = (CacheKey<?>)ois.readObject();
+      ois.close();
+      assertEquals(cacheKey, result);
+      assertNull(result.getFullName());
+      DistributedExoCache.registerFullName(fullName);
+      assertSame(fullName, result.getFullName());
+   }
+}
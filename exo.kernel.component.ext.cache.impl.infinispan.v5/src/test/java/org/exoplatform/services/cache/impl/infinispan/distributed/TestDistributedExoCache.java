@@ -40,6 +40,7 @@ import org.infinispan.distribution.DistributionManager;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -132,6 +133,141 @@ public class TestDistributedExoCache extends TestCase
       assertEquals(1, cache.getCacheSize());
    }
 
+   public void testGetAll() throws Exception
+   {
+      List<Serializable> keys = new ArrayList<Serializable>();
+      for (int i = 0; i < 20; i++)
+      {
+         cache.put(new MyKey("a" + i), "a" + i);
+         keys.add(new MyKey("a" + i));
+      }
+      keys.add(new MyKey("x"));
+      keys.add(null);
+      int hits = cache.getCacheHit();
+      int misses = cache.getCacheMiss();
+      Map<Serializable, Object> values = cache.getAll(keys);
+      assertEquals(20, values.size());
+      for (int i = 0; i < 20; i++)
+      {
+         assertEquals("a" + i, values.get(new MyKey("a" + i)));
+      }
+      assertEquals(20, cache.getCacheHit() - hits);
+      assertEquals(1, cache.getCacheMiss() - misses);
+      // The entries of the other caches must not be visible
+      assertTrue(cache.getAll(Collections.<Serializable> singleton(new MyKey("a"))).isEmpty());
+      assertEquals("a", cache2.getAll(Collections.<Serializable> singleton(new MyKey("a"))).get(new MyKey("a")));
+   }
+
+   public void testRemoveAll() throws Exception
+   {
+      final AtomicInteger removed = new AtomicInteger();
+      cache.addCacheListener(new CacheListener<Serializable, Object>()
+      {
+         public void onExpire(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+         }
+
+         public void onRemove(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+            if (obj != null)
+            {
+               removed.incrementAndGet();
+            }
+         }
+
+         public void onPut(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+         }
+
+         public void onGet(CacheListenerContext context, Serializable key, Object obj) throws Exception
+         {
+         }
+
+         public void onClearCache(CacheListenerContext context) throws Exception
+         {
+         }
+      });
+      cache.put(new MyKey("a"), 1);
+      cache.put(new MyKey("b"), 2);
+      cache.put(new MyKey("c"), 3);
+      assertEquals(3, cache.getCacheSize());
+      cache.removeAll(Arrays.<Serializable> asList(new MyKey("a"), new MyKey("b"), new MyKey("x")));
+      assertEquals(1, cache.getCacheSize());
+      assertEquals(2, removed.get());
+      assertEquals(null, cache.get(new MyKey("a")));
+      assertEquals(3, cache.get(new MyKey("c")));
+      // The entries of the other caches must not be removed
+      cache2.removeAll(Arrays.<Serializable> asList(new MyKey("c")));
+      assertEquals(3, cache.get(new MyKey("c")));
+   }
+
+   @SuppressWarnings("unchecked")
+   public void testNearCache() throws Exception
+   {
+      PortalContainer pc = PortalContainer.getInstance();
+      ExoCacheConfig config = new ExoCacheConfig();
+      config.setName("MyCacheDistributedWithNearCache");
+      config.setMaxSize(5);
+      config.setDistributed(true);
+      config.setNearCacheEnabled(true);
+      ExoCacheFactory factory = (ExoCacheFactory)pc.getComponentInstanceOfType(ExoCacheFactory.class);
+      DistributedExoCache<Serializable, Object> cache1 =
+         (DistributedExoCache<Serializable, Object>)factory.createCache(config);
+      DistributedExoCache<Serializable, Object> cache2 =
+         (DistributedExoCache<Serializable, Object>)factory.createCache(config);
+      try
+      {
+         cache1.put(new MyKey("a"), "a");
+         assertEquals("a", cache1.get(new MyKey("a")));
+         assertEquals(0, cache1.getNearCacheHit());
+         assertEquals(1, cache1.getRemoteCacheHit());
+         assertEquals("a", cache1.get(new MyKey("a")));
+         assertEquals(1, cache1.getNearCacheHit());
+         assertEquals(1, cache1.getRemoteCacheHit());
+         assertEquals(1, cache1.getNearCacheSize());
+         assertNull(cache1.get(new MyKey("x")));
+         assertEquals(1, cache1.getRemoteCacheMiss());
+         assertEquals(2, cache1.getCacheHit());
+         assertEquals(1, cache1.getCacheMiss());
+         // A modification done by another instance must invalidate the near cache
+         cache2.put(new MyKey("a"), "a2");
+         assertEquals("a2", cache1.get(new MyKey("a")));
+         assertEquals(2, cache1.getRemoteCacheHit());
+         cache2.remove(new MyKey("a"));
+         assertNull(cache1.get(new MyKey("a")));
+         cache1.putMap(Collections.<Serializable, Object> singletonMap(new MyKey("b"), "b"));
+         Map<Serializable, Object> values = cache1.getAll(Arrays.<Serializable> asList(new MyKey("b"), new MyKey("c")));
+         assertEquals(1, values.size());
+         assertEquals("b", cache1.getAll(Arrays.<Serializable> asList(new MyKey("b"))).get(new MyKey("b")));
+         assertEquals(1, cache1.getNearCacheSize());
+         cache2.clearCache();
+         assertEquals(0, cache1.getNearCacheSize());
+         assertNull(cache1.get(new MyKey("b")));
+      }
+      finally
+      {
+         cache1.clearCache();
+      }
+   }
+
+   public void testComputeExactCacheSize() throws Exception
+   {
+      assertEquals(0, cache.getCacheSize());
+      cache.put(new MyKey("a"), "a");
+      cache.put(new MyKey("b"), "b");
+      cache.put(new MyKey("b"), "b2");
+      cache.put(new MyKey("c"), "c");
+      assertEquals(3, cache.getCacheSize());
+      assertEquals(3, cache.computeExactCacheSize());
+      cache.remove(new MyKey("a"));
+      cache.remove(new MyKey("x"));
+      assertEquals(2, cache.getCacheSize());
+      assertEquals(2, cache.computeExactCacheSize());
+      // The entries of the other caches must not be counted
+      assertEquals(1, cache2.getCacheSize());
+      assertEquals(1, cache2.computeExactCacheSize());
+   }
+
    public void testPutMap() throws Exception
    {
       Map<Serializable, Object> values = new HashMap<Serializable, Object>();
@@ -620,6 +756,86 @@ public class TestDistributedExoCache extends TestCase
       }
    }
 
+   @SuppressWarnings("unchecked")
+   public void testCacheSizeWithTwoNodes() throws Exception
+   {
+      PortalContainer pc = PortalContainer.getInstance();
+      ExoCacheConfig config = new ExoCacheConfig();
+      config.setName("MyCacheDistributedSize");
+      config.setMaxSize(1000);
+      config.setLiveTime(60);
+      config.setImplementation("LRU");
+      config.setDistributed(true);
+      Map<String, String> params = new HashMap<String, String>();
+      params.put("infinispan-num-owners", "1");
+      ConfigurationManager cm = (ConfigurationManager)pc.getComponentInstanceOfType(ConfigurationManager.class);
+      DistributedCacheManager dcm2 =
+         new DistributedCacheManager("jar:/conf/portal/distributed-cache-configuration.xml", params, cm);
+
+      DistributedExoCache<Serializable, Object> cache1 =
+         (DistributedExoCache<Serializable, Object>)((ExoCacheFactory)pc
+            .getComponentInstanceOfType(ExoCacheFactory.class)).createCache(config);
+      DistributionManager dm = cache1.getCache().getDistributionManager();
+      int remaining = 0;
+      try
+      {
+         DistributedExoCache<Serializable, Object> cache2 =
+            (DistributedExoCache<Serializable, Object>)new ExoCacheFactoryImpl(
+               (ExoContainerContext)pc.getComponentInstanceOfType(ExoContainerContext.class),
+               "jar:/conf/portal/cache-configuration-template.xml", cm, dcm2).createCache(config);
+         int total = 200;
+         for (int i = 0; i < total; i++)
+         {
+            cache1.put(new MyKey("k" + i), "v" + i);
+         }
+         assertEquals(total, cache1.computeExactCacheSize());
+         // Each node owns about half of the entries, the size is extrapolated from the local ones
+         assertApproximateSize(total, cache1);
+         assertApproximateSize(total, cache2);
+         // The entries put into the L1 cache of the second node must not be counted
+         for (int i = 0; i < total; i++)
+         {
+            assertEquals("v" + i, cache2.get(new MyKey("k" + i)));
+         }
+         assertApproximateSize(total, cache1);
+         assertApproximateSize(total, cache2);
+         for (int i = 0; i < total / 2; i++)
+         {
+            cache2.remove(new MyKey("k" + i));
+         }
+         assertEquals(total / 2, cache1.computeExactCacheSize());
+         assertApproximateSize(total / 2, cache1);
+         assertApproximateSize(total / 2, cache2);
+         for (int i = total / 2; i < total; i++)
+         {
+            if (dm.getLocality(new DistributedExoCache.CacheKey<MyKey>(cache1.getFullName(), new MyKey("k" + i)))
+               .isLocal())
+            {
+               remaining++;
+            }
+         }
+      }
+      finally
+      {
+         dcm2.stop();
+      }
+      // The counter is resynchronized with the entries owned locally once the second node left
+      long timeout = System.currentTimeMillis() + 10000;
+      while (cache1.getCacheSize() != remaining && System.currentTimeMillis() < timeout)
+      {
+         Thread.sleep(50);
+      }
+      assertEquals(remaining, cache1.getCacheSize());
+      assertEquals(remaining, cache1.computeExactCacheSize());
+      cache1.clearCache();
+   }
+
+   private static void assertApproximateSize(int expected, DistributedExoCache<Serializable, Object> cache)
+   {
+      int size = cache.getCacheSize();
+      assertTrue("The size " + size + " is too far from " + expected, Math.abs(size - expected) <= expected / 2);
+   }
+
    @SuppressWarnings({"unchecked", "rawtypes"})
    private void checkUseCase(DistributedExoCache<Serializable, Object> cache1,
       DistributedExoCache<Serializable, Object> cache2, DistributionManager dm, Object a, Object b, Object c)
@@ -634,9 +850,9 @@ public class TestDistributedExoCache extends TestCase
       boolean isCLocal = dm.getLocality(new DistributedExoCache.CacheKey(cache1.getFullName(), new MyKey(c))).isLocal();
       MyKey key = new MyKey(a);
       cache1.put(key, "b");
-      assertEquals(1, cache1.getCacheSize());
+      assertEquals(1, cache1.computeExactCacheSize());
       assertEquals("b", cache2.get(new MyKey(a)));
-      assertEquals(1, cache2.getCacheSize());
+      assertEquals(1, cache2.computeExactCacheSize());
 
       int put1 = 1;
       int put2 = isALocal ? 0 : 1;
@@ -649,8 +865,8 @@ public class TestDistributedExoCache extends TestCase
 
       MyKey key2 = new MyKey(b);
       cache2.put(key2, "c");
-      assertEquals(2, cache1.getCacheSize());
-      assertEquals(2, cache2.getCacheSize());
+      assertEquals(2, cache1.computeExactCacheSize());
+      assertEquals(2, cache2.computeExactCacheSize());
       assertEquals("c", cache1.get(new MyKey(b)));
 
       put1 += isBLocal ? 1 : 0;
@@ -662,8 +878,8 @@ public class TestDistributedExoCache extends TestCase
       assertEquals(1, listener1.get);
       assertEquals(1, listener2.get);
 
-      assertEquals(2, cache1.getCacheSize());
-      assertEquals(2, cache2.getCacheSize());
+      assertEquals(2, cache1.computeExactCacheSize());
+      assertEquals(2, cache2.computeExactCacheSize());
 
       assertEquals(put1, listener1.put);
       assertEquals(put2, listener2.put);
@@ -673,8 +889,8 @@ public class TestDistributedExoCache extends TestCase
 
       key = new MyKey(a);
       cache2.put(key, "a");
-      assertEquals(2, cache1.getCacheSize());
-      assertEquals(2, cache2.getCacheSize());
+      assertEquals(2, cache1.computeExactCacheSize());
+      assertEquals(2, cache2.computeExactCacheSize());
       assertEquals("a", cache1.get(new MyKey(a)));
 
       put1 += isALocal ? 1 : 0;
@@ -688,8 +904,8 @@ public class TestDistributedExoCache extends TestCase
 
       key = new MyKey(a);
       cache2.remove(key);
-      assertEquals(1, cache1.getCacheSize());
-      assertEquals(1, cache2.getCacheSize());
+      assertEquals(1, cache1.computeExactCacheSize());
+      assertEquals(1, cache2.computeExactCacheSize());
 
       assertEquals(put1, listener1.put);
       assertEquals(put2, listener2.put);
@@ -705,8 +921,8 @@ public class TestDistributedExoCache extends TestCase
 
       key = new MyKey(c);
       cache1.put(key, "c");
-      assertEquals(2, cache1.getCacheSize());
-      assertEquals(2, cache2.getCacheSize());
+      assertEquals(2, cache1.computeExactCacheSize());
+      assertEquals(2, cache2.computeExactCacheSize());
       assertEquals("c", cache2.get(new MyKey(c)));
 
       put1++;
@@ -725,12 +941,12 @@ public class TestDistributedExoCache extends TestCase
       assertEquals(0, listener2.clearCache);
 
       cache1.clearCache();
-      assertEquals(0, cache1.getCacheSize());
+      assertEquals(0, cache1.computeExactCacheSize());
       assertNull(cache1.get(new MyKey(b)));
       assertNull(cache1.get(new MyKey(c)));
       assertNull(cache2.get(new MyKey(b)));
       assertNull(cache2.get(new MyKey(c)));
-      assertEquals(0, cache2.getCacheSize());
+      assertEquals(0, cache2.computeExactCacheSize());
 
       assertEquals(put1, listener1.put);
       assertEquals(put2, listener2.put);
@@ -756,13 +972,13 @@ public class TestDistributedExoCache extends TestCase
       values.put(key, "a");
       values.put(key2, "b");
       cache1.putMap(values);
-      assertEquals(2, cache1.getCacheSize());
+      assertEquals(2, cache1.computeExactCacheSize());
       Thread.sleep(40);
       assertEquals("a", cache1.get(new MyKey(a)));
       assertEquals("b", cache1.get(new MyKey(b)));
       assertEquals("a", cache2.get(new MyKey(a)));
       assertEquals("b", cache2.get(new MyKey(b)));
-      assertEquals(2, cache2.getCacheSize());
+      assertEquals(2, cache2.computeExactCacheSize());
 
       put1 += 2;
       put2 += (isALocal ? 0 : 1) + (isBLocal ? 0 : 1);
@@ -810,8 +1026,8 @@ public class TestDistributedExoCache extends TestCase
       values.put(new MyKey("e"), "e");
       values.put(new MyKey("d"), "d");
       cache1.putMap(values);
-      assertEquals(2, cache1.getCacheSize());
-      assertEquals(2, cache2.getCacheSize());
+      assertEquals(2, cache1.computeExactCacheSize());
+      assertEquals(2, cache2.computeExactCacheSize());
 
       assertEquals(put1, listener1.put);
       assertEquals(put2, listener2.put);
@@ -829,8 +1045,8 @@ public class TestDistributedExoCache extends TestCase
       assertEquals(0, listener2.expire);
 
       cache2.clearCache();
-      assertEquals(0, cache1.getCacheSize());
-      assertEquals(0, cache2.getCacheSize());
+      assertEquals(0, cache1.computeExactCacheSize());
+      assertEquals(0, cache2.computeExactCacheSize());
 
       assertEquals(put1, listener1.put);
       assertEquals(put2, listener2.put);
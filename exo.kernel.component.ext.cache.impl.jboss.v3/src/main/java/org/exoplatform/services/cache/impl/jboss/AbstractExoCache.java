@@ -41,6 +41,9 @@ import org.jboss.cache.notifications.event.NodeModifiedEvent;
 import org.jboss.cache.notifications.event.NodeRemovedEvent;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -295,6 +298,87 @@ public abstract class AbstractExoCache<K extends Serializable, V> implements Exo
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public Map<K, V> getAll(Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      Map<K, V> result = new HashMap<K, V>();
+      for (K name : names)
+      {
+         if (name == null)
+         {
+            continue;
+         }
+         final V value = cache.get(getFqn(name), name);
+         if (value == null)
+         {
+            misses.incrementAndGet();
+         }
+         else
+         {
+            hits.incrementAndGet();
+            result.put(name, value);
+         }
+         onGet(name, value);
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void removeAll(Collection<? extends K> names) throws IllegalArgumentException
+   {
+      if (names == null)
+      {
+         throw new IllegalArgumentException("No null collection accepted");
+      }
+      for (Serializable name : names)
+      {
+         if (name == null)
+         {
+            throw new IllegalArgumentException("No null cache key accepted");
+         }
+      }
+      Map<K, V> removed = new LinkedHashMap<K, V>();
+      cache.startBatch();
+      try
+      {
+         // Start transaction
+         for (K name : names)
+         {
+            final Fqn<Serializable> fqn = getFqn(name);
+            // We use the methods peek and getDirect to avoid going through the interceptor chain
+            // in order to avoid to visit nodes that were about to be evicted
+            final NodeSPI<K, V> node = cache.peek(fqn, false);
+            if (node != null)
+            {
+               V value = node.getDirect(name);
+               if (PrivilegedCacheHelper.removeNode(cache, fqn))
+               {
+                  removed.put(name, value);
+               }
+            }
+         }
+         PrivilegedCacheHelper.endBatch(cache, true);
+         // End transaction
+         for (Map.Entry<K, V> entry : removed.entrySet())
+         {
+            onRemove(entry.getKey(), entry.getValue());
+         }
+      }
+      catch (Exception e)
+      {
+         cache.endBatch(false);
+         LOG.warn("An error occurs while executing the removeAll method", e);
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
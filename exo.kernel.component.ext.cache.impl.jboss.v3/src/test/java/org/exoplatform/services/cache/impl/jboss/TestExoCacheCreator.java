@@ -26,6 +26,7 @@ import org.exoplatform.services.cache.ExoCacheInitException;
 import org.jboss.cache.Cache;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -201,6 +202,16 @@ public class TestExoCacheCreator implements ExoCacheCreator
          
       }
 
+      public Map getAll(Collection keys) throws NullPointerException
+      {
+         return null;
+      }
+
+      public void removeAll(Collection keys) throws NullPointerException, IllegalArgumentException
+      {
+
+      }
+
       public Object remove(Serializable key) throws NullPointerException
       {
          // TODO Auto-generated method stub
@@ -27,11 +27,19 @@ import org.jgroups.Channel;
 import org.jgroups.JChannel;
 import org.jgroups.Message;
 import org.jgroups.View;
+import org.jgroups.blocks.AsyncRequestHandler;
+import org.jgroups.blocks.MessageDispatcher;
 import org.jgroups.blocks.RequestOptions;
+import org.jgroups.blocks.Response;
 import org.jgroups.blocks.ResponseMode;
+import org.jgroups.util.FutureListener;
+import org.jgroups.util.NotifyingFuture;
 import org.jgroups.util.RspList;
 
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class is the implementation of the {@link AbstractRPCService} for JGroups 3.
@@ -67,6 +75,97 @@ public class RPCServiceImpl extends AbstractRPCService
          : ResponseMode.GET_NONE, timeout));
    }
    
+   /**
+    * {@inheritDoc}
+    * The request is sent without blocking, the collector receives the responses as they arrive thanks to
+    * the response filter and the timeout is enforced thanks to the timer of the transport.
+    */
+   @Override
+   protected void castMessageAsync(List<Address> dests, Message msg, final ResponseCollector collector, long timeout)
+      throws Exception
+   {
+      final Future<?> timeoutTask;
+      if (timeout > 0)
+      {
+         timeoutTask = channel.getProtocolStack().getTransport().getTimer().schedule(new Runnable()
+         {
+            public void run()
+            {
+               collector.onTimeout();
+            }
+         }, timeout, TimeUnit.MILLISECONDS);
+      }
+      else
+      {
+         timeoutTask = null;
+      }
+      NotifyingFuture<RspList<Object>> future =
+         dispatcher.castMessageWithFuture(dests, msg, new RequestOptions(ResponseMode.GET_ALL, timeout, false,
+            collector));
+      collector.setRequest(future);
+      future.setListener(new FutureListener<RspList<Object>>()
+      {
+         public void futureDone(Future<RspList<Object>> future)
+         {
+            if (timeoutTask != null)
+            {
+               timeoutTask.cancel(false);
+            }
+            RspList<Object> rsps = null;
+            if (!future.isCancelled())
+            {
+               try
+               {
+                  rsps = future.get();
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               catch (ExecutionException e)
+               {
+                  // Ignore me, the missing responses will be considered as lost
+               }
+            }
+            collector.onCompletion(rsps);
+         }
+      });
+   }
+
+   /**
+    * {@inheritDoc}
+    * The requests are dispatched asynchronously, such that the result of a command executed by a pool of
+    * threads is sent by the thread of the pool instead of blocking the thread that delivers the message.
+    */
+   @Override
+   protected MessageDispatcher createDispatcher(Channel channel)
+   {
+      return new MessageDispatcher(channel, null, this, new AsyncRequestHandler()
+      {
+         public Object handle(Message msg) throws Exception
+         {
+            return RPCServiceImpl.this.handle(msg);
+         }
+
+         public void handle(Message msg, final Response response) throws Exception
+         {
+            if (response == null)
+            {
+               // No response is expected
+               RPCServiceImpl.this.handle(msg);
+               return;
+            }
+            RPCServiceImpl.this.handle(msg, new Reply()
+            {
+               public void send(Object result)
+               {
+                  response.send(result, false);
+               }
+            });
+         }
+      }).asyncDispatching(true);
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -97,4 +196,20 @@ public class RPCServiceImpl extends AbstractRPCService
    {
       m.setObject(o);
    }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setBuffer(Message m, byte[] buffer)
+   {
+      m.setBuffer(buffer);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   protected void setOOB(Message m)
+   {
+      m.setFlag(Message.Flag.OOB);
+   }
 }
@@ -36,6 +36,11 @@ import org.springframework.beans.factory.support.AutowireCandidateQualifier;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.beans.factory.support.RootBeanDefinition;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ApplicationContextEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.support.GenericApplicationContext;
 
 import java.lang.annotation.Annotation;
@@ -43,6 +48,8 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Named;
 
@@ -72,6 +79,28 @@ public class SpringContainer extends AbstractInterceptor
     */
    private ApplicationContext ctx;
 
+   /**
+    * The value used to indicate that no bean could be found
+    */
+   private static final String NO_BEAN = "";
+
+   /**
+    * The names of the beans already resolved, the key is either the type of the component or a
+    * {@link ResolutionKey} if a qualifier or a name has been used
+    */
+   private final transient ConcurrentMap<Object, String> beanNames = new ConcurrentHashMap<Object, String>();
+
+   /**
+    * The result of {@link ApplicationContext#getBeanNamesForType(Class)} for the types already resolved
+    */
+   private final transient ConcurrentMap<Class<?>, String[]> beanNamesForType =
+      new ConcurrentHashMap<Class<?>, String[]>();
+
+   /**
+    * The instances of the singleton beans already resolved, the beans of other scopes are never cached
+    */
+   private final transient ConcurrentMap<String, Object> singletons = new ConcurrentHashMap<String, Object>();
+
    /**
     * {@inheritDoc}
     */
@@ -89,35 +118,10 @@ public class SpringContainer extends AbstractInterceptor
          {
             return null;
          }
-         String beanName = keyToBeanName(componentKey);
-         if (ctx.containsBean(beanName) && bindType.isAssignableFrom(ctx.getType(beanName)))
-         {
-            return bindType.cast(ctx.getBean(beanName));
-         }
-         String[] names = ctx.getBeanNamesForType(bindType);
-         if (names != null && names.length > 0)
+         String name = getBeanName(componentKey, bindType);
+         if (name != null)
          {
-            for (int i = 0, length = names.length; i < length; i++)
-            {
-               String name = names[i];
-               if (componentKey instanceof String)
-               {
-                  Named n = ctx.findAnnotationOnBean(name, Named.class);
-                  if (n != null && componentKey.equals(n.value()))
-                  {
-                     return bindType.cast(ctx.getBean(name));
-                  }
-               }
-               else
-               {
-                  @SuppressWarnings("unchecked")
-                  Annotation a = ctx.findAnnotationOnBean(name, (Class<? extends Annotation>)componentKey);
-                  if (a != null)
-                  {
-                     return bindType.cast(ctx.getBean(name));
-                  }
-               }
-            }
+            return getBean(bindType, name);
          }
       }
       return result;
@@ -144,15 +148,10 @@ public class SpringContainer extends AbstractInterceptor
       {
          public T run()
          {
-            String name = classToBeanName(componentType);
-            if (ctx.containsBean(name) && componentType.isAssignableFrom(ctx.getType(name)))
-            {
-               return componentType.cast(ctx.getBean(name));
-            }
-            String[] names = ctx.getBeanNamesForType(componentType);
-            if (names != null && names.length > 0)
+            String name = getBeanNameOfType(componentType);
+            if (name != null)
             {
-               return componentType.cast(ctx.getBean(names[0]));
+               return getBean(componentType, name);
             }
             return null;
          }
@@ -179,66 +178,151 @@ public class SpringContainer extends AbstractInterceptor
          {
             return null;
          }
+         String name = getBeanName(componentKey, bindType);
+         if (name != null)
+         {
+            return createComponentAdapter(bindType, name);
+         }
+      }
+      return (ComponentAdapter<T>)result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public <T> ComponentAdapter<T> getComponentAdapterOfType(Class<T> componentType)
+   {
+      ComponentAdapter<T> result = super.getComponentAdapterOfType(componentType);
+      if (ctx != null && result == null)
+      {
+         result = getAdapterOfType(componentType);
+      }
+      return result;
+   }
+
+   private <T> ComponentAdapter<T> getAdapterOfType(Class<T> componentType)
+   {
+      String name = getBeanNameOfType(componentType);
+      if (name != null)
+      {
+         return createComponentAdapter(componentType, name);
+      }
+      return null;
+   }
+
+   /**
+    * Gives the name of the bean corresponding to the given type, the result is cached
+    * @return the name of the bean if it could be found, <code>null</code> otherwise
+    */
+   private String getBeanNameOfType(Class<?> componentType)
+   {
+      String name = beanNames.get(componentType);
+      if (name == null)
+      {
+         name = classToBeanName(componentType);
+         if (!ctx.containsBean(name) || !componentType.isAssignableFrom(ctx.getType(name)))
+         {
+            String[] names = getBeanNamesForType(componentType);
+            name = names.length > 0 ? names[0] : NO_BEAN;
+         }
+         beanNames.putIfAbsent(componentType, name);
+      }
+      return NO_BEAN.equals(name) ? null : name;
+   }
+
+   /**
+    * Gives the name of the bean corresponding to the given key and type, the result is cached
+    * @param componentKey the key of the component which is either a name or a qualifier
+    * @return the name of the bean if it could be found, <code>null</code> otherwise
+    */
+   @SuppressWarnings("unchecked")
+   private String getBeanName(Object componentKey, Class<?> bindType)
+   {
+      ResolutionKey key = new ResolutionKey(componentKey, bindType);
+      String name = beanNames.get(key);
+      if (name == null)
+      {
+         name = NO_BEAN;
          String beanName = keyToBeanName(componentKey);
          if (ctx.containsBean(beanName) && bindType.isAssignableFrom(ctx.getType(beanName)))
          {
-            return createComponentAdapter(bindType, beanName);
+            name = beanName;
          }
-         String[] names = ctx.getBeanNamesForType(bindType);
-         if (names != null && names.length > 0)
+         else
          {
+            String[] names = getBeanNamesForType(bindType);
             for (int i = 0, length = names.length; i < length; i++)
             {
-               String name = names[i];
+               String n = names[i];
                if (componentKey instanceof String)
                {
-                  Named n = ctx.findAnnotationOnBean(name, Named.class);
-                  if (n != null && componentKey.equals(n.value()))
+                  Named named = ctx.findAnnotationOnBean(n, Named.class);
+                  if (named != null && componentKey.equals(named.value()))
                   {
-                     return createComponentAdapter(bindType, name);
+                     name = n;
+                     break;
                   }
                }
                else
                {
-                  Annotation a = ctx.findAnnotationOnBean(name, (Class<? extends Annotation>)componentKey);
+                  Annotation a = ctx.findAnnotationOnBean(n, (Class<? extends Annotation>)componentKey);
                   if (a != null)
                   {
-                     return createComponentAdapter(bindType, name);
+                     name = n;
+                     break;
                   }
                }
             }
          }
+         beanNames.putIfAbsent(key, name);
       }
-      return (ComponentAdapter<T>)result;
+      return NO_BEAN.equals(name) ? null : name;
    }
 
    /**
-    * {@inheritDoc}
+    * Gives the names of all the beans of the given type, the result is cached
     */
-   @Override
-   public <T> ComponentAdapter<T> getComponentAdapterOfType(Class<T> componentType)
+   private String[] getBeanNamesForType(Class<?> componentType)
    {
-      ComponentAdapter<T> result = super.getComponentAdapterOfType(componentType);
-      if (ctx != null && result == null)
+      String[] names = beanNamesForType.get(componentType);
+      if (names == null)
       {
-         result = getAdapterOfType(componentType);
+         names = ctx.getBeanNamesForType(componentType);
+         if (names == null)
+         {
+            names = new String[0];
+         }
+         beanNamesForType.putIfAbsent(componentType, names);
       }
-      return result;
+      return names;
    }
 
-   private <T> ComponentAdapter<T> getAdapterOfType(Class<T> componentType)
+   /**
+    * Gives the bean corresponding to the given name, the instance is cached if the bean is a singleton
+    */
+   private <T> T getBean(Class<T> type, String name)
    {
-      String name = classToBeanName(componentType);
-      if (ctx.containsBean(name) && componentType.isAssignableFrom(ctx.getType(name)))
-      {
-         return createComponentAdapter(componentType, name);
-      }
-      String[] names = ctx.getBeanNamesForType(componentType);
-      if (names != null && names.length > 0)
+      Object bean = singletons.get(name);
+      if (bean == null)
       {
-         return createComponentAdapter(componentType, names[0]);
+         bean = ctx.getBean(name);
+         if (ctx.isSingleton(name))
+         {
+            singletons.putIfAbsent(name, bean);
+         }
       }
-      return null;
+      return type.cast(bean);
+   }
+
+   /**
+    * Clears all the resolutions done so far
+    */
+   private void clearCache()
+   {
+      beanNames.clear();
+      beanNamesForType.clear();
+      singletons.clear();
    }
 
    private <T> ComponentAdapter<T> createComponentAdapter(final Class<T> type, final String name)
@@ -252,7 +336,7 @@ public class SpringContainer extends AbstractInterceptor
 
          public T getComponentInstance() throws ContainerException
          {
-            return type.cast(ctx.getBean(name));
+            return getBean(type, name);
          }
 
          public boolean isSingleton()
@@ -273,14 +357,11 @@ public class SpringContainer extends AbstractInterceptor
       if (ctx != null)
       {
          result = new ArrayList<ComponentAdapter<T>>(result);
-         String[] names = ctx.getBeanNamesForType(componentType);
-         if (names != null)
+         String[] names = getBeanNamesForType(componentType);
+         for (int i = 0, length = names.length; i < length; i++)
          {
-            for (int i = 0, length = names.length; i < length; i++)
-            {
-               String name = names[i];
-               result.add((ComponentAdapter<T>)createComponentAdapter(ctx.getType(name), name));
-            }
+            String name = names[i];
+            result.add((ComponentAdapter<T>)createComponentAdapter(ctx.getType(name), name));
          }
       }
       return result;
@@ -356,6 +437,22 @@ public class SpringContainer extends AbstractInterceptor
          parentContext.refresh();
          ApplicationContextProvider provider = super.getComponentInstanceOfType(ApplicationContextProvider.class);
          ctx = provider.getApplicationContext(parentContext);
+         clearCache();
+         if (ctx instanceof ConfigurableApplicationContext)
+         {
+            // The resolutions are not valid anymore once the context has been refreshed or closed
+            ((ConfigurableApplicationContext)ctx).addApplicationListener(
+               new ApplicationListener<ApplicationContextEvent>()
+               {
+                  public void onApplicationEvent(ApplicationContextEvent event)
+                  {
+                     if (event instanceof ContextRefreshedEvent || event instanceof ContextClosedEvent)
+                     {
+                        clearCache();
+                     }
+                  }
+               });
+         }
          LOG.info("A SpringContainer has been enabled using the ApplicationContextProvider " + provider.getClass());
       }
       super.start();
@@ -381,6 +478,7 @@ public class SpringContainer extends AbstractInterceptor
          finally
          {
             ctx = null;
+            clearCache();
          }
       }
    }
@@ -417,6 +515,45 @@ public class SpringContainer extends AbstractInterceptor
       return "SpringIntegration";
    }
 
+   /**
+    * The key used to cache the name of a bean that has been resolved thanks to a name or a qualifier
+    */
+   private static class ResolutionKey
+   {
+      /** . */
+      private final Object componentKey;
+
+      /** . */
+      private final Class<?> bindType;
+
+      private ResolutionKey(Object componentKey, Class<?> bindType)
+      {
+         this.componentKey = componentKey;
+         this.bindType = bindType;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * componentKey.hashCode() + bindType.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj)
+         {
+            return true;
+         }
+         if (!(obj instanceof ResolutionKey))
+         {
+            return false;
+         }
+         ResolutionKey other = (ResolutionKey)obj;
+         return componentKey.equals(other.componentKey) && bindType.equals(other.bindType);
+      }
+   }
+
    static class ComponentAdapterFactoryBean<T>
    {
       private final ComponentAdapter<T> adapter;
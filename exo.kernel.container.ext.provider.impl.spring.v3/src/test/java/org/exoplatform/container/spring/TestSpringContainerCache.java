@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.spring;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.ConcurrentContainer;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.configuration.ConfigurationManager;
+import org.exoplatform.container.configuration.ConfigurationManagerImpl;
+import org.exoplatform.container.xml.Component;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import javax.inject.Named;
+import javax.inject.Qualifier;
+
+/**
+ * Checks the resolutions cached by the {@link SpringContainer}
+ * 
+ * @version $Id$
+ */
+public class TestSpringContainerCache extends TestCase
+{
+
+   private SpringContainer container;
+
+   private MyApplicationContextProvider provider;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      ExoContainer holder = new ExoContainer();
+      ConcurrentContainer delegate = new ConcurrentContainer(holder, null);
+      delegate.registerComponentInstance(ConfigurationManager.class, new ConfigurationManagerImpl()
+      {
+         @Override
+         public Component getComponent(Class<?> clazz)
+         {
+            return ApplicationContextProvider.class.equals(clazz) ? new Component() : null;
+         }
+      });
+      provider = new MyApplicationContextProvider();
+      delegate.registerComponentInstance(ApplicationContextProvider.class, provider);
+      container = new SpringContainer();
+      container.setHolder(holder);
+      container.setSuccessor(delegate);
+      container.start();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      container.stop();
+   }
+
+   public void testLookupByType()
+   {
+      S s = container.getComponentInstanceOfType(S.class);
+      assertNotNull(s);
+      assertSame(s, container.getComponentInstanceOfType(S.class));
+      assertSame(s, container.getComponentInstance(S.class, S.class));
+      assertSame(s, container.getComponentAdapterOfType(S.class).getComponentInstance());
+   }
+
+   public void testLookupByName()
+   {
+      N n = container.getComponentInstance("myName", N.class);
+      assertNotNull(n);
+      assertSame(n, container.getComponentInstance("myName", N.class));
+      assertSame(n, container.getComponentAdapter("myName", N.class).getComponentInstance());
+      // The bind type is part of the key
+      assertNull(container.getComponentInstance("myName", S.class));
+   }
+
+   public void testLookupByQualifier()
+   {
+      Q q = container.getComponentInstance(MyQualifier.class, Q.class);
+      assertNotNull(q);
+      assertSame(q, container.getComponentInstance(MyQualifier.class, Q.class));
+      assertNull(container.getComponentInstance(MyQualifier.class, S.class));
+   }
+
+   public void testScope()
+   {
+      // The instances of the prototype beans are never cached
+      P p = container.getComponentInstanceOfType(P.class);
+      assertNotNull(p);
+      assertNotSame(p, container.getComponentInstanceOfType(P.class));
+      assertNotSame(p, container.getComponentAdapterOfType(P.class).getComponentInstance());
+      assertFalse(container.getComponentAdapterOfType(P.class).isSingleton());
+      assertTrue(container.getComponentAdapterOfType(S.class).isSingleton());
+   }
+
+   public void testNegativeResultAndRefresh()
+   {
+      assertNull(container.getComponentInstanceOfType(L.class));
+      AnnotationConfigApplicationContext ctx = provider.ctx;
+      ctx.registerBeanDefinition(L.class.getName(), new RootBeanDefinition(L.class));
+      // The negative result is cached
+      assertNull(container.getComponentInstanceOfType(L.class));
+      ctx.publishEvent(new ContextRefreshedEvent(ctx));
+      assertNotNull(container.getComponentInstanceOfType(L.class));
+   }
+
+   public void testStopStart()
+   {
+      S s = container.getComponentInstanceOfType(S.class);
+      assertNotNull(s);
+      container.stop();
+      assertNull(container.getComponentInstanceOfType(S.class));
+      container.start();
+      S s2 = container.getComponentInstanceOfType(S.class);
+      assertNotNull(s2);
+      assertNotSame(s, s2);
+   }
+
+   public static class MyApplicationContextProvider implements ApplicationContextProvider
+   {
+      private AnnotationConfigApplicationContext ctx;
+
+      public ApplicationContext getApplicationContext(ApplicationContext parent)
+      {
+         ctx = new AnnotationConfigApplicationContext();
+         ctx.setParent(parent);
+         ctx.register(S.class, P.class, N.class, Q.class);
+         ctx.refresh();
+         return ctx;
+      }
+   }
+
+   public static class S
+   {
+   }
+
+   @Scope("prototype")
+   public static class P
+   {
+   }
+
+   @Named("myName")
+   public static class N
+   {
+   }
+
+   @MyQualifier
+   public static class Q
+   {
+   }
+
+   public static class L
+   {
+   }
+
+   @Retention(RetentionPolicy.RUNTIME)
+   @Qualifier
+   public static @interface MyQualifier
+   {
+   }
+}
@@ -40,7 +40,10 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.context.spi.CreationalContext;
 import javax.enterprise.event.Observes;
@@ -103,6 +106,18 @@ public class WeldContainer extends AbstractInterceptor
     */
    private org.jboss.weld.Container weldContainer;
 
+   /**
+    * The value used to indicate that no bean could be found
+    */
+   private static final Resolution<Object> NO_RESOLUTION = new Resolution<Object>(null, false);
+
+   /**
+    * The resolutions already done, the key is either the type of the component or a
+    * {@link ResolutionKey} if a qualifier or a name has been used
+    */
+   private final transient ConcurrentMap<Object, Resolution<?>> resolutions =
+      new ConcurrentHashMap<Object, Resolution<?>>();
+
    /**
     * {@inheritDoc}
     */
@@ -117,23 +132,12 @@ public class WeldContainer extends AbstractInterceptor
          {
             return getInstanceOfType((Class<T>)componentKey);
          }
-         else if (componentKey instanceof String)
+         else if (componentKey instanceof String || componentKey instanceof Class<?>)
          {
-            Set<Bean<?>> beans = container.getBeanManager().getBeans(bindType, createNamed((String)componentKey));
-            if (beans != null && !beans.isEmpty())
+            Resolution<?> resolution = getResolution(componentKey, bindType);
+            if (resolution != NO_RESOLUTION)
             {
-               return bindType.cast(container.instance().select(beans.iterator().next().getBeanClass()).get());
-            }
-         }
-         else if (componentKey instanceof Class<?>)
-         {
-            final Class<? extends Annotation> annotationType = (Class<? extends Annotation>)componentKey;
-            Annotation annotation = createAnnotation(annotationType);
-
-            Set<Bean<?>> beans = container.getBeanManager().getBeans(bindType, annotation);
-            if (beans != null && !beans.isEmpty())
-            {
-               return bindType.cast(container.instance().select(beans.iterator().next().getBeanClass()).get());
+               return bindType.cast(resolution.get());
             }
          }
       }
@@ -154,30 +158,101 @@ public class WeldContainer extends AbstractInterceptor
       return result;
    }
 
-   @SuppressWarnings("unchecked")
    private <T> T getInstanceOfType(Class<T> componentType)
    {
-      if (helper.isIncluded(componentType))
+      Resolution<T> resolution = getResolutionOfType(componentType);
+      if (resolution != NO_RESOLUTION)
       {
-         Instance<T> instance = container.instance().select(componentType);
-         if (instance != null)
+         return resolution.get();
+      }
+      return null;
+   }
+
+   /**
+    * Gives the resolution corresponding to the given type, the result is cached
+    * @return the resolution if the type is part of the scope of {@link Weld}, {@link #NO_RESOLUTION} otherwise
+    */
+   @SuppressWarnings("unchecked")
+   private <T> Resolution<T> getResolutionOfType(Class<T> componentType)
+   {
+      Resolution<T> resolution = (Resolution<T>)resolutions.get(componentType);
+      if (resolution == null)
+      {
+         resolution = (Resolution<T>)NO_RESOLUTION;
+         if (helper.isIncluded(componentType))
          {
-            if (instance.isAmbiguous())
+            Instance<T> instance = container.instance().select(componentType);
+            if (instance != null)
             {
-               Set<Bean<?>> beans = container.getBeanManager().getBeans(componentType);
-               for (Bean<?> b : beans)
+               Bean<?> bean = null;
+               if (instance.isAmbiguous())
                {
-                  if (b.getBeanClass().isAnnotationPresent(Default.class))
+                  Set<Bean<?>> beans = container.getBeanManager().getBeans(componentType);
+                  for (Bean<?> b : beans)
                   {
-                     instance = (Instance<T>)container.instance().select(b.getBeanClass());
-                     break;
+                     if (b.getBeanClass().isAnnotationPresent(Default.class))
+                     {
+                        instance = (Instance<T>)container.instance().select(b.getBeanClass());
+                        bean = b;
+                        break;
+                     }
                   }
                }
+               else if (!instance.isUnsatisfied())
+               {
+                  BeanManager bm = container.getBeanManager();
+                  bean = bm.resolve(bm.getBeans(componentType));
+               }
+               resolution = new Resolution<T>(instance, bean != null && isShared(bean));
             }
-            return instance.get();
          }
+         resolutions.putIfAbsent(componentType, resolution);
       }
-      return null;
+      return resolution;
+   }
+
+   /**
+    * Gives the resolution corresponding to the given key and type, the result is cached
+    * @param componentKey the key of the component which is either a name or a qualifier
+    * @return the resolution if a bean could be found, {@link #NO_RESOLUTION} otherwise
+    */
+   @SuppressWarnings("unchecked")
+   private <T> Resolution<T> getResolution(Object componentKey, Class<T> bindType)
+   {
+      ResolutionKey key = new ResolutionKey(componentKey, bindType);
+      Resolution<T> resolution = (Resolution<T>)resolutions.get(key);
+      if (resolution == null)
+      {
+         resolution = (Resolution<T>)NO_RESOLUTION;
+         Annotation annotation;
+         if (componentKey instanceof String)
+         {
+            annotation = createNamed((String)componentKey);
+         }
+         else
+         {
+            annotation = createAnnotation((Class<? extends Annotation>)componentKey);
+         }
+         Set<Bean<?>> beans = container.getBeanManager().getBeans(bindType, annotation);
+         if (beans != null && !beans.isEmpty())
+         {
+            Bean<?> bean = beans.iterator().next();
+            resolution =
+               new Resolution<T>((Instance<T>)container.instance().select(bean.getBeanClass()), isShared(bean));
+         }
+         resolutions.putIfAbsent(key, resolution);
+      }
+      return resolution;
+   }
+
+   /**
+    * Indicates whether the instances of the given bean can be cached which is only the
+    * case of the beans of scope {@link Singleton} or {@link ApplicationScoped}
+    */
+   private static boolean isShared(Bean<?> bean)
+   {
+      Class<? extends Annotation> scope = bean.getScope();
+      return Singleton.class.equals(scope) || ApplicationScoped.class.equals(scope);
    }
 
    /**
@@ -194,24 +269,12 @@ public class WeldContainer extends AbstractInterceptor
          {
             return getAdapterOfType((Class<T>)componentKey);
          }
-         else if (componentKey instanceof String)
-         {
-            Set<Bean<?>> beans = container.getBeanManager().getBeans(bindType, createNamed((String)componentKey));
-            if (beans != null && !beans.isEmpty())
-            {
-               return createComponentAdapter(bindType,
-                  (Instance<T>)container.instance().select(beans.iterator().next().getBeanClass()));
-            }
-         }
-         else if (componentKey instanceof Class<?>)
+         else if (componentKey instanceof String || componentKey instanceof Class<?>)
          {
-            final Class<? extends Annotation> annotationType = (Class<? extends Annotation>)componentKey;
-            Annotation annotation = createAnnotation(annotationType);
-            Set<Bean<?>> beans = container.getBeanManager().getBeans(bindType, annotation);
-            if (beans != null && !beans.isEmpty())
+            Resolution<T> resolution = getResolution(componentKey, bindType);
+            if (resolution != NO_RESOLUTION)
             {
-               return createComponentAdapter(bindType,
-                  (Instance<T>)container.instance().select(beans.iterator().next().getBeanClass()));
+               return createComponentAdapter(bindType, resolution);
             }
          }
       }
@@ -232,33 +295,17 @@ public class WeldContainer extends AbstractInterceptor
       return result;
    }
 
-   @SuppressWarnings("unchecked")
    private <T> ComponentAdapter<T> getAdapterOfType(Class<T> componentType)
    {
-      if (helper.isIncluded(componentType))
+      Resolution<T> resolution = getResolutionOfType(componentType);
+      if (resolution != NO_RESOLUTION)
       {
-         Instance<T> instance = container.instance().select(componentType);
-         if (instance != null)
-         {
-            if (instance.isAmbiguous())
-            {
-               Set<Bean<?>> beans = container.getBeanManager().getBeans(componentType);
-               for (Bean<?> b : beans)
-               {
-                  if (b.getBeanClass().isAnnotationPresent(Default.class))
-                  {
-                     instance = (Instance<T>)container.instance().select(b.getBeanClass());
-                     break;
-                  }
-               }
-            }
-            return createComponentAdapter(componentType, instance);
-         }
+         return createComponentAdapter(componentType, resolution);
       }
       return null;
    }
 
-   private <T> ComponentAdapter<T> createComponentAdapter(final Class<T> type, final Instance<T> instance)
+   private <T> ComponentAdapter<T> createComponentAdapter(final Class<T> type, final Resolution<T> resolution)
    {
       return new AbstractComponentAdapter<T>(type, type)
       {
@@ -269,7 +316,7 @@ public class WeldContainer extends AbstractInterceptor
 
          public T getComponentInstance() throws ContainerException
          {
-            return instance.get();
+            return resolution.get();
          }
 
          public boolean isSingleton()
@@ -382,6 +429,7 @@ public class WeldContainer extends AbstractInterceptor
          container.getBeanManager().getBeans(org.jboss.weld.environment.se.WeldContainer.class);
          this.weldContainer = org.jboss.weld.Container.instance();
          this.weld = weld;
+         resolutions.clear();
          LOG.info("A WeldContainer has been enabled using the WeldContainerHelper " + helper.getClass());
       }
       super.start();
@@ -419,6 +467,7 @@ public class WeldContainer extends AbstractInterceptor
          container = null;
          helper = null;
          weldContainer = null;
+         resolutions.clear();
       }
    }
 
@@ -472,6 +521,81 @@ public class WeldContainer extends AbstractInterceptor
       return "WeldIntegration";
    }
 
+   /**
+    * The key used to cache a resolution that has been done thanks to a name or a qualifier
+    */
+   private static class ResolutionKey
+   {
+      /** . */
+      private final Object componentKey;
+
+      /** . */
+      private final Class<?> bindType;
+
+      private ResolutionKey(Object componentKey, Class<?> bindType)
+      {
+         this.componentKey = componentKey;
+         this.bindType = bindType;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * componentKey.hashCode() + bindType.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj)
+         {
+            return true;
+         }
+         if (!(obj instanceof ResolutionKey))
+         {
+            return false;
+         }
+         ResolutionKey other = (ResolutionKey)obj;
+         return componentKey.equals(other.componentKey) && bindType.equals(other.bindType);
+      }
+   }
+
+   /**
+    * The result of the resolution of a bean, the instance is only kept if the bean is of scope
+    * {@link Singleton} or {@link ApplicationScoped}
+    */
+   private static class Resolution<T>
+   {
+      /** . */
+      private final Instance<T> instance;
+
+      /** . */
+      private final boolean shared;
+
+      /** . */
+      private volatile T value;
+
+      private Resolution(Instance<T> instance, boolean shared)
+      {
+         this.instance = instance;
+         this.shared = shared;
+      }
+
+      T get()
+      {
+         if (!shared)
+         {
+            return instance.get();
+         }
+         T value = this.value;
+         if (value == null)
+         {
+            this.value = value = instance.get();
+         }
+         return value;
+      }
+   }
+
    private class WeldExtension implements Extension
    {
       @SuppressWarnings({"unchecked", "rawtypes", "unused"})
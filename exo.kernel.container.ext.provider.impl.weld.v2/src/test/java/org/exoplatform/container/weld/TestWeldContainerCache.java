@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.weld;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.ConcurrentContainer;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.configuration.ConfigurationManager;
+import org.exoplatform.container.configuration.ConfigurationManagerImpl;
+import org.exoplatform.container.xml.Component;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.spi.Extension;
+import javax.inject.Named;
+import javax.inject.Qualifier;
+import javax.inject.Singleton;
+
+/**
+ * Checks the resolutions cached by the {@link WeldContainer}
+ * 
+ * @version $Id$
+ */
+public class TestWeldContainerCache extends TestCase
+{
+
+   private WeldContainer container;
+
+   private MyWeldContainerHelper helper;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      ExoContainer holder = new ExoContainer();
+      ConcurrentContainer delegate = new ConcurrentContainer(holder, null);
+      delegate.registerComponentInstance(ConfigurationManager.class, new ConfigurationManagerImpl()
+      {
+         @Override
+         public Component getComponent(Class<?> clazz)
+         {
+            return WeldContainerHelper.class.equals(clazz) ? new Component() : null;
+         }
+      });
+      helper = new MyWeldContainerHelper();
+      delegate.registerComponentInstance(WeldContainerHelper.class, helper);
+      container = new WeldContainer();
+      container.setHolder(holder);
+      container.setSuccessor(delegate);
+      container.start();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      container.stop();
+   }
+
+   public void testLookupByType()
+   {
+      S s = container.getComponentInstanceOfType(S.class);
+      assertNotNull(s);
+      assertSame(s, container.getComponentInstanceOfType(S.class));
+      assertSame(s, container.getComponentInstance(S.class, S.class));
+      assertSame(s, container.getComponentAdapterOfType(S.class).getComponentInstance());
+   }
+
+   public void testLookupByName()
+   {
+      N n = container.getComponentInstance("myName", N.class);
+      assertNotNull(n);
+      assertSame(n, container.getComponentInstance("myName", N.class));
+      assertSame(n, container.getComponentAdapter("myName", N.class).getComponentInstance());
+      assertNull(container.getComponentInstance("unknownName", N.class));
+   }
+
+   public void testLookupByQualifier()
+   {
+      Q q = container.getComponentInstance(MyQualifier.class, Q.class);
+      assertNotNull(q);
+      assertSame(q, container.getComponentInstance(MyQualifier.class, Q.class));
+      assertNull(container.getComponentInstance(MyQualifier.class, S.class));
+   }
+
+   public void testScope()
+   {
+      // The instances of the dependent beans are never cached
+      D d = container.getComponentInstanceOfType(D.class);
+      assertNotNull(d);
+      assertNotSame(d, container.getComponentInstanceOfType(D.class));
+      assertNotSame(d, container.getComponentAdapterOfType(D.class).getComponentInstance());
+   }
+
+   public void testNegativeResultAndStopStart()
+   {
+      S s = container.getComponentInstanceOfType(S.class);
+      assertNotNull(s);
+      helper.excluded.add(L.class);
+      assertNull(container.getComponentInstanceOfType(L.class));
+      helper.excluded.remove(L.class);
+      // The negative result is cached
+      assertNull(container.getComponentInstanceOfType(L.class));
+      container.stop();
+      assertNull(container.getComponentInstanceOfType(S.class));
+      container.start();
+      assertNotNull(container.getComponentInstanceOfType(L.class));
+      S s2 = container.getComponentInstanceOfType(S.class);
+      assertNotNull(s2);
+      assertNotSame(s, s2);
+   }
+
+   public static class MyWeldContainerHelper implements WeldContainerHelper
+   {
+      private final Set<Class<?>> excluded = new HashSet<Class<?>>();
+
+      public List<Extension> getExtensions()
+      {
+         return null;
+      }
+
+      public boolean isIncluded(Class<?> clazz)
+      {
+         return clazz.getName().startsWith(TestWeldContainerCache.class.getName() + "$")
+            && !clazz.equals(MyWeldContainerHelper.class) && !excluded.contains(clazz);
+      }
+   }
+
+   @Singleton
+   public static class S
+   {
+   }
+
+   public static class D
+   {
+   }
+
+   @Singleton
+   @Named("myName")
+   public static class N
+   {
+   }
+
+   @ApplicationScoped
+   @MyQualifier
+   public static class Q
+   {
+   }
+
+   @Singleton
+   public static class L
+   {
+   }
+
+   @Retention(RetentionPolicy.RUNTIME)
+   @Qualifier
+   public static @interface MyQualifier
+   {
+   }
+}
@@ -22,10 +22,15 @@ import org.exoplatform.container.spi.ComponentAdapter;
 import org.exoplatform.container.spi.Container;
 import org.exoplatform.container.spi.ContainerException;
 import org.exoplatform.container.spi.ContainerVisitor;
+import org.exoplatform.container.util.ContainerUtil;
+import org.exoplatform.management.ManagementContext;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author <a href="mailto:julien.viet@exoplatform.com">Julien Viet</a>
@@ -53,18 +58,48 @@ public class CachingContainer extends AbstractInterceptor
 
    private final ThreadLocal<Boolean> enabled = new ThreadLocal<Boolean>();
 
+   /**
+    * The total amount of lookups that could be served from the cache
+    */
+   private final AtomicLong hits = new AtomicLong();
+
+   /**
+    * The total amount of lookups that could not be served from the cache
+    */
+   private final AtomicLong misses = new AtomicLong();
+
+   /**
+    * The total amount of times that the cache has been invalidated
+    */
+   private final AtomicLong invalidations = new AtomicLong();
+
+   /**
+    * The total amount of entries evicted from the cache due to an invalidation
+    */
+   private final AtomicLong evictions = new AtomicLong();
+
+   /**
+    * The managed object exposing the statistics of the cache, registered on start and unregistered on stop
+    */
+   private transient CachingContainerManaged managed;
+
    @SuppressWarnings("unchecked")
    public <T> ComponentAdapter<T> getComponentAdapterOfType(Class<T> componentType)
    {
       ComponentAdapter<T> adapter = (ComponentAdapter<T>)adapterByType.get(componentType);
       if (adapter == null)
       {
+         misses.incrementAndGet();
          adapter = super.getComponentAdapterOfType(componentType);
          if (adapter != null)
          {
             adapterByType.put(componentType, adapter);
          }
       }
+      else
+      {
+         hits.incrementAndGet();
+      }
       return adapter;
    }
 
@@ -74,12 +109,17 @@ public class CachingContainer extends AbstractInterceptor
       List<ComponentAdapter<T>> adapters = (List<ComponentAdapter<T>>)adaptersByType.get(componentType);
       if (adapters == null)
       {
+         misses.incrementAndGet();
          adapters = super.getComponentAdaptersOfType(componentType);
          if (adapters != null)
          {
             adaptersByType.put(componentType, adapters);
          }
       }
+      else
+      {
+         hits.incrementAndGet();
+      }
       return adapters;
    }
 
@@ -89,6 +129,7 @@ public class CachingContainer extends AbstractInterceptor
       List<?> instances = instancesByType.get(componentType);
       if (instances == null)
       {
+         misses.incrementAndGet();
          instances = super.getComponentInstancesOfType(componentType);
          if (instances != null)
          {
@@ -107,6 +148,10 @@ public class CachingContainer extends AbstractInterceptor
             }
          }
       }
+      else
+      {
+         hits.incrementAndGet();
+      }
       return (List<T>)instances;
    }
 
@@ -115,6 +160,7 @@ public class CachingContainer extends AbstractInterceptor
       Object instance = instanceByKey.get(componentKey);
       if (instance == null)
       {
+         misses.incrementAndGet();
          instance = super.getComponentInstance(componentKey, bindType);
          if (instance != null)
          {
@@ -133,6 +179,10 @@ public class CachingContainer extends AbstractInterceptor
             }
          }
       }
+      else
+      {
+         hits.incrementAndGet();
+      }
       return bindType.cast(instance);
    }
 
@@ -141,6 +191,7 @@ public class CachingContainer extends AbstractInterceptor
       Object instance = instanceByType.get(componentType);
       if (instance == null)
       {
+         misses.incrementAndGet();
          instance = super.getComponentInstanceOfType(componentType);
          if (instance != null)
          {
@@ -159,11 +210,54 @@ public class CachingContainer extends AbstractInterceptor
             }
          }
       }
+      else
+      {
+         hits.incrementAndGet();
+      }
       return componentType.cast(instance);
    }
 
-   private static final ContainerVisitor invalidator = new ContainerVisitor()
+   /**
+    * Evicts from the caches of the whole container tree the entries that could be affected by the registration
+    * or the un-registration of the given component adapter: the entries of the key of the component and the
+    * entries of all the types to which its implementation is assignable.
+    */
+   private static class Invalidator implements ContainerVisitor
    {
+      /** . */
+      private final Object componentKey;
+
+      /** . */
+      private final Set<Class<?>> types;
+
+      private Invalidator(Object componentKey, ComponentAdapter<?> adapter)
+      {
+         this.componentKey = componentKey;
+         Set<Class<?>> types;
+         if (adapter == null)
+         {
+            types = Collections.emptySet();
+         }
+         else
+         {
+            types = ContainerUtil.getSuperTypes(adapter.getComponentImplementation());
+            // Needed in case the implementation is an interface
+            types.add(Object.class);
+         }
+         if (componentKey instanceof Class<?> && !types.contains(componentKey))
+         {
+            if (types.isEmpty())
+            {
+               types = Collections.<Class<?>> singleton((Class<?>)componentKey);
+            }
+            else
+            {
+               types.add((Class<?>)componentKey);
+            }
+         }
+         this.types = types;
+      }
+
       public void visitContainer(Container container)
       {
          do
@@ -171,27 +265,48 @@ public class CachingContainer extends AbstractInterceptor
             if (container instanceof CachingContainer)
             {
                CachingContainer caching = (CachingContainer)container;
-               caching.adapterByType.clear();
-               caching.adaptersByType.clear();
-               caching.instanceByKey.clear();
-               caching.instanceByType.clear();
-               caching.instancesByType.clear();
+               int evicted = 0;
+               if (caching.instanceByKey.remove(componentKey) != null)
+               {
+                  evicted++;
+               }
+               for (Class<?> type : types)
+               {
+                  if (caching.adapterByType.remove(type) != null)
+                  {
+                     evicted++;
+                  }
+                  if (caching.adaptersByType.remove(type) != null)
+                  {
+                     evicted++;
+                  }
+                  if (caching.instanceByType.remove(type) != null)
+                  {
+                     evicted++;
+                  }
+                  if (caching.instancesByType.remove(type) != null)
+                  {
+                     evicted++;
+                  }
+               }
+               caching.invalidations.incrementAndGet();
+               caching.evictions.addAndGet(evicted);
                break;
             }
          }
          while ((container = container.getSuccessor()) != null);
       }
-   };
+   }
 
-   private void invalidate()
+   private void invalidate(Object componentKey, ComponentAdapter<?> adapter)
    {
-      accept(invalidator);
+      accept(new Invalidator(componentKey, adapter));
    }
 
    public ComponentAdapter<?> unregisterComponent(Object componentKey)
    {
       ComponentAdapter<?> adapter = super.unregisterComponent(componentKey);
-      invalidate();
+      invalidate(componentKey, adapter);
       return adapter;
    }
 
@@ -199,7 +314,7 @@ public class CachingContainer extends AbstractInterceptor
       throws ContainerException
    {
       ComponentAdapter<T> adapter = super.registerComponentInstance(componentKey, componentInstance);
-      invalidate();
+      invalidate(componentKey, adapter);
       return adapter;
    }
 
@@ -207,10 +322,98 @@ public class CachingContainer extends AbstractInterceptor
       throws ContainerException
    {
       ComponentAdapter<T> adapter = super.registerComponentImplementation(componentKey, componentImplementation);
-      invalidate();
+      invalidate(componentKey, adapter);
       return adapter;
    }
 
+   /**
+    * {@inheritDoc}
+    * Registers also the statistics of the cache into the management context of the container.
+    */
+   @Override
+   public void start()
+   {
+      super.start();
+      ManagementContext managementContext = getManagementContext();
+      if (managementContext != null && managed == null)
+      {
+         managed = new CachingContainerManaged(this);
+         managementContext.register(managed);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    * Unregisters also the statistics of the cache from the management context of the container.
+    */
+   @Override
+   public void stop()
+   {
+      super.stop();
+      CachingContainerManaged managed = this.managed;
+      if (managed != null)
+      {
+         this.managed = null;
+         ManagementContext managementContext = getManagementContext();
+         if (managementContext != null)
+         {
+            managementContext.unregister(managed);
+         }
+      }
+   }
+
+   /**
+    * @return the total amount of lookups that could be served from the cache
+    */
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return the total amount of lookups that could not be served from the cache
+    */
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @return the total amount of times that the cache has been invalidated
+    */
+   public long getInvalidations()
+   {
+      return invalidations.get();
+   }
+
+   /**
+    * @return the total amount of entries evicted from the cache due to an invalidation
+    */
+   public long getEvictions()
+   {
+      return evictions.get();
+   }
+
+   /**
+    * @return the total amount of entries currently in the cache
+    */
+   public int getSize()
+   {
+      return adapterByType.size() + adaptersByType.size() + instanceByKey.size() + instanceByType.size()
+         + instancesByType.size();
+   }
+
+   /**
+    * Resets all the counters
+    */
+   public void resetCounters()
+   {
+      hits.set(0);
+      misses.set(0);
+      invalidations.set(0);
+      evictions.set(0);
+   }
+
    /**
     * {@inheritDoc}
     */
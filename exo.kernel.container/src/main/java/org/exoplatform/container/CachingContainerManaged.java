@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.annotations.ManagedName;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+
+/**
+ * A management facade for the statistics of the {@link CachingContainer} of a given container.
+ *
+ * @version $Id$
+ */
+@Managed
+@ManagedDescription("The cache of the components of the container")
+@NameTemplate(@Property(key = "service", value = "componentcache"))
+public class CachingContainerManaged
+{
+
+   /** . */
+   private final CachingContainer cache;
+
+   CachingContainerManaged(CachingContainer cache)
+   {
+      this.cache = cache;
+   }
+
+   @Managed
+   @ManagedName("Hits")
+   @ManagedDescription("Returns the total amount of lookups that could be served from the cache")
+   public long getHits()
+   {
+      return cache.getHits();
+   }
+
+   @Managed
+   @ManagedName("Misses")
+   @ManagedDescription("Returns the total amount of lookups that could not be served from the cache")
+   public long getMisses()
+   {
+      return cache.getMisses();
+   }
+
+   @Managed
+   @ManagedName("Invalidations")
+   @ManagedDescription("Returns the total amount of times that the cache has been invalidated")
+   public long getInvalidations()
+   {
+      return cache.getInvalidations();
+   }
+
+   @Managed
+   @ManagedName("Evictions")
+   @ManagedDescription("Returns the total amount of entries evicted from the cache due to an invalidation")
+   public long getEvictions()
+   {
+      return cache.getEvictions();
+   }
+
+   @Managed
+   @ManagedName("Size")
+   @ManagedDescription("Returns the total amount of entries currently in the cache")
+   public int getSize()
+   {
+      return cache.getSize();
+   }
+
+   @Managed
+   @ManagedDescription("Resets all the counters")
+   public void resetCounters()
+   {
+      cache.resetCounters();
+   }
+}
@@ -29,18 +29,13 @@ import org.exoplatform.management.ManagementContext;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -52,9 +47,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.inject.Provider;
-import javax.inject.Qualifier;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
@@ -85,6 +78,13 @@ public class ConcurrentContainer extends AbstractInterceptor
 
    protected final Set<ComponentAdapter<?>> componentAdapters = new CopyOnWriteArraySet<ComponentAdapter<?>>();
 
+   /**
+    * The component adapters indexed by the super classes and the interfaces of their
+    * implementation, {@link Object} is not indexed since it matches all the component adapters
+    */
+   private final transient ConcurrentMap<Class<?>, Set<ComponentAdapter<?>>> typeToAdapters =
+      new ConcurrentHashMap<Class<?>, Set<ComponentAdapter<?>>>();
+
    // Keeps track of instantiation order.
    protected final CopyOnWriteArrayList<ComponentAdapter<?>> orderedComponentAdapters =
       new CopyOnWriteArrayList<ComponentAdapter<?>>();
@@ -99,6 +99,26 @@ public class ConcurrentContainer extends AbstractInterceptor
     */
    private final transient ThreadLocal<Map<Object, Object>> depResolutionCtx = new ThreadLocal<Map<Object, Object>>();
 
+   /**
+    * The components injected into the singletons created by this container, they are only tracked
+    * when the components are started in parallel.
+    */
+   private final transient ConcurrentMap<ComponentAdapter<?>, ComponentDependencies> dependencies =
+      new ConcurrentHashMap<ComponentAdapter<?>, ComponentDependencies>();
+
+   /**
+    * Context used to keep track of the components injected into the components that are currently
+    * being created.
+    */
+   private final transient ThreadLocal<LinkedList<Set<Object>>> dependencyTrackingCtx =
+      new ThreadLocal<LinkedList<Set<Object>>>();
+
+   /**
+    * The injection plans of the classes of the components created by this container
+    */
+   private final transient ConcurrentMap<Class<?>, InjectionPlan> injectionPlans =
+      new ConcurrentHashMap<Class<?>, InjectionPlan>();
+
    /**
     * Creates a new container with the default {@link ComponentAdapterFactory} and a parent container.
     */
@@ -196,7 +216,8 @@ public class ConcurrentContainer extends AbstractInterceptor
          return Collections.emptyList();
       }
       List<ComponentAdapter<T>> found = new ArrayList<ComponentAdapter<T>>();
-      for (Iterator<ComponentAdapter<?>> iterator = componentAdapters.iterator(); iterator.hasNext();)
+      for (Iterator<ComponentAdapter<?>> iterator = getComponentAdaptersByType(componentType).iterator(); iterator
+         .hasNext();)
       {
          ComponentAdapter<?> componentAdapter = iterator.next();
 
@@ -208,6 +229,63 @@ public class ConcurrentContainer extends AbstractInterceptor
       return found;
    }
 
+   /**
+    * Gives the component adapters whose implementation is potentially assignable to the given type
+    */
+   private Collection<ComponentAdapter<?>> getComponentAdaptersByType(Class<?> componentType)
+   {
+      if (componentType.equals(Object.class))
+      {
+         return componentAdapters;
+      }
+      Collection<ComponentAdapter<?>> adapters = typeToAdapters.get(componentType);
+      return adapters == null ? Collections.<ComponentAdapter<?>> emptySet() : adapters;
+   }
+
+   /**
+    * Adds the given component adapter to the index of all the super classes and interfaces
+    * of its implementation. The updates of the index are serialized, the readers don't need any lock.
+    */
+   private void indexComponentAdapter(ComponentAdapter<?> componentAdapter)
+   {
+      synchronized (typeToAdapters)
+      {
+         for (Class<?> type : ContainerUtil.getSuperTypes(componentAdapter.getComponentImplementation()))
+         {
+            if (type.equals(Object.class))
+            {
+               continue;
+            }
+            Set<ComponentAdapter<?>> adapters = typeToAdapters.get(type);
+            if (adapters == null)
+            {
+               adapters = new CopyOnWriteArraySet<ComponentAdapter<?>>();
+               typeToAdapters.put(type, adapters);
+            }
+            adapters.add(componentAdapter);
+         }
+      }
+   }
+
+   /**
+    * Removes the given component adapter from the index, the types that no longer match any component
+    * adapter are removed in order to release their class loader
+    */
+   private void unindexComponentAdapter(ComponentAdapter<?> componentAdapter)
+   {
+      synchronized (typeToAdapters)
+      {
+         for (Class<?> type : ContainerUtil.getSuperTypes(componentAdapter.getComponentImplementation()))
+         {
+            Set<ComponentAdapter<?>> adapters = typeToAdapters.get(type);
+            if (adapters != null && adapters.remove(componentAdapter) && adapters.isEmpty())
+            {
+               typeToAdapters.remove(type);
+            }
+         }
+      }
+   }
+
    /**
     * Register a component via a ComponentAdapter. Use this if you need fine grained control over what
     * ComponentAdapter to use for a specific component.
@@ -228,6 +306,7 @@ public class ConcurrentContainer extends AbstractInterceptor
          throw new ContainerException("Key " + componentKey + " duplicated");
       }
       componentAdapters.add(componentAdapter);
+      indexComponentAdapter(componentAdapter);
       return componentAdapter;
    }
 
@@ -248,6 +327,13 @@ public class ConcurrentContainer extends AbstractInterceptor
       }
       componentAdapters.remove(adapter);
       orderedComponentAdapters.remove(adapter);
+      if (adapter != null)
+      {
+         unindexComponentAdapter(adapter);
+         dependencies.remove(adapter);
+         // The injection plan will be computed again if needed
+         injectionPlans.remove(adapter.getComponentImplementation());
+      }
       return adapter;
    }
 
@@ -316,7 +402,8 @@ public class ConcurrentContainer extends AbstractInterceptor
       }
 
       Map<ComponentAdapter<T>, Object> adapterToInstanceMap = new HashMap<ComponentAdapter<T>, Object>();
-      for (Iterator<ComponentAdapter<?>> iterator = componentAdapters.iterator(); iterator.hasNext();)
+      for (Iterator<ComponentAdapter<?>> iterator = getComponentAdaptersByType(componentType).iterator(); iterator
+         .hasNext();)
       {
          ComponentAdapter<?> componentAdapter = iterator.next();
          if (componentType.isAssignableFrom(componentAdapter.getComponentImplementation()))
@@ -417,6 +504,113 @@ public class ConcurrentContainer extends AbstractInterceptor
       }
    }
 
+   /**
+    * Starts tracking the components that will be injected into the component that the current thread
+    * is about to create. This is a no-op if the components are not started in parallel.
+    */
+   public void startDependencyTracking()
+   {
+      if (!LifecycleVisitor.PARALLEL)
+      {
+         return;
+      }
+      LinkedList<Set<Object>> stack = dependencyTrackingCtx.get();
+      if (stack == null)
+      {
+         stack = new LinkedList<Set<Object>>();
+         dependencyTrackingCtx.set(stack);
+      }
+      stack.addFirst(Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+   }
+
+   /**
+    * Stops tracking the components injected into the component that the current thread has been creating
+    * and keeps them if the given instance is not <code>null</code>.
+    * @param adapter the adapter of the component
+    * @param instance the instance of the component if it is a singleton, <code>null</code> otherwise
+    */
+   public void stopDependencyTracking(ComponentAdapter<?> adapter, Object instance)
+   {
+      LinkedList<Set<Object>> stack = dependencyTrackingCtx.get();
+      if (stack == null)
+      {
+         return;
+      }
+      Set<Object> injected = stack.removeFirst();
+      if (stack.isEmpty())
+      {
+         dependencyTrackingCtx.remove();
+      }
+      if (instance != null)
+      {
+         dependencies.putIfAbsent(adapter, new ComponentDependencies(instance, injected));
+      }
+   }
+
+   /**
+    * Keeps track of the given component as a dependency of the component being created if any
+    */
+   private void trackDependency(Object component)
+   {
+      if (component == null || !LifecycleVisitor.PARALLEL)
+      {
+         return;
+      }
+      LinkedList<Set<Object>> stack = dependencyTrackingCtx.get();
+      if (stack != null)
+      {
+         stack.getFirst().add(component);
+      }
+   }
+
+   /**
+    * Gives the known dependencies between the given components. A component depends on another one
+    * if the latter has been injected into it, either directly or through components that are not
+    * part of the given ones.
+    * @param components the components for which we want the dependencies
+    * @return for each of the given components, the given components on which it depends
+    */
+   public Map<Object, Set<Object>> getDependencies(Collection<?> components)
+   {
+      Map<Object, Set<Object>> injected = new IdentityHashMap<Object, Set<Object>>();
+      for (ComponentDependencies cd : dependencies.values())
+      {
+         injected.put(cd.instance, cd.dependencies);
+      }
+      Set<Object> targets = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+      targets.addAll(components);
+      Map<Object, Set<Object>> result = new IdentityHashMap<Object, Set<Object>>();
+      for (Object component : components)
+      {
+         Set<Object> deps = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+         Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+         LinkedList<Object> toVisit = new LinkedList<Object>();
+         Set<Object> direct = injected.get(component);
+         if (direct != null)
+         {
+            toVisit.addAll(direct);
+         }
+         while (!toVisit.isEmpty())
+         {
+            Object dep = toVisit.removeFirst();
+            if (dep == component || !visited.add(dep))
+            {
+               continue;
+            }
+            if (targets.contains(dep))
+            {
+               deps.add(dep);
+            }
+            else if ((direct = injected.get(dep)) != null)
+            {
+               toVisit.addAll(direct);
+            }
+         }
+         result.put(component, deps);
+      }
+      return result;
+   }
+
    private <T> T getInstance(ComponentAdapter<T> componentAdapter, Class<T> type)
    {
       // check whether this is our adapter
@@ -527,10 +721,10 @@ public class ConcurrentContainer extends AbstractInterceptor
       if (LOG.isDebugEnabled())
          LOG.debug(clazz.getName() + " " + ((params != null) ? params : "") + " added to "
             + getHolder().getContext().getName());
-      Constructor<?>[] constructors = new Constructor<?>[0];
+      InjectionPlan.ConstructorInjection[] constructors;
       try
       {
-         constructors = ContainerUtil.getSortedConstructors(clazz);
+         constructors = getInjectionPlan(clazz).getConstructors();
       }
       catch (NoClassDefFoundError err)
       {
@@ -539,20 +733,12 @@ public class ConcurrentContainer extends AbstractInterceptor
       Class<?> unknownParameter = null;
       for (int k = 0; k < constructors.length; k++)
       {
-         Constructor<?> constructor = constructors[k];
-         Class<?>[] parameters = constructor.getParameterTypes();
+         InjectionPlan.ConstructorInjection constructor = constructors[k];
+         Class<?>[] parameters = constructor.parameterTypes;
          Object[] args = new Object[parameters.length];
-         boolean constructorWithInject = constructors.length == 1 && constructor.isAnnotationPresent(Inject.class);
          boolean satisfied = true;
          String logMessagePrefix = null;
-         Type[] genericTypes = null;
-         Annotation[][] parameterAnnotations = null;
-         if (constructorWithInject)
-         {
-            genericTypes = constructor.getGenericParameterTypes();
-            parameterAnnotations = constructor.getParameterAnnotations();
-         }
-         if (LOG.isDebugEnabled() && constructorWithInject)
+         if (LOG.isDebugEnabled() && constructor.withInject)
          {
             logMessagePrefix = "Could not call the constructor of the class " + clazz.getName();
          }
@@ -564,10 +750,9 @@ public class ConcurrentContainer extends AbstractInterceptor
             }
             else
             {
-               if (constructorWithInject)
+               if (constructor.withInject)
                {
-                  Object result =
-                     resolveType(parameters[i], genericTypes[i], parameterAnnotations[i], logMessagePrefix);
+                  Object result = resolveType(constructor.dependencies[i], logMessagePrefix);
                   if (!(result instanceof Integer))
                   {
                      args[i] = result;
@@ -577,6 +762,7 @@ public class ConcurrentContainer extends AbstractInterceptor
                {
                   args[i] = holder.getComponentInstanceOfType(parameters[i]);
                }
+               trackDependency(args[i]);
                if (args[i] == null)
                {
                   satisfied = false;
@@ -587,10 +773,8 @@ public class ConcurrentContainer extends AbstractInterceptor
          }
          if (satisfied)
          {
-            if ((!Modifier.isPublic(constructor.getModifiers()) || !Modifier.isPublic(constructor.getDeclaringClass()
-               .getModifiers())) && !constructor.isAccessible())
-               constructor.setAccessible(true);
-            return clazz.cast(constructor.newInstance(args));
+            constructor.makeAccessible();
+            return clazz.cast(constructor.constructor.newInstance(args));
          }
       }
       throw new Exception("Cannot find a satisfying constructor for " + clazz.getName() + " with parameter "
@@ -604,237 +788,122 @@ public class ConcurrentContainer extends AbstractInterceptor
     */
    public <T> boolean initializeComponent(T instance)
    {
-      LinkedList<Class<?>> hierarchy = new LinkedList<Class<?>>();
-      Class<?> clazz = instance.getClass();
-      do
+      InjectionPlan.MemberInjections members = getInjectionPlan(instance.getClass()).getMembers();
+      // Fields and methods in superclasses are injected before those in subclasses.
+      InjectionPlan.MemberInjection[] injections = members.injections;
+      for (int i = 0, length = injections.length; i < length; i++)
       {
-         hierarchy.addFirst(clazz);
-      }
-      while (!(clazz = clazz.getSuperclass()).equals(Object.class));
-      // Fields and methods in superclasses are injected before those in subclasses. 
-      Map<String, Method> methodAlreadyRegistered = new HashMap<String, Method>();
-      Map<Class<?>, Collection<Method>> methodsPerClass = new HashMap<Class<?>, Collection<Method>>();
-      for (Class<?> c : hierarchy)
-      {
-         addMethods(c, methodAlreadyRegistered, methodsPerClass);
-      }
-      boolean isInjectPresent = !methodAlreadyRegistered.isEmpty();
-      for (Class<?> c : hierarchy)
-      {
-         if (initializeFields(instance, c))
+         InjectionPlan.MemberInjection injection = injections[i];
+         if (injection.field == null)
+         {
+            initializeMethod(instance, injection);
+         }
+         else
          {
-            isInjectPresent = true;
+            initializeField(instance, injection);
          }
-         initializeMethods(instance, methodsPerClass.get(c));
       }
-      return isInjectPresent;
+      return members.injectPresent;
    }
 
-   private void addMethods(Class<?> c, Map<String, Method> methodAlreadyRegistered,
-      Map<Class<?>, Collection<Method>> methodsPerClass)
+   /**
+    * Gives the injection plan of the given class, the plans are computed once per class
+    * and per container
+    */
+   private InjectionPlan getInjectionPlan(Class<?> clazz)
    {
-      Method[] methods = c.getDeclaredMethods();
-      for (int i = 0, length = methods.length; i < length; i++)
+      InjectionPlan plan = injectionPlans.get(clazz);
+      if (plan == null)
       {
-         Method m = methods[i];
-         boolean addMethod = false;
-         Method methodToRemove = null;
-         if (m.isAnnotationPresent(Inject.class))
+         plan = new InjectionPlan(clazz);
+         InjectionPlan previous = injectionPlans.putIfAbsent(clazz, plan);
+         if (previous != null)
          {
-            addMethod = true;
-            methodToRemove = methodAlreadyRegistered.put(getMethodId(m), m);
-         }
-         else if (!methodAlreadyRegistered.isEmpty())
-         {
-            String id = getMethodId(m);
-            if (methodAlreadyRegistered.containsKey(id))
-            {
-               addMethod = true;
-               methodToRemove = methodAlreadyRegistered.put(id, m);
-            }
-         }
-         if (addMethod)
-         {
-            Collection<Method> cMethods = methodsPerClass.get(c);
-            if (cMethods == null)
-            {
-               cMethods = new HashSet<Method>();
-               methodsPerClass.put(c, cMethods);
-            }
-            cMethods.add(m);
-         }
-         if (methodToRemove != null)
-         {
-            Collection<Method> cMethods = methodsPerClass.get(methodToRemove.getDeclaringClass());
-            if (cMethods != null)
-            {
-               cMethods.remove(methodToRemove);
-            }
+            plan = previous;
          }
       }
+      return plan;
    }
 
    /**
-    * Initializes the instance by calling all the methods with the
+    * Initializes the instance by calling the given method with the
     * annotation {@link Inject}
     */
-   private <T> void initializeMethods(T instance, Collection<Method> methods)
+   private <T> void initializeMethod(T instance, InjectionPlan.MemberInjection injection)
    {
-      if (methods == null)
+      Method m = injection.method;
+      InjectionPlan.Dependency[] dependencies = injection.dependencies;
+      Object[] params = new Object[dependencies.length];
+      String logMessagePrefix = null;
+      if (LOG.isDebugEnabled())
       {
-         return;
+         logMessagePrefix =
+            "Could not call the method " + m.getName() + " of the class " + instance.getClass().getName();
       }
-      main : for (Method m : methods)
+      for (int j = 0, l = dependencies.length; j < l; j++)
       {
-         if (m.isAnnotationPresent(Inject.class))
+         Object result = resolveType(dependencies[j], logMessagePrefix);
+         if (result instanceof Integer)
          {
-            if (Modifier.isAbstract(m.getModifiers()))
-            {
-               LOG.warn("Could not call the method " + m.getName() + " of the class " + instance.getClass().getName()
-                  + ": The method cannot be abstract");
-               continue;
-            }
-            else if (Modifier.isStatic(m.getModifiers()))
-            {
-               LOG.warn("Could not call the method " + m.getName() + " of the class " + instance.getClass().getName()
-                  + ": The method cannot be static");
-               continue;
-            }
-            // The method is annotated with Inject and is not abstract and has not been called yet
-            Class<?>[] paramTypes = m.getParameterTypes();
-            Object[] params = new Object[paramTypes.length];
-            Type[] genericTypes = m.getGenericParameterTypes();
-            Annotation[][] parameterAnnotations = m.getParameterAnnotations();
-            String logMessagePrefix = null;
-            if (LOG.isDebugEnabled())
-            {
-               logMessagePrefix =
-                  "Could not call the method " + m.getName() + " of the class " + instance.getClass().getName();
-            }
-            for (int j = 0, l = paramTypes.length; j < l; j++)
-            {
-               Object result = resolveType(paramTypes[j], genericTypes[j], parameterAnnotations[j], logMessagePrefix);
-               if (result instanceof Integer)
-               {
-                  int r = (Integer)result;
-                  if (r == 1 || r == 2)
-                  {
-                     continue main;
-                  }
-                  params[j] = null;
-                  continue;
-               }
-               else
-               {
-                  params[j] = result;
-               }
-            }
-            try
-            {
-               if ((!Modifier.isPublic(m.getModifiers()) || !Modifier.isPublic(m.getDeclaringClass().getModifiers()))
-                  && !m.isAccessible())
-                  m.setAccessible(true);
-               m.invoke(instance, params);
-            }
-            catch (Exception e)
+            int r = (Integer)result;
+            if (r == 1 || r == 2)
             {
-               throw new RuntimeException("Could not call the method " + m.getName() + " of the class "
-                  + instance.getClass().getName() + ": " + e.getMessage(), e);
+               return;
             }
+            params[j] = null;
+            continue;
+         }
+         else
+         {
+            params[j] = result;
          }
       }
-   }
-
-   /**
-    * Gives an id to a method to be able to identify if a given method has already been called from the parent class@return
-    */
-   private static String getMethodId(Method m)
-   {
-      StringBuilder sb = new StringBuilder();
-      int modifier = m.getModifiers();
-      if (Modifier.isPrivate(modifier))
-      {
-         sb.append(m.getDeclaringClass().getName());
-      }
-      else if (!Modifier.isPublic(modifier) && !Modifier.isProtected(modifier))
+      try
       {
-         sb.append(m.getDeclaringClass().getPackage().getName());
+         m.invoke(instance, params);
       }
-      sb.append(m.getName());
-      sb.append('(');
-      Class<?>[] paramTypes = m.getParameterTypes();
-      for (int i = 0, l = paramTypes.length; i < l; i++)
+      catch (Exception e)
       {
-         sb.append(paramTypes[i].getName());
-         if (i < i - 1)
-            sb.append(',');
+         throw new RuntimeException("Could not call the method " + m.getName() + " of the class "
+            + instance.getClass().getName() + ": " + e.getMessage(), e);
       }
-      sb.append(')');
-      return sb.toString();
    }
 
    /**
-    * Initializes the fields of the instance by injecting objects into fields with the
-    * annotation {@link Inject} for a given class
+    * Initializes the instance by injecting an object into the given field with the
+    * annotation {@link Inject}
     */
-   private <T> boolean initializeFields(T instance, Class<?> clazz)
+   private <T> void initializeField(T instance, InjectionPlan.MemberInjection injection)
    {
-      boolean isInjectPresent = false;
-      Field[] fields = clazz.getDeclaredFields();
-      for (int i = 0, length = fields.length; i < length; i++)
+      Field f = injection.field;
+      try
       {
-         Field f = fields[i];
-         if (f.isAnnotationPresent(Inject.class))
+         String logMessagePrefix = null;
+         if (LOG.isDebugEnabled())
          {
-            isInjectPresent = true;
-            if (Modifier.isFinal(f.getModifiers()))
-            {
-               LOG.warn("Could not set a value to the field " + f.getName() + " of the class "
-                  + instance.getClass().getName() + ": The field cannot be final");
-               continue;
-            }
-            else if (Modifier.isStatic(f.getModifiers()))
-            {
-               LOG.warn("Could not set a value to the field " + f.getName() + " of the class "
-                  + instance.getClass().getName() + ": The field cannot be static");
-               continue;
-            }
-            // The field is annotated with Inject and is not final and/or static
-            try
-            {
-               if ((!Modifier.isPublic(f.getModifiers()) || !Modifier.isPublic(f.getDeclaringClass().getModifiers()))
-                  && !f.isAccessible())
-                  f.setAccessible(true);
-               String logMessagePrefix = null;
-               if (LOG.isDebugEnabled())
-               {
-                  logMessagePrefix =
-                     "Could not set a value to the field " + f.getName() + " of the class "
-                        + instance.getClass().getName();
-               }
-               Object result = resolveType(f.getType(), f.getGenericType(), f.getAnnotations(), logMessagePrefix);
-               if (result instanceof Integer)
-               {
-                  continue;
-               }
-               f.set(instance, result);
-            }
-            catch (Exception e)
-            {
-               throw new RuntimeException("Could not set a value to the field " + f.getName() + " of the class "
-                  + instance.getClass().getName() + ": " + e.getMessage(), e);
-            }
+            logMessagePrefix =
+               "Could not set a value to the field " + f.getName() + " of the class " + instance.getClass().getName();
          }
+         Object result = resolveType(injection.dependencies[0], logMessagePrefix);
+         if (result instanceof Integer)
+         {
+            return;
+         }
+         f.set(instance, result);
+      }
+      catch (Exception e)
+      {
+         throw new RuntimeException("Could not set a value to the field " + f.getName() + " of the class "
+            + instance.getClass().getName() + ": " + e.getMessage(), e);
       }
-      return isInjectPresent;
    }
 
    /**
-    * Resolves the given type and generic type
+    * Resolves the given dependency
     */
-   private Object resolveType(Class<?> type, Type genericType, Annotation[] annotations, String logMessagePrefix)
+   private Object resolveType(InjectionPlan.Dependency dependency, String logMessagePrefix)
    {
-      if (type.isPrimitive())
+      if (dependency.error == InjectionPlan.Dependency.PRIMITIVE)
       {
          if (LOG.isDebugEnabled())
          {
@@ -842,43 +911,25 @@ public class ConcurrentContainer extends AbstractInterceptor
          }
          return 1;
       }
-      Named named = null;
-      Class<?> qualifier = null;
-      for (int i = 0, length = annotations.length; i < length; i++)
+      else if (dependency.error == InjectionPlan.Dependency.RAW_PROVIDER)
       {
-         Annotation a = annotations[i];
-         if (a instanceof Named)
-         {
-            named = (Named)a;
-            break;
-         }
-         else if (a.annotationType().isAnnotationPresent(Qualifier.class))
+         if (LOG.isDebugEnabled())
          {
-            qualifier = a.annotationType();
-            break;
+            LOG.debug(logMessagePrefix + ": The generic type is not of type ParameterizedType");
          }
+         return 2;
       }
-      if (type.isInterface() && type.equals(Provider.class))
+      if (dependency.isProvider())
       {
-         if (!(genericType instanceof ParameterizedType))
-         {
-            if (LOG.isDebugEnabled())
-            {
-               LOG.debug(logMessagePrefix + ": The generic type is not of type ParameterizedType");
-            }
-            return 2;
-         }
-         ParameterizedType aType = (ParameterizedType)genericType;
-         Type[] typeVars = aType.getActualTypeArguments();
-         Class<?> expectedType = (Class<?>)typeVars[0];
+         Class<?> expectedType = (Class<?>)dependency.providedType;
          final ComponentAdapter<?> adapter;
-         if (named != null)
+         if (dependency.named != null)
          {
-            adapter = holder.getComponentAdapter(named.value(), expectedType);
+            adapter = holder.getComponentAdapter(dependency.named, expectedType);
          }
-         else if (qualifier != null)
+         else if (dependency.qualifier != null)
          {
-            adapter = holder.getComponentAdapter(qualifier, expectedType);
+            adapter = holder.getComponentAdapter(dependency.qualifier, expectedType);
          }
          else
          {
@@ -903,18 +954,22 @@ public class ConcurrentContainer extends AbstractInterceptor
       }
       else
       {
-         if (named != null)
+         Object result;
+         Class<?> type = dependency.type;
+         if (dependency.named != null)
          {
-            return holder.getComponentInstance(named.value(), type);
+            result = holder.getComponentInstance(dependency.named, type);
          }
-         else if (qualifier != null)
+         else if (dependency.qualifier != null)
          {
-            return holder.getComponentInstance(qualifier, type);
+            result = holder.getComponentInstance(dependency.qualifier, type);
          }
          else
          {
-            return holder.getComponentInstanceOfType(type);
+            result = holder.getComponentInstanceOfType(type);
          }
+         trackDependency(result);
+         return result;
       }
    }
 
@@ -943,4 +998,22 @@ public class ConcurrentContainer extends AbstractInterceptor
       while ((co = co.getSuccessor()) != null);
       return cache;
    }
+
+   /**
+    * A singleton and the components that have been injected into it
+    */
+   private static class ComponentDependencies
+   {
+      /** . */
+      private final Object instance;
+
+      /** . */
+      private final Set<Object> dependencies;
+
+      private ComponentDependencies(Object instance, Set<Object> dependencies)
+      {
+         this.instance = instance;
+         this.dependencies = dependencies;
+      }
+   }
 }
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import org.exoplatform.container.util.ContainerUtil;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Qualifier;
+
+/**
+ * The immutable metadata needed to create and initialize the instances of a given class: the
+ * constructors to try, the fields and the methods to inject and the qualifiers of each dependency.
+ * It is computed once per class in order to avoid going through the reflection API each time a
+ * component is created.
+ *
+ * @version $Id$
+ */
+class InjectionPlan
+{
+
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.InjectionPlan");
+
+   /** . */
+   private final Class<?> clazz;
+
+   /**
+    * The constructors to try in order, lazily computed
+    */
+   private volatile ConstructorInjection[] constructors;
+
+   /**
+    * The fields and methods to inject, lazily computed
+    */
+   private volatile MemberInjections members;
+
+   InjectionPlan(Class<?> clazz)
+   {
+      this.clazz = clazz;
+   }
+
+   /**
+    * Gives the constructors to try in order to create an instance of the class
+    * @throws NoClassDefFoundError if the constructors cannot be resolved
+    */
+   ConstructorInjection[] getConstructors() throws NoClassDefFoundError
+   {
+      ConstructorInjection[] result = constructors;
+      if (result == null)
+      {
+         Constructor<?>[] sorted = ContainerUtil.getSortedConstructors(clazz);
+         result = new ConstructorInjection[sorted.length];
+         for (int i = 0; i < sorted.length; i++)
+         {
+            result[i] =
+               new ConstructorInjection(sorted[i], sorted.length == 1 && sorted[i].isAnnotationPresent(Inject.class));
+         }
+         constructors = result;
+      }
+      return result;
+   }
+
+   /**
+    * Gives the fields and the methods to inject in order to initialize an instance of the class
+    */
+   MemberInjections getMembers()
+   {
+      MemberInjections result = members;
+      if (result == null)
+      {
+         members = result = new MemberInjections(clazz);
+      }
+      return result;
+   }
+
+   /**
+    * Makes the given object accessible if it is not public
+    */
+   private static void makeAccessible(AccessibleObject ao, Member member)
+   {
+      if ((!Modifier.isPublic(member.getModifiers()) || !Modifier.isPublic(member.getDeclaringClass().getModifiers()))
+         && !ao.isAccessible())
+         ao.setAccessible(true);
+   }
+
+   private static Dependency[] getDependencies(Class<?>[] types, Type[] genericTypes, Annotation[][] annotations)
+   {
+      Dependency[] dependencies = new Dependency[types.length];
+      for (int i = 0; i < types.length; i++)
+      {
+         dependencies[i] = new Dependency(types[i], genericTypes[i], annotations[i]);
+      }
+      return dependencies;
+   }
+
+   /**
+    * A dependency to resolve with its qualifiers
+    */
+   static class Dependency
+   {
+      /**
+       * The dependency is a primitive type
+       */
+      static final int PRIMITIVE = 1;
+
+      /**
+       * The dependency is a {@link Provider} without a parameterized type
+       */
+      static final int RAW_PROVIDER = 2;
+
+      /** . */
+      final Class<?> type;
+
+      /**
+       * The value of the {@link Named} annotation if any
+       */
+      final String named;
+
+      /**
+       * The qualifier if any
+       */
+      final Class<?> qualifier;
+
+      /**
+       * The type of the objects provided if the dependency is a {@link Provider}
+       */
+      final Type providedType;
+
+      /**
+       * The reason why the dependency cannot be resolved, 0 if it can be resolved
+       */
+      final int error;
+
+      private Dependency(Class<?> type, Type genericType, Annotation[] annotations)
+      {
+         this.type = type;
+         String named = null;
+         Class<?> qualifier = null;
+         for (int i = 0, length = annotations.length; i < length; i++)
+         {
+            Annotation a = annotations[i];
+            if (a instanceof Named)
+            {
+               named = ((Named)a).value();
+               break;
+            }
+            else if (a.annotationType().isAnnotationPresent(Qualifier.class))
+            {
+               qualifier = a.annotationType();
+               break;
+            }
+         }
+         this.named = named;
+         this.qualifier = qualifier;
+         Type providedType = null;
+         int error = 0;
+         if (type.isPrimitive())
+         {
+            error = PRIMITIVE;
+         }
+         else if (type.isInterface() && type.equals(Provider.class))
+         {
+            if (genericType instanceof ParameterizedType)
+            {
+               providedType = ((ParameterizedType)genericType).getActualTypeArguments()[0];
+            }
+            else
+            {
+               error = RAW_PROVIDER;
+            }
+         }
+         this.providedType = providedType;
+         this.error = error;
+      }
+
+      /**
+       * Indicates whether the dependency is a {@link Provider}
+       */
+      boolean isProvider()
+      {
+         return providedType != null;
+      }
+   }
+
+   /**
+    * A constructor and its parameters
+    */
+   static class ConstructorInjection
+   {
+      /** . */
+      final Constructor<?> constructor;
+
+      /** . */
+      final Class<?>[] parameterTypes;
+
+      /**
+       * Indicates whether the constructor is the only constructor and is annotated with {@link Inject}
+       */
+      final boolean withInject;
+
+      /**
+       * The dependencies corresponding to the parameters, only set if the constructor has the annotation
+       * {@link Inject}
+       */
+      final Dependency[] dependencies;
+
+      private ConstructorInjection(Constructor<?> constructor, boolean withInject)
+      {
+         this.constructor = constructor;
+         this.parameterTypes = constructor.getParameterTypes();
+         this.withInject = withInject;
+         this.dependencies =
+            withInject ? getDependencies(parameterTypes, constructor.getGenericParameterTypes(),
+               constructor.getParameterAnnotations()) : null;
+      }
+
+      /**
+       * Makes the constructor accessible if needed, it is only done once we know that the
+       * constructor will be used
+       */
+      void makeAccessible()
+      {
+         InjectionPlan.makeAccessible(constructor, constructor);
+      }
+   }
+
+   /**
+    * A field or a method to inject
+    */
+   static class MemberInjection
+   {
+      /**
+       * The field to inject or <code>null</code> if it is a method
+       */
+      final Field field;
+
+      /**
+       * The method to call or <code>null</code> if it is a field
+       */
+      final Method method;
+
+      /**
+       * The value to set to the field or the parameters of the method
+       */
+      final Dependency[] dependencies;
+
+      private MemberInjection(Field field)
+      {
+         this.field = field;
+         this.method = null;
+         this.dependencies =
+            new Dependency[]{new Dependency(field.getType(), field.getGenericType(), field.getAnnotations())};
+         makeAccessible(field, field);
+      }
+
+      private MemberInjection(Method method)
+      {
+         this.field = null;
+         this.method = method;
+         this.dependencies =
+            getDependencies(method.getParameterTypes(), method.getGenericParameterTypes(),
+               method.getParameterAnnotations());
+         makeAccessible(method, method);
+      }
+   }
+
+   /**
+    * The fields and the methods to inject, the fields and methods of the super classes are injected before
+    * those of the sub classes, and for a given class the fields are injected before the methods
+    */
+   static class MemberInjections
+   {
+      /**
+       * Indicates whether at least one field or method has the annotation {@link Inject}
+       */
+      final boolean injectPresent;
+
+      /** . */
+      final MemberInjection[] injections;
+
+      private MemberInjections(Class<?> clazz)
+      {
+         LinkedList<Class<?>> hierarchy = new LinkedList<Class<?>>();
+         Class<?> c = clazz;
+         do
+         {
+            hierarchy.addFirst(c);
+         }
+         while (!(c = c.getSuperclass()).equals(Object.class));
+         Map<String, Method> methodAlreadyRegistered = new HashMap<String, Method>();
+         Map<Class<?>, Collection<Method>> methodsPerClass = new HashMap<Class<?>, Collection<Method>>();
+         for (Class<?> cl : hierarchy)
+         {
+            addMethods(cl, methodAlreadyRegistered, methodsPerClass);
+         }
+         boolean injectPresent = !methodAlreadyRegistered.isEmpty();
+         List<MemberInjection> injections = new ArrayList<MemberInjection>();
+         for (Class<?> cl : hierarchy)
+         {
+            if (addFields(clazz, cl, injections))
+            {
+               injectPresent = true;
+            }
+            addMethods(clazz, methodsPerClass.get(cl), injections);
+         }
+         this.injectPresent = injectPresent;
+         this.injections = injections.toArray(new MemberInjection[injections.size()]);
+      }
+
+      private static void addMethods(Class<?> c, Map<String, Method> methodAlreadyRegistered,
+         Map<Class<?>, Collection<Method>> methodsPerClass)
+      {
+         Method[] methods = c.getDeclaredMethods();
+         for (int i = 0, length = methods.length; i < length; i++)
+         {
+            Method m = methods[i];
+            boolean addMethod = false;
+            Method methodToRemove = null;
+            if (m.isAnnotationPresent(Inject.class))
+            {
+               addMethod = true;
+               methodToRemove = methodAlreadyRegistered.put(getMethodId(m), m);
+            }
+            else if (!methodAlreadyRegistered.isEmpty())
+            {
+               String id = getMethodId(m);
+               if (methodAlreadyRegistered.containsKey(id))
+               {
+                  addMethod = true;
+                  methodToRemove = methodAlreadyRegistered.put(id, m);
+               }
+            }
+            if (addMethod)
+            {
+               Collection<Method> cMethods = methodsPerClass.get(c);
+               if (cMethods == null)
+               {
+                  cMethods = new HashSet<Method>();
+                  methodsPerClass.put(c, cMethods);
+               }
+               cMethods.add(m);
+            }
+            if (methodToRemove != null)
+            {
+               Collection<Method> cMethods = methodsPerClass.get(methodToRemove.getDeclaringClass());
+               if (cMethods != null)
+               {
+                  cMethods.remove(methodToRemove);
+               }
+            }
+         }
+      }
+
+      /**
+       * Adds the methods annotated with {@link Inject} that can be called
+       */
+      private static void addMethods(Class<?> clazz, Collection<Method> methods, List<MemberInjection> injections)
+      {
+         if (methods == null)
+         {
+            return;
+         }
+         for (Method m : methods)
+         {
+            if (m.isAnnotationPresent(Inject.class))
+            {
+               if (Modifier.isAbstract(m.getModifiers()))
+               {
+                  LOG.warn("Could not call the method " + m.getName() + " of the class " + clazz.getName()
+                     + ": The method cannot be abstract");
+                  continue;
+               }
+               else if (Modifier.isStatic(m.getModifiers()))
+               {
+                  LOG.warn("Could not call the method " + m.getName() + " of the class " + clazz.getName()
+                     + ": The method cannot be static");
+                  continue;
+               }
+               injections.add(new MemberInjection(m));
+            }
+         }
+      }
+
+      /**
+       * Adds the fields annotated with {@link Inject} that can be set
+       * @return <code>true</code> if at least one field has the annotation Inject, <code>false</code> otherwise
+       */
+      private static boolean addFields(Class<?> clazz, Class<?> c, List<MemberInjection> injections)
+      {
+         boolean isInjectPresent = false;
+         Field[] fields = c.getDeclaredFields();
+         for (int i = 0, length = fields.length; i < length; i++)
+         {
+            Field f = fields[i];
+            if (f.isAnnotationPresent(Inject.class))
+            {
+               isInjectPresent = true;
+               if (Modifier.isFinal(f.getModifiers()))
+               {
+                  LOG.warn("Could not set a value to the field " + f.getName() + " of the class " + clazz.getName()
+                     + ": The field cannot be final");
+                  continue;
+               }
+               else if (Modifier.isStatic(f.getModifiers()))
+               {
+                  LOG.warn("Could not set a value to the field " + f.getName() + " of the class " + clazz.getName()
+                     + ": The field cannot be static");
+                  continue;
+               }
+               injections.add(new MemberInjection(f));
+            }
+         }
+         return isInjectPresent;
+      }
+
+      /**
+       * Gives an id to a method to be able to identify if a given method has already been called from the parent class@return
+       */
+      private static String getMethodId(Method m)
+      {
+         StringBuilder sb = new StringBuilder();
+         int modifier = m.getModifiers();
+         if (Modifier.isPrivate(modifier))
+         {
+            sb.append(m.getDeclaringClass().getName());
+         }
+         else if (!Modifier.isPublic(modifier) && !Modifier.isProtected(modifier))
+         {
+            sb.append(m.getDeclaringClass().getPackage().getName());
+         }
+         sb.append(m.getName());
+         sb.append('(');
+         Class<?>[] paramTypes = m.getParameterTypes();
+         for (int i = 0, l = paramTypes.length; i < l; i++)
+         {
+            sb.append(paramTypes[i].getName());
+            if (i < i - 1)
+               sb.append(',');
+         }
+         sb.append(')');
+         return sb.toString();
+      }
+   }
+}
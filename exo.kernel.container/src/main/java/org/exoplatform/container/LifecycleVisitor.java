@@ -18,6 +18,7 @@
  */
 package org.exoplatform.container;
 
+import org.exoplatform.commons.utils.PrivilegedSystemHelper;
 import org.exoplatform.container.spi.Container;
 import org.exoplatform.container.spi.ContainerException;
 import org.exoplatform.container.spi.ContainerVisitor;
@@ -30,8 +31,22 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:nicolas.filotto@exoplatform.com">Nicolas Filotto</a>
@@ -42,6 +57,31 @@ public class LifecycleVisitor implements ContainerVisitor
 
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.LifecycleVisitor");
 
+   /**
+    * The name of the system property allowing to start, stop and dispose the components in parallel
+    * according to their dependencies. Only the components injected into a component thanks to its
+    * constructor or to {@link javax.inject.Inject} are considered as its dependencies, so a component that
+    * gets another component from the container in its <code>start</code> method, for example thanks to
+    * <code>getComponentInstanceOfType</code>, is no longer guaranteed to be started after it.
+    */
+   public static final String PARALLEL_PROPERTY = "org.exoplatform.container.lifecycle.parallel";
+
+   /**
+    * The name of the system property allowing to define the maximum amount of threads used to start,
+    * stop and dispose the components in parallel, by default it is the amount of available processors
+    */
+   public static final String PARALLEL_THREADS_PROPERTY = "org.exoplatform.container.lifecycle.parallel.threads";
+
+   /**
+    * Indicates whether the components are started, stopped and disposed in parallel
+    */
+   static final boolean PARALLEL = Boolean.valueOf(PrivilegedSystemHelper.getProperty(PARALLEL_PROPERTY));
+
+   /**
+    * The maximum amount of threads used to start, stop and dispose the components in parallel
+    */
+   private static final int PARALLEL_THREADS = getParallelThreads();
+
    private static final Method START;
 
    private static final Method STOP;
@@ -71,76 +111,302 @@ public class LifecycleVisitor implements ContainerVisitor
 
    private final boolean ignoreError;
 
+   /**
+    * The maximum amount of threads used to call the method in parallel, 0 if it is called sequentially
+    */
+   private final int parallelThreads;
+
    public LifecycleVisitor(Method method, Class<?> ofType, boolean visitInInstantiationOrder, boolean ignoreError)
+   {
+      this(method, ofType, visitInInstantiationOrder, ignoreError, PARALLEL ? PARALLEL_THREADS : 0);
+   }
+
+   LifecycleVisitor(Method method, Class<?> ofType, boolean visitInInstantiationOrder, boolean ignoreError,
+      int parallelThreads)
    {
       this.method = method;
       this.type = ofType;
       this.visitInInstantiationOrder = visitInInstantiationOrder;
       this.componentInstances = new ArrayList<Object>();
       this.ignoreError = ignoreError;
+      this.parallelThreads = parallelThreads;
    }
 
-   private Object traverse(Container container)
+   Object traverse(Container container)
    {
       componentInstances.clear();
       try
       {
          visitContainer(container);
+         if (parallelThreads > 0 && container instanceof ConcurrentContainer && componentInstances.size() > 1)
+         {
+            traverseInParallel((ConcurrentContainer)container);
+            return Void.TYPE;
+         }
          if (!visitInInstantiationOrder)
          {
             Collections.reverse(componentInstances);
          }
          for (Iterator<?> iterator = componentInstances.iterator(); iterator.hasNext();)
          {
-            Object o = iterator.next();
+            invoke(iterator.next());
+         }
+      }
+      finally
+      {
+         componentInstances.clear();
+      }
+      return Void.TYPE;
+   }
+
+   /**
+    * Calls the method on the given component
+    * @throws ContainerException if the call failed and the errors cannot be ignored
+    */
+   private void invoke(Object o)
+   {
+      try
+      {
+         method.invoke(o, (Object[])null);
+      }
+      catch (IllegalArgumentException e)
+      {
+         if (ignoreError)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Can't call " + method.getName() + " on " + o, e);
+            }
+            return;
+         }
+         throw new ContainerException("Can't call " + method.getName() + " on " + o, e);
+      }
+      catch (IllegalAccessException e)
+      {
+         if (ignoreError)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Can't call " + method.getName() + " on " + o, e);
+            }
+            return;
+         }
+         throw new ContainerException("Can't call " + method.getName() + " on " + o, e);
+      }
+      catch (InvocationTargetException e)
+      {
+         if (ignoreError)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Failed when calling " + method.getName() + " on " + o, e.getTargetException());
+            }
+            return;
+         }
+         throw new ContainerException("Failed when calling " + method.getName() + " on " + o,
+            e.getTargetException());
+      }
+   }
+
+   /**
+    * Calls the method on the components in parallel. A component is processed once all the components it
+    * depends on have been processed in case of a visit in instantiation order, and once all the components
+    * that depend on it have been processed otherwise.
+    */
+   private void traverseInParallel(ConcurrentContainer container)
+   {
+      Map<Object, Set<Object>> dependencies = container.getDependencies(componentInstances);
+      // The components that must be processed before a given component
+      Map<Object, Set<Object>> prerequisites;
+      if (visitInInstantiationOrder)
+      {
+         prerequisites = dependencies;
+      }
+      else
+      {
+         prerequisites = new IdentityHashMap<Object, Set<Object>>();
+         for (Object o : componentInstances)
+         {
+            prerequisites.put(o, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+         }
+         for (Map.Entry<Object, Set<Object>> entry : dependencies.entrySet())
+         {
+            for (Object dep : entry.getValue())
+            {
+               prerequisites.get(dep).add(entry.getKey());
+            }
+         }
+         Collections.reverse(componentInstances);
+      }
+      // The components that can be processed once a given component has been processed
+      Map<Object, List<Object>> successors = new IdentityHashMap<Object, List<Object>>();
+      Map<Object, Integer> remaining = new IdentityHashMap<Object, Integer>();
+      for (Object o : componentInstances)
+      {
+         Set<Object> deps = prerequisites.get(o);
+         remaining.put(o, deps.size());
+         for (Object dep : deps)
+         {
+            List<Object> list = successors.get(dep);
+            if (list == null)
+            {
+               list = new ArrayList<Object>();
+               successors.put(dep, list);
+            }
+            list.add(o);
+         }
+      }
+
+      final ExoContainer currentContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+      final Map<Object, long[]> timings = Collections.synchronizedMap(new IdentityHashMap<Object, long[]>());
+      int threads = Math.min(parallelThreads, componentInstances.size());
+      ExecutorService executor =
+         new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+            new LifecycleThreadFactory(method.getName()));
+      CompletionService<Object> completion = new ExecutorCompletionService<Object>(executor);
+      long start = System.nanoTime();
+      Set<Object> done = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+      RuntimeException failure = null;
+      int running = 0;
+      try
+      {
+         for (Object o : componentInstances)
+         {
+            if (remaining.get(o) == 0)
+            {
+               completion.submit(new LifecycleTask(o, currentContainer, currentClassLoader, timings));
+               running++;
+            }
+         }
+         while (running > 0)
+         {
+            Future<Object> future = completion.take();
+            running--;
+            Object o;
             try
             {
-               method.invoke(o, (Object[])null);
+               o = future.get();
             }
-            catch (IllegalArgumentException e)
+            catch (ExecutionException e)
             {
-               if (ignoreError)
+               if (failure == null)
                {
-                  if (LOG.isDebugEnabled())
-                  {
-                     LOG.debug("Can't call " + method.getName() + " on " + o, e);
-                  }
-                  continue;
+                  Throwable cause = e.getCause();
+                  failure =
+                     cause instanceof RuntimeException ? (RuntimeException)cause : new ContainerException(
+                        "Failed when calling " + method.getName(), cause);
                }
-               throw new ContainerException("Can't call " + method.getName() + " on " + o, e);
+               continue;
             }
-            catch (IllegalAccessException e)
+            done.add(o);
+            if (failure != null)
             {
-               if (ignoreError)
-               {
-                  if (LOG.isDebugEnabled())
-                  {
-                     LOG.debug("Can't call " + method.getName() + " on " + o, e);
-                  }
-                  continue;
-               }
-               throw new ContainerException("Can't call " + method.getName() + " on " + o, e);
+               // Let the running tasks end but don't launch new ones
+               continue;
+            }
+            List<Object> list = successors.get(o);
+            if (list == null)
+            {
+               continue;
             }
-            catch (InvocationTargetException e)
+            for (Object successor : list)
             {
-               if (ignoreError)
+               int count = remaining.get(successor) - 1;
+               remaining.put(successor, count);
+               if (count == 0)
                {
-                  if (LOG.isDebugEnabled())
-                  {
-                     LOG.debug("Failed when calling " + method.getName() + " on " + o, e.getTargetException());
-                  }
-                  continue;
+                  completion.submit(new LifecycleTask(successor, currentContainer, currentClassLoader, timings));
+                  running++;
                }
-               throw new ContainerException("Failed when calling " + method.getName() + " on " + o,
-                  e.getTargetException());
             }
          }
       }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         failure = new ContainerException("Interrupted while calling " + method.getName() + " on the components");
+      }
       finally
       {
-         componentInstances.clear();
+         executor.shutdown();
       }
-      return Void.TYPE;
+      if (failure != null)
+      {
+         throw failure;
+      }
+      if (done.size() < componentInstances.size())
+      {
+         // Could only happen in case of cyclic dependencies
+         LOG.warn("Cyclic dependencies have been detected, " + method.getName()
+            + " will be called sequentially on the remaining components");
+         for (Object o : componentInstances)
+         {
+            if (!done.contains(o))
+            {
+               invoke(o);
+            }
+         }
+      }
+      report(System.nanoTime() - start, threads, timings, prerequisites);
+   }
+
+   /**
+    * Logs the duration of the call of the method on each component and the critical path, which is the chain
+    * of components that ended the last
+    */
+   private void report(long duration, int threads, Map<Object, long[]> timings, Map<Object, Set<Object>> prerequisites)
+   {
+      if (LOG.isDebugEnabled())
+      {
+         for (Map.Entry<Object, long[]> entry : timings.entrySet())
+         {
+            long[] timing = entry.getValue();
+            LOG.debug(method.getName() + " of " + entry.getKey().getClass().getName() + " took "
+               + TimeUnit.NANOSECONDS.toMillis(timing[1] - timing[0]) + " ms");
+         }
+      }
+      // Find the component that ended the last then go back through the prerequisites that ended the last
+      List<Object> path = new ArrayList<Object>();
+      Iterable<Object> candidates = timings.keySet();
+      while (true)
+      {
+         long end = Long.MIN_VALUE;
+         Object next = null;
+         for (Object o : candidates)
+         {
+            long[] timing = timings.get(o);
+            if (timing != null && timing[1] > end)
+            {
+               end = timing[1];
+               next = o;
+            }
+         }
+         if (next == null || path.contains(next))
+         {
+            break;
+         }
+         path.add(0, next);
+         Set<Object> deps = prerequisites.get(next);
+         if (deps == null || deps.isEmpty())
+         {
+            break;
+         }
+         candidates = deps;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (Object o : path)
+      {
+         long[] timing = timings.get(o);
+         if (sb.length() > 0)
+         {
+            sb.append(" -> ");
+         }
+         sb.append(o.getClass().getName()).append(" (").append(TimeUnit.NANOSECONDS.toMillis(timing[1] - timing[0]))
+            .append(" ms)");
+      }
+      LOG.info(method.getName() + " of " + componentInstances.size() + " components took "
+         + TimeUnit.NANOSECONDS.toMillis(duration) + " ms using " + threads + " threads, critical path: " + sb);
    }
 
    public void visitContainer(Container container)
@@ -175,4 +441,99 @@ public class LifecycleVisitor implements ContainerVisitor
       new LifecycleVisitor(DISPOSE, Disposable.class, false, true).traverse(container);
    }
 
+   private static int getParallelThreads()
+   {
+      String value = PrivilegedSystemHelper.getProperty(PARALLEL_THREADS_PROPERTY);
+      if (value != null)
+      {
+         try
+         {
+            int threads = Integer.parseInt(value.trim());
+            if (threads > 0)
+            {
+               return threads;
+            }
+         }
+         catch (NumberFormatException e)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Invalid value for " + PARALLEL_THREADS_PROPERTY + ": " + value, e);
+            }
+         }
+      }
+      return Runtime.getRuntime().availableProcessors();
+   }
+
+   /**
+    * Calls the method on a given component within the context of the thread that launched the traversal
+    */
+   private class LifecycleTask implements Callable<Object>
+   {
+      /** . */
+      private final Object component;
+
+      /** . */
+      private final ExoContainer container;
+
+      /** . */
+      private final ClassLoader classLoader;
+
+      /** . */
+      private final Map<Object, long[]> timings;
+
+      private LifecycleTask(Object component, ExoContainer container, ClassLoader classLoader,
+         Map<Object, long[]> timings)
+      {
+         this.component = component;
+         this.container = container;
+         this.classLoader = classLoader;
+         this.timings = timings;
+      }
+
+      public Object call() throws Exception
+      {
+         Thread thread = Thread.currentThread();
+         ClassLoader oldClassLoader = thread.getContextClassLoader();
+         ExoContainer oldContainer = ExoContainerContext.getCurrentContainerIfPresent();
+         thread.setContextClassLoader(classLoader);
+         ExoContainerContext.setCurrentContainer(container);
+         long start = System.nanoTime();
+         try
+         {
+            invoke(component);
+         }
+         finally
+         {
+            timings.put(component, new long[]{start, System.nanoTime()});
+            ExoContainerContext.setCurrentContainer(oldContainer);
+            thread.setContextClassLoader(oldClassLoader);
+         }
+         return component;
+      }
+   }
+
+   /**
+    * The factory of the daemon threads used to call the method on the components in parallel
+    */
+   private static class LifecycleThreadFactory implements ThreadFactory
+   {
+      /** . */
+      private final AtomicInteger count = new AtomicInteger();
+
+      /** . */
+      private final String prefix;
+
+      private LifecycleThreadFactory(String methodName)
+      {
+         this.prefix = "LifecycleVisitor-" + methodName + "-";
+      }
+
+      public Thread newThread(Runnable r)
+      {
+         Thread t = new Thread(r, prefix + count.incrementAndGet());
+         t.setDaemon(true);
+         return t;
+      }
+   }
 }
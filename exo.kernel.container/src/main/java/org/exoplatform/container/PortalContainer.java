@@ -655,6 +655,21 @@ public class PortalContainer extends ExoContainer implements SessionManagerConta
       return getSetting(getName(), settingName);
    }
 
+   /**
+    * Returns all the settings corresponding to the given portal container name
+    * @param portalContainerName the name of the portal container for which we want the settings
+    * @return returns the settings corresponding to the given portal container name, an empty map
+    * if there is no setting
+    */
+   public static Map<String, Object> getSettings(String portalContainerName)
+   {
+      if (CONFIG == null)
+      {
+         return Collections.emptyMap();
+      }
+      return CONFIG.getSettings(portalContainerName);
+   }
+
    /**
     * Indicates if the given servlet context is a dependency of the given portal container
     * @param container the portal container
@@ -32,6 +32,7 @@ import org.exoplatform.container.security.ContainerPermissions;
 import org.exoplatform.container.spi.ContainerException;
 import org.exoplatform.container.util.ContainerUtil;
 import org.exoplatform.container.xml.Configuration;
+import org.exoplatform.management.ManagementContext;
 import org.exoplatform.management.annotations.Managed;
 import org.exoplatform.management.annotations.ManagedDescription;
 import org.exoplatform.management.jmx.annotations.NameTemplate;
@@ -55,9 +56,12 @@ import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Queue;
@@ -66,8 +70,14 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.ServletContext;
@@ -106,6 +116,18 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
    private PortalContainerConfig config_;
 
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.RootContainer");
+
+   /**
+    * The name of the system property allowing to create in parallel the portal containers that
+    * share no dependency
+    */
+   public static final String PARALLEL_PORTAL_CONTAINER_CREATION_PROPERTY = "org.exoplatform.container.portal.parallel";
+
+   /**
+    * Indicates whether the portal containers that share no dependency must be created in parallel
+    */
+   private static final boolean PARALLEL_PORTAL_CONTAINER_CREATION = Boolean.valueOf(PrivilegedSystemHelper
+      .getProperty(PARALLEL_PORTAL_CONTAINER_CREATION_PROPERTY));
    
    private static final AtomicBoolean booting = new AtomicBoolean();
 
@@ -333,27 +355,18 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
     */
    public synchronized void createPortalContainers()
    {
-      // Keep the old ClassLoader
-      final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
-      boolean hasChanged = false;
-      try
+      List<List<WebAppInitContext>> groups = null;
+      if (PARALLEL_PORTAL_CONTAINER_CREATION && portalContexts.size() > 1)
       {
-         for (Iterator<WebAppInitContext> it = portalContexts.iterator();it.hasNext();)
-         {
-            WebAppInitContext context = it.next();
-            // Set the context classloader of the related web application
-            Thread.currentThread().setContextClassLoader(context.getWebappClassLoader());
-            hasChanged = true;
-            createPortalContainer(context.getServletContext());
-         }
+         groups = getIndependentPortalContexts(portalContexts);
       }
-      finally
+      if (groups == null || groups.size() < 2)
       {
-         if (hasChanged)
-         {
-            // Re-set the old classloader
-            Thread.currentThread().setContextClassLoader(currentClassLoader);
-         }
+         createPortalContainers(portalContexts);
+      }
+      else
+      {
+         createPortalContainersInParallel(groups);
       }
       if (PropertyManager.isDevelopping())
       {
@@ -382,6 +395,216 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
       }
    }
    
+   /**
+    * Creates sequentially the portal containers corresponding to the given contexts
+    */
+   private void createPortalContainers(Collection<WebAppInitContext> contexts)
+   {
+      // Keep the old ClassLoader
+      final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+      boolean hasChanged = false;
+      try
+      {
+         for (Iterator<WebAppInitContext> it = contexts.iterator();it.hasNext();)
+         {
+            WebAppInitContext context = it.next();
+            // Set the context classloader of the related web application
+            Thread.currentThread().setContextClassLoader(context.getWebappClassLoader());
+            hasChanged = true;
+            doCreatePortalContainer(context.getServletContext());
+         }
+      }
+      finally
+      {
+         if (hasChanged)
+         {
+            // Re-set the old classloader
+            Thread.currentThread().setContextClassLoader(currentClassLoader);
+         }
+      }
+   }
+
+   /**
+    * Creates the given groups of portal containers in parallel, the portal containers of a given
+    * group are created sequentially in the same thread. If the creation of a group ended with an
+    * {@link Error}, it is thrown once all the groups have been processed.
+    */
+   void createPortalContainersInParallel(List<List<WebAppInitContext>> groups)
+   {
+      final ExoContainer currentContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      int threads = Math.min(groups.size(), Runtime.getRuntime().availableProcessors());
+      int total = 0;
+      for (List<WebAppInitContext> group : groups)
+      {
+         total += group.size();
+      }
+      LOG.info("Creating " + total + " portal containers in " + groups.size()
+         + " independent groups using " + threads + " threads");
+      ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "RootContainer-PortalContainerCreator-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      Error error = null;
+      try
+      {
+         List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+         for (final List<WebAppInitContext> group : groups)
+         {
+            futures.add(executor.submit(new Runnable()
+            {
+               public void run()
+               {
+                  ExoContainerContext.setCurrentContainer(currentContainer);
+                  try
+                  {
+                     createPortalContainers(group);
+                  }
+                  finally
+                  {
+                     ExoContainerContext.setCurrentContainer(null);
+                  }
+               }
+            }));
+         }
+         for (Future<?> future : futures)
+         {
+            try
+            {
+               future.get();
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+               if (!(cause instanceof Error))
+               {
+                  LOG.error("Cannot create a group of portal containers", cause);
+               }
+               else if (error == null)
+               {
+                  error = (Error)cause;
+               }
+            }
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         LOG.error("Interrupted while creating the portal containers", e);
+      }
+      finally
+      {
+         executor.shutdown();
+      }
+      if (error != null)
+      {
+         throw error;
+      }
+   }
+
+   /**
+    * Splits the given contexts into groups such that the portal containers of a group share no
+    * dependency with the portal containers of the other groups. Two portal containers are considered
+    * as related if one of them is a dependency of the other one, if they have a dependency in common
+    * or if none of them has declared its dependencies. The order of the contexts is kept within a group.
+    */
+   private List<List<WebAppInitContext>> getIndependentPortalContexts(Collection<WebAppInitContext> contexts)
+   {
+      PortalContainerConfig config = getPortalContainerConfig();
+      Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+      for (WebAppInitContext context : contexts)
+      {
+         String name = context.getServletContextName();
+         dependencies.put(name, config.getDependencies(name));
+      }
+      return getIndependentPortalContexts(contexts, dependencies);
+   }
+
+   /**
+    * Splits the given contexts into groups of related portal containers according to the given
+    * dependencies of each portal container
+    * @param contexts the contexts of the portal containers to split
+    * @param portalDependencies the declared dependencies of each portal container, by portal container name
+    */
+   static List<List<WebAppInitContext>> getIndependentPortalContexts(Collection<WebAppInitContext> contexts,
+      Map<String, List<String>> portalDependencies)
+   {
+      List<WebAppInitContext> list = new ArrayList<WebAppInitContext>(contexts);
+      int size = list.size();
+      List<Set<String>> dependencies = new ArrayList<Set<String>>(size);
+      for (WebAppInitContext context : list)
+      {
+         List<String> deps = portalDependencies.get(context.getServletContextName());
+         dependencies.add(deps == null || deps.isEmpty() ? null : new HashSet<String>(deps));
+      }
+      // Union-find of the related portal containers
+      int[] roots = new int[size];
+      for (int i = 0; i < size; i++)
+      {
+         roots[i] = i;
+      }
+      for (int i = 0; i < size; i++)
+      {
+         for (int j = i + 1; j < size; j++)
+         {
+            if (isRelated(list.get(i).getServletContextName(), dependencies.get(i), list.get(j)
+               .getServletContextName(), dependencies.get(j)))
+            {
+               roots[findRoot(roots, j)] = findRoot(roots, i);
+            }
+         }
+      }
+      Map<Integer, List<WebAppInitContext>> groups = new LinkedHashMap<Integer, List<WebAppInitContext>>();
+      for (int i = 0; i < size; i++)
+      {
+         Integer root = findRoot(roots, i);
+         List<WebAppInitContext> group = groups.get(root);
+         if (group == null)
+         {
+            group = new ArrayList<WebAppInitContext>();
+            groups.put(root, group);
+         }
+         group.add(list.get(i));
+      }
+      return new ArrayList<List<WebAppInitContext>>(groups.values());
+   }
+
+   private static boolean isRelated(String name1, Set<String> deps1, String name2, Set<String> deps2)
+   {
+      if ((deps1 != null && deps1.contains(name2)) || (deps2 != null && deps2.contains(name1)))
+      {
+         return true;
+      }
+      else if (deps1 == null || deps2 == null)
+      {
+         // The portal containers without declared dependencies are considered as related
+         return deps1 == deps2;
+      }
+      for (String dep : deps1)
+      {
+         if (deps2.contains(dep))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static int findRoot(int[] roots, int i)
+   {
+      while (roots[i] != i)
+      {
+         i = roots[i] = roots[roots[i]];
+      }
+      return i;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -600,6 +823,11 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
       if (security != null)
          security.checkPermission(ContainerPermissions.MANAGE_CONTAINER_PERMISSION);     
       
+      doCreatePortalContainer(context);
+   }
+
+   void doCreatePortalContainer(ServletContext context)
+   {
       // Keep the old ClassLoader
       final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
       boolean hasChanged = false;
@@ -681,8 +909,13 @@ public class RootContainer extends ExoContainer implements WebAppListener, Authe
          registerComponentInstance(portalContainerName, pcontainer);
          pcontainer.start(true);
 
-         // Register the portal as an mbean
-         getManagementContext().register(pcontainer);
+         // Register the portal as an mbean, the portal containers can be created in parallel
+         // and the management context is not thread safe
+         ManagementContext managementContext = getManagementContext();
+         synchronized (managementContext)
+         {
+            managementContext.register(pcontainer);
+         }
 
          //
          executeInitTasks(pcontainer, PortalContainerPostInitTask.TYPE);
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.component;
+
+import org.exoplatform.container.ExoContainer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} that executes the tasks within the context of the thread that submitted them,
+ * the context is captured at submission time thanks to a {@link ContextSnapshot}. It can wrap any kind
+ * of {@link Executor} such as a thread pool. If several tasks must be executed within the same context,
+ * it is cheaper to capture the context once and to use {@link #execute(ContextSnapshot, Runnable)}.
+ * 
+ * @version $Id$
+ *
+ */
+public class ContextPropagatingExecutor implements Executor
+{
+
+   /** . */
+   private final ExoContainer container;
+
+   /** . */
+   private final Executor executor;
+
+   /**
+    * Indicates whether the request life cycle of the container must be demarcated around each task
+    */
+   private final boolean requestLifeCycle;
+
+   /**
+    * @param container the container to set as current container when executing the tasks
+    * @param executor the executor to which the tasks are delegated
+    */
+   public ContextPropagatingExecutor(ExoContainer container, Executor executor)
+   {
+      this(container, executor, true);
+   }
+
+   /**
+    * @param container the container to set as current container when executing the tasks
+    * @param executor the executor to which the tasks are delegated
+    * @param requestLifeCycle indicates whether the request life cycle of the container must be
+    * demarcated around each task
+    */
+   public ContextPropagatingExecutor(ExoContainer container, Executor executor, boolean requestLifeCycle)
+   {
+      if (container == null)
+      {
+         throw new IllegalArgumentException("The container cannot be null");
+      }
+      if (executor == null)
+      {
+         throw new IllegalArgumentException("The executor cannot be null");
+      }
+      this.container = container;
+      this.executor = executor;
+      this.requestLifeCycle = requestLifeCycle;
+   }
+
+   /**
+    * Captures the context of the current thread
+    */
+   public ContextSnapshot capture()
+   {
+      return ContextSnapshot.capture(container, requestLifeCycle);
+   }
+
+   /**
+    * Executes the given task within the context of the current thread
+    */
+   public void execute(Runnable command)
+   {
+      executor.execute(capture().wrap(command));
+   }
+
+   /**
+    * Executes the given task within the given context
+    */
+   public void execute(ContextSnapshot snapshot, Runnable command)
+   {
+      executor.execute(snapshot.wrap(command));
+   }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.component;
+
+import org.exoplatform.commons.utils.SecurityHelper;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.security.ContainerPermissions;
+
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>A snapshot of the context of the current thread allowing to execute tasks within the same context
+ * from any other thread. The snapshot contains the container to set as current container, the values of
+ * the Thread Local variables of all the registered {@link ThreadContextHolder} of the container and its
+ * ancestors and optionally the components whose request life cycle must be demarcated around each task.</p>
+ * <p>Unlike the {@link ThreadContextHandler}, the components are retrieved from the container only once
+ * at capture time and the snapshot is immutable, so it can be used to execute as many tasks as needed
+ * concurrently without any further lookup. The permissions are also checked only once at capture time,
+ * which is why the snapshot should not be shared with untrusted code.</p>
+ * 
+ * @version $Id$
+ *
+ */
+public class ContextSnapshot
+{
+
+   /** . */
+   private static final Object[] EMPTY_VALUES = new Object[0];
+
+   /** . */
+   private final ExoContainer container;
+
+   /**
+    * The action used to set the container as current container, it is created once
+    * to avoid allocating it for each task
+    */
+   private final PrivilegedAction<Void> setContainer;
+
+   /** . */
+   private final ThreadLocal<Object>[] threadLocals;
+
+   /**
+    * The values of the Thread Local variables at capture time
+    */
+   private final Object[] values;
+
+   /**
+    * The components whose request life cycle must be demarcated or <code>null</code>
+    * if the request life cycle must not be demarcated
+    */
+   private final List<ComponentRequestLifecycle> components;
+
+   private ContextSnapshot(final ExoContainer container, ThreadLocal<Object>[] threadLocals, Object[] values,
+      List<ComponentRequestLifecycle> components)
+   {
+      this.container = container;
+      this.threadLocals = threadLocals;
+      this.values = values;
+      this.components = components;
+      this.setContainer = new PrivilegedAction<Void>()
+      {
+         public Void run()
+         {
+            ExoContainerContext.setCurrentContainer(container);
+            return null;
+         }
+      };
+   }
+
+   /**
+    * Captures the context of the current thread, the request life cycle of the container
+    * will be demarcated around each task
+    * @param container the container to set as current container when executing the tasks
+    * @return the snapshot of the context of the current thread
+    * @throws SecurityException In case the security manager is installed and the calling stack
+    * doesn't have the permission to manage the containers and the Thread Local variables
+    */
+   public static ContextSnapshot capture(ExoContainer container)
+   {
+      return capture(container, true);
+   }
+
+   /**
+    * Captures the context of the current thread
+    * @param container the container to set as current container when executing the tasks
+    * @param requestLifeCycle indicates whether the request life cycle of the container must be
+    * demarcated around each task
+    * @return the snapshot of the context of the current thread
+    * @throws SecurityException In case the security manager is installed and the calling stack
+    * doesn't have the permission to manage the containers and the Thread Local variables
+    */
+   @SuppressWarnings("unchecked")
+   public static ContextSnapshot capture(ExoContainer container, boolean requestLifeCycle)
+   {
+      if (container == null)
+      {
+         throw new IllegalArgumentException("The container cannot be null");
+      }
+      SecurityManager security = System.getSecurityManager();
+      if (security != null)
+      {
+         security.checkPermission(ContainerPermissions.MANAGE_CONTAINER_PERMISSION);
+         security.checkPermission(ThreadContextHolder.MANAGE_THREAD_LOCAL);
+      }
+      final List<ThreadContextHolder> holders =
+         new ArrayList<ThreadContextHolder>(container.getComponentInstancesOfType(ThreadContextHolder.class));
+      for (ExoContainer current = container.getParent(); current != null; current = current.getParent())
+      {
+         holders.addAll(current.getComponentInstancesOfType(ThreadContextHolder.class));
+      }
+      final List<ThreadLocal<Object>> threadLocals = new ArrayList<ThreadLocal<Object>>();
+      SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+      {
+         public Void run()
+         {
+            for (int i = 0, length = holders.size(); i < length; i++)
+            {
+               ThreadContext tc = holders.get(i).getThreadContext();
+               if (tc == null || tc.getThreadLocals() == null)
+               {
+                  // This ThreadContextHolder has nothing valuable to share so we skip it
+                  continue;
+               }
+               ThreadLocal<Object>[] tls = tc.getThreadLocals();
+               for (int j = 0; j < tls.length; j++)
+               {
+                  if (tls[j] != null)
+                  {
+                     threadLocals.add(tls[j]);
+                  }
+               }
+            }
+            return null;
+         }
+      });
+      int size = threadLocals.size();
+      Object[] values = size == 0 ? EMPTY_VALUES : new Object[size];
+      for (int i = 0; i < size; i++)
+      {
+         values[i] = threadLocals.get(i).get();
+      }
+      return new ContextSnapshot(container, threadLocals.toArray(new ThreadLocal[size]), values,
+         requestLifeCycle ? RequestLifeCycle.getComponents(container, false) : null);
+   }
+
+   /**
+    * @return the container to set as current container when executing the tasks
+    */
+   public ExoContainer getContainer()
+   {
+      return container;
+   }
+
+   /**
+    * Executes the given task within the captured context, once the task is done
+    * the Thread Local variables and the current container are restored
+    * @param task the task to execute
+    */
+   public void execute(Runnable task)
+   {
+      Object[] oldValues = attach();
+      try
+      {
+         task.run();
+      }
+      finally
+      {
+         detach(oldValues);
+      }
+   }
+
+   /**
+    * Calls the given task within the captured context, once the task is done
+    * the Thread Local variables and the current container are restored
+    * @param task the task to call
+    * @return the result of the task
+    * @throws Exception if the task failed
+    */
+   public <V> V call(Callable<V> task) throws Exception
+   {
+      Object[] oldValues = attach();
+      try
+      {
+         return task.call();
+      }
+      finally
+      {
+         detach(oldValues);
+      }
+   }
+
+   /**
+    * Wraps the given task such that it will be executed within the captured context
+    * @param task the task to wrap
+    * @return the wrapped task
+    */
+   public Runnable wrap(final Runnable task)
+   {
+      return new Runnable()
+      {
+         public void run()
+         {
+            execute(task);
+         }
+      };
+   }
+
+   /**
+    * Wraps the given task such that it will be called within the captured context
+    * @param task the task to wrap
+    * @return the wrapped task
+    */
+   public <V> Callable<V> wrap(final Callable<V> task)
+   {
+      return new Callable<V>()
+      {
+         public V call() throws Exception
+         {
+            return ContextSnapshot.this.call(task);
+         }
+      };
+   }
+
+   /**
+    * Sets the current container, begins the request life cycle if needed and pushes
+    * the captured values of the Thread Local variables
+    * @return the previous values of the Thread Local variables followed by the previous
+    * current container
+    */
+   private Object[] attach()
+   {
+      ExoContainer previous = ExoContainerContext.getCurrentContainerIfPresent();
+      if (System.getSecurityManager() == null)
+      {
+         ExoContainerContext.setCurrentContainer(container);
+      }
+      else
+      {
+         SecurityHelper.doPrivilegedAction(setContainer);
+      }
+      boolean success = false;
+      boolean begun = false;
+      try
+      {
+         if (components != null)
+         {
+            begun = true;
+            RequestLifeCycle.begin(container, components);
+         }
+         // The last slot is used to store the previous current container
+         Object[] oldValues = new Object[values.length + 1];
+         oldValues[values.length] = previous;
+         for (int i = 0; i < values.length; i++)
+         {
+            ThreadLocal<Object> tl = threadLocals[i];
+            oldValues[i] = tl.get();
+            tl.set(values[i]);
+         }
+         success = true;
+         return oldValues;
+      }
+      finally
+      {
+         if (!success)
+         {
+            try
+            {
+               if (begun)
+               {
+                  RequestLifeCycle.end();
+               }
+            }
+            finally
+            {
+               restoreContainer(previous);
+            }
+         }
+      }
+   }
+
+   /**
+    * Restores the previous values of the Thread Local variables, ends the request
+    * life cycle if needed and restores the previous current container
+    */
+   private void detach(Object[] oldValues)
+   {
+      try
+      {
+         for (int i = 0; i < values.length; i++)
+         {
+            threadLocals[i].set(oldValues[i]);
+         }
+         if (components != null)
+         {
+            RequestLifeCycle.end();
+         }
+      }
+      finally
+      {
+         restoreContainer((ExoContainer)oldValues[values.length]);
+      }
+   }
+
+   /**
+    * Sets back the container that was the current container before executing the task, the
+    * task may have been executed by the thread that submitted it which must keep its context
+    */
+   private static void restoreContainer(final ExoContainer previous)
+   {
+      if (System.getSecurityManager() == null)
+      {
+         ExoContainerContext.setCurrentContainer(previous);
+      }
+      else
+      {
+         SecurityHelper.doPrivilegedAction(new PrivilegedAction<Void>()
+         {
+            public Void run()
+            {
+               ExoContainerContext.setCurrentContainer(previous);
+               return null;
+            }
+         });
+      }
+   }
+}
@@ -107,6 +107,36 @@ public class RequestLifeCycle
       lf.begin(container, local);
    }
 
+   /**
+    * Starts the life cycle of the provided components of the provided container and add it to the
+    * life cycle stack. Only the components that have not been previously enrolled in a life cycle
+    * are begun. It is used to avoid retrieving the components from the container each time.
+    *
+    * @param container the container to use
+    * @param components the components retrieved thanks to {@link #getComponents(ExoContainer, boolean)}
+    */
+   static void begin(ExoContainer container, List<ComponentRequestLifecycle> components)
+   {
+      RequestLifeCycleStack lf = current.get();
+      if (lf == null)
+      {
+         lf = new RequestLifeCycleStack();
+         current.set(lf);
+      }
+      lf.beginAll(container, components);
+   }
+
+   /**
+    * Gives the components of the provided container whose life cycle must be managed
+    *
+    * @param container the container to use
+    * @param local indicates whether the components of the ancestors must be ignored
+    */
+   static List<ComponentRequestLifecycle> getComponents(ExoContainer container, boolean local)
+   {
+      return RequestLifeCycleStack.getComponents(container, local);
+   }
+
    /**
     * Starts the life cycle of the provided life cycle and add it to the life cycle stack.
     * If the life cycle has already been triggered before then no operation will be really
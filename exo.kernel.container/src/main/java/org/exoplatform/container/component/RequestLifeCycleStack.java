@@ -61,25 +61,31 @@ class RequestLifeCycleStack
 
    void begin(ExoContainer container, boolean local)
    {
-      // Need to make a copy as modifying the list is cached by the container
-      List<ComponentRequestLifecycle> components =
-               new ArrayList<ComponentRequestLifecycle>((List<ComponentRequestLifecycle>) container
-                        .getComponentInstancesOfType(ComponentRequestLifecycle.class));
-
-      //
-      if (!local)
-      {
-         for (ExoContainer current = container.getParent(); current != null; current = current.getParent())
-         {
-            components.addAll((List<ComponentRequestLifecycle>) current
-                     .getComponentInstancesOfType(ComponentRequestLifecycle.class));
-         }
-
-      }
+      List<ComponentRequestLifecycle> components = getComponents(container, local);
 
       // Remove components that have already started their life cycle
       components.removeAll(allComponents);
 
+      begin(container, components);
+   }
+
+   /**
+    * Starts the life cycle of the given components which have been previously retrieved thanks to
+    * {@link #getComponents(ExoContainer, boolean)}, the list is never modified.
+    */
+   void beginAll(ExoContainer container, List<ComponentRequestLifecycle> components)
+   {
+      if (!allComponents.isEmpty())
+      {
+         components = new ArrayList<ComponentRequestLifecycle>(components);
+         // Remove components that have already started their life cycle
+         components.removeAll(allComponents);
+      }
+      begin(container, components);
+   }
+
+   private void begin(ExoContainer container, List<ComponentRequestLifecycle> components)
+   {
       // Contribute to the all component set
       allComponents.addAll(components);
 
@@ -93,6 +99,31 @@ class RequestLifeCycleStack
       lifeCycle.doBegin();
    }
 
+   /**
+    * Gives all the components of the given container whose request life cycle must be managed
+    * @param local indicates whether the components of the ancestors must be ignored
+    * @return a modifiable list of components
+    */
+   static List<ComponentRequestLifecycle> getComponents(ExoContainer container, boolean local)
+   {
+      // Need to make a copy as modifying the list is cached by the container
+      List<ComponentRequestLifecycle> components =
+               new ArrayList<ComponentRequestLifecycle>((List<ComponentRequestLifecycle>) container
+                        .getComponentInstancesOfType(ComponentRequestLifecycle.class));
+
+      //
+      if (!local)
+      {
+         for (ExoContainer current = container.getParent(); current != null; current = current.getParent())
+         {
+            components.addAll((List<ComponentRequestLifecycle>) current
+                     .getComponentInstancesOfType(ComponentRequestLifecycle.class));
+         }
+
+      }
+      return components;
+   }
+
    Map<Object, Throwable> end()
    {
       RequestLifeCycle lifeCycle = removeLast();
@@ -52,6 +52,14 @@ public class ThreadContext
       this.threadLocals = (ThreadLocal<Object>[])threadLocals;
    }
    
+   /**
+    * Gives the Thread Local variables managed by this context
+    */
+   ThreadLocal<Object>[] getThreadLocals()
+   {
+      return threadLocals;
+   }
+
    /**
     * Stores into memory the current values of all the Thread Local variables
     */
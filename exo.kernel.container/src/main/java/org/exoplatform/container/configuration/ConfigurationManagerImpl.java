@@ -31,6 +31,7 @@ import java.io.InputStream;
 import java.net.URL;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -51,6 +52,12 @@ public class ConfigurationManagerImpl implements ConfigurationManager
 {
    final static public String WAR_CONF_LOCATION = "/WEB-INF";
 
+   /**
+    * The name of the system property allowing to define the directory in which the snapshots of the
+    * merged configurations are stored, the snapshots are disabled if it is not set
+    */
+   public static final String SNAPSHOT_DIRECTORY_PROPERTY = "org.exoplatform.container.configuration.snapshot.dir";
+
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.ConfigurationManagerImpl");
 
    protected Configuration configurations_;
@@ -71,6 +78,18 @@ public class ConfigurationManagerImpl implements ConfigurationManager
    /** The URL of the current document being unmarshalled. */
    private static final ThreadLocal<URL> currentURL = new ThreadLocal<URL>();
 
+   /** The directory of the snapshots or null if the snapshots are disabled. */
+   private final File snapshotDirectory = ConfigurationSnapshot.getDirectory();
+
+   /**
+    * The URLs of the configuration files added but not yet processed, it is only used when the snapshots
+    * are enabled, it is set to null once the configuration has been loaded.
+    */
+   private List<URL> pendingURLs = snapshotDirectory == null ? null : new ArrayList<URL>();
+
+   /** The snapshot being built, only set while processing the pending URLs. */
+   private ConfigurationSnapshot snapshot;
+
    /**
     * Returns the URL of the current document being unmarshalled or null.
     * @return the URL
@@ -80,6 +99,14 @@ public class ConfigurationManagerImpl implements ConfigurationManager
       return currentURL.get();
    }
 
+   /**
+    * Sets the URL of the current document being unmarshalled
+    */
+   static void setCurrentURL(URL url)
+   {
+      currentURL.set(url);
+   }
+
    public ConfigurationManagerImpl()
    {
       this.profiles = Collections.emptySet();
@@ -110,6 +137,7 @@ public class ConfigurationManagerImpl implements ConfigurationManager
 
    public Configuration getConfiguration()
    {
+      loadPendingConfigurations();
       return configurations_;
    }
 
@@ -148,6 +176,21 @@ public class ConfigurationManagerImpl implements ConfigurationManager
          LOG.info("Add configuration " + url);
       if (url == null)
          return;
+      setContextPath(url);
+      if (pendingURLs != null)
+      {
+         // The configuration files will be processed all together the first time the configuration is needed
+         pendingURLs.add(url);
+         return;
+      }
+      processConfiguration(url);
+   }
+
+   /**
+    * Sets the context path used to resolve the relative URLs
+    */
+   private void setContextPath(URL url)
+   {
       try
       {
          contextPath = (new File(url.toString())).getParent() + "/";
@@ -157,7 +200,14 @@ public class ConfigurationManagerImpl implements ConfigurationManager
       {
          contextPath = null;
       }
+   }
 
+   /**
+    * Unmarshalls the given configuration file and its imports and merges them with the configuration
+    */
+   private void processConfiguration(URL url)
+   {
+      setContextPath(url);
       // Just to prevent some nasty bug to happen
       if (currentURL.get() != null)
       {
@@ -171,6 +221,8 @@ public class ConfigurationManagerImpl implements ConfigurationManager
       //
       try
       {
+         if (snapshot != null)
+            snapshot.addDependency(url);
          ConfigurationUnmarshaller unmarshaller = new ConfigurationUnmarshaller(profiles);
          Configuration conf = unmarshaller.unmarshall(url);
 
@@ -183,6 +235,8 @@ public class ConfigurationManagerImpl implements ConfigurationManager
       catch (Exception ex)
       {
          LOG.error("Cannot process the configuration " + currentURL.get(), ex);
+         // A partial configuration must not be kept in a snapshot
+         snapshot = null;
       }
       finally
       {
@@ -230,6 +284,8 @@ public class ConfigurationManagerImpl implements ConfigurationManager
                   LOG.info(prefix + "import " + urlObject);
                // Set the URL of imported file
                currentURL.set(urlObject);
+               if (snapshot != null)
+                  snapshot.addDependency(urlObject);
                conf = unmarshaller.unmarshall(urlObject);
                configurations_.mergeConfiguration(conf);
                importConf(unmarshaller, conf, depth + 1);
@@ -242,8 +298,57 @@ public class ConfigurationManagerImpl implements ConfigurationManager
       }
    }
 
+   /**
+    * Loads the configuration files that have been added since the creation of the configuration manager
+    * from the snapshot of their merged configuration if it is still valid, otherwise they are processed
+    * and a new snapshot is written
+    */
+   private void loadPendingConfigurations()
+   {
+      if (pendingURLs == null)
+         return;
+      List<URL> urls = pendingURLs;
+      pendingURLs = null;
+      if (urls.isEmpty())
+         return;
+      snapshot = new ConfigurationSnapshot(snapshotDirectory, profiles, urls);
+      try
+      {
+         Configuration conf;
+         try
+         {
+            conf = snapshot.load();
+         }
+         finally
+         {
+            currentURL.set(null);
+         }
+         if (conf != null)
+         {
+            if (logEnabled)
+               LOG.info("Configuration loaded from the snapshot " + snapshot.getFile());
+            if (configurations_ == null)
+               configurations_ = conf;
+            else
+               configurations_.mergeConfiguration(conf);
+            return;
+         }
+         for (URL url : urls)
+         {
+            processConfiguration(url);
+         }
+         if (snapshot != null && configurations_ != null)
+            snapshot.store(configurations_);
+      }
+      finally
+      {
+         snapshot = null;
+      }
+   }
+
    public void processRemoveConfiguration()
    {
+      loadPendingConfigurations();
       if (configurations_ == null)
          return;
       List<String> list = configurations_.getRemoveConfiguration();
@@ -259,16 +364,19 @@ public class ConfigurationManagerImpl implements ConfigurationManager
 
    public Component getComponent(String service)
    {
+      loadPendingConfigurations();
       return configurations_.getComponent(service);
    }
 
    public Component getComponent(Class<?> clazz)
    {
+      loadPendingConfigurations();
       return configurations_.getComponent(clazz.getName());
    }
 
    public Collection<Component> getComponents()
    {
+      loadPendingConfigurations();
       if (configurations_ == null)
          return null;
       return configurations_.getComponents();
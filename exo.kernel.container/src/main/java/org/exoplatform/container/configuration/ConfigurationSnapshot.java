@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.configuration;
+
+import org.exoplatform.commons.utils.PrivilegedFileHelper;
+import org.exoplatform.commons.utils.PrivilegedSystemHelper;
+import org.exoplatform.commons.utils.SecurityHelper;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.container.PortalContainer;
+import org.exoplatform.container.RootContainer;
+import org.exoplatform.container.xml.Configuration;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.jibx.runtime.BindingDirectory;
+import org.jibx.runtime.IBindingFactory;
+import org.jibx.runtime.IMarshallingContext;
+import org.jibx.runtime.impl.StAXReaderWrapper;
+import org.jibx.runtime.impl.UnmarshallingContext;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * An on-disk snapshot of the merged {@link Configuration} of a given set of configuration files.
+ * The snapshot file is named after the active profiles, the ordered list of the root configuration
+ * files and the current container, and contains:
+ * <ol>
+ * <li>A digest of the system properties, of the name of the current container and of the settings of the
+ * portal container since the variables are resolved from them at unmarshalling time</li>
+ * <li>The URL, the last modified date and the SHA-1 of each configuration file that has been processed,
+ * including the imported ones</li>
+ * <li>The URL of the document from which each component, component plugin and lifecycle plugin comes from</li>
+ * <li>The merged configuration marshalled with jibx and deflated</li>
+ * </ol>
+ * A snapshot is only used if nothing has changed since it has been written, otherwise it is
+ * simply ignored and overwritten once the configuration files have been processed again.
+ *
+ * @version $Id$
+ */
+class ConfigurationSnapshot
+{
+
+   /**
+    * The logger
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.ConfigurationSnapshot");
+
+   /** . */
+   private static final int MAGIC = 0x45584F43;
+
+   /** . */
+   private static final int VERSION = 1;
+
+   /** . */
+   private static final String SUFFIX = ".snapshot";
+
+   /** . */
+   private static final String DIGEST_ALGORITHM = "SHA-1";
+
+   /**
+    * The pattern of the comments added by the jibx marshaller to indicate the URL of the document
+    * from which an object comes from
+    */
+   private static final Pattern DOCUMENT_URL = Pattern.compile("<!-- Loaded from '(.*?)' -->");
+
+   /**
+    * The names of the elements mapped to an object that keeps the URL of its document
+    */
+   private static final Set<String> DOCUMENT_URL_ELEMENTS = new HashSet<String>(Arrays.asList("component",
+      "component-plugin", "container-lifecycle-plugin", "component-lifecycle-plugin"));
+
+   /**
+    * The snapshot file
+    */
+   private final File file;
+
+   /**
+    * The fingerprint of all the configuration files processed so far
+    */
+   private final Map<URL, Fingerprint> dependencies = new LinkedHashMap<URL, Fingerprint>();
+
+   ConfigurationSnapshot(File directory, Set<String> profiles, List<URL> urls)
+   {
+      MessageDigest digest = newDigest();
+      for (String profile : new TreeSet<String>(profiles))
+      {
+         update(digest, "profile:" + profile);
+      }
+      for (URL url : urls)
+      {
+         update(digest, "url:" + url);
+      }
+      updateContainer(digest);
+      this.file = new File(directory, "configuration-" + toHex(digest.digest()) + SUFFIX);
+   }
+
+   /**
+    * Gives the directory in which the snapshots must be stored or <code>null</code> if the
+    * snapshots are disabled
+    */
+   static File getDirectory()
+   {
+      String dir = PrivilegedSystemHelper.getProperty(ConfigurationManagerImpl.SNAPSHOT_DIRECTORY_PROPERTY);
+      if (dir == null || (dir = dir.trim()).length() == 0)
+      {
+         return null;
+      }
+      return new File(dir);
+   }
+
+   /**
+    * Gives the snapshot file
+    */
+   File getFile()
+   {
+      return file;
+   }
+
+   /**
+    * Records the fingerprint of the given configuration file, it must be called before
+    * processing the file in order to detect any change that could occur while processing it
+    */
+   void addDependency(URL url)
+   {
+      if (!dependencies.containsKey(url))
+      {
+         try
+         {
+            dependencies.put(url, fingerprint(url));
+         }
+         catch (Exception e)
+         {
+            // Keep track of the dependency anyway, the snapshot won't be written
+            dependencies.put(url, null);
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Cannot compute the fingerprint of " + url, e);
+            }
+         }
+      }
+   }
+
+   /**
+    * Loads the snapshot if it exists and is still valid
+    * @return the merged configuration or <code>null</code> if there is no valid snapshot
+    */
+   Configuration load()
+   {
+      try
+      {
+         return SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<Configuration>()
+         {
+            public Configuration run() throws Exception
+            {
+               return load0();
+            }
+         });
+      }
+      catch (PrivilegedActionException e)
+      {
+         LOG.warn("Cannot load the configuration snapshot " + file + ", the configuration files will be processed",
+            e.getCause());
+      }
+      return null;
+   }
+
+   private Configuration load0() throws Exception
+   {
+      if (!file.exists())
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("No configuration snapshot found at " + file);
+         }
+         return null;
+      }
+      DataInputStream in = new DataInputStream(new BufferedInputStream(PrivilegedFileHelper.fileInputStream(file)));
+      try
+      {
+         if (in.readInt() != MAGIC || in.readInt() != VERSION)
+         {
+            LOG.debug("The configuration snapshot " + file + " has an unexpected format, it will be ignored");
+            return null;
+         }
+         byte[] environment = new byte[in.readUnsignedByte()];
+         in.readFully(environment);
+         if (!Arrays.equals(environment, environment()))
+         {
+            LOG.debug("The system properties or the settings of the container have changed since the creation of "
+               + file);
+            return null;
+         }
+         int size = in.readInt();
+         URL[] urls = new URL[size];
+         for (int i = 0; i < size; i++)
+         {
+            URL url = urls[i] = new URL(in.readUTF());
+            Fingerprint expected = Fingerprint.read(in);
+            Fingerprint current;
+            try
+            {
+               current = fingerprint(url);
+            }
+            catch (IOException e)
+            {
+               current = null;
+            }
+            if (!expected.equals(current))
+            {
+               LOG.debug("The configuration file " + url + " has changed since the creation of " + file);
+               return null;
+            }
+            dependencies.put(url, current);
+         }
+         size = in.readInt();
+         URL[] documentURLs = new URL[size];
+         for (int i = 0; i < size; i++)
+         {
+            int index = in.readInt();
+            documentURLs[i] = index == -1 ? null : urls[index];
+         }
+         byte[] content = new byte[in.readInt()];
+         in.readFully(content);
+         return unmarshall(content, documentURLs);
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   /**
+    * Unmarshalls the given deflated content, the URL of the document of each object is restored
+    * thanks to the given array
+    */
+   private Configuration unmarshall(byte[] content, URL[] documentURLs) throws Exception
+   {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      InputStream is = new InflaterInputStream(new ByteArrayInputStream(content));
+      XMLStreamReader reader = factory.createXMLStreamReader(is, "UTF-8");
+      try
+      {
+         XMLStreamReader filter = new DocumentURLFilter(reader, documentURLs);
+         IBindingFactory bfact = BindingDirectory.getFactory(Configuration.class);
+         UnmarshallingContext uctx = (UnmarshallingContext)bfact.createUnmarshallingContext();
+         uctx.setDocument(new StAXReaderWrapper(filter, file.getName(), true));
+         return (Configuration)uctx.unmarshalElement();
+      }
+      finally
+      {
+         reader.close();
+      }
+   }
+
+   /**
+    * Writes the snapshot of the given configuration, any error is logged and the existing snapshot
+    * if any is removed
+    */
+   void store(final Configuration conf)
+   {
+      try
+      {
+         SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<Void>()
+         {
+            public Void run() throws Exception
+            {
+               store0(conf);
+               return null;
+            }
+         });
+      }
+      catch (PrivilegedActionException e)
+      {
+         LOG.warn("Cannot write the configuration snapshot " + file, e.getCause());
+         PrivilegedFileHelper.delete(file);
+      }
+   }
+
+   private void store0(Configuration conf) throws Exception
+   {
+      if (dependencies.containsValue(null))
+      {
+         LOG.debug("At least one configuration file could not be fingerprinted, no snapshot will be written");
+         PrivilegedFileHelper.delete(file);
+         return;
+      }
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(8192);
+      IBindingFactory bfact = BindingDirectory.getFactory(Configuration.class);
+      IMarshallingContext mctx = bfact.createMarshallingContext();
+      mctx.marshalDocument(conf, "UTF-8", null, baos);
+      byte[] xml = baos.toByteArray();
+
+      // Collect the URL of the document of each object in the order of the elements
+      Map<String, Integer> indexes = new HashMap<String, Integer>();
+      List<URL> urls = new ArrayList<URL>(dependencies.keySet());
+      for (int i = 0; i < urls.size(); i++)
+      {
+         indexes.put(urls.get(i).toString(), i);
+      }
+      List<Integer> documentURLs = new ArrayList<Integer>();
+      Matcher matcher = DOCUMENT_URL.matcher(new String(xml, "UTF-8"));
+      while (matcher.find())
+      {
+         Integer index = indexes.get(matcher.group(1));
+         documentURLs.add(index == null ? -1 : index);
+      }
+
+      File dir = file.getParentFile();
+      if (!PrivilegedFileHelper.exists(dir) && !PrivilegedFileHelper.mkdirs(dir))
+      {
+         throw new IOException("Cannot create the directory " + dir);
+      }
+      File tmp = PrivilegedFileHelper.createTempFile(file.getName(), ".tmp", dir);
+      try
+      {
+         DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(PrivilegedFileHelper.fileOutputStream(tmp)));
+         try
+         {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] environment = environment();
+            out.writeByte(environment.length);
+            out.write(environment);
+            out.writeInt(urls.size());
+            for (URL url : urls)
+            {
+               out.writeUTF(url.toString());
+               dependencies.get(url).write(out);
+            }
+            out.writeInt(documentURLs.size());
+            for (int index : documentURLs)
+            {
+               out.writeInt(index);
+            }
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(xml.length / 4);
+            DeflaterOutputStream dos = new DeflaterOutputStream(deflated, new Deflater(Deflater.BEST_SPEED));
+            dos.write(xml);
+            dos.close();
+            out.writeInt(deflated.size());
+            deflated.writeTo(out);
+         }
+         finally
+         {
+            out.close();
+         }
+         PrivilegedFileHelper.delete(file);
+         if (!PrivilegedFileHelper.renameTo(tmp, file))
+         {
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+         }
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The configuration snapshot " + file + " has been written");
+         }
+      }
+      finally
+      {
+         PrivilegedFileHelper.delete(tmp);
+      }
+   }
+
+   /**
+    * Computes the digest of the system properties and of the current container
+    */
+   private static byte[] environment()
+   {
+      Properties props = PrivilegedSystemHelper.getProperties();
+      Map<String, String> sorted = new TreeMap<String, String>();
+      for (String name : props.stringPropertyNames())
+      {
+         sorted.put(name, props.getProperty(name));
+      }
+      MessageDigest digest = newDigest();
+      for (Map.Entry<String, String> entry : sorted.entrySet())
+      {
+         update(digest, entry.getKey());
+         update(digest, entry.getValue());
+      }
+      updateContainer(digest);
+      return digest.digest();
+   }
+
+   /**
+    * Updates the digest with the name of the current container and the settings of the portal
+    * container, the variables <i>container.name.suffix</i> and <i>portal.container.*</i> are
+    * resolved from them
+    */
+   private static void updateContainer(MessageDigest digest)
+   {
+      ExoContainer container = ExoContainerContext.getCurrentContainerIfPresent();
+      ExoContainerContext ctx = container == null ? null : container.getContext();
+      update(digest, "container:" + (ctx == null ? "" : ctx.getName()));
+      if (container instanceof PortalContainer)
+      {
+         RootContainer rootContainer = (RootContainer)ExoContainerContext.getTopContainer();
+         update(digest, "aware:" + rootContainer.isPortalContainerConfigAware());
+         Map<String, Object> settings = new TreeMap<String, Object>(PortalContainer.getSettings(ctx.getName()));
+         for (Map.Entry<String, Object> entry : settings.entrySet())
+         {
+            update(digest, "setting:" + entry.getKey());
+            update(digest, String.valueOf(entry.getValue()));
+         }
+      }
+   }
+
+   /**
+    * Computes the fingerprint of the given configuration file
+    */
+   private static Fingerprint fingerprint(URL url) throws IOException
+   {
+      URLConnection connection = url.openConnection();
+      long lastModified = connection.getLastModified();
+      MessageDigest digest = newDigest();
+      InputStream is = connection.getInputStream();
+      try
+      {
+         byte[] buffer = new byte[4096];
+         int length;
+         while ((length = is.read(buffer)) != -1)
+         {
+            digest.update(buffer, 0, length);
+         }
+      }
+      finally
+      {
+         is.close();
+      }
+      return new Fingerprint(lastModified, digest.digest());
+   }
+
+   private static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance(DIGEST_ALGORITHM);
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IllegalStateException("The algorithm " + DIGEST_ALGORITHM + " is not supported", e);
+      }
+   }
+
+   private static void update(MessageDigest digest, String value)
+   {
+      try
+      {
+         digest.update(value.getBytes("UTF-8"));
+      }
+      catch (IOException e)
+      {
+         throw new IllegalStateException("UTF-8 is not supported", e);
+      }
+      // Separator to avoid collisions between concatenated values
+      digest.update((byte)0);
+   }
+
+   private static String toHex(byte[] bytes)
+   {
+      StringBuilder sb = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes)
+      {
+         sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+   }
+
+   /**
+    * Sets the URL of the current document right before jibx creates an object that keeps
+    * the URL of its document
+    */
+   private static class DocumentURLFilter extends StreamReaderDelegate
+   {
+      /** . */
+      private final URL[] documentURLs;
+
+      /** . */
+      private int index;
+
+      private DocumentURLFilter(XMLStreamReader reader, URL[] documentURLs)
+      {
+         super(reader);
+         this.documentURLs = documentURLs;
+      }
+
+      @Override
+      public int next() throws XMLStreamException
+      {
+         int event = super.next();
+         if (event == START_ELEMENT && DOCUMENT_URL_ELEMENTS.contains(getLocalName()))
+         {
+            ConfigurationManagerImpl.setCurrentURL(index < documentURLs.length ? documentURLs[index++] : null);
+         }
+         return event;
+      }
+
+      @Override
+      public int nextTag() throws XMLStreamException
+      {
+         int event = next();
+         while ((event == CHARACTERS && isWhiteSpace()) || (event == CDATA && isWhiteSpace()) || event == SPACE
+            || event == PROCESSING_INSTRUCTION || event == COMMENT)
+         {
+            event = next();
+         }
+         if (event != START_ELEMENT && event != END_ELEMENT)
+         {
+            throw new XMLStreamException("A start or an end tag was expected", getLocation());
+         }
+         return event;
+      }
+   }
+
+   /**
+    * The last modified date and the digest of the content of a configuration file
+    */
+   private static class Fingerprint
+   {
+      /** . */
+      private final long lastModified;
+
+      /** . */
+      private final byte[] digest;
+
+      private Fingerprint(long lastModified, byte[] digest)
+      {
+         this.lastModified = lastModified;
+         this.digest = digest;
+      }
+
+      private static Fingerprint read(DataInputStream in) throws IOException
+      {
+         long lastModified = in.readLong();
+         byte[] digest = new byte[in.readUnsignedByte()];
+         in.readFully(digest);
+         return new Fingerprint(lastModified, digest);
+      }
+
+      private void write(DataOutputStream out) throws IOException
+      {
+         out.writeLong(lastModified);
+         out.writeByte(digest.length);
+         out.write(digest);
+      }
+
+      @Override
+      public boolean equals(Object o)
+      {
+         if (this == o)
+         {
+            return true;
+         }
+         if (!(o instanceof Fingerprint))
+         {
+            return false;
+         }
+         Fingerprint that = (Fingerprint)o;
+         return lastModified == that.lastModified && Arrays.equals(digest, that.digest);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * (int)(lastModified ^ (lastModified >>> 32)) + Arrays.hashCode(digest);
+      }
+   }
+}
@@ -18,6 +18,7 @@
  */
 package org.exoplatform.container.configuration;
 
+import org.exoplatform.commons.utils.PrivilegedSystemHelper;
 import org.exoplatform.commons.utils.PropertyManager;
 import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.container.util.Utils;
@@ -29,6 +30,8 @@ import org.jibx.runtime.BindingDirectory;
 import org.jibx.runtime.IBindingFactory;
 import org.jibx.runtime.IUnmarshallingContext;
 import org.jibx.runtime.JiBXException;
+import org.jibx.runtime.impl.StAXReaderWrapper;
+import org.jibx.runtime.impl.UnmarshallingContext;
 import org.w3c.dom.Document;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
@@ -36,6 +39,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
@@ -50,6 +54,9 @@ import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
@@ -72,6 +79,18 @@ public class ConfigurationUnmarshaller
 
    private static final Log LOG = ExoLogger.getLogger("exo.kernel.container.ConfigurationUnmarshaller");
 
+   /**
+    * The name of the system property allowing to go back to the DOM based unmarshalling
+    */
+   public static final String DOM_UNMARSHALLING_PROPERTY = "org.exoplatform.container.configuration.dom";
+
+   /**
+    * Indicates whether the configuration files must be unmarshalled in a single pass with StAX
+    * or using the DOM based unmarshalling
+    */
+   private static final boolean STREAMING = !Boolean.valueOf(PrivilegedSystemHelper
+      .getProperty(DOM_UNMARSHALLING_PROPERTY));
+
    /**
     * A private copy of the list of kernel namespaces
     */
@@ -184,7 +203,30 @@ public class ConfigurationUnmarshaller
       });
    }
    
+   /**
+    * Unmarshalls the given configuration, by default the document is parsed in a single pass with StAX,
+    * the profiles and the namespaces being filtered on the fly. The DOM based unmarshalling can be
+    * enabled thanks to the system property {@link #DOM_UNMARSHALLING_PROPERTY}.
+    *
+    * @param url the url of the configuration to unmarshall
+    * @return the unmarshalled configuration
+    * @throws Exception if the configuration could not be unmarshalled
+    */
    public Configuration unmarshall(final URL url) throws Exception
+   {
+      return unmarshall(url, STREAMING);
+   }
+
+   /**
+    * Unmarshalls the given configuration.
+    *
+    * @param url the url of the configuration to unmarshall
+    * @param streaming <code>true</code> to parse the document in a single pass with StAX, <code>false</code>
+    * to parse it into a DOM that is filtered, serialized and parsed again by jibx
+    * @return the unmarshalled configuration
+    * @throws Exception if the configuration could not be unmarshalled
+    */
+   public Configuration unmarshall(final URL url, boolean streaming) throws Exception
    {
       if (PropertyManager.isDevelopping())
       {
@@ -195,6 +237,11 @@ public class ConfigurationUnmarshaller
          }
       }
 
+      if (streaming)
+      {
+         return unmarshallStream(url);
+      }
+
       //
       DocumentBuilderFactory factory = null;
       try
@@ -286,47 +333,108 @@ public class ConfigurationUnmarshaller
       }
       catch (PrivilegedActionException pae)
       {
-         Throwable cause = pae.getCause();
-         if (cause instanceof JiBXException)
-         {
-            throw (JiBXException)cause;
-         }
-         else if (cause instanceof ParserConfigurationException)
-         {
-            throw (ParserConfigurationException)cause;
-         }
-         else if (cause instanceof IOException)
-         {
-            throw (IOException)cause;
-         }
-         else if (cause instanceof SAXException)
-         {
-            throw (SAXException)cause;
-         }
-         else if (cause instanceof IllegalArgumentException)
-         {
-            throw (IllegalArgumentException)cause;
-         }
-         else if (cause instanceof TransformerException)
-         {
-            throw (TransformerException)cause;
-         }
-         else if (cause instanceof TransformerConfigurationException)
-         {
-            throw (TransformerConfigurationException)cause;
-         }
-         else if (cause instanceof TransformerFactoryConfigurationError)
-         {
-            throw (TransformerFactoryConfigurationError)cause;
-         }
-         else if (cause instanceof RuntimeException)
-         {
-            throw (RuntimeException)cause;
-         }
-         else
+         throw rethrow(pae);
+      }
+   }
+
+   /**
+    * Parses the configuration in a single pass, the profiles and the kernel namespaces are filtered
+    * on the fly while jibx reads the document
+    */
+   private Configuration unmarshallStream(final URL url) throws Exception
+   {
+      try
+      {
+         return SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<Configuration>()
          {
-            throw new RuntimeException(cause);
-         }
+            public Configuration run() throws Exception
+            {
+               // Debug
+               if (LOG.isTraceEnabled())
+                  LOG.trace("About to parse configuration file " + url);
+
+               XMLInputFactory factory = XMLInputFactory.newInstance();
+               factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+               factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+               InputStream is = url.openStream();
+               try
+               {
+                  XMLStreamReader reader = factory.createXMLStreamReader(url.toString(), is);
+                  try
+                  {
+                     IBindingFactory bfact = BindingDirectory.getFactory(Configuration.class);
+                     UnmarshallingContext uctx = (UnmarshallingContext)bfact.createUnmarshallingContext();
+                     uctx.setDocument(new StAXReaderWrapper(new NoKernelNamespaceStAXFilter(reader, profiles), url
+                        .toString(), true));
+                     return (Configuration)uctx.unmarshalElement();
+                  }
+                  finally
+                  {
+                     reader.close();
+                  }
+               }
+               finally
+               {
+                  is.close();
+               }
+            }
+         });
+      }
+      catch (PrivilegedActionException pae)
+      {
+         throw rethrow(pae);
+      }
+   }
+
+   /**
+    * Gives the exception to throw corresponding to the cause of the given {@link PrivilegedActionException}
+    */
+   private static Exception rethrow(PrivilegedActionException pae)
+   {
+      Throwable cause = pae.getCause();
+      if (cause instanceof JiBXException)
+      {
+         return (JiBXException)cause;
+      }
+      else if (cause instanceof ParserConfigurationException)
+      {
+         return (ParserConfigurationException)cause;
+      }
+      else if (cause instanceof IOException)
+      {
+         return (IOException)cause;
+      }
+      else if (cause instanceof SAXException)
+      {
+         return (SAXException)cause;
+      }
+      else if (cause instanceof XMLStreamException)
+      {
+         return (XMLStreamException)cause;
+      }
+      else if (cause instanceof IllegalArgumentException)
+      {
+         return (IllegalArgumentException)cause;
+      }
+      else if (cause instanceof TransformerException)
+      {
+         return (TransformerException)cause;
+      }
+      else if (cause instanceof TransformerConfigurationException)
+      {
+         return (TransformerConfigurationException)cause;
+      }
+      else if (cause instanceof TransformerFactoryConfigurationError)
+      {
+         throw (TransformerFactoryConfigurationError)cause;
+      }
+      else if (cause instanceof RuntimeException)
+      {
+         return (RuntimeException)cause;
+      }
+      else
+      {
+         return new RuntimeException(cause);
       }
    }
 }
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.configuration;
+
+import org.exoplatform.commons.utils.Tools;
+
+import java.util.Collections;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * Streaming counterpart of {@link ProfileDOMFilter} and {@link NoKernelNamespaceSAXFilter}, it skips
+ * the kernel elements that don't match with the active profiles, removes the profile attributes,
+ * the XSI attributes and the kernel namespace declarations, and requalifies the kernel elements and
+ * attributes to the empty namespace, in order to be able to feed jibx directly while parsing the document.
+ *
+ * @version $Id$
+ */
+class NoKernelNamespaceStAXFilter extends StreamReaderDelegate
+{
+
+   /** . */
+   private static final String XSI_URI = "http://www.w3.org/2001/XMLSchema-instance";
+
+   /** . */
+   private static final int[] EMPTY = new int[0];
+
+   /** . */
+   private final Set<String> activeProfiles;
+
+   /** The indexes of the attributes of the current element that are kept. */
+   private int[] attributes = EMPTY;
+
+   /** The indexes of the namespace declarations of the current element that are kept. */
+   private int[] namespaces = EMPTY;
+
+   NoKernelNamespaceStAXFilter(XMLStreamReader reader, Set<String> activeProfiles)
+   {
+      super(reader);
+      this.activeProfiles = activeProfiles;
+      if (reader.getEventType() == START_ELEMENT)
+      {
+         filter();
+      }
+   }
+
+   @Override
+   public int next() throws XMLStreamException
+   {
+      int event = super.next();
+      while (event == START_ELEMENT && !isActive())
+      {
+         skipElement();
+         event = super.next();
+      }
+      if (event == START_ELEMENT || event == END_ELEMENT)
+      {
+         filter();
+      }
+      return event;
+   }
+
+   @Override
+   public int nextTag() throws XMLStreamException
+   {
+      int event = next();
+      while ((event == CHARACTERS && isWhiteSpace()) || (event == CDATA && isWhiteSpace()) || event == SPACE
+         || event == PROCESSING_INSTRUCTION || event == COMMENT)
+      {
+         event = next();
+      }
+      if (event != START_ELEMENT && event != END_ELEMENT)
+      {
+         throw new XMLStreamException("A start or an end tag was expected", getLocation());
+      }
+      return event;
+   }
+
+   /**
+    * Indicates whether the current element is not a kernel element or is a kernel element that
+    * matches with the active profiles
+    */
+   private boolean isActive()
+   {
+      if (!Namespaces.isKernelNamespace(super.getNamespaceURI()))
+      {
+         return true;
+      }
+      Set<String> profiles = null;
+      for (int i = 0, length = super.getAttributeCount(); i < length; i++)
+      {
+         if (isProfileAttribute(i))
+         {
+            if (profiles == null)
+            {
+               profiles = Tools.parseCommaList(super.getAttributeValue(i));
+            }
+            else
+            {
+               profiles.addAll(Tools.parseCommaList(super.getAttributeValue(i)));
+            }
+         }
+      }
+      return profiles == null || !Collections.disjoint(activeProfiles, profiles);
+   }
+
+   private boolean isProfileAttribute(int index)
+   {
+      String attrURI = super.getAttributeNamespace(index);
+      return (attrURI == null || attrURI.length() == 0 || ProfileDOMFilter.kernelWithProfileURIs.contains(attrURI))
+         && ProfileDOMFilter.PROFILE_ATTRIBUTE.equals(super.getAttributeLocalName(index));
+   }
+
+   /**
+    * Consumes all the events until the end of the current element
+    */
+   private void skipElement() throws XMLStreamException
+   {
+      int depth = 1;
+      while (depth > 0)
+      {
+         int event = super.next();
+         if (event == START_ELEMENT)
+         {
+            depth++;
+         }
+         else if (event == END_ELEMENT)
+         {
+            depth--;
+         }
+      }
+   }
+
+   /**
+    * Computes the attributes and the namespace declarations of the current element that are kept
+    */
+   private void filter()
+   {
+      if (getEventType() == START_ELEMENT)
+      {
+         boolean kernel = Namespaces.isKernelNamespace(super.getNamespaceURI());
+         int length = super.getAttributeCount();
+         int[] indexes = new int[length];
+         int count = 0;
+         for (int i = 0; i < length; i++)
+         {
+            if (!XSI_URI.equals(super.getAttributeNamespace(i)) && !(kernel && isProfileAttribute(i)))
+            {
+               indexes[count++] = i;
+            }
+         }
+         attributes = count == length ? indexes : copyOf(indexes, count);
+      }
+      else
+      {
+         attributes = EMPTY;
+      }
+      int length = super.getNamespaceCount();
+      int[] indexes = new int[length];
+      int count = 0;
+      for (int i = 0; i < length; i++)
+      {
+         String uri = super.getNamespaceURI(i);
+         if (!Namespaces.isKernelNamespace(uri) && !XSI_URI.equals(uri))
+         {
+            indexes[count++] = i;
+         }
+      }
+      namespaces = count == length ? indexes : copyOf(indexes, count);
+   }
+
+   private static int[] copyOf(int[] indexes, int length)
+   {
+      int[] result = new int[length];
+      System.arraycopy(indexes, 0, result, 0, length);
+      return result;
+   }
+
+   private boolean isKernelElement()
+   {
+      int event = getEventType();
+      return (event == START_ELEMENT || event == END_ELEMENT) && Namespaces.isKernelNamespace(super.getNamespaceURI());
+   }
+
+   @Override
+   public String getNamespaceURI()
+   {
+      return isKernelElement() ? null : super.getNamespaceURI();
+   }
+
+   @Override
+   public String getPrefix()
+   {
+      return isKernelElement() ? XMLConstants.DEFAULT_NS_PREFIX : super.getPrefix();
+   }
+
+   @Override
+   public QName getName()
+   {
+      return isKernelElement() ? new QName(getLocalName()) : super.getName();
+   }
+
+   @Override
+   public String getNamespaceURI(String prefix)
+   {
+      String uri = super.getNamespaceURI(prefix);
+      return Namespaces.isKernelNamespace(uri) || XSI_URI.equals(uri) ? null : uri;
+   }
+
+   @Override
+   public int getNamespaceCount()
+   {
+      return namespaces.length;
+   }
+
+   @Override
+   public String getNamespacePrefix(int index)
+   {
+      return super.getNamespacePrefix(namespaces[index]);
+   }
+
+   @Override
+   public String getNamespaceURI(int index)
+   {
+      return super.getNamespaceURI(namespaces[index]);
+   }
+
+   @Override
+   public int getAttributeCount()
+   {
+      return attributes.length;
+   }
+
+   @Override
+   public QName getAttributeName(int index)
+   {
+      return Namespaces.isKernelNamespace(super.getAttributeNamespace(attributes[index])) ? new QName(
+         getAttributeLocalName(index)) : super.getAttributeName(attributes[index]);
+   }
+
+   @Override
+   public String getAttributeNamespace(int index)
+   {
+      String uri = super.getAttributeNamespace(attributes[index]);
+      return Namespaces.isKernelNamespace(uri) ? null : uri;
+   }
+
+   @Override
+   public String getAttributeLocalName(int index)
+   {
+      return super.getAttributeLocalName(attributes[index]);
+   }
+
+   @Override
+   public String getAttributePrefix(int index)
+   {
+      return Namespaces.isKernelNamespace(super.getAttributeNamespace(attributes[index]))
+         ? XMLConstants.DEFAULT_NS_PREFIX : super.getAttributePrefix(attributes[index]);
+   }
+
+   @Override
+   public String getAttributeType(int index)
+   {
+      return super.getAttributeType(attributes[index]);
+   }
+
+   @Override
+   public String getAttributeValue(int index)
+   {
+      return super.getAttributeValue(attributes[index]);
+   }
+
+   @Override
+   public boolean isAttributeSpecified(int index)
+   {
+      return super.isAttributeSpecified(attributes[index]);
+   }
+
+   @Override
+   public String getAttributeValue(String namespaceURI, String localName)
+   {
+      for (int i = 0; i < attributes.length; i++)
+      {
+         if (!localName.equals(getAttributeLocalName(i)))
+         {
+            continue;
+         }
+         if (namespaceURI == null)
+         {
+            return getAttributeValue(i);
+         }
+         String uri = getAttributeNamespace(i);
+         if (namespaceURI.equals(uri == null ? XMLConstants.NULL_NS_URI : uri))
+         {
+            return getAttributeValue(i);
+         }
+      }
+      return null;
+   }
+}
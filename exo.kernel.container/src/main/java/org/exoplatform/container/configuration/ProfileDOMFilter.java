@@ -41,13 +41,13 @@ class ProfileDOMFilter
 {
 
    /** . */
-   private static final String PROFILE_ATTRIBUTE = "profiles";
+   static final String PROFILE_ATTRIBUTE = "profiles";
 
    /** . */
    private static final Set<String> kernelURIs = Namespaces.KERNEL_NAMESPACES_SET;
 
    /** . */
-   private static final Set<String> kernelWithProfileURIs;
+   static final Set<String> kernelWithProfileURIs;
    static
    {
       // All the kernel namespaces but KERNEL_1_0_URI
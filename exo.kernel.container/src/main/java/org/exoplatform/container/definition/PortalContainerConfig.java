@@ -625,6 +625,27 @@ public class PortalContainerConfig implements Startable
       return defaultSettings == null ? null : defaultSettings.get(settingName);
    }
 
+   /**
+    * Give all the settings of a given portal container name
+    * @param portalContainerName the name of the portal container for which we want the settings
+    * @return the settings of the portal container, an empty map if there is no setting
+    */
+   public Map<String, Object> getSettings(String portalContainerName)
+   {
+      final PortalContainerDefinition definition = definitions.get(portalContainerName);
+      if (definition != null)
+      {
+         final Map<String, Object> settings = definition.getSettings();
+         if (settings != null && !settings.isEmpty())
+         {
+            return Collections.unmodifiableMap(settings);
+         }
+      }
+      final Map<String, Object> defaultSettings = defaultDefinition.getSettings();
+      return defaultSettings == null ? Collections.<String, Object> emptyMap() : Collections
+         .unmodifiableMap(defaultSettings);
+   }
+
    /**
     * Gives the name of the rest {@link ServletContext} related to the given portal container
     * @param portalContainerName the name of the portal container for which we want the rest context name
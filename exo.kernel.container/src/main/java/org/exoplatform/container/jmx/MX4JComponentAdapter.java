@@ -143,6 +143,7 @@ public class MX4JComponentAdapter<T> extends AbstractComponentAdapter<T>
    private T createInstance(final Component component, final ConfigurationManager manager, final String componentKey,
       final InitParams params, final boolean debug) throws Exception
    {
+      container.startDependencyTracking();
       try
       {
          return SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<T>()
@@ -216,6 +217,7 @@ public class MX4JComponentAdapter<T> extends AbstractComponentAdapter<T>
       finally
       {
          container.removeComponentFromCtx(getComponentKey());
+         container.stopDependencyTracking(this, instance_);
       }
    }
 
@@ -42,9 +42,12 @@ import java.security.PrivilegedExceptionAction;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -89,6 +92,31 @@ public class ContainerUtil
       return constructors;
    }
 
+   /**
+    * Gives the given class, all its super classes and all the interfaces that it implements
+    * directly or indirectly
+    */
+   public static Set<Class<?>> getSuperTypes(Class<?> clazz)
+   {
+      Set<Class<?>> types = new HashSet<Class<?>>();
+      LinkedList<Class<?>> toVisit = new LinkedList<Class<?>>();
+      toVisit.add(clazz);
+      Class<?> type;
+      while ((type = toVisit.poll()) != null)
+      {
+         if (!types.add(type))
+         {
+            continue;
+         }
+         if (type.getSuperclass() != null)
+         {
+            toVisit.add(type.getSuperclass());
+         }
+         Collections.addAll(toVisit, type.getInterfaces());
+      }
+      return types;
+   }
+
    /**
     * Indicates whether or not the given Class has a constructor annotated with Inject
     */
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.spi.Container;
+import org.exoplatform.management.ManagementContext;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @version $Id$
+ *
+ */
+public class TestCachingContainer extends TestCase
+{
+
+   public void testInvalidation() throws Exception
+   {
+      ExoContainer parent = new ExoContainer();
+      ExoContainer child = new ExoContainer(parent);
+      parent.registerComponentInstance(child);
+      parent.registerComponentImplementation(A.class);
+      parent.registerComponentImplementation(B.class);
+      CachingContainer cache = getCache(parent);
+      assertNotNull(cache);
+      A a = parent.getComponentInstanceOfType(A.class);
+      assertNotNull(a);
+      assertSame(a, child.getComponentInstanceOfType(A.class));
+      B b = (B)parent.getComponentInstanceOfType(Marker.class);
+      assertNotNull(b);
+      assertEquals(1, parent.getComponentInstancesOfType(Marker.class).size());
+      int size = parent.getComponentInstancesOfType(Object.class).size();
+      long hits = cache.getHits();
+      assertSame(a, parent.getComponentInstanceOfType(A.class));
+      assertEquals(hits + 1, cache.getHits());
+
+      long invalidations = cache.getInvalidations();
+      parent.registerComponentImplementation(C.class);
+      assertEquals(invalidations + 1, cache.getInvalidations());
+      assertTrue(cache.getEvictions() > 0);
+      // Only the entries related to the new component are evicted
+      hits = cache.getHits();
+      assertSame(a, parent.getComponentInstanceOfType(A.class));
+      assertEquals(hits + 1, cache.getHits());
+      long misses = cache.getMisses();
+      assertEquals(2, parent.getComponentInstancesOfType(Marker.class).size());
+      assertTrue(cache.getMisses() > misses);
+      assertEquals(size + 1, parent.getComponentInstancesOfType(Object.class).size());
+      assertNotNull(child.getComponentInstanceOfType(C.class));
+      try
+      {
+         parent.getComponentInstanceOfType(Marker.class);
+         fail("An exception was expected as several components implement Marker");
+      }
+      catch (Exception e)
+      {
+         // expected
+      }
+
+      parent.unregisterComponent(C.class);
+      assertNull(parent.getComponentInstanceOfType(C.class));
+      assertNull(child.getComponentInstanceOfType(C.class));
+      assertSame(b, child.getComponentInstanceOfType(Marker.class));
+      assertEquals(1, parent.getComponentInstancesOfType(Marker.class).size());
+      assertEquals(size, parent.getComponentInstancesOfType(Object.class).size());
+
+      cache.resetCounters();
+      assertEquals(0, cache.getHits());
+      assertEquals(0, cache.getMisses());
+      assertEquals(0, cache.getInvalidations());
+      assertEquals(0, cache.getEvictions());
+   }
+
+   public void testManagedRegistration() throws Exception
+   {
+      final Set<Object> registered = new HashSet<Object>();
+      final ManagementContext context = new ManagementContext()
+      {
+         public void register(Object o)
+         {
+            assertTrue("The object has already been registered", registered.add(o));
+         }
+
+         public void unregister(Object o)
+         {
+            assertTrue("The object has not been registered", registered.remove(o));
+         }
+      };
+      ConcurrentContainer delegate = new ConcurrentContainer(new ExoContainer(), null)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         public ManagementContext getManagementContext()
+         {
+            return context;
+         }
+      };
+      CachingContainer cache = new CachingContainer();
+      cache.setSuccessor(delegate);
+      cache.start();
+      assertEquals(1, registered.size());
+      // Starting twice must not register the statistics twice
+      cache.start();
+      assertEquals(1, registered.size());
+      cache.stop();
+      assertTrue(registered.isEmpty());
+      cache.start();
+      assertEquals(1, registered.size());
+      cache.stop();
+      assertTrue(registered.isEmpty());
+   }
+
+   private static CachingContainer getCache(ExoContainer container)
+   {
+      Container co = container;
+      while ((co = co.getSuccessor()) != null)
+      {
+         if (co instanceof CachingContainer)
+         {
+            return (CachingContainer)co;
+         }
+      }
+      return null;
+   }
+
+   public static interface Marker
+   {
+   }
+
+   public static class A
+   {
+   }
+
+   public static class B implements Marker
+   {
+   }
+
+   public static class C implements Marker
+   {
+   }
+}
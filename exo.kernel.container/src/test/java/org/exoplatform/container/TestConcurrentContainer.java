@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.spi.ComponentAdapter;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @version $Id$
+ */
+public class TestConcurrentContainer extends TestCase
+{
+
+   private static final Class<?>[] TYPES = {Object.class, Runnable.class, Serializable.class, Comparable.class,
+      A.class, B.class, C.class, D.class};
+
+   public void testIndexOrder() throws Exception
+   {
+      ConcurrentContainer container = new ConcurrentContainer();
+      Random random = new Random(1);
+      List<String> keys = new ArrayList<String>();
+      for (int i = 0; i < 500; i++)
+      {
+         if (!keys.isEmpty() && random.nextInt(3) == 0)
+         {
+            String key = keys.remove(random.nextInt(keys.size()));
+            assertNotNull(container.unregisterComponent(key));
+         }
+         else
+         {
+            String key = "key" + i;
+            keys.add(key);
+            container.registerComponentInstance(key, createComponent(random.nextInt(4)));
+         }
+         if (i % 10 == 0)
+         {
+            checkIndex(container);
+         }
+      }
+      checkIndex(container);
+   }
+
+   public void testIndexCleanup() throws Exception
+   {
+      ConcurrentContainer container = new ConcurrentContainer(new ExoContainer(), null);
+      Map<?, ?> typeToAdapters = getField(container, "typeToAdapters");
+      Map<?, ?> injectionPlans = getField(container, "injectionPlans");
+      container.registerComponentInstance("a", new A());
+      container.registerComponentInstance("d", new D());
+      assertTrue(typeToAdapters.containsKey(A.class));
+      assertTrue(typeToAdapters.containsKey(D.class));
+      container.unregisterComponent("d");
+      assertFalse(typeToAdapters.containsKey(D.class));
+      assertFalse(typeToAdapters.containsKey(Comparable.class));
+      assertTrue(typeToAdapters.containsKey(Runnable.class));
+      container.unregisterComponent("a");
+      assertTrue(typeToAdapters.isEmpty());
+      assertTrue(container.getComponentAdaptersOfType(A.class).isEmpty());
+
+      container.registerComponentImplementation("b", B.class);
+      container.createComponent(B.class);
+      assertTrue(injectionPlans.containsKey(B.class));
+      container.unregisterComponent("b");
+      assertFalse(injectionPlans.containsKey(B.class));
+   }
+
+   private static Object createComponent(int type)
+   {
+      switch (type)
+      {
+         case 0 :
+            return new A();
+         case 1 :
+            return new B();
+         case 2 :
+            return new C();
+         default :
+            return new D();
+      }
+   }
+
+   /**
+    * Checks that the index gives the same component adapters in the same order as a scan
+    * of all the component adapters
+    */
+   @SuppressWarnings({"rawtypes", "unchecked"})
+   private static void checkIndex(ConcurrentContainer container)
+   {
+      for (Class type : TYPES)
+      {
+         List<ComponentAdapter<?>> expected = new ArrayList<ComponentAdapter<?>>();
+         for (ComponentAdapter<?> adapter : container.getComponentAdapters())
+         {
+            if (type.isAssignableFrom(adapter.getComponentImplementation()))
+            {
+               expected.add(adapter);
+            }
+         }
+         assertEquals(expected, container.getComponentAdaptersOfType(type));
+      }
+   }
+
+   private static Map<?, ?> getField(ConcurrentContainer container, String name) throws Exception
+   {
+      Field field = ConcurrentContainer.class.getDeclaredField(name);
+      field.setAccessible(true);
+      return (Map<?, ?>)field.get(container);
+   }
+
+   public static class A implements Runnable
+   {
+      public void run()
+      {
+      }
+   }
+
+   public static class B extends A implements Serializable
+   {
+      private static final long serialVersionUID = 1L;
+   }
+
+   public static class C implements Serializable
+   {
+      private static final long serialVersionUID = 1L;
+   }
+
+   public static class D extends B implements Comparable<D>
+   {
+      private static final long serialVersionUID = 1L;
+
+      public int compareTo(D o)
+      {
+         return 0;
+      }
+   }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.component.ComponentRequestLifecycle;
+import org.exoplatform.container.component.ContextPropagatingExecutor;
+import org.exoplatform.container.component.ContextSnapshot;
+import org.exoplatform.container.component.ThreadContext;
+import org.exoplatform.container.component.ThreadContextHolder;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Id$
+ *
+ */
+public class TestContextSnapshot extends TestCase
+{
+
+   private ExoContainer parent;
+
+   private ExoContainer container;
+
+   private ExecutorService executor;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      parent = new ExoContainer();
+      parent.registerComponentImplementation(ParentHolder.class);
+      container = new ExoContainer(parent);
+      container.registerComponentImplementation(Holder.class);
+      container.registerComponentImplementation(RequestComponent.class);
+      executor = Executors.newSingleThreadExecutor();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      executor.shutdownNow();
+   }
+
+   public void testSnapshot() throws Exception
+   {
+      final Holder holder = container.getComponentInstanceOfType(Holder.class);
+      final ParentHolder parentHolder = parent.getComponentInstanceOfType(ParentHolder.class);
+      final RequestComponent lifeCycle = container.getComponentInstanceOfType(RequestComponent.class);
+      holder.tl.set("foo");
+      parentHolder.tl.set("bar");
+      ContextSnapshot snapshot = ContextSnapshot.capture(container);
+      holder.tl.set("foo2");
+      for (int i = 0; i < 2; i++)
+      {
+         Callable<String> task = snapshot.wrap(new Callable<String>()
+         {
+            public String call() throws Exception
+            {
+               assertSame(container, ExoContainerContext.getCurrentContainerIfPresent());
+               assertTrue(lifeCycle.started.get());
+               return holder.tl.get() + parentHolder.tl.get();
+            }
+         });
+         assertEquals("foobar", executor.submit(task).get());
+         assertEquals(i + 1, lifeCycle.ended);
+         // Make sure that the context of the thread has been restored
+         assertEquals(Boolean.TRUE, executor.submit(new Callable<Boolean>()
+         {
+            public Boolean call() throws Exception
+            {
+               return holder.tl.get() == null && parentHolder.tl.get() == null && !lifeCycle.started.get()
+                  && ExoContainerContext.getCurrentContainerIfPresent() == null;
+            }
+         }).get());
+      }
+      assertEquals("foo2", holder.tl.get());
+   }
+
+   public void testSubmittingThread() throws Exception
+   {
+      final Holder holder = container.getComponentInstanceOfType(Holder.class);
+      final ParentHolder parentHolder = parent.getComponentInstanceOfType(ParentHolder.class);
+      final RequestComponent lifeCycle = container.getComponentInstanceOfType(RequestComponent.class);
+      ExoContainer other = new ExoContainer();
+      ExoContainer previous = ExoContainerContext.getCurrentContainerIfPresent();
+      ExoContainerContext.setCurrentContainer(other);
+      try
+      {
+         holder.tl.set("foo");
+         parentHolder.tl.set("bar");
+         ContextSnapshot snapshot = ContextSnapshot.capture(container);
+         holder.tl.set("foo2");
+         parentHolder.tl.set("bar2");
+         final AtomicReference<String> value = new AtomicReference<String>();
+         // The task is executed by the thread that submitted it like with a caller-runs policy
+         snapshot.execute(new Runnable()
+         {
+            public void run()
+            {
+               if (ExoContainerContext.getCurrentContainerIfPresent() == container && lifeCycle.started.get())
+               {
+                  value.set(holder.tl.get() + parentHolder.tl.get());
+               }
+            }
+         });
+         assertEquals("foobar", value.get());
+         // The context of the thread has been restored
+         assertSame(other, ExoContainerContext.getCurrentContainerIfPresent());
+         assertEquals("foo2", holder.tl.get());
+         assertEquals("bar2", parentHolder.tl.get());
+         assertFalse(lifeCycle.started.get());
+
+         // Same thing when the task fails
+         try
+         {
+            snapshot.call(new Callable<Void>()
+            {
+               public Void call() throws Exception
+               {
+                  throw new Exception("expected");
+               }
+            });
+            fail("An exception was expected");
+         }
+         catch (Exception e)
+         {
+            assertEquals("expected", e.getMessage());
+         }
+         assertSame(other, ExoContainerContext.getCurrentContainerIfPresent());
+         assertEquals("foo2", holder.tl.get());
+      }
+      finally
+      {
+         ExoContainerContext.setCurrentContainer(previous);
+         holder.tl.remove();
+         parentHolder.tl.remove();
+      }
+   }
+
+   public void testExecutor() throws Exception
+   {
+      final Holder holder = container.getComponentInstanceOfType(Holder.class);
+      final RequestComponent lifeCycle = container.getComponentInstanceOfType(RequestComponent.class);
+      ContextPropagatingExecutor cpe = new ContextPropagatingExecutor(container, executor, false);
+      final AtomicReference<String> value = new AtomicReference<String>();
+      final CountDownLatch latch = new CountDownLatch(1);
+      holder.tl.set("foo");
+      cpe.execute(new Runnable()
+      {
+         public void run()
+         {
+            if (!lifeCycle.started.get() && ExoContainerContext.getCurrentContainerIfPresent() == container)
+            {
+               value.set(holder.tl.get());
+            }
+            latch.countDown();
+         }
+      });
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      assertEquals("foo", value.get());
+      assertEquals(0, lifeCycle.ended);
+   }
+
+   public static class Holder implements ThreadContextHolder
+   {
+      public ThreadLocal<String> tl = new ThreadLocal<String>();
+
+      public ThreadContext getThreadContext()
+      {
+         return new ThreadContext(tl);
+      }
+   }
+
+   public static class ParentHolder extends Holder
+   {
+   }
+
+   public static class RequestComponent implements ComponentRequestLifecycle
+   {
+      public ThreadLocal<Boolean> started = new ThreadLocal<Boolean>()
+      {
+         @Override
+         protected Boolean initialValue()
+         {
+            return Boolean.FALSE;
+         }
+      };
+
+      public volatile int ended;
+
+      public void startRequest(ExoContainer container)
+      {
+         started.set(Boolean.TRUE);
+      }
+
+      public void endRequest(ExoContainer container)
+      {
+         started.set(Boolean.FALSE);
+         ended++;
+      }
+   }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.container.spi.ContainerException;
+import org.picocontainer.Startable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @version $Id$
+ */
+public class TestLifecycleVisitor extends TestCase
+{
+
+   private Method start;
+
+   private Method stop;
+
+   private List<String> events;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      start = Startable.class.getMethod("start");
+      stop = Startable.class.getMethod("stop");
+      events = Collections.synchronizedList(new ArrayList<String>());
+   }
+
+   public void testDependencyOrder() throws Exception
+   {
+      MyComponent a = new MyComponent("a");
+      MyComponent b = new MyComponent("b");
+      MyComponent c = new MyComponent("c");
+      MyComponent d = new MyComponent("d");
+      MyContainer container = new MyContainer(a, b, c, d);
+      // c depends on a and b, d depends on c
+      container.addDependency(c, a);
+      container.addDependency(c, b);
+      container.addDependency(d, c);
+
+      new LifecycleVisitor(start, Startable.class, true, false, 4).traverse(container);
+      assertEquals(8, events.size());
+      assertBefore("a-started", "c-start");
+      assertBefore("b-started", "c-start");
+      assertBefore("c-started", "d-start");
+
+      events.clear();
+      new LifecycleVisitor(stop, Startable.class, false, true, 4).traverse(container);
+      assertEquals(8, events.size());
+      assertBefore("d-stopped", "c-stop");
+      assertBefore("c-stopped", "a-stop");
+      assertBefore("c-stopped", "b-stop");
+   }
+
+   public void testConcurrentStart() throws Exception
+   {
+      // Both components wait for each other, so they can only be started if they are started concurrently
+      CyclicBarrier barrier = new CyclicBarrier(2);
+      MyComponent a = new MyComponent("a", barrier);
+      MyComponent b = new MyComponent("b", barrier);
+      MyContainer container = new MyContainer(a, b);
+
+      new LifecycleVisitor(start, Startable.class, true, false, 2).traverse(container);
+      assertTrue(events.contains("a-started"));
+      assertTrue(events.contains("b-started"));
+   }
+
+   public void testFailure() throws Exception
+   {
+      MyComponent a = new MyComponent("a");
+      a.fail = true;
+      MyComponent b = new MyComponent("b");
+      MyComponent c = new MyComponent("c");
+      MyContainer container = new MyContainer(a, b, c);
+      // b depends on a, c depends on b
+      container.addDependency(b, a);
+      container.addDependency(c, b);
+
+      try
+      {
+         new LifecycleVisitor(start, Startable.class, true, false, 2).traverse(container);
+         fail("A ContainerException was expected");
+      }
+      catch (ContainerException e)
+      {
+         // expected
+      }
+      assertTrue(events.contains("a-start"));
+      assertFalse(events.contains("b-start"));
+      assertFalse(events.contains("c-start"));
+   }
+
+   public void testCycle() throws Exception
+   {
+      MyComponent a = new MyComponent("a");
+      MyComponent b = new MyComponent("b");
+      MyComponent c = new MyComponent("c");
+      MyComponent d = new MyComponent("d");
+      MyContainer container = new MyContainer(a, b, c, d);
+      // a and b depend on each other, c depends on a, d is independent
+      container.addDependency(a, b);
+      container.addDependency(b, a);
+      container.addDependency(c, a);
+
+      new LifecycleVisitor(start, Startable.class, true, false, 4).traverse(container);
+      assertEquals(8, events.size());
+      // The remaining components are started sequentially in instantiation order
+      assertEquals(Arrays.asList("a-start", "a-started", "b-start", "b-started", "c-start", "c-started"),
+         events.subList(2, 8));
+      assertEquals(Arrays.asList("d-start", "d-started"), events.subList(0, 2));
+   }
+
+   private void assertBefore(String first, String second)
+   {
+      int firstIndex = events.indexOf(first);
+      int secondIndex = events.indexOf(second);
+      assertTrue(first + " is missing", firstIndex >= 0);
+      assertTrue(second + " is missing", secondIndex >= 0);
+      assertTrue(first + " should happen before " + second + " in " + events, firstIndex < secondIndex);
+   }
+
+   private class MyComponent implements Startable
+   {
+      private final String name;
+
+      private final CyclicBarrier barrier;
+
+      private boolean fail;
+
+      MyComponent(String name)
+      {
+         this(name, null);
+      }
+
+      MyComponent(String name, CyclicBarrier barrier)
+      {
+         this.name = name;
+         this.barrier = barrier;
+      }
+
+      public void start()
+      {
+         events.add(name + "-start");
+         try
+         {
+            if (barrier != null)
+            {
+               barrier.await(10, TimeUnit.SECONDS);
+            }
+            else
+            {
+               Thread.sleep(20);
+            }
+         }
+         catch (Exception e)
+         {
+            throw new RuntimeException(e);
+         }
+         if (fail)
+         {
+            throw new RuntimeException("Cannot start " + name);
+         }
+         events.add(name + "-started");
+      }
+
+      public void stop()
+      {
+         events.add(name + "-stop");
+         try
+         {
+            Thread.sleep(20);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         events.add(name + "-stopped");
+      }
+   }
+
+   /**
+    * A container whose components and dependencies are defined by the test
+    */
+   private static class MyContainer extends ConcurrentContainer
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final List<Object> components;
+
+      private final Map<Object, Set<Object>> dependencies = new IdentityHashMap<Object, Set<Object>>();
+
+      MyContainer(Object... components)
+      {
+         this.components = Arrays.asList(components);
+         for (Object component : components)
+         {
+            dependencies.put(component, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+         }
+      }
+
+      void addDependency(Object component, Object dependency)
+      {
+         dependencies.get(component).add(dependency);
+      }
+
+      @Override
+      public <T> List<T> getComponentInstancesOfType(Class<T> componentType)
+      {
+         List<T> result = new ArrayList<T>();
+         for (Object component : components)
+         {
+            if (componentType.isInstance(component))
+            {
+               result.add(componentType.cast(component));
+            }
+         }
+         return result;
+      }
+
+      @Override
+      public Map<Object, Set<Object>> getDependencies(Collection<?> components)
+      {
+         return dependencies;
+      }
+   }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.test.MockServletContext;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+/**
+ * @version $Id$
+ */
+public class TestParallelPortalContainerCreation extends TestCase
+{
+
+   public void testIndependentPortalContexts() throws Exception
+   {
+      Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+      // portal2 depends on portal1
+      dependencies.put("portal1", Arrays.asList("a", "b"));
+      dependencies.put("portal2", Arrays.asList("portal1"));
+      // portal3 and portal4 share a dependency
+      dependencies.put("portal3", Arrays.asList("c"));
+      dependencies.put("portal4", Arrays.asList("c", "d"));
+      // portal5 and portal6 have no declared dependencies
+      dependencies.put("portal6", Collections.<String> emptyList());
+      // portal7 is independent
+      dependencies.put("portal7", Arrays.asList("e"));
+      List<WebAppInitContext> contexts =
+         createContexts("portal1", "portal3", "portal5", "portal2", "portal7", "portal4", "portal6");
+
+      List<List<WebAppInitContext>> groups = RootContainer.getIndependentPortalContexts(contexts, dependencies);
+      assertEquals(4, groups.size());
+      assertEquals(Arrays.asList("portal1", "portal2"), getNames(groups.get(0)));
+      assertEquals(Arrays.asList("portal3", "portal4"), getNames(groups.get(1)));
+      assertEquals(Arrays.asList("portal5", "portal6"), getNames(groups.get(2)));
+      assertEquals(Arrays.asList("portal7"), getNames(groups.get(3)));
+   }
+
+   public void testCreatePortalContainersInParallel() throws Exception
+   {
+      final ExoContainer currentContainer = new ExoContainer();
+      final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+      final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+      final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+      final Map<String, ClassLoader> classLoaders = new HashMap<String, ClassLoader>();
+      List<WebAppInitContext> group1 = new ArrayList<WebAppInitContext>();
+      List<WebAppInitContext> group2 = new ArrayList<WebAppInitContext>();
+      for (int i = 0; i < 6; i++)
+      {
+         String name = "portal" + i;
+         ClassLoader cl = new URLClassLoader(new URL[0], currentClassLoader);
+         classLoaders.put(name, cl);
+         Thread.currentThread().setContextClassLoader(cl);
+         try
+         {
+            (i % 2 == 0 ? group1 : group2).add(new WebAppInitContext(new MockServletContext(name)));
+         }
+         finally
+         {
+            Thread.currentThread().setContextClassLoader(currentClassLoader);
+         }
+      }
+      RootContainer root = new RootContainer()
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         void doCreatePortalContainer(ServletContext context)
+         {
+            String name = context.getServletContextName();
+            if (Thread.currentThread().getContextClassLoader() != classLoaders.get(name))
+            {
+               errors.add("Wrong class loader for " + name);
+            }
+            if (ExoContainerContext.getCurrentContainerIfPresent() != currentContainer)
+            {
+               errors.add("Wrong current container for " + name);
+            }
+            created.add(name);
+         }
+      };
+      ExoContainerContext.setCurrentContainer(currentContainer);
+      try
+      {
+         root.createPortalContainersInParallel(Arrays.asList(group1, group2));
+         assertSame(currentContainer, ExoContainerContext.getCurrentContainerIfPresent());
+         assertSame(currentClassLoader, Thread.currentThread().getContextClassLoader());
+      }
+      finally
+      {
+         ExoContainerContext.setCurrentContainer(null);
+      }
+      assertTrue(errors.toString(), errors.isEmpty());
+      assertEquals(6, created.size());
+      // The portal containers of a group are created in order
+      List<String> order1 = new ArrayList<String>(created);
+      order1.retainAll(getNames(group1));
+      assertEquals(getNames(group1), order1);
+      List<String> order2 = new ArrayList<String>(created);
+      order2.retainAll(getNames(group2));
+      assertEquals(getNames(group2), order2);
+   }
+
+   public void testErrorInParallelCreation() throws Exception
+   {
+      final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+      RootContainer root = new RootContainer()
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         void doCreatePortalContainer(ServletContext context)
+         {
+            String name = context.getServletContextName();
+            if ("portal1".equals(name))
+            {
+               throw new MyError();
+            }
+            created.add(name);
+         }
+      };
+      try
+      {
+         root.createPortalContainersInParallel(Arrays.asList(createContexts("portal1", "portal2"),
+            createContexts("portal3")));
+         fail("The error should have been thrown");
+      }
+      catch (MyError e)
+      {
+         // expected
+      }
+      // The other groups are still created
+      assertEquals(Arrays.asList("portal3"), created);
+   }
+
+   private static List<WebAppInitContext> createContexts(String... names)
+   {
+      List<WebAppInitContext> contexts = new ArrayList<WebAppInitContext>();
+      for (String name : names)
+      {
+         contexts.add(new WebAppInitContext(new MockServletContext(name)));
+      }
+      return contexts;
+   }
+
+   private static List<String> getNames(List<WebAppInitContext> contexts)
+   {
+      List<String> names = new ArrayList<String>();
+      for (WebAppInitContext context : contexts)
+      {
+         names.add(context.getServletContextName());
+      }
+      return names;
+   }
+
+   private static class MyError extends Error
+   {
+      private static final long serialVersionUID = 1L;
+   }
+}
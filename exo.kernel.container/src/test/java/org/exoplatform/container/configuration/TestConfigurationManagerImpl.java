@@ -18,11 +18,17 @@ package org.exoplatform.container.configuration;
 
 import junit.framework.TestCase;
 
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.container.xml.Configuration;
 
 import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Enumeration;
@@ -260,6 +266,111 @@ public class TestConfigurationManagerImpl extends TestCase
       assertTrue(conf.getComponent("C").getDocumentURL().getFile().endsWith("config-manager-configuration-c.xml"));
    }
    
+   public void testSnapshot() throws Exception
+   {
+      File dir = File.createTempFile("snapshot", "");
+      assertTrue(dir.delete());
+      assertTrue(dir.mkdir());
+      File file = new File(dir, "config-manager-configuration-d.xml");
+      writeConfiguration(file, "D");
+      String oldValue = System.getProperty(ConfigurationManagerImpl.SNAPSHOT_DIRECTORY_PROPERTY);
+      System.setProperty(ConfigurationManagerImpl.SNAPSHOT_DIRECTORY_PROPERTY, dir.getAbsolutePath());
+      try
+      {
+         // No snapshot yet
+         ConfigurationManager cm = new ConfigurationManagerImpl();
+         cm.addConfiguration(file.toURI().toURL());
+         Configuration conf = cm.getConfiguration();
+         String xml = conf.toXML();
+         File[] snapshots = dir.listFiles(new FileFilter()
+         {
+            public boolean accept(File f)
+            {
+               return f.getName().endsWith(".snapshot");
+            }
+         });
+         assertEquals(1, snapshots.length);
+         File snapshot = snapshots[0];
+         assertTrue(snapshot.setLastModified(0));
+
+         // The snapshot is used
+         cm = new ConfigurationManagerImpl();
+         cm.addConfiguration(file.toURI().toURL());
+         conf = cm.getConfiguration();
+         assertEquals(0, snapshot.lastModified());
+         assertEquals(xml, conf.toXML());
+         assertTrue(conf.getComponent("A").getDocumentURL().getFile().endsWith("config-manager-configuration-a.xml"));
+         assertTrue(conf.getComponent("B").getDocumentURL().getFile().endsWith("config-manager-configuration-b.xml"));
+         assertTrue(conf.getComponent("C").getDocumentURL().getFile().endsWith("config-manager-configuration-c.xml"));
+         assertTrue(conf.getComponent("D").getDocumentURL().getFile().endsWith("config-manager-configuration-d.xml"));
+         assertNull(conf.getComponent("E"));
+
+         // The snapshot is stale
+         writeConfiguration(file, "E");
+         cm = new ConfigurationManagerImpl();
+         cm.addConfiguration(file.toURI().toURL());
+         conf = cm.getConfiguration();
+         assertTrue(snapshot.lastModified() > 0);
+         assertNull(conf.getComponent("D"));
+         assertNotNull(conf.getComponent("E"));
+         assertNotNull(conf.getComponent("A"));
+
+         // Another container has its own snapshot since the variables may be resolved differently
+         ExoContainer container = new ExoContainer();
+         container.getContext().setName("snapshot-container");
+         ExoContainer previous = ExoContainerContext.getCurrentContainerIfPresent();
+         ExoContainerContext.setCurrentContainer(container);
+         try
+         {
+            cm = new ConfigurationManagerImpl();
+            cm.addConfiguration(file.toURI().toURL());
+            conf = cm.getConfiguration();
+            assertNotNull(conf.getComponent("E"));
+         }
+         finally
+         {
+            ExoContainerContext.setCurrentContainer(previous);
+         }
+         assertEquals(2, dir.listFiles(new FileFilter()
+         {
+            public boolean accept(File f)
+            {
+               return f.getName().endsWith(".snapshot");
+            }
+         }).length);
+      }
+      finally
+      {
+         if (oldValue == null)
+            System.clearProperty(ConfigurationManagerImpl.SNAPSHOT_DIRECTORY_PROPERTY);
+         else
+            System.setProperty(ConfigurationManagerImpl.SNAPSHOT_DIRECTORY_PROPERTY, oldValue);
+         for (File f : dir.listFiles())
+         {
+            f.delete();
+         }
+         dir.delete();
+      }
+   }
+
+   private void writeConfiguration(File file, String type) throws IOException
+   {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try
+      {
+         writer.write("<configuration xmlns=\"http://www.exoplatform.org/xml/ns/kernel_1_2.xsd\">");
+         writer.write("<component><type>" + type + "</type></component>");
+         writer.write("<import>classpath:/org/exoplatform/container/configuration/config-manager-configuration-c.xml</import>");
+         writer.write("</configuration>");
+      }
+      finally
+      {
+         writer.close();
+      }
+      // Make sure that the last modified date changes
+      file.setLastModified(file.lastModified() + 2000);
+   }
+
    private void checkURL(URL url) throws Exception
    {
       checkURL(url, false);
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2013 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.container.configuration;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.commons.utils.Tools;
+import org.exoplatform.container.xml.Configuration;
+import org.jibx.runtime.BindingDirectory;
+import org.jibx.runtime.IMarshallingContext;
+import org.w3c.dom.Document;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXResult;
+
+/**
+ * Checks that the streaming unmarshalling gives the same result as the DOM based unmarshalling.
+ *
+ * @version $Id$
+ */
+public class TestStreamingUnmarshalling extends TestCase
+{
+
+   private static final String[][] PROFILES = {{}, {"foo"}, {"bar"}, {"foo", "bar"}, {"a"}, {"b"}, {"a", "b"},
+      {"disable-pc"}, {"with-profiles"}};
+
+   /**
+    * Compares the events produced by the {@link NoKernelNamespaceStAXFilter} with the events produced
+    * by the {@link ProfileDOMFilter} and the {@link NoKernelNamespaceSAXFilter} for all the XML files
+    * of the tests
+    */
+   public void testFilters() throws Exception
+   {
+      List<File> files = new ArrayList<File>();
+      collect(new File(TestStreamingUnmarshalling.class.getResource("/configuration.xml").toURI()).getParentFile(),
+         files);
+      assertFalse(files.isEmpty());
+      for (File file : files)
+      {
+         for (String[] profiles : PROFILES)
+         {
+            Set<String> activeProfiles = Tools.<String> set(profiles);
+            List<String> expected;
+            try
+            {
+               expected = getDOMEvents(file.toURI().toURL(), activeProfiles);
+            }
+            catch (SAXException e)
+            {
+               // Not a valid XML file
+               break;
+            }
+            catch (IOException e)
+            {
+               // The DTD cannot be loaded
+               break;
+            }
+            assertEquals("Unexpected events for " + file + " with the profiles " + activeProfiles, expected,
+               getStAXEvents(file.toURI().toURL(), activeProfiles));
+         }
+      }
+   }
+
+   /**
+    * Compares the configurations obtained with the streaming unmarshalling and the DOM based unmarshalling
+    */
+   public void testUnmarshall() throws Exception
+   {
+      String[] configs =
+         {"/configuration.xml", "/configuration-no-schema.xml", "/org/exoplatform/container/configuration/"
+            + "component-configuration.xml", "/org/exoplatform/container/configuration/import-configuration.xml",
+            "/org/exoplatform/container/configuration/init-param-configuration.xml",
+            "/org/exoplatform/container/configuration/external-component-plugins.xml"};
+      for (String config : configs)
+      {
+         URL url = TestStreamingUnmarshalling.class.getResource(config);
+         for (String[] profiles : PROFILES)
+         {
+            ConfigurationUnmarshaller unmarshaller = new ConfigurationUnmarshaller(Tools.<String> set(profiles));
+            assertEquals("Unexpected configuration for " + config, marshall(unmarshaller.unmarshall(url, false)),
+               marshall(unmarshaller.unmarshall(url, true)));
+         }
+      }
+   }
+
+   private static String marshall(Configuration configuration) throws Exception
+   {
+      IMarshallingContext mctx = BindingDirectory.getFactory(Configuration.class).createMarshallingContext();
+      StringWriter writer = new StringWriter();
+      mctx.setOutput(writer);
+      mctx.marshalDocument(configuration);
+      return writer.toString();
+   }
+
+   private static void collect(File dir, List<File> files)
+   {
+      File[] children = dir.listFiles();
+      if (children == null)
+      {
+         return;
+      }
+      for (File child : children)
+      {
+         if (child.isDirectory())
+         {
+            collect(child, files);
+         }
+         else if (child.getName().endsWith(".xml"))
+         {
+            files.add(child);
+         }
+      }
+   }
+
+   private static List<String> getDOMEvents(URL url, Set<String> profiles) throws Exception
+   {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setNamespaceAware(true);
+      InputStream is = url.openStream();
+      Document doc;
+      try
+      {
+         doc = factory.newDocumentBuilder().parse(is);
+      }
+      finally
+      {
+         is.close();
+      }
+      new ProfileDOMFilter(profiles).process(doc.getDocumentElement());
+      final EventRecorder recorder = new EventRecorder();
+      TransformerFactory.newInstance().newTransformer()
+         .transform(new DOMSource(doc), new SAXResult(new NoKernelNamespaceSAXFilter(new DefaultHandler()
+         {
+            @Override
+            public void startElement(String uri, String localName, String qName, Attributes atts)
+            {
+               Set<String> attributes = new TreeSet<String>();
+               for (int i = 0; i < atts.getLength(); i++)
+               {
+                  // The namespace declarations are reported as attributes by the transformer
+                  if (!atts.getQName(i).equals("xmlns") && !atts.getQName(i).startsWith("xmlns:"))
+                  {
+                     attributes.add(attribute(atts.getURI(i), atts.getLocalName(i), atts.getValue(i)));
+                  }
+               }
+               recorder.start(uri, localName, attributes);
+            }
+
+            @Override
+            public void endElement(String uri, String localName, String qName)
+            {
+               recorder.end(uri, localName);
+            }
+
+            @Override
+            public void characters(char[] ch, int start, int length)
+            {
+               recorder.text(new String(ch, start, length));
+            }
+         })));
+      return recorder.events;
+   }
+
+   private static List<String> getStAXEvents(URL url, Set<String> profiles) throws Exception
+   {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+      InputStream is = url.openStream();
+      EventRecorder recorder = new EventRecorder();
+      try
+      {
+         XMLStreamReader reader = new NoKernelNamespaceStAXFilter(factory.createXMLStreamReader(is), profiles);
+         while (reader.hasNext())
+         {
+            switch (reader.next())
+            {
+               case XMLStreamConstants.START_ELEMENT :
+                  Set<String> attributes = new TreeSet<String>();
+                  for (int i = 0; i < reader.getAttributeCount(); i++)
+                  {
+                     attributes.add(attribute(reader.getAttributeNamespace(i), reader.getAttributeLocalName(i),
+                        reader.getAttributeValue(i)));
+                  }
+                  recorder.start(reader.getNamespaceURI(), reader.getLocalName(), attributes);
+                  break;
+               case XMLStreamConstants.END_ELEMENT :
+                  recorder.end(reader.getNamespaceURI(), reader.getLocalName());
+                  break;
+               case XMLStreamConstants.CHARACTERS :
+               case XMLStreamConstants.CDATA :
+               case XMLStreamConstants.SPACE :
+                  recorder.text(reader.getText());
+                  break;
+               default :
+                  break;
+            }
+         }
+      }
+      finally
+      {
+         is.close();
+      }
+      return recorder.events;
+   }
+
+   private static String attribute(String uri, String localName, String value)
+   {
+      return "{" + (uri == null ? "" : uri) + "}" + localName + "=" + value;
+   }
+
+   /**
+    * Records the events in a canonical form, the adjacent texts are merged and the
+    * texts only made of white spaces are ignored
+    */
+   private static class EventRecorder
+   {
+      private final List<String> events = new ArrayList<String>();
+
+      private final StringBuilder text = new StringBuilder();
+
+      void start(String uri, String localName, Set<String> attributes)
+      {
+         flush();
+         events.add("<{" + (uri == null ? "" : uri) + "}" + localName + " " + attributes + ">");
+      }
+
+      void end(String uri, String localName)
+      {
+         flush();
+         events.add("</{" + (uri == null ? "" : uri) + "}" + localName + ">");
+      }
+
+      void text(String value)
+      {
+         text.append(value);
+      }
+
+      private void flush()
+      {
+         if (text.toString().trim().length() > 0)
+         {
+            events.add(text.toString());
+         }
+         text.setLength(0);
+      }
+   }
+}